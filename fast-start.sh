@@ -0,0 +1,44 @@
+#!/bin/sh
+# Startup-optimized build and run of the helper for non-interactive (cron) use.
+#
+#   ./fast-start.sh build              AOT-processed jar, extracted layout and AppCDS archive from a training run
+#   ./fast-start.sh run <command> ...  run a command with the AOT code and the CDS archive
+#   ./fast-start.sh measure <command>  same as run, and report the time to the first line of output on stderr
+set -e
+
+APP=jellyfin-music-helper-0.0.1-SNAPSHOT
+DIR=target/fast-start
+JAR="$DIR/$APP.jar"
+ARCHIVE="$DIR/application.jsa"
+JVM_OPTS="-XX:TieredStopAtLevel=1 -Dspring.aot.enabled=true -Dspring.main.banner-mode=off -Dspring.main.log-startup-info=false --enable-native-access=ALL-UNNAMED"
+
+case "$1" in
+  build)
+    ./mvnw -q -Paot -DskipTests package
+    rm -rf "$DIR"
+    java -Djarmode=tools -jar "target/$APP.jar" extract --destination "$DIR"
+    # training run: start the context, dump the loaded classes and exit before the shell runs a command
+    java -XX:ArchiveClassesAtExit="$ARCHIVE" -Dspring.context.exit=onRefresh $JVM_OPTS -jar "$JAR"
+    echo "CDS archive written to $ARCHIVE"
+    ;;
+  run)
+    shift
+    exec java -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto $JVM_OPTS -jar "$JAR" "$@"
+    ;;
+  measure)
+    shift
+    start=$(date +%s%N)
+    java -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto $JVM_OPTS -jar "$JAR" "$@" | {
+      if IFS= read -r first; then
+        echo "time to first output: $((($(date +%s%N) - start) / 1000000)) ms" >&2
+        printf '%s\n' "$first"
+        cat
+      fi
+    }
+    echo "total time: $((($(date +%s%N) - start) / 1000000)) ms" >&2
+    ;;
+  *)
+    echo "usage: $0 build | run <command> [options] | measure <command> [options]" >&2
+    exit 1
+    ;;
+esac
@@ -0,0 +1,234 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.JellyfinQuery.ItemType;
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.report.ReportLayout;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JsonNode;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Finds the albums whose tracks disagree on their album artists, or whose album artists are credited on none of
+ * their tracks; Jellyfin then splits the album or files it under an artist with no track.
+ * <p>
+ * Tracks are joined to their album in a single scan. Pages are fetched {@code parallelism} at a time and reduced
+ * to {@link Track}s by the threads that fetched them, then queued to one consumer folding them into a hash table
+ * keyed by album id. Fetching and grouping overlap, the bounded queue holds the fetchers back when grouping lags,
+ * and memory grows with the number of albums rather than tracks.
+ */
+@Component
+public class AlbumArtistChecker {
+
+    public static final ReportLayout REPORT = ReportLayout.of(AlbumArtistChecker::inconsistentAlbumLine,
+            "albumId", "album", "albumArtists", "trackArtists", "tracks", "problems");
+
+    // AlbumId, AlbumArtists and Artists are base fields, no Fields parameter needed
+    private static final JellyfinQuery TRACKS = JellyfinQuery.items().types(ItemType.AUDIO).recursive();
+    private static final List<Track> END = List.of();
+
+    private final JellyfinItemPager pager;
+    private final Set<String> ignoredAlbumArtists;
+
+    public AlbumArtistChecker(JellyfinItemPager pager, JellyfinProperties properties) {
+        this.pager = pager;
+        Set<String> ignored = new HashSet<>();
+        properties.getAlbumArtistCheck().getIgnoredAlbumArtists().stream()
+                .filter(Objects::nonNull)
+                .map(AlbumArtistChecker::key)
+                .forEach(ignored::add);
+        this.ignoredAlbumArtists = ignored;
+    }
+
+    /**
+     * @param consumer receives the inconsistent albums, by album artist then title, once every track was grouped
+     */
+    public CheckResult checkAlbumArtists(int parallelism, Consumer<InconsistentAlbum> consumer) {
+        BlockingQueue<List<Track>> pages = new ArrayBlockingQueue<>(2 * Math.max(1, parallelism));
+        Map<String, AlbumGroup> albums;
+        try (TaskScope scope = TaskScope.open()) {
+            scope.fork(() -> {
+                pager.forEachPageConcurrently(TRACKS, JellyfinItemPager.DEFAULT_PAGE_SIZE, parallelism,
+                        items -> put(pages, tracks(items)));
+                // on failure the scope cancels the consumer instead
+                put(pages, END);
+                return null;
+            });
+            Supplier<Map<String, AlbumGroup>> grouped = scope.fork(() -> {
+                // only this thread touches the table
+                Map<String, AlbumGroup> groups = new HashMap<>();
+                for (List<Track> page = pages.take(); page != END; page = pages.take()) {
+                    page.forEach(track -> add(groups, track));
+                }
+                return groups;
+            });
+            scope.join();
+            albums = grouped.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        List<InconsistentAlbum> inconsistent = inconsistentAlbums(albums);
+        inconsistent.forEach(consumer);
+        int tracks = albums.values().stream().mapToInt(album -> album.tracks).sum();
+        return new CheckResult(tracks, albums.size(), inconsistent.size());
+    }
+
+    /**
+     * @return the inconsistent albums among the ones of {@code tracks}, by album artist then title
+     */
+    List<InconsistentAlbum> inconsistentAlbums(Collection<Track> tracks) {
+        Map<String, AlbumGroup> albums = new HashMap<>();
+        tracks.forEach(track -> add(albums, track));
+        return inconsistentAlbums(albums);
+    }
+
+    private List<InconsistentAlbum> inconsistentAlbums(Map<String, AlbumGroup> albums) {
+        List<InconsistentAlbum> inconsistent = new ArrayList<>();
+        albums.forEach((id, album) -> {
+            List<Problem> problems = problems(album);
+            if (!problems.isEmpty()) {
+                inconsistent.add(new InconsistentAlbum(id, album.name, List.copyOf(album.albumArtists),
+                        List.copyOf(album.trackArtists), album.tracks, problems));
+            }
+        });
+        inconsistent.sort(Comparator
+                .comparing((InconsistentAlbum album) -> String.join(", ", album.albumArtists()),
+                        NameCollation.ORDER)
+                .thenComparing(album -> Objects.requireNonNullElse(album.album(), ""), NameCollation.ORDER)
+                .thenComparing(InconsistentAlbum::albumId));
+        return inconsistent;
+    }
+
+    private List<Problem> problems(AlbumGroup album) {
+        List<Problem> problems = new ArrayList<>();
+        if (album.variants.size() > 1) {
+            problems.add(Problem.MIXED_ALBUM_ARTISTS);
+        }
+        Set<String> credited = new HashSet<>();
+        album.trackArtists.forEach(artist -> credited.add(key(artist)));
+        boolean uncredited = album.albumArtists.stream()
+                .map(AlbumArtistChecker::key)
+                .anyMatch(artist -> !ignoredAlbumArtists.contains(artist) && !credited.contains(artist));
+        if (uncredited) {
+            problems.add(Problem.ALBUM_ARTIST_NOT_ON_TRACKS);
+        }
+        return problems;
+    }
+
+    private static void add(Map<String, AlbumGroup> albums, Track track) {
+        albums.computeIfAbsent(track.albumId(), _ -> new AlbumGroup(track.album())).add(track);
+    }
+
+    private static List<Track> tracks(JsonNode items) {
+        List<Track> tracks = new ArrayList<>(items.size());
+        for (JsonNode item : items) {
+            String albumId = textOrNull(item.path("AlbumId"));
+            if (albumId == null) {
+                continue;
+            }
+            List<String> albumArtists = new ArrayList<>();
+            item.path("AlbumArtists").forEach(artist -> {
+                String name = textOrNull(artist.path("Name"));
+                if (name != null && !name.isBlank()) {
+                    albumArtists.add(name);
+                }
+            });
+            String albumArtist = textOrNull(item.path("AlbumArtist"));
+            if (albumArtists.isEmpty() && albumArtist != null && !albumArtist.isBlank()) {
+                albumArtists.add(albumArtist);
+            }
+            List<String> artists = new ArrayList<>();
+            item.path("Artists").forEach(artist -> {
+                String name = textOrNull(artist);
+                if (name != null && !name.isBlank()) {
+                    artists.add(name);
+                }
+            });
+            tracks.add(new Track(albumId, textOrNull(item.path("Album")), albumArtists, artists));
+        }
+        return tracks;
+    }
+
+    private static void put(BlockingQueue<List<Track>> pages, List<Track> page) {
+        try {
+            pages.put(page);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    // Jellyfin matches artist names ignoring case
+    private static String key(String artist) {
+        return artist.toLowerCase(Locale.ROOT);
+    }
+
+    private static String inconsistentAlbumLine(Object[] row) {
+        return join(row[2]) + " - " + row[1] + " " + row[0] + ": " + join(row[5]) + " (" + row[4]
+                + " tracks by " + join(row[3]) + ")";
+    }
+
+    private static String join(Object values) {
+        StringJoiner joined = new StringJoiner(", ");
+        ((List<?>) values).forEach(value -> joined.add(String.valueOf(value)));
+        return joined.toString();
+    }
+
+    /**
+     * The album artists and track artists of every track of an album seen so far.
+     */
+    private static final class AlbumGroup {
+        private final String name;
+        private final Set<String> albumArtists = new LinkedHashSet<>();
+        // album artists of each track, as keys, to tell whether tracks disagree
+        private final Set<List<String>> variants = new HashSet<>();
+        private final Set<String> trackArtists = new LinkedHashSet<>();
+        private int tracks;
+
+        AlbumGroup(String name) {
+            this.name = name;
+        }
+
+        void add(Track track) {
+            albumArtists.addAll(track.albumArtists());
+            variants.add(track.albumArtists().stream().map(AlbumArtistChecker::key).toList());
+            trackArtists.addAll(track.artists());
+            tracks++;
+        }
+    }
+
+    /**
+     * What is kept of a track: its album and the artists credited.
+     */
+    record Track(String albumId, String album, List<String> albumArtists, List<String> artists) {
+    }
+
+    public enum Problem {
+        MIXED_ALBUM_ARTISTS("tracks have different album artists"),
+        ALBUM_ARTIST_NOT_ON_TRACKS("album artist credited on no track");
+
+        private final String description;
+
+        Problem(String description) {
+            this.description = description;
+        }
+
+        public String description() {
+            return description;
+        }
+    }
+
+    public record InconsistentAlbum(String albumId, String album, List<String> albumArtists,
+                                    List<String> trackArtists, int tracks, List<Problem> problems) {
+    }
+
+    public record CheckResult(int tracks, int albums, int inconsistentAlbums) {
+    }
+}
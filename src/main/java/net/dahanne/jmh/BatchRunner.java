@@ -0,0 +1,209 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.report.ReportFormat;
+import net.dahanne.jmh.report.ReportLayout;
+import net.dahanne.jmh.report.ReportWriter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Runs several read-only reports in one go. The datasets the reports need (artists, genres, Spotify history)
+ * are each fetched once, all in parallel, then every report runs concurrently against them and writes to its
+ * own file in the output directory.
+ */
+@Component
+public class BatchRunner {
+
+    private final JellyfinArtistService artistService;
+    private final JellyfinGenreService genreService;
+    private final SpotifyHistoryMatcher spotifyHistoryMatcher;
+    private final FeaturingArtistsFinder featuringArtistsFinder;
+    private final SimilarArtistFinder similarArtistFinder;
+
+    public BatchRunner(JellyfinArtistService artistService,
+                       JellyfinGenreService genreService,
+                       SpotifyHistoryMatcher spotifyHistoryMatcher,
+                       FeaturingArtistsFinder featuringArtistsFinder,
+                       SimilarArtistFinder similarArtistFinder) {
+        this.artistService = artistService;
+        this.genreService = genreService;
+        this.spotifyHistoryMatcher = spotifyHistoryMatcher;
+        this.featuringArtistsFinder = featuringArtistsFinder;
+        this.similarArtistFinder = similarArtistFinder;
+    }
+
+    /**
+     * @param commandNames batch command names, see {@link BatchCommand}; duplicates are ignored
+     * @param outputDirectory directory receiving one {@code <command>.<format extension>} report per command
+     */
+    public List<BatchResult> run(List<String> commandNames, Path outputDirectory, ReportFormat format) {
+        Set<BatchCommand> commands = new LinkedHashSet<>();
+        for (String name : commandNames) {
+            commands.add(BatchCommand.of(name));
+        }
+        if (commands.isEmpty()) {
+            throw new IllegalArgumentException("No command to run, expected some of " + BatchCommand.names());
+        }
+        try {
+            Files.createDirectories(outputDirectory);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create output directory " + outputDirectory, e);
+        }
+
+        Set<Dataset> needed = EnumSet.noneOf(Dataset.class);
+        commands.forEach(command -> needed.addAll(command.datasets));
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Map<Dataset, CompletableFuture<?>> datasets = new EnumMap<>(Dataset.class);
+            for (Dataset dataset : needed) {
+                datasets.put(dataset, CompletableFuture.supplyAsync(loader(dataset), executor));
+            }
+            Batch batch = new Batch(datasets);
+
+            List<CompletableFuture<BatchResult>> reports = new ArrayList<>();
+            for (BatchCommand command : commands) {
+                Path file = outputDirectory.resolve(command.commandName + "." + format.extension());
+                reports.add(CompletableFuture.supplyAsync(() -> runOne(command, batch, file, format), executor));
+            }
+            return await(reports, executor);
+        }
+    }
+
+    /**
+     * Unlike {@code join}, gives up on the reports when interrupted, interrupting their threads so that their
+     * Jellyfin requests are aborted.
+     */
+    private static List<BatchResult> await(List<CompletableFuture<BatchResult>> reports, ExecutorService executor) {
+        List<BatchResult> results = new ArrayList<>();
+        try {
+            for (CompletableFuture<BatchResult> report : reports) {
+                results.add(report.get());
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : new RuntimeException(e.getCause());
+        }
+        return results;
+    }
+
+    private Supplier<Object> loader(Dataset dataset) {
+        return switch (dataset) {
+            case ARTISTS -> artistService::fetchArtists;
+            case GENRES -> genreService::fetchGenresWithAlbumCount;
+            case SPOTIFY_HISTORY -> spotifyHistoryMatcher::readStreamingHistory;
+        };
+    }
+
+    private BatchResult runOne(BatchCommand command, Batch batch, Path file, ReportFormat format) {
+        long start = System.nanoTime();
+        try (ReportWriter report = ReportWriter.open(format, file, command.layout)) {
+            switch (command) {
+                case FIND_FEATURING_ARTISTS -> featuringArtistsFinder.findFeaturingArtists(batch.artists(), report);
+                case LIST_ARTISTS_WITH_SIMILAR_NAMES -> similarArtistFinder.findSimilarArtists(batch.artists(),
+                        pair -> report.row(pair.first(), pair.second(), pair.score()));
+                case MISSING_ARTISTS_FROM_SPOTIFY -> spotifyHistoryMatcher.listMissingArtistsFromSpotify(
+                        batch.history(), batch.artists(), report);
+                case COMPARE_WITH_SPOTIFY_LIST -> spotifyHistoryMatcher.compareWithSpotifyList(batch.history(), report);
+                case LIST_GENRES -> batch.genres()
+                        .forEach(genre -> report.row(genre.id(), genre.name(), genre.albumCount()));
+            }
+            return new BatchResult(command.commandName, file, elapsedMillis(start), null);
+        } catch (Exception e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            String message = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+            return new BatchResult(command.commandName, file, elapsedMillis(start), message);
+        }
+    }
+
+    private static long elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private record Batch(Map<Dataset, CompletableFuture<?>> datasets) {
+
+        @SuppressWarnings("unchecked")
+        List<JellyfinArtistService.Artist> artists() {
+            return (List<JellyfinArtistService.Artist>) datasets.get(Dataset.ARTISTS).join();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<JellyfinGenreService.GenreWithCount> genres() {
+            return (List<JellyfinGenreService.GenreWithCount>) datasets.get(Dataset.GENRES).join();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<SpotifyHistoryMatcher.StreamingHistoryEntry> history() {
+            return (List<SpotifyHistoryMatcher.StreamingHistoryEntry>) datasets.get(Dataset.SPOTIFY_HISTORY).join();
+        }
+    }
+
+    private enum Dataset {
+        ARTISTS, GENRES, SPOTIFY_HISTORY
+    }
+
+    /**
+     * The read-only commands that can be batched, with the datasets each one reads.
+     */
+    enum BatchCommand {
+        FIND_FEATURING_ARTISTS("find-featuring-artists", FeaturingArtistsFinder.REPORT, Dataset.ARTISTS),
+        LIST_ARTISTS_WITH_SIMILAR_NAMES("list-artists-with-similar-names", SimilarArtistFinder.REPORT,
+                Dataset.ARTISTS),
+        MISSING_ARTISTS_FROM_SPOTIFY("missing-artists-from-spotify", SpotifyHistoryMatcher.MISSING_ARTIST_REPORT,
+                Dataset.ARTISTS, Dataset.SPOTIFY_HISTORY),
+        COMPARE_WITH_SPOTIFY_LIST("compare-with-spotify-list", SpotifyHistoryMatcher.MATCH_REPORT,
+                Dataset.SPOTIFY_HISTORY),
+        LIST_GENRES("list-genres", JellyfinGenreService.GENRE_REPORT, Dataset.GENRES);
+
+        private final String commandName;
+        private final ReportLayout layout;
+        private final Set<Dataset> datasets;
+
+        BatchCommand(String commandName, ReportLayout layout, Dataset first, Dataset... rest) {
+            this.commandName = commandName;
+            this.layout = layout;
+            this.datasets = EnumSet.of(first, rest);
+        }
+
+        static BatchCommand of(String name) {
+            String trimmed = name.trim().toLowerCase(Locale.ROOT);
+            for (BatchCommand command : values()) {
+                if (command.commandName.equals(trimmed)) {
+                    return command;
+                }
+            }
+            throw new IllegalArgumentException("Unknown batch command '" + name + "', expected one of " + names());
+        }
+
+        static String names() {
+            return Arrays.stream(values()).map(command -> command.commandName).collect(Collectors.joining(", "));
+        }
+    }
+
+    public record BatchResult(String command, Path file, long elapsedMillis, String error) {
+
+        public boolean failed() {
+            return error != null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package net.dahanne.jmh;
+
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The command running on the current thread, which services report their progress to, one step at a time.
+ * <p>
+ * {@link CommandRunner} binds it to the thread running the command through an inheritable thread local, so the
+ * virtual threads that thread starts ({@link TaskScope} subtasks, {@link JellyfinItemPager} pages) report to the
+ * same command. Outside of a command, {@link #current()} is a context whose progress is never drawn.
+ */
+public final class CommandContext {
+
+    private static final InheritableThreadLocal<CommandContext> CURRENT = new InheritableThreadLocal<>();
+    private static final CommandContext NONE = new CommandContext("", null);
+
+    private final String command;
+    // null when the progress line is not drawn
+    private final PrintStream console;
+    // open steps, the last one started being drawn
+    private final List<Progress> steps = new CopyOnWriteArrayList<>();
+    private String drawn = "";
+
+    CommandContext(String command, PrintStream console) {
+        this.command = command;
+        this.console = console;
+    }
+
+    public static CommandContext current() {
+        CommandContext context = CURRENT.get();
+        return context != null ? context : NONE;
+    }
+
+    static void bind(CommandContext context) {
+        CURRENT.set(context);
+    }
+
+    static void unbind() {
+        CURRENT.remove();
+    }
+
+    public String command() {
+        return command;
+    }
+
+    /**
+     * Starts a new step, which replaces the previous one on the progress line until it is closed.
+     *
+     * @param total number of items of the step, {@code 0} when not known yet
+     */
+    public Progress progress(String label, long total) {
+        Progress step = new Progress(this, label, total);
+        steps.add(step);
+        return step;
+    }
+
+    /**
+     * Redraws the progress line if the current step changed since the last call.
+     */
+    synchronized void draw() {
+        String line = steps.isEmpty() ? "" : steps.getLast().render(System.nanoTime());
+        if (console != null && !line.equals(drawn)) {
+            // padded so that a shorter line hides the end of the previous one
+            console.print("\r" + line + " ".repeat(Math.max(0, drawn.length() - line.length())));
+            console.flush();
+            drawn = line;
+        }
+    }
+
+    /**
+     * Ends every step and erases the line, once the command is done.
+     */
+    synchronized void clear() {
+        steps.clear();
+        erase();
+    }
+
+    // so that the report is not printed after the progress line
+    private void erase() {
+        if (console != null && !drawn.isEmpty()) {
+            console.print("\r" + " ".repeat(drawn.length()) + "\r");
+            console.flush();
+            drawn = "";
+        }
+    }
+
+    private synchronized void finished(Progress step) {
+        steps.remove(step);
+        if (steps.isEmpty()) {
+            erase();
+        }
+    }
+
+    /**
+     * Items done out of a total; safe to advance from several threads. Closing the step removes it from the
+     * progress line, which is erased once no step is left.
+     */
+    public static final class Progress implements AutoCloseable {
+
+        private final CommandContext context;
+        private final String label;
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong done = new AtomicLong();
+        private volatile long total;
+
+        private Progress(CommandContext context, String label, long total) {
+            this.context = context;
+            this.label = label;
+            this.total = total;
+        }
+
+        public void advance(long items) {
+            done.addAndGet(items);
+        }
+
+        public void total(long total) {
+            this.total = total;
+        }
+
+        public long done() {
+            return done.get();
+        }
+
+        @Override
+        public void close() {
+            context.finished(this);
+        }
+
+        /**
+         * @return {@code label: done/total (rate/s, ETA m:ss)}, without total and ETA while the total is unknown
+         */
+        String render(long nowNanos) {
+            long count = done.get();
+            long expected = total;
+            double seconds = Math.max(1e-3, (nowNanos - startNanos) / 1e9);
+            double rate = count / seconds;
+            StringBuilder line = new StringBuilder(label).append(": ").append(count);
+            if (expected > 0) {
+                line.append('/').append(expected);
+            }
+            line.append(" (").append(Math.round(rate)).append("/s");
+            if (expected > count && rate > 0) {
+                long eta = Math.round((expected - count) / rate);
+                line.append(", ETA ").append(minutes(Duration.ofSeconds(eta)));
+            }
+            return line.append(')').toString();
+        }
+
+        private static String minutes(Duration duration) {
+            return duration.toMinutes() + ":" + String.format("%02d", duration.toSecondsPart());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.config.JellyfinProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.Console;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs each command in its own {@link TaskScope}, so that a command can be cancelled as a whole: every Jellyfin
+ * request it has in flight, on any of its threads, is aborted, and its report is closed as the command unwinds.
+ * A command is cancelled when:
+ * <ul>
+ *     <li>it exceeds its deadline, {@code jellyfin.execution.deadlines.<command>} or
+ *     {@code jellyfin.execution.deadline};</li>
+ *     <li>the thread waiting for it is interrupted;</li>
+ *     <li>the JVM shuts down, on Ctrl-C, in which case the shutdown waits up to {@value #SHUTDOWN_GRACE_SECONDS}
+ *     seconds for the command to stop.</li>
+ * </ul>
+ * While it runs, the step it reports to its {@link CommandContext} is redrawn on one line of the standard error,
+ * at most once per {@code jellyfin.execution.progress-interval}, when that is a terminal. The line is erased as
+ * soon as the step is closed, before the report of the step is printed.
+ */
+@Component
+public class CommandRunner {
+
+    static final int SHUTDOWN_GRACE_SECONDS = 5;
+
+    private final JellyfinProperties.Execution settings;
+    private final Set<Running> running = ConcurrentHashMap.newKeySet();
+
+    public CommandRunner(JellyfinProperties properties) {
+        this.settings = properties.getExecution();
+        Runtime.getRuntime().addShutdownHook(Thread.ofPlatform().unstarted(this::cancelAll));
+    }
+
+    public void run(String command, Runnable body) {
+        Duration deadline = settings.deadlineOf(command);
+        CommandContext context = new CommandContext(command,
+                settings.isProgress() && terminal() ? System.err : null);
+        Thread progressLine = Thread.ofVirtual().name(command + "-progress").start(() -> drawProgress(context));
+        Running current = new Running(command);
+        running.add(current);
+        try (TaskScope scope = TaskScope.open()) {
+            current.scope = scope;
+            scope.fork(() -> {
+                CommandContext.bind(context);
+                try {
+                    body.run();
+                } finally {
+                    CommandContext.unbind();
+                }
+                return null;
+            });
+            if (deadline == null) {
+                scope.join();
+            } else {
+                scope.joinUntil(Instant.now().plus(deadline));
+            }
+        } catch (TimeoutException e) {
+            throw new RuntimeException(command + " did not complete within " + deadline + " and was cancelled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(command + " was cancelled", e);
+        } catch (RuntimeException e) {
+            if (current.cancelled) {
+                throw new RuntimeException(command + " was cancelled", e);
+            }
+            throw e;
+        } finally {
+            running.remove(current);
+            current.done.countDown();
+            progressLine.interrupt();
+            context.clear();
+        }
+    }
+
+    /**
+     * Redraws the current step, if it changed, once per interval until interrupted.
+     */
+    private void drawProgress(CommandContext context) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(settings.getProgressInterval());
+                context.draw();
+            }
+        } catch (InterruptedException e) {
+            // command done
+        }
+    }
+
+    private void cancelAll() {
+        for (Running command : running) {
+            command.cancelled = true;
+            TaskScope scope = command.scope;
+            if (scope != null) {
+                scope.cancel();
+            }
+        }
+        for (Running command : running) {
+            try {
+                if (!command.done.await(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS)) {
+                    System.err.println(command.name + " did not stop within " + SHUTDOWN_GRACE_SECONDS + " s");
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static boolean terminal() {
+        Console console = System.console();
+        return console != null && console.isTerminal();
+    }
+
+    private static final class Running {
+        private final String name;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile TaskScope scope;
+        private volatile boolean cancelled;
+
+        Running(String name) {
+            this.name = name;
+        }
+    }
+}
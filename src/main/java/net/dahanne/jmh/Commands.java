@@ -1,5 +1,10 @@
 package net.dahanne.jmh;
 
+import net.dahanne.jmh.report.ReportFormat;
+import net.dahanne.jmh.report.ReportLayout;
+import net.dahanne.jmh.report.ReportWriter;
+import net.dahanne.jmh.snapshot.LibrarySyncService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.shell.core.command.ExitStatus;
 import org.springframework.shell.core.command.annotation.Command;
@@ -7,6 +12,10 @@ import org.springframework.shell.core.command.annotation.Option;
 import org.springframework.shell.core.command.exit.ExitStatusExceptionMapper;
 import org.springframework.stereotype.Component;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
 @Component
 public class Commands {
 
@@ -28,69 +37,345 @@ public class Commands {
         };
     }
 
-    private final SpotifyHistoryMatcher spotifyHistoryMatcher;
-    private final FeaturingArtistsFinder featuringArtistsFinder;
-    private final SimilarArtistFinder similarArtistFinder;
-    private final JellyfinGenreService genreService;
+    private static final String FORMAT = "Output format: text, csv or ndjson";
+    private static final String OUTPUT = "Write the report to this file instead of the console";
+
+    private static final ReportLayout DELETED_GENRE_REPORT = ReportLayout.of(row -> "  - " + row[1], "id", "name");
+    private static final ReportLayout MOVED_ALBUM_REPORT = ReportLayout.of(row -> "  - " + row[0], "album", "moved");
+    private static final ReportLayout PLANNED_MOVE_REPORT = ReportLayout.of(
+            row -> "  - " + row[1] + ": " + row[2] + " -> " + row[3], "id", "album", "genres", "newGenres");
+    private static final ReportLayout RESTORED_ALBUM_REPORT = ReportLayout.of(row -> "  - " + row[0],
+            "album", "restored");
+    private static final ReportLayout SYNC_REPORT = ReportLayout.of(
+            row -> ((boolean) row[1] ? "Incremental" : "Full") + " sync wrote " + row[0] + " in " + row[2]
+                    + " ms (" + row[3] + " item(s) fetched, " + row[4] + " removed)\n"
+                    + row[5] + " artists, " + row[6] + " albums, " + row[7] + " tracks, " + row[8] + " genres",
+            "file", "incremental", "elapsedMillis", "fetchedItems", "removedItems",
+            "artists", "albums", "tracks", "genres");
+    private static final ReportLayout BATCH_REPORT = ReportLayout.of(
+            row -> row[3] == null
+                    ? "✅ " + row[0] + " -> " + row[1] + " (" + row[2] + " ms)"
+                    : "❌ " + row[0] + ": " + row[3],
+            "command", "file", "elapsedMillis", "error");
+
+    // resolved on first use so that, with lazy initialization, a command only builds the services it calls
+    private final ObjectProvider<SpotifyHistoryMatcher> spotifyHistoryMatcher;
+    private final ObjectProvider<FeaturingArtistsFinder> featuringArtistsFinder;
+    private final ObjectProvider<SimilarArtistFinder> similarArtistFinder;
+    private final ObjectProvider<JellyfinGenreService> genreService;
+    private final ObjectProvider<LibrarySyncService> librarySyncService;
+    private final ObjectProvider<BatchRunner> batchRunner;
+    private final ObjectProvider<SpotifyStatsReporter> spotifyStatsReporter;
+    private final ObjectProvider<DuplicateTrackFinder> duplicateTrackFinder;
+    private final ObjectProvider<SimilarAlbumFinder> similarAlbumFinder;
+    private final ObjectProvider<SpotifyPlaylistCreator> spotifyPlaylistCreator;
+    private final ObjectProvider<LibraryDiffer> libraryDiffer;
+    private final ObjectProvider<SimilarGenreFinder> similarGenreFinder;
+    private final ObjectProvider<AlbumArtistChecker> albumArtistChecker;
+    private final CommandRunner commandRunner;
 
-    public Commands(SpotifyHistoryMatcher spotifyHistoryMatcher,
-                    FeaturingArtistsFinder featuringArtistsFinder,
-                    SimilarArtistFinder similarArtistFinder,
-                    JellyfinGenreService genreService) {
+    public Commands(ObjectProvider<SpotifyHistoryMatcher> spotifyHistoryMatcher,
+                    ObjectProvider<FeaturingArtistsFinder> featuringArtistsFinder,
+                    ObjectProvider<SimilarArtistFinder> similarArtistFinder,
+                    ObjectProvider<JellyfinGenreService> genreService,
+                    ObjectProvider<LibrarySyncService> librarySyncService,
+                    ObjectProvider<BatchRunner> batchRunner,
+                    ObjectProvider<SpotifyStatsReporter> spotifyStatsReporter,
+                    ObjectProvider<DuplicateTrackFinder> duplicateTrackFinder,
+                    ObjectProvider<SimilarAlbumFinder> similarAlbumFinder,
+                    ObjectProvider<SpotifyPlaylistCreator> spotifyPlaylistCreator,
+                    ObjectProvider<LibraryDiffer> libraryDiffer,
+                    ObjectProvider<SimilarGenreFinder> similarGenreFinder,
+                    ObjectProvider<AlbumArtistChecker> albumArtistChecker,
+                    CommandRunner commandRunner) {
         this.spotifyHistoryMatcher = spotifyHistoryMatcher;
         this.featuringArtistsFinder = featuringArtistsFinder;
         this.similarArtistFinder = similarArtistFinder;
         this.genreService = genreService;
+        this.librarySyncService = librarySyncService;
+        this.batchRunner = batchRunner;
+        this.spotifyStatsReporter = spotifyStatsReporter;
+        this.duplicateTrackFinder = duplicateTrackFinder;
+        this.similarAlbumFinder = similarAlbumFinder;
+        this.spotifyPlaylistCreator = spotifyPlaylistCreator;
+        this.libraryDiffer = libraryDiffer;
+        this.similarGenreFinder = similarGenreFinder;
+        this.albumArtistChecker = albumArtistChecker;
+        this.commandRunner = commandRunner;
     }
 
     @Command(name = "compare-with-spotify-list",
             description = "Compare Spotify streaming history with the Jellyfin library and print matches.",
             exitStatusExceptionMapper = "exceptionMapper")
-    public void compareWithSpotifyList() {
-        spotifyHistoryMatcher.compareWithSpotifyList();
+    public void compareWithSpotifyList(
+            @Option(longName = "incremental", defaultValue = "false",
+                    description = "Only ingest plays after the checkpoint of the previous incremental run, and save a new one") boolean incremental,
+            @Option(longName = "full-report", defaultValue = "false",
+                    description = "With --incremental, report every track instead of only the new ones") boolean fullReport,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("compare-with-spotify-list", () -> {
+            try (ReportWriter report = report(format, output, SpotifyHistoryMatcher.MATCH_REPORT)) {
+                if (incremental) {
+                    spotifyHistoryMatcher.getObject().compareWithSpotifyListIncrementally(fullReport, report);
+                } else {
+                    spotifyHistoryMatcher.getObject().compareWithSpotifyList(report);
+                }
+            }
+        });
+    }
+
+    @Command(name = "spotify-stats",
+            description = "Rank the most played Spotify artists, albums and tracks per time window, flagging what Jellyfin lacks.",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void spotifyStats(
+            @Option(longName = "windows", shortName = 'w', defaultValue = "all",
+                    description = "Comma-separated windows: all, a year (2023), a month (2023-05) or a date range (2023-01-01..2023-03-31)") String windows,
+            @Option(longName = "top", shortName = 't', defaultValue = "10",
+                    description = "Number of entries in each ranking") int top,
+            @Option(longName = "rank-by", defaultValue = "time",
+                    description = "Rank by listening time or by number of plays: time or plays") String rankBy,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("spotify-stats", () -> {
+            List<String> names = Arrays.stream(windows.split(","))
+                    .filter(window -> !window.isBlank())
+                    .toList();
+            SpotifyStatsReporter.Ranking ranking = SpotifyStatsReporter.Ranking.of(rankBy);
+            try (ReportWriter report = report(format, output, SpotifyStatsReporter.REPORT)) {
+                spotifyStatsReporter.getObject().report(names, top, ranking, report);
+            }
+        });
+    }
+
+    @Command(name = "create-playlist-from-spotify",
+            description = "Create or replace a Jellyfin playlist with the most played Spotify tracks found in the library.",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void createPlaylistFromSpotify(
+            @Option(longName = "name", shortName = 'n', defaultValue = "Spotify Top Tracks",
+                    description = "Playlist name; playlists already named so are replaced") String name,
+            @Option(longName = "top", shortName = 't', defaultValue = "100",
+                    description = "Number of tracks in the playlist") int top,
+            @Option(longName = "rank-by", defaultValue = "plays",
+                    description = "Rank by number of plays or by listening time: plays or time") String rankBy,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("create-playlist-from-spotify", () -> {
+            SpotifyStatsReporter.Ranking ranking = SpotifyStatsReporter.Ranking.of(rankBy);
+            try (ReportWriter report = report(format, output, SpotifyPlaylistCreator.REPORT)) {
+                var result = spotifyPlaylistCreator.getObject().createPlaylist(name, top, ranking, report);
+                if (result == null) {
+                    report.note("No Spotify history track found in Jellyfin, no playlist created.");
+                } else {
+                    report.note("Playlist '" + result.name() + "' (" + result.id() + ") created with "
+                            + result.trackCount() + " track(s) in " + result.requests() + " request(s)"
+                            + (result.replaced() > 0 ? ", replacing " + result.replaced() + " playlist(s)" : "")
+                            + ".");
+                }
+            }
+        });
     }
 
     @Command(name = "find-featuring-artists",
             description = "List Jellyfin artists whose names contain feat./featuring/'vec, etc.",
             exitStatusExceptionMapper = "exceptionMapper")
-    public void findFeaturingArtists() {
-        featuringArtistsFinder.findFeaturingArtists();
+    public void findFeaturingArtists(
+            @Option(longName = "scan-tracks", defaultValue = "false",
+                    description = "Scan every track for featured artists missing from its artists") boolean scanTracks,
+            @Option(longName = "parallelism", defaultValue = "4",
+                    description = "Pages of tracks fetched at once with --scan-tracks") int parallelism,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("find-featuring-artists", () -> {
+            if (scanTracks) {
+                try (ReportWriter report = report(format, output, FeaturingArtistsFinder.TRACK_REPORT)) {
+                    featuringArtistsFinder.getObject().findUncreditedFeaturedArtists(parallelism, report);
+                }
+                return;
+            }
+            try (ReportWriter report = report(format, output, FeaturingArtistsFinder.REPORT)) {
+                featuringArtistsFinder.getObject().findFeaturingArtists(report);
+            }
+        });
     }
 
     @Command(name = "missing-artists-from-spotify",
             description = "List Spotify artists that are missing from the Jellyfin library.",
             exitStatusExceptionMapper = "exceptionMapper")
-    public void missingArtistsFromSpotify() {
-        spotifyHistoryMatcher.listMissingArtistsFromSpotify();
+    public void missingArtistsFromSpotify(
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("missing-artists-from-spotify", () -> {
+            try (ReportWriter report = report(format, output, SpotifyHistoryMatcher.MISSING_ARTIST_REPORT)) {
+                spotifyHistoryMatcher.getObject().listMissingArtistsFromSpotify(report);
+            }
+        });
     }
 
     @Command(name = "list-artists-with-similar-names",
             description = "List Jellyfin artists whose names share at least five characters.",
             exitStatusExceptionMapper = "exceptionMapper")
-    public void listArtistsWithSimilarNames() {
-        similarArtistFinder.listSimilarArtists()
-                .forEach(pair -> System.out.println(pair.first() + " <> " + pair.second()));
+    public void listArtistsWithSimilarNames(
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("list-artists-with-similar-names", () -> {
+            try (ReportWriter report = report(format, output, SimilarArtistFinder.REPORT)) {
+                similarArtistFinder.getObject().listSimilarArtists(
+                        pair -> report.row(pair.first(), pair.second(), pair.score()));
+            }
+        });
+    }
+
+    @Command(name = "list-similar-albums",
+            description = "List albums of the same artist that look like the same release (editions, remasters, typos).",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void listSimilarAlbums(
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("list-similar-albums", () -> {
+            try (ReportWriter report = report(format, output, SimilarAlbumFinder.REPORT)) {
+                similarAlbumFinder.getObject().listSimilarAlbums().forEach(pair -> report.row(pair.artist(),
+                        pair.first().name(), pair.second().name(), pair.score(), pair.kind(), pair.first().trackCount(),
+                        pair.second().trackCount(), pair.first().seconds(), pair.second().seconds(), pair.first().id(),
+                        pair.second().id()));
+            }
+        });
+    }
+
+    @Command(name = "find-duplicate-tracks",
+            description = "List tracks imported more than once: same artist and title, durations within a tolerance.",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void findDuplicateTracks(
+            @Option(longName = "tolerance", defaultValue = "2",
+                    description = "Largest duration difference, in seconds, between duplicates") int tolerance,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("find-duplicate-tracks", () -> {
+            var groups = duplicateTrackFinder.getObject().findDuplicateTracks(tolerance);
+            try (ReportWriter report = report(format, output, DuplicateTrackFinder.REPORT)) {
+                if (groups.isEmpty()) {
+                    report.note("No duplicate tracks found.");
+                }
+                for (int group = 0; group < groups.size(); group++) {
+                    for (var track : groups.get(group).tracks()) {
+                        report.row(group + 1, track.id(), track.artist(), track.title(), track.album(), track.seconds(),
+                                track.path());
+                    }
+                }
+            }
+        });
+    }
+
+    @Command(name = "check-album-artists",
+            description = "List albums whose tracks disagree on the album artist, or do not credit it.",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void checkAlbumArtists(
+            @Option(longName = "parallelism", defaultValue = "4",
+                    description = "Number of track pages fetched at once") int parallelism,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("check-album-artists", () -> {
+            try (ReportWriter report = report(format, output, AlbumArtistChecker.REPORT)) {
+                var result = albumArtistChecker.getObject().checkAlbumArtists(parallelism, album -> report.row(
+                        album.albumId(), album.album(), album.albumArtists(), album.trackArtists(), album.tracks(),
+                        album.problems().stream().map(AlbumArtistChecker.Problem::description).toList()));
+                report.note("Checked " + result.tracks() + " track(s) of " + result.albums() + " album(s): "
+                        + result.inconsistentAlbums() + " inconsistent album(s).");
+            }
+        });
+    }
+
+    @Command(name = "diff-libraries",
+            description = "List the artists and albums that one Jellyfin server has and another lacks.",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void diffLibraries(
+            @Option(longName = "left", shortName = 'l', defaultValue = "default",
+                    description = "Server name: default (jellyfin.base-url) or a key of jellyfin.servers") String left,
+            @Option(longName = "right", shortName = 'r', required = true,
+                    description = "Server to compare with, a key of jellyfin.servers") String right,
+            @Option(longName = "parallelism", defaultValue = "4",
+                    description = "Pages fetched at once from each server") int parallelism,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("diff-libraries", () -> {
+            try (ReportWriter report = report(format, output, LibraryDiffer.REPORT)) {
+                var result = libraryDiffer.getObject().diff(left, right, parallelism, report);
+                report.note(result.left() + ": " + result.artists().leftCount() + " artists, "
+                        + result.albums().leftCount() + " albums; " + result.right() + ": "
+                        + result.artists().rightCount() + " artists, " + result.albums().rightCount() + " albums");
+                report.note(result.left() + " lacks " + result.artists().missingOnLeft() + " artist(s) and "
+                        + result.albums().missingOnLeft() + " album(s); " + result.right() + " lacks "
+                        + result.artists().missingOnRight() + " artist(s) and " + result.albums().missingOnRight()
+                        + " album(s).");
+            }
+        });
     }
 
     @Command(name = "list-genres",
             description = "List all music genres with album counts.",
             exitStatusExceptionMapper = "exceptionMapper")
-    public void listGenres() {
-        genreService.fetchGenresWithAlbumCount()
-                .forEach(genre -> System.out.println(genre.name() + "(" + genre.id() + "): " + genre.albumCount() + " albums"));
+    public void listGenres(
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("list-genres", () -> {
+            try (ReportWriter report = report(format, output, JellyfinGenreService.GENRE_REPORT)) {
+                genreService.getObject().forEachGenreWithAlbumCount(
+                        genre -> report.row(genre.id(), genre.name(), genre.albumCount()));
+            }
+        });
+    }
+
+    @Command(name = "list-similar-genres",
+            description = "List genres that only differ by case, accents or punctuation, and how to merge them.",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void listSimilarGenres(
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("list-similar-genres", () -> {
+            var clusters = similarGenreFinder.getObject().listSimilarGenres();
+            try (ReportWriter report = report(format, output, SimilarGenreFinder.REPORT)) {
+                if (clusters.isEmpty()) {
+                    report.note("No similar genres found.");
+                }
+                for (var cluster : clusters) {
+                    var canonical = cluster.canonical();
+                    report.row(cluster.key(), canonical.id(), canonical.name(), canonical.albumCount(), null, null);
+                    for (var variant : cluster.variants()) {
+                        report.row(cluster.key(), variant.id(), variant.name(), variant.albumCount(), canonical.id(),
+                                canonical.name());
+                    }
+                }
+            }
+        });
     }
 
     @Command(name = "clear-empty-genres",
             description = "Delete all music genres that have 0 albums.",
             exitStatusExceptionMapper = "exceptionMapper")
-    public void clearEmptyGenres() {
-        var deleted = genreService.deleteEmptyGenres();
-        if (deleted.isEmpty()) {
-            System.out.println("No empty genres found.");
-        } else {
-            System.out.println("Deleted " + deleted.size() + " empty genre(s):");
-            deleted.forEach(genre -> System.out.println("  - " + genre.name()));
-        }
+    public void clearEmptyGenres(
+            @Option(longName = "dry-run", defaultValue = "false",
+                    description = "Only list the genres that would be deleted") boolean dryRun,
+            @Option(longName = "parallelism", defaultValue = "4",
+                    description = "Number of genres deleted at once") int parallelism,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("clear-empty-genres", () -> {
+            var service = genreService.getObject();
+            var plan = service.planEmptyGenreDeletion();
+            try (ReportWriter report = report(format, output, DELETED_GENRE_REPORT)) {
+                if (plan.isEmpty()) {
+                    report.note("No empty genres found.");
+                } else if (dryRun) {
+                    report.note("Would delete " + plan.size() + " empty genre(s):");
+                    plan.forEach(genre -> report.row(genre.id(), genre.name()));
+                } else {
+                    var result = service.deleteGenres(plan, parallelism);
+                    report.note("Deleted " + result.deleted().size() + " empty genre(s):");
+                    result.deleted().forEach(genre -> report.row(genre.id(), genre.name()));
+                    report.note("Journal: " + result.journal() + " (genre deletions cannot be undone)");
+                }
+            }
+        });
     }
 
     @Command(name = "move-genre",
@@ -100,17 +385,122 @@ public class Commands {
             @Option(longName = "origin", shortName = 'o', required = true,
                     description = "The genre ID to move albums from") String origin,
             @Option(longName = "destination", shortName = 'd', required = true,
-                    description = "The genre ID to move albums to") String destination) {
-        var result = genreService.moveGenre(origin, destination);
-        System.out.println("Found " + result.totalAlbums() + " album(s) in genre '" + result.originGenreName() + "'");
-        System.out.println("Moved " + result.movedCount() + " album(s) to genre '" + result.destinationGenreName() + "'");
-        if (!result.movedAlbums().isEmpty()) {
-            System.out.println("Successfully moved:");
-            result.movedAlbums().forEach(album -> System.out.println("  - " + album));
-        }
-        if (!result.failedAlbums().isEmpty()) {
-            System.out.println("Failed to move:");
-            result.failedAlbums().forEach(album -> System.out.println("  - " + album));
-        }
+                    description = "The genre ID to move albums to") String destination,
+            @Option(longName = "dry-run", defaultValue = "false",
+                    description = "Only list the albums that would be moved and their new genres") boolean dryRun,
+            @Option(longName = "parallelism", defaultValue = "4",
+                    description = "Number of albums updated at once") int parallelism,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("move-genre", () -> {
+            var service = genreService.getObject();
+            var plan = service.planMoveGenre(origin, destination);
+            if (dryRun) {
+                try (ReportWriter report = report(format, output, PLANNED_MOVE_REPORT)) {
+                    report.note("Would move " + plan.albums().size() + " album(s) from genre '"
+                            + plan.originGenreName() + "' to genre '" + plan.destinationGenreName() + "':");
+                    plan.albums().forEach(album -> report.row(album.id(), album.name(), album.genres(),
+                            album.newGenres()));
+                }
+                return;
+            }
+            var result = service.applyMove(plan, parallelism);
+            try (ReportWriter report = report(format, output, MOVED_ALBUM_REPORT)) {
+                report.note("Found " + result.totalAlbums() + " album(s) in genre '" + result.originGenreName() + "'");
+                report.note("Moved " + result.movedCount() + " album(s) to genre '" + result.destinationGenreName()
+                        + "'");
+                if (!result.movedAlbums().isEmpty()) {
+                    report.note("Successfully moved:");
+                    result.movedAlbums().forEach(album -> report.row(album, true));
+                }
+                if (!result.failedAlbums().isEmpty()) {
+                    report.note("Failed to move:");
+                    result.failedAlbums().forEach(album -> report.row(album, false));
+                }
+                if (result.journal() != null) {
+                    report.note("Journal: " + result.journal() + " (revert with: undo --journal " + result.journal()
+                            + ")");
+                }
+            }
+        });
+    }
+
+    @Command(name = "undo",
+            description = "Restore the album genres and names journaled by move-genre or a previous undo.",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void undo(
+            @Option(longName = "journal", shortName = 'j', required = true,
+                    description = "Journal written by the command to revert") String journal,
+            @Option(longName = "parallelism", defaultValue = "4",
+                    description = "Number of albums restored at once") int parallelism,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("undo", () -> {
+            var result = genreService.getObject().undo(Path.of(journal), parallelism);
+            try (ReportWriter report = report(format, output, RESTORED_ALBUM_REPORT)) {
+                report.note("Restored " + result.restoredAlbums().size() + " album(s)");
+                result.restoredAlbums().forEach(album -> report.row(album, true));
+                if (!result.failedAlbums().isEmpty()) {
+                    report.note("Failed to restore:");
+                    result.failedAlbums().forEach(album -> report.row(album, false));
+                }
+                if (!result.irreversible().isEmpty()) {
+                    report.note("Deleted genres cannot be restored, Jellyfin creates them again when an album is "
+                            + "tagged with them: " + String.join(", ", result.irreversible()));
+                }
+                if (result.journal() != null) {
+                    report.note("Journal: " + result.journal());
+                }
+            }
+        });
+    }
+
+    @Command(name = "sync",
+            description = "Download the Jellyfin library into the local snapshot, only fetching items changed since the last sync.",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void sync(
+            @Option(longName = "full", defaultValue = "false",
+                    description = "Ignore the existing snapshot and download the whole library") boolean full,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("sync", () -> {
+            var result = librarySyncService.getObject().sync(full);
+            try (ReportWriter report = report(format, output, SYNC_REPORT)) {
+                report.row(result.file().toString(), result.incremental(), result.elapsedMillis(),
+                        result.fetchedItems(), result.removedItems(), result.artists(), result.albums(),
+                        result.tracks(), result.genres());
+            }
+        });
+    }
+
+    @Command(name = "run-batch",
+            description = "Run several read-only commands at once, fetching shared data once and writing one report file per command.",
+            exitStatusExceptionMapper = "exceptionMapper")
+    public void runBatch(
+            @Option(longName = "commands", shortName = 'c', required = true,
+                    description = "Comma-separated commands, e.g. find-featuring-artists,list-genres") String commands,
+            @Option(longName = "output-dir", defaultValue = "reports",
+                    description = "Directory receiving one <command>.<txt|csv|ndjson> report per command") String outputDir,
+            @Option(longName = "format", defaultValue = "text", description = FORMAT) String format,
+            @Option(longName = "output", description = OUTPUT) String output) {
+        commandRunner.run("run-batch", () -> {
+            List<String> names = Arrays.stream(commands.split(","))
+                    .filter(name -> !name.isBlank())
+                    .toList();
+            ReportFormat reportFormat = ReportFormat.of(format);
+            var results = batchRunner.getObject().run(names, Path.of(outputDir), reportFormat);
+            try (ReportWriter report = ReportWriter.open(reportFormat, output, BATCH_REPORT)) {
+                results.forEach(result -> report.row(result.command(), result.file().toString(),
+                        result.elapsedMillis(), result.error()));
+            }
+            long failed = results.stream().filter(BatchRunner.BatchResult::failed).count();
+            if (failed > 0) {
+                throw new RuntimeException(failed + " of " + results.size() + " batch command(s) failed");
+            }
+        });
+    }
+
+    private static ReportWriter report(String format, String output, ReportLayout layout) {
+        return ReportWriter.open(ReportFormat.of(format), output, layout);
     }
 }
@@ -0,0 +1,294 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.report.ReportLayout;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Finds recordings imported more than once: tracks whose primary artist and base title are equal and whose
+ * durations differ by at most a tolerance, whatever their album. Only remaster and edition suffixes are removed
+ * from titles, so "Song" and "Song - 2011 Remaster" are the same, but "Song (Live)" and "Song (Acoustic)" are
+ * other recordings.
+ * <p>
+ * One paged scan of every track keeps only a 64-bit hash of the canonical artist and title, the duration and
+ * the item id of each, about 50 bytes per track in primitive arrays; tracks sharing a hash and a duration are
+ * candidates. Only the candidates are then fetched again, with their path, and verified on their actual
+ * canonical artist and title, which rules out hash collisions.
+ */
+@Component
+public class DuplicateTrackFinder {
+
+    public static final ReportLayout REPORT = ReportLayout.of(
+            row -> "#" + row[0] + " " + row[2] + " - " + row[3] + " [" + row[4] + "] "
+                    + duration((int) row[5]) + " " + row[1] + " " + row[6],
+            "group", "id", "artist", "title", "album", "seconds", "path");
+
+    private static final long TICKS_PER_SECOND = 10_000_000L;
+    private static final int IDS_PER_REQUEST = 100;
+    private static final JellyfinQuery TRACKS = JellyfinQuery.items().types(JellyfinQuery.ItemType.AUDIO)
+            .recursive();
+    // remaster, edition and credit suffixes only: unlike TitleCanonicalizer, keeps live, acoustic or edit versions
+    private static final Pattern EDITION = Pattern.compile("\\b(?:\\d{4} )?(?:re-?master(?:ed)?|deluxe|edition"
+            + "|expanded|anniversary|bonus|re-?issue|legacy|feat\\.?|ft\\.?|featuring)\\b");
+
+    private final JellyfinItemPager pager;
+    private final NameNormalizer nameNormalizer;
+
+    public DuplicateTrackFinder(JellyfinItemPager pager, NameNormalizer nameNormalizer) {
+        this.pager = pager;
+        this.nameNormalizer = nameNormalizer;
+    }
+
+    /**
+     * @param toleranceSeconds largest duration difference between two tracks of a group
+     * @return groups of at least two tracks, ordered by artist and title, tracks ordered by duration
+     */
+    public List<DuplicateGroup> findDuplicateTracks(int toleranceSeconds) {
+        if (toleranceSeconds < 0) {
+            throw new IllegalArgumentException("--tolerance must not be negative, got " + toleranceSeconds);
+        }
+        TrackTable table = new TrackTable();
+        pager.forEachItem(TRACKS, JellyfinItemPager.DEFAULT_PAGE_SIZE, item -> {
+            String id = textOrNull(item.path("Id"));
+            String artistKey = nameNormalizer.normalize(primaryArtist(item));
+            String title = baseTitle(textOrNull(item.path("Name")));
+            if (id != null && !artistKey.isEmpty() && !title.isEmpty()) {
+                table.add(hash(artistKey, title), seconds(item), id);
+            }
+        });
+
+        List<String> candidates = table.candidates(toleranceSeconds);
+        Map<String, List<DuplicateTrack>> byKey = new HashMap<>();
+        for (int from = 0; from < candidates.size(); from += IDS_PER_REQUEST) {
+            List<String> ids = candidates.subList(from, Math.min(candidates.size(), from + IDS_PER_REQUEST));
+            pager.forEachItem(TRACKS.reading(JellyfinQuery.ItemField.PATH).ids(ids), IDS_PER_REQUEST, item -> {
+                DuplicateTrack track = new DuplicateTrack(textOrNull(item.path("Id")), primaryArtist(item),
+                        textOrNull(item.path("Name")), textOrNull(item.path("Album")), seconds(item),
+                        textOrNull(item.path("Path")));
+                String key = nameNormalizer.normalize(track.artist()) + '\u0000'
+                        + baseTitle(track.title());
+                byKey.computeIfAbsent(key, _ -> new ArrayList<>()).add(track);
+            });
+        }
+
+        List<DuplicateGroup> groups = new ArrayList<>();
+        for (List<DuplicateTrack> tracks : byKey.values()) {
+            groups.addAll(groupByDuration(tracks, toleranceSeconds));
+        }
+        groups.sort(Comparator
+                .comparing((DuplicateGroup group) -> group.tracks().getFirst().artist(), NameCollation.ORDER)
+                .thenComparing(group -> group.tracks().getFirst().title(), NameCollation.ORDER));
+        return groups;
+    }
+
+    /**
+     * Splits tracks of the same artist and title into groups spanning at most {@code toleranceSeconds}, measured
+     * from the shortest track of each group, so that 0 s, 2 s and 4 s with a tolerance of 2 give one group of
+     * 0 s and 2 s rather than one chained group.
+     *
+     * @return the groups of at least two tracks, tracks ordered by duration
+     */
+    static List<DuplicateGroup> groupByDuration(List<DuplicateTrack> tracks, int toleranceSeconds) {
+        List<DuplicateTrack> sorted = new ArrayList<>(tracks);
+        sorted.sort(Comparator.comparingInt(DuplicateTrack::seconds).thenComparing(DuplicateTrack::id));
+        List<DuplicateGroup> groups = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= sorted.size(); i++) {
+            if (i == sorted.size() || sorted.get(i).seconds() - sorted.get(start).seconds() > toleranceSeconds) {
+                if (i - start > 1) {
+                    groups.add(new DuplicateGroup(List.copyOf(sorted.subList(start, i))));
+                }
+                start = i;
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * @return the normalized title without its remaster or edition suffixes, or the plain normalized title when
+     * nothing else is left
+     */
+    String baseTitle(String title) {
+        if (title == null || title.isEmpty()) {
+            return "";
+        }
+        String base = nameNormalizer.normalize(TitleCanonicalizer.strip(title.toLowerCase(Locale.ROOT), EDITION));
+        return base.isEmpty() ? nameNormalizer.normalize(title) : base;
+    }
+
+    /**
+     * The first track artist, or the album artist when the track credits none.
+     */
+    private static String primaryArtist(JsonNode item) {
+        JsonNode artists = item.path("Artists");
+        String artist = artists.isArray() && !artists.isEmpty() ? textOrNull(artists.get(0)) : null;
+        return artist != null ? artist : textOrNull(item.path("AlbumArtist"));
+    }
+
+    private static int seconds(JsonNode item) {
+        return (int) (item.path("RunTimeTicks").asLong(0) / TICKS_PER_SECOND);
+    }
+
+    private static long hash(String artistKey, String canonicalTitle) {
+        long hash = NameNormalizer.hashIgnoreCase(0xcbf29ce484222325L, artistKey);
+        hash = (hash ^ 0xff) * 0x100000001b3L;
+        hash = NameNormalizer.hashIgnoreCase(hash, canonicalTitle);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ hash >>> 33;
+    }
+
+    private static String duration(int seconds) {
+        return seconds / 60 + ":" + String.format("%02d", seconds % 60);
+    }
+
+    public record DuplicateGroup(List<DuplicateTrack> tracks) {
+    }
+
+    public record DuplicateTrack(String id, String artist, String title, String album, int seconds, String path) {
+    }
+
+    /**
+     * Columns of every scanned track, chained per hash through an open-addressing table of bucket heads.
+     * Jellyfin ids (32 hex digits) are stored as two longs; other ids, e.g. from a non-standard server, go to
+     * a map.
+     */
+    static final class TrackTable {
+
+        private static final HexFormat HEX = HexFormat.of();
+
+        private int[] seconds = new int[1024];
+        private int[] next = new int[1024];
+        private long[] idHigh = new long[1024];
+        private long[] idLow = new long[1024];
+        private final Map<Integer, String> otherIds = new HashMap<>();
+        private int size;
+
+        private long[] bucketHashes = new long[2048];
+        private int[] bucketHeads = new int[2048];
+        private int buckets;
+
+        void add(long hash, int duration, String id) {
+            if (size == seconds.length) {
+                int capacity = size * 2;
+                seconds = Arrays.copyOf(seconds, capacity);
+                next = Arrays.copyOf(next, capacity);
+                idHigh = Arrays.copyOf(idHigh, capacity);
+                idLow = Arrays.copyOf(idLow, capacity);
+            }
+            int track = size++;
+            seconds[track] = duration;
+            if (isLowerCaseHex32(id)) {
+                idHigh[track] = HexFormat.fromHexDigitsToLong(id, 0, 16);
+                idLow[track] = HexFormat.fromHexDigitsToLong(id, 16, 32);
+            } else {
+                otherIds.put(track, id);
+            }
+
+            int slot = slot(bucketHashes, bucketHeads, hash);
+            if (bucketHeads[slot] == 0) {
+                bucketHashes[slot] = hash;
+                buckets++;
+            }
+            // heads are stored plus one, 0 marks an empty slot
+            next[track] = bucketHeads[slot] - 1;
+            bucketHeads[slot] = track + 1;
+            if (buckets * 2 > bucketHeads.length) {
+                growBuckets();
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return ids of the tracks sharing their hash with another track at most {@code tolerance} seconds
+         * longer or shorter
+         */
+        List<String> candidates(int tolerance) {
+            List<String> candidates = new ArrayList<>();
+            int[] bucket = new int[16];
+            for (int slot = 0; slot < bucketHeads.length; slot++) {
+                int head = bucketHeads[slot] - 1;
+                if (head < 0 || next[head] < 0) {
+                    continue;
+                }
+                int length = 0;
+                for (int track = head; track >= 0; track = next[track]) {
+                    if (length == bucket.length) {
+                        bucket = Arrays.copyOf(bucket, length * 2);
+                    }
+                    bucket[length++] = track;
+                }
+                long[] byDuration = new long[length];
+                for (int i = 0; i < length; i++) {
+                    byDuration[i] = (long) seconds[bucket[i]] << 32 | bucket[i];
+                }
+                Arrays.sort(byDuration);
+                for (int i = 0; i < length; i++) {
+                    int duration = (int) (byDuration[i] >>> 32);
+                    boolean closeToPrevious = i > 0 && duration - (int) (byDuration[i - 1] >>> 32) <= tolerance;
+                    boolean closeToNext = i < length - 1 && (int) (byDuration[i + 1] >>> 32) - duration <= tolerance;
+                    if (closeToPrevious || closeToNext) {
+                        candidates.add(id((int) byDuration[i]));
+                    }
+                }
+            }
+            return candidates;
+        }
+
+        private static boolean isLowerCaseHex32(String id) {
+            if (id.length() != 32) {
+                return false;
+            }
+            for (int i = 0; i < 32; i++) {
+                char c = id.charAt(i);
+                if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String id(int track) {
+            String other = otherIds.get(track);
+            return other != null ? other : HEX.toHexDigits(idHigh[track]) + HEX.toHexDigits(idLow[track]);
+        }
+
+        private void growBuckets() {
+            long[] oldHashes = bucketHashes;
+            int[] oldHeads = bucketHeads;
+            bucketHashes = new long[oldHashes.length * 2];
+            bucketHeads = new int[oldHeads.length * 2];
+            for (int old = 0; old < oldHeads.length; old++) {
+                if (oldHeads[old] != 0) {
+                    int slot = slot(bucketHashes, bucketHeads, oldHashes[old]);
+                    bucketHashes[slot] = oldHashes[old];
+                    bucketHeads[slot] = oldHeads[old];
+                }
+            }
+        }
+
+        private static int slot(long[] hashes, int[] heads, long hash) {
+            int mask = heads.length - 1;
+            int slot = (int) hash & mask;
+            while (heads[slot] != 0 && hashes[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+}
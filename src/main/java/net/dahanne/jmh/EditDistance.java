@@ -0,0 +1,237 @@
+package net.dahanne.jmh;
+
+import java.util.Arrays;
+
+/**
+ * Bounded Levenshtein distance with Myers' bit-parallel algorithm (Hyyrö's formulation): the shorter string
+ * is encoded as one bit per char in 64-bit words, so each char of the longer string advances a whole column of
+ * the DP matrix in a handful of word operations instead of one cell at a time. Hyyrö's extension also counts
+ * adjacent transpositions ("optimal string alignment" Damerau distance).
+ */
+public final class EditDistance {
+
+    private EditDistance() {
+    }
+
+    /**
+     * @return the Levenshtein distance between {@code left} and {@code right}, or {@code max + 1} as soon as it
+     * is known to exceed {@code max}
+     */
+    public static int levenshtein(CharSequence left, CharSequence right, int max) {
+        if (Math.abs(left.length() - right.length()) > max) {
+            return max + 1;
+        }
+        return left.length() <= right.length()
+                ? compile(left).levenshtein(right, max)
+                : compile(right).levenshtein(left, max);
+    }
+
+    /**
+     * Like {@link #levenshtein} but an adjacent transposition ("Beyonec" / "Beyonce") costs one edit instead of
+     * two, for patterns of up to 64 chars; longer strings fall back to Levenshtein.
+     */
+    public static int damerau(CharSequence left, CharSequence right, int max) {
+        if (Math.abs(left.length() - right.length()) > max) {
+            return max + 1;
+        }
+        return left.length() <= right.length()
+                ? compile(left).damerau(right, max)
+                : compile(right).damerau(left, max);
+    }
+
+    /**
+     * Precomputes the match masks of {@code pattern}, for comparing one string against many.
+     */
+    public static Pattern compile(CharSequence pattern) {
+        return new Pattern(pattern);
+    }
+
+    public static final class Pattern {
+
+        private final int length;
+        private final PatternMasks masks;
+
+        private Pattern(CharSequence pattern) {
+            this.length = pattern.length();
+            this.masks = new PatternMasks(pattern, Math.max(1, (length + 63) >>> 6));
+        }
+
+        /**
+         * @return the Levenshtein distance between the pattern and {@code text}, or {@code max + 1} as soon as it
+         * is known to exceed {@code max}
+         */
+        public int levenshtein(CharSequence text, int max) {
+            int n = text.length();
+            if (Math.abs(n - length) > max) {
+                return max + 1;
+            }
+            if (length == 0 || n == 0) {
+                return Math.max(length, n);
+            }
+            return length <= 64 ? singleWord(text, max) : blocks(text, max);
+        }
+
+        /**
+         * @return the optimal string alignment distance for patterns of up to 64 chars, the Levenshtein
+         * distance otherwise, or {@code max + 1} as soon as it is known to exceed {@code max}
+         */
+        public int damerau(CharSequence text, int max) {
+            int n = text.length();
+            if (length > 64 || Math.abs(n - length) > max) {
+                return levenshtein(text, max);
+            }
+            if (length == 0 || n == 0) {
+                return Math.max(length, n);
+            }
+            long last = 1L << (length - 1);
+            long pv = -1L;
+            long mv = 0;
+            long d0 = 0;
+            long previousEq = 0;
+            int score = length;
+            for (int j = 0; j < n; j++) {
+                long eq = masks.get(text.charAt(j), 0);
+                long transposition = (((~d0) & eq) << 1) & previousEq;
+                d0 = (((eq & pv) + pv) ^ pv) | eq | mv | transposition;
+                long ph = mv | ~(d0 | pv);
+                long mh = d0 & pv;
+                if ((ph & last) != 0) {
+                    score++;
+                } else if ((mh & last) != 0) {
+                    score--;
+                }
+                ph = (ph << 1) | 1;
+                mh <<= 1;
+                pv = mh | ~(d0 | ph);
+                mv = ph & d0;
+                previousEq = eq;
+                if (score - (n - j - 1) > max) {
+                    return max + 1;
+                }
+            }
+            return score <= max ? score : max + 1;
+        }
+
+        private int singleWord(CharSequence text, int max) {
+            int n = text.length();
+            long last = 1L << (length - 1);
+            long pv = -1L;
+            long mv = 0;
+            int score = length;
+            for (int j = 0; j < n; j++) {
+                long eq = masks.get(text.charAt(j), 0);
+                long xv = eq | mv;
+                long xh = (((eq & pv) + pv) ^ pv) | eq;
+                long ph = mv | ~(xh | pv);
+                long mh = pv & xh;
+                if ((ph & last) != 0) {
+                    score++;
+                } else if ((mh & last) != 0) {
+                    score--;
+                }
+                ph = (ph << 1) | 1;
+                mh <<= 1;
+                pv = mh | ~(xv | ph);
+                mv = ph & xv;
+                // the remaining n - j - 1 chars can lower the score by at most one each
+                if (score - (n - j - 1) > max) {
+                    return max + 1;
+                }
+            }
+            return score <= max ? score : max + 1;
+        }
+
+        private int blocks(CharSequence text, int max) {
+            int n = text.length();
+            int words = masks.words;
+            long[] pv = new long[words];
+            long[] mv = new long[words];
+            Arrays.fill(pv, -1L);
+            long last = 1L << ((length - 1) & 63);
+            int score = length;
+            for (int j = 0; j < n; j++) {
+                char c = text.charAt(j);
+                int carry = 1;
+                for (int w = 0; w < words; w++) {
+                    long high = w == words - 1 ? last : Long.MIN_VALUE;
+                    long eq = masks.get(c, w);
+                    long p = pv[w];
+                    long mm = mv[w];
+                    long xv = eq | mm;
+                    if (carry < 0) {
+                        eq |= 1;
+                    }
+                    long xh = (((eq & p) + p) ^ p) | eq;
+                    long ph = mm | ~(xh | p);
+                    long mh = p & xh;
+                    int out = (ph & high) != 0 ? 1 : (mh & high) != 0 ? -1 : 0;
+                    ph <<= 1;
+                    mh <<= 1;
+                    if (carry < 0) {
+                        mh |= 1;
+                    } else if (carry > 0) {
+                        ph |= 1;
+                    }
+                    pv[w] = mh | ~(xv | ph);
+                    mv[w] = ph & xv;
+                    carry = out;
+                }
+                score += carry;
+                if (score - (n - j - 1) > max) {
+                    return max + 1;
+                }
+            }
+            return score <= max ? score : max + 1;
+        }
+    }
+
+    /**
+     * Match masks of the pattern: bit {@code i} of word {@code w} is set when {@code pattern[64 * w + i] == c}.
+     * ASCII chars use a flat table, other chars a short list.
+     */
+    static final class PatternMasks {
+
+        private final int words;
+        private final long[] ascii;
+        private char[] otherChars = new char[0];
+        private long[][] otherMasks = new long[0][];
+
+        PatternMasks(CharSequence pattern, int words) {
+            this.words = words;
+            this.ascii = new long[128 * words];
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                long bit = 1L << (i & 63);
+                if (c < 128) {
+                    ascii[c * words + (i >>> 6)] |= bit;
+                } else {
+                    other(c)[i >>> 6] |= bit;
+                }
+            }
+        }
+
+        long get(char c, int word) {
+            if (c < 128) {
+                return ascii[c * words + word];
+            }
+            for (int i = 0; i < otherChars.length; i++) {
+                if (otherChars[i] == c) {
+                    return otherMasks[i][word];
+                }
+            }
+            return 0;
+        }
+
+        private long[] other(char c) {
+            for (int i = 0; i < otherChars.length; i++) {
+                if (otherChars[i] == c) {
+                    return otherMasks[i];
+                }
+            }
+            otherChars = Arrays.copyOf(otherChars, otherChars.length + 1);
+            otherMasks = Arrays.copyOf(otherMasks, otherMasks.length + 1);
+            otherChars[otherChars.length - 1] = c;
+            return otherMasks[otherMasks.length - 1] = new long[words];
+        }
+    }
+}
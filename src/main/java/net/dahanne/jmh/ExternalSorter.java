@@ -0,0 +1,231 @@
+package net.dahanne.jmh;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Sorts and deduplicates more items than fit in memory. Items are buffered until {@code maxInMemory} of them
+ * are held, then the buffer is sorted and written to a temporary run file; {@link #drain} k-way merges the runs
+ * with a heap holding one item per run, skipping the items equal to the previous one. At most {@code fanIn} runs
+ * are open at once: past that, the oldest {@code fanIn} runs are merged into a new run until few enough are left.
+ * Memory therefore holds at most {@code maxInMemory} items while adding, and {@code fanIn} items and read
+ * buffers while merging, however many runs were written.
+ * <p>
+ * Equal items must be adjacent in {@code order}, that is {@code order} must be consistent with equals. When
+ * nothing was spilled, {@link #drain} sorts the buffer in place and touches no file.
+ */
+final class ExternalSorter<T> implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    static final int DEFAULT_FAN_IN = 64;
+
+    private final Comparator<T> order;
+    private final int maxInMemory;
+    private final int fanIn;
+    private final Codec<T> codec;
+    private final List<T> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * @param maxInMemory items buffered before a run is written, at least 1
+     */
+    ExternalSorter(Comparator<T> order, int maxInMemory, Codec<T> codec) {
+        this(order, maxInMemory, DEFAULT_FAN_IN, codec);
+    }
+
+    /**
+     * @param fanIn runs merged at once, at least 2
+     */
+    ExternalSorter(Comparator<T> order, int maxInMemory, int fanIn, Codec<T> codec) {
+        if (maxInMemory <= 0) {
+            throw new IllegalArgumentException("maxInMemory must be positive, got " + maxInMemory);
+        }
+        if (fanIn < 2) {
+            throw new IllegalArgumentException("fanIn must be at least 2, got " + fanIn);
+        }
+        this.order = order;
+        this.maxInMemory = maxInMemory;
+        this.fanIn = fanIn;
+        this.codec = codec;
+    }
+
+    void add(T item) {
+        buffer.add(item);
+        if (buffer.size() >= maxInMemory) {
+            spill();
+        }
+    }
+
+    /**
+     * @return number of run files written so far
+     */
+    int runs() {
+        return runs.size();
+    }
+
+    /**
+     * Hands every distinct item to {@code consumer}, in order. The sorter is empty afterwards.
+     */
+    void drain(Consumer<T> consumer) {
+        if (runs.isEmpty()) {
+            buffer.sort(order);
+            T previous = null;
+            for (T item : buffer) {
+                if (previous == null || !previous.equals(item)) {
+                    consumer.accept(item);
+                }
+                previous = item;
+            }
+            buffer.clear();
+            return;
+        }
+        spill();
+        try {
+            while (runs.size() > fanIn) {
+                List<Path> group = List.copyOf(runs.subList(0, fanIn));
+                Path merged = newRun();
+                try (DataOutputStream out = output(merged)) {
+                    merge(group, item -> codec.write(out, item));
+                }
+                runs.subList(0, fanIn).clear();
+                group.forEach(ExternalSorter::delete);
+            }
+            merge(runs, consumer::accept);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot merge sorted runs", e);
+        } finally {
+            close();
+        }
+    }
+
+    private void merge(List<Path> group, Sink<T> sink) throws IOException {
+        List<Run<T>> readers = new ArrayList<>();
+        try {
+            PriorityQueue<Run<T>> heap = new PriorityQueue<>((left, right) -> order.compare(left.head, right.head));
+            for (Path run : group) {
+                Run<T> reader = new Run<>(run, codec);
+                readers.add(reader);
+                if (reader.next()) {
+                    heap.add(reader);
+                }
+            }
+            T previous = null;
+            while (!heap.isEmpty()) {
+                Run<T> smallest = heap.poll();
+                T item = smallest.head;
+                if (previous == null || !previous.equals(item)) {
+                    sink.accept(item);
+                }
+                previous = item;
+                if (smallest.next()) {
+                    heap.add(smallest);
+                }
+            }
+        } finally {
+            readers.forEach(Run::close);
+        }
+    }
+
+    /**
+     * Deletes the run files.
+     */
+    @Override
+    public void close() {
+        runs.forEach(ExternalSorter::delete);
+        runs.clear();
+        buffer.clear();
+    }
+
+    private static void delete(Path run) {
+        try {
+            Files.deleteIfExists(run);
+        } catch (IOException e) {
+            System.err.println("Cannot delete " + run + ": " + e.getMessage());
+        }
+    }
+
+    private void spill() {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort(order);
+        try (DataOutputStream out = output(newRun())) {
+            T previous = null;
+            for (T item : buffer) {
+                if (previous == null || !previous.equals(item)) {
+                    codec.write(out, item);
+                }
+                previous = item;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write sorted run", e);
+        }
+        buffer.clear();
+    }
+
+    // listed right away, so that close() deletes it whatever happens next
+    private Path newRun() throws IOException {
+        Path run = Files.createTempFile("jmh-sort-", ".run");
+        runs.add(run);
+        return run;
+    }
+
+    private static DataOutputStream output(Path run) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE));
+    }
+
+    private interface Sink<T> {
+
+        void accept(T item) throws IOException;
+    }
+
+    /**
+     * Writes and reads back one item of a run file.
+     */
+    interface Codec<T> {
+
+        void write(DataOutputStream out, T item) throws IOException;
+
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private static final class Run<T> {
+        private final DataInputStream in;
+        private final Codec<T> codec;
+        private T head;
+
+        Run(Path file, Codec<T> codec) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE));
+            this.codec = codec;
+        }
+
+        boolean next() throws IOException {
+            try {
+                head = codec.read(in);
+                return true;
+            } catch (EOFException e) {
+                head = null;
+                return false;
+            }
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // read-only, nothing lost
+            }
+        }
+    }
+}
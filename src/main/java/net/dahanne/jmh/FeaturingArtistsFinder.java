@@ -1,7 +1,12 @@
 package net.dahanne.jmh;
 
+import net.dahanne.jmh.JellyfinQuery.ItemType;
 import net.dahanne.jmh.config.JellyfinProperties;
 import net.dahanne.jmh.config.JellyfinRequestFactory;
+import net.dahanne.jmh.report.ReportLayout;
+import net.dahanne.jmh.report.ReportWriter;
+import net.dahanne.jmh.snapshot.LibrarySnapshot;
+import net.dahanne.jmh.snapshot.LibrarySnapshotStore;
 import org.springframework.stereotype.Component;
 import tools.jackson.databind.JsonNode;
 import tools.jackson.databind.ObjectMapper;
@@ -11,28 +16,45 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.*;
+import java.util.regex.Pattern;
 
 import static net.dahanne.jmh.Utils.textOrNull;
 
 @Component
 public class FeaturingArtistsFinder {
 
-    private static final Comparator<String> IGNORE_CASE_COMPARATOR =
-            Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER);
+    public static final ReportLayout REPORT = ReportLayout.of(FeaturingArtistsFinder::featuringLine,
+            "artist", "albums");
+
+    public static final ReportLayout TRACK_REPORT = ReportLayout.of(FeaturingArtistsFinder::featuredTrackLine,
+            "id", "track", "album", "artists", "missing");
+
+    private static final JellyfinQuery TRACKS = JellyfinQuery.items().types(ItemType.AUDIO).recursive();
+    private static final Pattern NAME_SEPARATORS = Pattern.compile("\\s*(?:,|&|/|\\band\\b)\\s*",
+            Pattern.CASE_INSENSITIVE);
 
     private final ObjectMapper objectMapper;
     private final HttpClient httpClient;
     private final JellyfinRequestFactory requestFactory;
     private final JellyfinArtistService artistService;
     private final List<String> featuringMarkers;
+    private final LibrarySnapshotStore snapshotStore;
+    private final JellyfinItemPager pager;
+    private final NameNormalizer nameNormalizer;
 
     public FeaturingArtistsFinder(ObjectMapper objectMapper,
                                   JellyfinArtistService artistService,
                                   HttpClient jellyfinHttpClient,
                                   JellyfinRequestFactory requestFactory,
-                                  JellyfinProperties properties) {
+                                  JellyfinProperties properties,
+                                  LibrarySnapshotStore snapshotStore,
+                                  JellyfinItemPager pager,
+                                  NameNormalizer nameNormalizer) {
         this.objectMapper = objectMapper;
         this.artistService = artistService;
+        this.snapshotStore = snapshotStore;
+        this.pager = pager;
+        this.nameNormalizer = nameNormalizer;
         this.httpClient = jellyfinHttpClient;
         Objects.requireNonNull(properties.getBaseUrl(),
                 "Property jellyfin.base-url must be configured.");
@@ -44,18 +66,157 @@ public class FeaturingArtistsFinder {
                 .toList();
     }
 
-    public void findFeaturingArtists() {
-        List<JellyfinArtistService.Artist> artists = artistService.fetchArtists();
+    public void findFeaturingArtists(ReportWriter report) {
+        List<JellyfinArtistService.Artist> artists = snapshotStore.enabled()
+                ? featuringArtistsFromSnapshot(snapshotStore.load())
+                : artistService.fetchArtists();
+        findFeaturingArtists(artists, report);
+    }
+
+    void findFeaturingArtists(List<JellyfinArtistService.Artist> artists, ReportWriter report) {
         artists.stream()
                 .filter(artist -> containsFeaturingMarker(artist.name()))
-                .sorted(Comparator.comparing(JellyfinArtistService.Artist::name, IGNORE_CASE_COMPARATOR))
-                .forEach(artist -> {
-                    List<String> albums = fetchAlbumsForArtist(artist.id());
-                    String albumList = albums.isEmpty()
-                            ? "<no albums>"
-                            : String.join(", ", albums);
-                    System.out.println(artist.name() + " -> " + albumList);
+                .sorted(Comparator.comparing(JellyfinArtistService.Artist::name,
+                        Comparator.nullsLast(NameCollation.ORDER)))
+                .forEach(artist -> report.row(artist.name(), fetchAlbumsForArtist(artist.id())));
+    }
+
+    /**
+     * Scans every track for featured artists that have no artist entry among the track's {@code ArtistItems}:
+     * names following a marker in a bracketed title clause ("Song (feat. X)"), in an artist string
+     * ("A feat. B"), or extra names of the {@code Artists} array.
+     * <p>
+     * Pages are fetched {@code parallelism} at a time and checked as they arrive, so only those pages are held
+     * in memory and rows come in no particular order. Always reads the server: the snapshot only keeps the
+     * artists that have an entry.
+     */
+    public void findUncreditedFeaturedArtists(int parallelism, ReportWriter report) {
+        pager.forEachItemConcurrently(TRACKS, JellyfinItemPager.DEFAULT_PAGE_SIZE, parallelism, item -> {
+            List<String> missing = uncreditedFeaturedArtists(item);
+            if (!missing.isEmpty()) {
+                List<String> artists = new ArrayList<>();
+                item.path("Artists").forEach(artist -> {
+                    String name = textOrNull(artist);
+                    if (name != null) {
+                        artists.add(name);
+                    }
                 });
+                // pages are checked on several threads, rows must not interleave
+                synchronized (report) {
+                    report.row(textOrNull(item.path("Id")), textOrNull(item.path("Name")),
+                            textOrNull(item.path("Album")), artists, missing);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the featured names of a track item that match none of its {@code ArtistItems}
+     */
+    List<String> uncreditedFeaturedArtists(JsonNode item) {
+        Set<String> credited = new HashSet<>();
+        item.path("ArtistItems")
+                .forEach(artist -> credited.add(nameNormalizer.normalize(textOrNull(artist.path("Name")))));
+
+        Set<String> featured = new LinkedHashSet<>(featuredNames(textOrNull(item.path("Name")), true));
+        JsonNode artists = item.path("Artists");
+        for (int i = 0; i < artists.size(); i++) {
+            String artist = textOrNull(artists.get(i));
+            List<String> names = featuredNames(artist, false);
+            featured.addAll(names);
+            // the first name is the main artist, the others are guests
+            if (names.isEmpty() && i > 0 && artist != null && !artist.isBlank()) {
+                featured.add(artist.trim());
+            }
+        }
+
+        List<String> missing = new ArrayList<>();
+        Set<String> reported = new HashSet<>();
+        for (String name : featured) {
+            String key = nameNormalizer.normalize(name);
+            if (!key.isEmpty() && !credited.contains(key) && reported.add(key)) {
+                missing.add(name);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Applies the featuring markers as whole words ("ft" matches "ft." but not "Daft Punk") and returns the
+     * names following each one, up to the closing bracket, split on commas, "&amp;", "/" and "and".
+     *
+     * @param bracketedOnly only count markers opening a bracketed clause, as titles may contain a marker word
+     *                      ("Dance With Me")
+     */
+    List<String> featuredNames(String text, boolean bracketedOnly) {
+        if (text == null) {
+            return List.of();
+        }
+        // lower-cased char by char, so that indexes still point into the original text
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        String lowerCase = new String(chars);
+
+        List<String> names = new ArrayList<>();
+        for (String marker : featuringMarkers) {
+            for (int start = lowerCase.indexOf(marker); start >= 0; start = lowerCase.indexOf(marker, start + 1)) {
+                int end = start + marker.length();
+                if (!isWordBoundary(lowerCase, start, marker.charAt(0), -1)
+                        || !isWordBoundary(lowerCase, end - 1, marker.charAt(marker.length() - 1), 1)
+                        || bracketedOnly && !opensBracket(lowerCase, start)) {
+                    continue;
+                }
+                int clauseEnd = end;
+                while (clauseEnd < text.length() && "()[]".indexOf(text.charAt(clauseEnd)) < 0) {
+                    clauseEnd++;
+                }
+                String clause = text.substring(end, clauseEnd).replaceFirst("^[.\\s]+", "").trim();
+                for (String name : NAME_SEPARATORS.split(clause)) {
+                    if (!name.isBlank()) {
+                        names.add(name.trim());
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * A marker edge only needs a boundary when it is alphanumeric, so "'vec" or "feat." match anywhere their
+     * other edge allows.
+     */
+    private static boolean isWordBoundary(String text, int index, char edge, int direction) {
+        int neighbour = index + direction;
+        return !Character.isLetterOrDigit(edge)
+                || neighbour < 0 || neighbour >= text.length()
+                || !Character.isLetterOrDigit(text.charAt(neighbour));
+    }
+
+    private static boolean opensBracket(String text, int index) {
+        int previous = index - 1;
+        while (previous >= 0 && Character.isWhitespace(text.charAt(previous))) {
+            previous--;
+        }
+        return previous >= 0 && (text.charAt(previous) == '(' || text.charAt(previous) == '[');
+    }
+
+    private static String featuredTrackLine(Object[] row) {
+        return join(row[3]) + " - " + row[1] + " [" + row[2] + "] -> missing: " + join(row[4]) + " " + row[0];
+    }
+
+    private static String join(Object names) {
+        StringJoiner joined = new StringJoiner(", ");
+        ((List<?>) names).forEach(name -> joined.add(String.valueOf(name)));
+        return joined.toString();
+    }
+
+    private static String featuringLine(Object[] row) {
+        List<?> albums = (List<?>) row[1];
+        StringJoiner albumList = new StringJoiner(", ");
+        albums.forEach(album -> albumList.add(String.valueOf(album)));
+        return row[0] + " -> " + (albums.isEmpty() ? "<no albums>" : albumList.toString());
     }
 
     private boolean containsFeaturingMarker(String name) {
@@ -72,7 +233,11 @@ public class FeaturingArtistsFinder {
     }
 
     private List<String> fetchAlbumsForArtist(String artistId) {
-        String path = "/Items?IncludeItemTypes=MusicAlbum&Recursive=true&Limit=2000&ArtistIds=" + artistId;
+        if (snapshotStore.enabled()) {
+            return albumsFromSnapshot(snapshotStore.load(), artistId);
+        }
+        String path = JellyfinQuery.items().types(ItemType.MUSIC_ALBUM).recursive().artistIds(artistId)
+                .page(0, 2000, false);
         HttpRequest.Builder builder = requestFactory.create(path).GET();
 
         Set<String> albums = new LinkedHashSet<>();
@@ -92,14 +257,46 @@ public class FeaturingArtistsFinder {
                     albums.add(album);
                 }
             });
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            // cancelled: stop instead of failing every remaining lookup
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
             System.err.println("Album lookup error for artist " + artistId + ": " + e.getMessage());
-            if (e instanceof InterruptedException) {
-                Thread.currentThread().interrupt();
+        }
+        List<String> sorted = new ArrayList<>(albums);
+        sorted.sort(NameCollation.ORDER);
+        return sorted;
+    }
+
+    /**
+     * Scans artist names straight from the snapshot, only materializing the ones containing a marker.
+     */
+    private List<JellyfinArtistService.Artist> featuringArtistsFromSnapshot(LibrarySnapshot snapshot) {
+        List<JellyfinArtistService.Artist> artists = new ArrayList<>();
+        for (int artist = 0; artist < snapshot.artistCount(); artist++) {
+            String name = snapshot.artistName(artist);
+            if (containsFeaturingMarker(name)) {
+                artists.add(new JellyfinArtistService.Artist(snapshot.artistId(artist), name));
+            }
+        }
+        return artists;
+    }
+
+    private List<String> albumsFromSnapshot(LibrarySnapshot snapshot, String artistId) {
+        int artist = snapshot.artistOrdinal(artistId);
+        if (artist < 0) {
+            return List.of();
+        }
+        Set<String> albums = new LinkedHashSet<>();
+        for (int album : snapshot.albumsOfArtist(artist)) {
+            String name = snapshot.albumName(album);
+            if (!name.isBlank()) {
+                albums.add(name);
             }
         }
         List<String> sorted = new ArrayList<>(albums);
-        sorted.sort(String.CASE_INSENSITIVE_ORDER);
+        sorted.sort(NameCollation.ORDER);
         return sorted;
     }
 
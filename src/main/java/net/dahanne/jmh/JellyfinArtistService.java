@@ -2,6 +2,8 @@ package net.dahanne.jmh;
 
 import net.dahanne.jmh.config.JellyfinProperties;
 import net.dahanne.jmh.config.JellyfinRequestFactory;
+import net.dahanne.jmh.snapshot.LibrarySnapshot;
+import net.dahanne.jmh.snapshot.LibrarySnapshotStore;
 import org.springframework.stereotype.Component;
 import tools.jackson.databind.JsonNode;
 import tools.jackson.databind.ObjectMapper;
@@ -12,30 +14,55 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static net.dahanne.jmh.Utils.textOrNull;
 
 @Component
-public class JellyfinArtistService {
+public class JellyfinArtistService implements LibraryCache {
 
     private final ObjectMapper objectMapper;
     private final HttpClient httpClient;
     private final JellyfinRequestFactory requestFactory;
+    private final LibrarySnapshotStore snapshotStore;
+    // only filled while LibraryChangeListener is connected, see LibraryCache
+    private volatile boolean watched;
+    private volatile Map<String, Artist> cachedArtists;
+    private long changes;
 
     public JellyfinArtistService(ObjectMapper objectMapper,
                                  HttpClient jellyfinHttpClient,
                                  JellyfinRequestFactory requestFactory,
-                                 JellyfinProperties properties) {
+                                 JellyfinProperties properties,
+                                 LibrarySnapshotStore snapshotStore) {
         this.objectMapper = objectMapper;
         this.httpClient = jellyfinHttpClient;
         java.util.Objects.requireNonNull(properties.getBaseUrl(),
                 "Property jellyfin.base-url must be configured.");
         this.requestFactory = requestFactory;
+        this.snapshotStore = snapshotStore;
     }
 
     public List<Artist> fetchArtists() {
+        if (snapshotStore.enabled()) {
+            return artistsFromSnapshot(snapshotStore.load());
+        }
+        Map<String, Artist> cached = cachedArtists;
+        if (cached != null) {
+            List<Artist> sorted = new ArrayList<>(cached.values());
+            NameCollation.sort(sorted, Artist::name);
+            return sorted;
+        }
+        long changesBefore = changes();
+        List<Artist> artists = fetchArtistsFromServer();
+        cache(artists, changesBefore);
+        return artists;
+    }
+
+    private List<Artist> fetchArtistsFromServer() {
         List<Artist> artists = new ArrayList<>();
-        String path = "/Artists?SortBy=SortName&SortOrder=Ascending&Limit=10000&Recursive=true";
+        String path = JellyfinQuery.artists().sortedByName().recursive().page(0, 10_000, false);
 
         HttpRequest.Builder builder = requestFactory.create(path).GET();
 
@@ -56,12 +83,67 @@ public class JellyfinArtistService {
                     artists.add(new Artist(id, name));
                 }
             });
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
         return artists;
     }
 
+    /**
+     * Keeps the fetched artists, unless a change was notified while they were being fetched.
+     */
+    private synchronized void cache(List<Artist> artists, long changesBefore) {
+        if (watched && changes == changesBefore) {
+            Map<String, Artist> cached = new ConcurrentHashMap<>();
+            artists.forEach(artist -> cached.put(artist.id(), artist));
+            cachedArtists = cached;
+        }
+    }
+
+    private synchronized long changes() {
+        return changes;
+    }
+
+    @Override
+    public void watchStarted() {
+        watched = true;
+    }
+
+    @Override
+    public synchronized void libraryChanged(LibraryChange change) {
+        changes++;
+        Map<String, Artist> cached = cachedArtists;
+        if (cached == null) {
+            return;
+        }
+        change.removed().forEach(cached::remove);
+        for (JsonNode item : change.itemsOfType("MusicArtist")) {
+            String name = textOrNull(item.path("Name"));
+            String id = textOrNull(item.path("Id"));
+            if (name != null && !name.isBlank() && id != null) {
+                cached.put(id, new Artist(id, name));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void watchStopped() {
+        watched = false;
+        changes++;
+        cachedArtists = null;
+    }
+
+    private List<Artist> artistsFromSnapshot(LibrarySnapshot snapshot) {
+        List<Artist> artists = new ArrayList<>(snapshot.artistCount());
+        for (int artist = 0; artist < snapshot.artistCount(); artist++) {
+            artists.add(new Artist(snapshot.artistId(artist), snapshot.artistName(artist)));
+        }
+        return artists;
+    }
+
     public record Artist(String id, String name) {
     }
 
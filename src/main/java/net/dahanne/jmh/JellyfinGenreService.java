@@ -1,41 +1,91 @@
 package net.dahanne.jmh;
 
+import net.dahanne.jmh.JellyfinQuery.ItemField;
+import net.dahanne.jmh.JellyfinQuery.ItemType;
 import net.dahanne.jmh.config.JellyfinProperties;
 import net.dahanne.jmh.config.JellyfinRequestFactory;
+import net.dahanne.jmh.report.ReportLayout;
+import net.dahanne.jmh.snapshot.LibrarySnapshot;
+import net.dahanne.jmh.snapshot.LibrarySnapshotStore;
 import org.springframework.stereotype.Component;
 import tools.jackson.databind.JsonNode;
 import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
 
 import java.io.IOException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 
 import static net.dahanne.jmh.Utils.textOrNull;
 
 @Component
-public class JellyfinGenreService {
+public class JellyfinGenreService implements LibraryCache {
+
+    public static final ReportLayout GENRE_REPORT = ReportLayout.of(
+            row -> row[1] + "(" + row[0] + "): " + row[2] + " albums", "id", "name", "albumCount");
+
+    private static final JellyfinQuery GENRES = JellyfinQuery.genres().sortedByName().recursive();
+    private static final JellyfinQuery ALBUMS = JellyfinQuery.items().types(ItemType.MUSIC_ALBUM).recursive();
 
     private final ObjectMapper objectMapper;
     private final HttpClient httpClient;
     private final JellyfinRequestFactory requestFactory;
+    private final LibrarySnapshotStore snapshotStore;
+    private final JellyfinItemPager pager;
+    private final Path journalDirectory;
+    // only filled while LibraryChangeListener is connected, see LibraryCache
+    private volatile boolean watched;
+    private volatile GenreCache cache;
+    private long changes;
 
     public JellyfinGenreService(ObjectMapper objectMapper,
                                 HttpClient jellyfinHttpClient,
                                 JellyfinRequestFactory requestFactory,
-                                JellyfinProperties properties) {
+                                JellyfinProperties properties,
+                                LibrarySnapshotStore snapshotStore,
+                                JellyfinItemPager pager) {
         this.objectMapper = objectMapper;
         this.httpClient = jellyfinHttpClient;
         java.util.Objects.requireNonNull(properties.getBaseUrl(),
                 "Property jellyfin.base-url must be configured.");
         this.requestFactory = requestFactory;
+        this.snapshotStore = snapshotStore;
+        this.pager = pager;
+        this.journalDirectory = Path.of(properties.getJournal().getDirectory());
     }
 
     public List<GenreWithCount> fetchGenresWithAlbumCount() {
         List<GenreWithCount> genres = new ArrayList<>();
-        String path = "/MusicGenres?SortBy=SortName&SortOrder=Ascending&Recursive=true";
+        forEachGenreWithAlbumCount(genres::add);
+        return genres;
+    }
+
+    /**
+     * Hands each genre to {@code consumer} as soon as its album count is known.
+     */
+    public void forEachGenreWithAlbumCount(Consumer<GenreWithCount> consumer) {
+        if (snapshotStore.enabled()) {
+            genresFromSnapshot(snapshotStore.load()).forEach(consumer);
+            return;
+        }
+        GenreCache cached = watched ? cachedGenres() : null;
+        if (cached != null) {
+            cached.genresWithAlbumCount().forEach(consumer);
+            return;
+        }
+        String path = GENRES.path();
 
         HttpRequest.Builder builder = requestFactory.create(path).GET();
 
@@ -47,53 +97,178 @@ public class JellyfinGenreService {
 
             JsonNode items = objectMapper.readTree(response.body()).path("Items");
             if (!items.isArray()) {
-                return genres;
+                return;
             }
-            for (JsonNode item : items) {
-                String name = textOrNull(item.path("Name"));
-                String id = textOrNull(item.path("Id"));
-                if (name != null && !name.isBlank() && id != null && !id.isBlank()) {
-                    int albumCount = fetchAlbumCountForGenre(id);
-                    genres.add(new GenreWithCount(id, name, albumCount));
+            try (CommandContext.Progress progress = CommandContext.current().progress("genres", items.size())) {
+                for (JsonNode item : items) {
+                    String name = textOrNull(item.path("Name"));
+                    String id = textOrNull(item.path("Id"));
+                    if (name != null && !name.isBlank() && id != null && !id.isBlank()) {
+                        int albumCount = fetchAlbumCountForGenre(id);
+                        consumer.accept(new GenreWithCount(id, name, albumCount));
+                    }
+                    progress.advance(1);
                 }
             }
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Like {@link #fetchGenresWithAlbumCount()}, but without the cache the counts still come from the genres and one
+     * paged scan of the genres of every album instead of one request per genre.
+     */
+    public List<GenreWithCount> scanGenresWithAlbumCount() {
+        if (snapshotStore.enabled()) {
+            return genresFromSnapshot(snapshotStore.load());
+        }
+        GenreCache cached = watched ? cachedGenres() : null;
+        return (cached != null ? cached : scan()).genresWithAlbumCount();
+    }
+
+    /**
+     * @return the cache, filled from the genres and one paged scan of the genres of every album instead of one album
+     * count request per genre, or {@code null} when a change was notified while filling it
+     */
+    private GenreCache cachedGenres() {
+        GenreCache cached = cache;
+        if (cached != null) {
+            return cached;
+        }
+        long changesBefore = changes();
+        GenreCache filled = scan();
+        synchronized (this) {
+            if (!watched || changes != changesBefore) {
+                return null;
+            }
+            cache = filled;
+        }
+        return filled;
+    }
+
+    private GenreCache scan() {
+        GenreCache scanned = new GenreCache();
+        fetchAllGenres().forEach(genre -> scanned.genres.put(genre.id(), genre.name()));
+        pager.forEachItem(ALBUMS.reading(ItemField.GENRES), JellyfinItemPager.DEFAULT_PAGE_SIZE, scanned::putAlbum);
+        return scanned;
+    }
+
+    private synchronized long changes() {
+        return changes;
+    }
+
+    @Override
+    public void watchStarted() {
+        watched = true;
+    }
+
+    @Override
+    public synchronized void libraryChanged(LibraryChange change) {
+        changes++;
+        GenreCache cached = cache;
+        if (cached == null) {
+            return;
+        }
+        change.removed().forEach(cached::remove);
+        for (JsonNode item : change.itemsOfType("MusicGenre")) {
+            String name = textOrNull(item.path("Name"));
+            String id = textOrNull(item.path("Id"));
+            if (name != null && !name.isBlank() && id != null && !id.isBlank()) {
+                cached.genres.put(id, name);
+            }
+        }
+        change.itemsOfType("MusicAlbum").forEach(cached::putAlbum);
+    }
+
+    @Override
+    public synchronized void watchStopped() {
+        watched = false;
+        changes++;
+        cache = null;
+    }
+
+    private List<GenreWithCount> genresFromSnapshot(LibrarySnapshot snapshot) {
+        int[] albumCounts = snapshot.albumCountsByGenre();
+        List<GenreWithCount> genres = new ArrayList<>(snapshot.genreCount());
+        for (int genre = 0; genre < snapshot.genreCount(); genre++) {
+            genres.add(new GenreWithCount(snapshot.genreId(genre), snapshot.genreName(genre), albumCounts[genre]));
         }
         return genres;
     }
 
     private int fetchAlbumCountForGenre(String genreId) {
-        String path = "/Items?IncludeItemTypes=MusicAlbum&GenreIds=" + genreId + "&Recursive=true&Limit=0";
+        String path = ALBUMS.genreIds(genreId).count();
 
         HttpRequest.Builder builder = requestFactory.create(path).GET();
 
         try {
             HttpResponse<String> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
             if (response.statusCode() != 200) {
-                return 0;
+                throw new IOException("Album count lookup failed for genre " + genreId + " (HTTP "
+                        + response.statusCode() + ")");
             }
 
-            JsonNode root = objectMapper.readTree(response.body());
-            JsonNode totalCount = root.path("TotalRecordCount");
-            return totalCount.isInt() ? totalCount.asInt() : 0;
-        } catch (IOException | InterruptedException e) {
-            return 0;
+            JsonNode totalCount = objectMapper.readTree(response.body()).path("TotalRecordCount");
+            if (!totalCount.isInt()) {
+                throw new IOException("Album count lookup for genre " + genreId + " returned no TotalRecordCount");
+            }
+            return totalCount.asInt();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
         }
     }
 
-    public List<GenreWithCount> deleteEmptyGenres() {
-        List<GenreWithCount> deleted = new ArrayList<>();
-        List<GenreWithCount> allGenres = fetchGenresWithAlbumCount();
-
-        for (GenreWithCount genre : allGenres) {
-            if (genre.albumCount() == 0) {
-                if (deleteGenre(genre.id())) {
-                    deleted.add(genre);
+    /**
+     * @return the genres {@link #deleteGenres} should delete: those without albums, counted on the server and never
+     * in the snapshot or the cache, which may miss albums tagged since. A failed album count fails the plan rather
+     * than passing for an empty genre.
+     */
+    public List<GenreWithCount> planEmptyGenreDeletion() {
+        List<Genre> genres = fetchAllGenres();
+        List<GenreWithCount> empty = new ArrayList<>();
+        try (CommandContext.Progress progress = CommandContext.current().progress("genres", genres.size())) {
+            for (Genre genre : genres) {
+                if (fetchAlbumCountForGenre(genre.id()) == 0) {
+                    empty.add(new GenreWithCount(genre.id(), genre.name(), 0));
                 }
+                progress.advance(1);
             }
         }
-        return deleted;
+        return empty;
+    }
+
+    /**
+     * Deletes the planned genres still without albums on the server, {@code parallelism} at a time, journaling each
+     * one once deleted. Deletions cannot be undone: Jellyfin has no call recreating a genre item, it only creates
+     * one when an album is tagged with it.
+     */
+    public DeleteResult deleteGenres(List<GenreWithCount> plan, int parallelism) {
+        if (plan.isEmpty()) {
+            return new DeleteResult(List.of(), null);
+        }
+        Set<String> deleted = ConcurrentHashMap.newKeySet();
+        try (WriteJournal journal = WriteJournal.create(journalDirectory, "clear-empty-genres", objectMapper)) {
+            forEachConcurrently(plan, parallelism, "empty genres", genre -> {
+                // counted again, as an album may have been tagged since the plan
+                if (fetchAlbumCountForGenre(genre.id()) == 0 && deleteGenre(genre.id())) {
+                    // nothing to restore from the entry, so it only has to list what is really gone
+                    journal.append(new WriteJournal.Entry(WriteJournal.DELETED_GENRE, genre.id(), genre.name(),
+                            List.of()));
+                    deleted.add(genre.id());
+                    // the notification may only come after the next command
+                    libraryChanged(new LibraryChange(Set.of(genre.id()), List.of()));
+                }
+            });
+            return new DeleteResult(plan.stream().filter(genre -> deleted.contains(genre.id())).toList(),
+                    journal.file());
+        }
     }
 
     private boolean deleteGenre(String genreId) {
@@ -104,12 +279,18 @@ public class JellyfinGenreService {
         try {
             HttpResponse<String> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
             return response.statusCode() == 204 || response.statusCode() == 200;
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
             return false;
         }
     }
 
-    public MoveResult moveGenre(String originGenreId, String destinationGenreId) {
+    /**
+     * @return the albums of the origin genre and the genres {@link #applyMove} should give them
+     */
+    public MovePlan planMoveGenre(String originGenreId, String destinationGenreId) {
         var allGenres = fetchAllGenres();
 
         String originGenreName = allGenres.stream()
@@ -124,30 +305,202 @@ public class JellyfinGenreService {
                 .findFirst()
                 .orElseThrow(() -> new RuntimeException("Destination genre not found: " + destinationGenreId));
 
-        List<Album> albums = fetchAlbumsForGenre(originGenreId);
-        int movedCount = 0;
-        List<String> movedAlbums = new ArrayList<>();
-        List<String> failedAlbums = new ArrayList<>();
-
-        for (Album album : albums) {
-            String error = updateAlbumGenre(album, originGenreName, destinationGenreName);
-            if (error == null) {
-                movedCount++;
-                movedAlbums.add(album.name());
-            } else {
-                failedAlbums.add(album.name() + " (" + error + ")");
+        List<AlbumChange> albums = fetchAlbumsForGenre(originGenreId).stream()
+                .map(album -> new AlbumChange(album.id(), album.name(), album.genres(),
+                        movedGenres(album.genres(), originGenreName, destinationGenreName)))
+                .toList();
+        return new MovePlan(originGenreId, originGenreName, destinationGenreId, destinationGenreName, albums);
+    }
+
+    /**
+     * Updates the planned albums, {@code parallelism} at a time, journaling the name and genres of each one
+     * before its update. The genres are moved on the album as fetched right before, not as planned, so that
+     * changes made since the plan are kept.
+     */
+    public MoveResult applyMove(MovePlan plan, int parallelism) {
+        if (plan.albums().isEmpty()) {
+            return new MoveResult(0, 0, plan.originGenreName(), plan.destinationGenreName(), List.of(), List.of(),
+                    null);
+        }
+        String userId = getUserId();
+        Set<String> moved = ConcurrentHashMap.newKeySet();
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        try (WriteJournal journal = WriteJournal.create(journalDirectory, "move-genre", objectMapper)) {
+            forEachConcurrently(plan.albums(), parallelism, "albums", album -> {
+                String error = rewriteAlbum(userId, album.id(), journal, item -> item.set("Genres",
+                        objectMapper.valueToTree(movedGenres(genres(item), plan.originGenreName(),
+                                plan.destinationGenreName()))));
+                if (error == null) {
+                    moved.add(album.id());
+                    albumMoved(album.id(), plan.originGenreId(), plan.destinationGenreId());
+                } else {
+                    failures.put(album.id(), album.name() + " (" + error + ")");
+                }
+            });
+            List<String> movedAlbums = plan.albums().stream()
+                    .filter(album -> moved.contains(album.id()))
+                    .map(AlbumChange::name)
+                    .toList();
+            List<String> failedAlbums = plan.albums().stream()
+                    .map(album -> failures.get(album.id()))
+                    .filter(Objects::nonNull)
+                    .toList();
+            return new MoveResult(plan.albums().size(), movedAlbums.size(), plan.originGenreName(),
+                    plan.destinationGenreName(), movedAlbums, failedAlbums, journal.file());
+        }
+    }
+
+    /**
+     * Gives each album of {@code journalFile} back the name and genres journaled before its update,
+     * {@code parallelism} albums at a time; an album journaled twice gets its oldest state. The restores are
+     * journaled too, so an undo can be undone. Deleted genres cannot be restored, they are only listed.
+     */
+    public UndoResult undo(Path journalFile, int parallelism) {
+        Map<String, WriteJournal.Entry> albums = new LinkedHashMap<>();
+        List<String> irreversible = new ArrayList<>();
+        for (WriteJournal.Entry entry : WriteJournal.read(journalFile, objectMapper)) {
+            if (WriteJournal.ALBUM_GENRES.equals(entry.operation()) && entry.id() != null) {
+                albums.putIfAbsent(entry.id(), entry);
+            } else if (WriteJournal.DELETED_GENRE.equals(entry.operation())) {
+                irreversible.add(entry.name());
+            }
+        }
+        if (albums.isEmpty()) {
+            return new UndoResult(List.of(), List.of(), irreversible, null);
+        }
+        String userId = getUserId();
+        Set<String> restored = ConcurrentHashMap.newKeySet();
+        Map<String, String> failures = new ConcurrentHashMap<>();
+        List<WriteJournal.Entry> entries = List.copyOf(albums.values());
+        try (WriteJournal journal = WriteJournal.create(journalDirectory, "undo", objectMapper)) {
+            forEachConcurrently(entries, parallelism, "albums", entry -> {
+                String error = rewriteAlbum(userId, entry.id(), journal, item -> {
+                    if (entry.name() != null) {
+                        item.put("Name", entry.name());
+                    }
+                    item.set("Genres", objectMapper.valueToTree(entry.genres()));
+                });
+                if (error == null) {
+                    restored.add(entry.id());
+                } else {
+                    failures.put(entry.id(), entry.name() + " (" + error + ")");
+                }
+            });
+            forgetAlbumGenres();
+            return new UndoResult(
+                    entries.stream().filter(entry -> restored.contains(entry.id())).map(WriteJournal.Entry::name)
+                            .toList(),
+                    entries.stream().map(entry -> failures.get(entry.id())).filter(Objects::nonNull).toList(),
+                    irreversible, journal.file());
+        }
+    }
+
+    /**
+     * @return {@code genres} without the origin genre, with the destination genre
+     */
+    private static List<String> movedGenres(List<String> genres, String originGenreName,
+                                            String destinationGenreName) {
+        List<String> moved = new ArrayList<>();
+        for (String genre : genres) {
+            if (!genre.equalsIgnoreCase(originGenreName)) {
+                moved.add(genre);
+            }
+        }
+        if (!moved.contains(destinationGenreName)) {
+            moved.add(destinationGenreName);
+        }
+        return moved;
+    }
+
+    /**
+     * Runs {@code action} on every item on virtual threads, at most {@code parallelism} at a time; the first
+     * failure cancels the others.
+     */
+    private <T> void forEachConcurrently(List<T> items, int parallelism, String label, Consumer<T> action) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive, got " + parallelism);
+        }
+        Semaphore inFlight = new Semaphore(parallelism);
+        try (CommandContext.Progress progress = CommandContext.current().progress(label, items.size());
+             TaskScope scope = TaskScope.open()) {
+            for (T item : items) {
+                inFlight.acquire();
+                if (scope.isCancelled()) {
+                    inFlight.release();
+                    break;
+                }
+                scope.fork(() -> {
+                    try {
+                        action.accept(item);
+                        progress.advance(1);
+                        return null;
+                    } finally {
+                        inFlight.release();
+                    }
+                });
             }
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private synchronized void albumMoved(String albumId, String originGenreId, String destinationGenreId) {
+        GenreCache cached = cache;
+        Set<String> genreIds = cached != null ? cached.albumGenres.get(albumId) : null;
+        if (genreIds != null) {
+            Set<String> moved = ConcurrentHashMap.newKeySet();
+            moved.addAll(genreIds);
+            moved.remove(originGenreId);
+            moved.add(destinationGenreId);
+            cached.albumGenres.put(albumId, moved);
         }
-        return new MoveResult(albums.size(), movedCount, originGenreName, destinationGenreName, movedAlbums, failedAlbums);
     }
 
+    // restored albums may have any genres, the cache is filled again on next use
+    private synchronized void forgetAlbumGenres() {
+        changes++;
+        cache = null;
+    }
+
+    /**
+     * @param journal where to find the name and genres the albums had, {@code null} when nothing was changed
+     */
     public record MoveResult(int totalAlbums, int movedCount, String originGenreName,
-                             String destinationGenreName, List<String> movedAlbums, List<String> failedAlbums) {
+                             String destinationGenreName, List<String> movedAlbums, List<String> failedAlbums,
+                             Path journal) {
+    }
+
+    /**
+     * @param journal where to find the deleted genres, {@code null} when nothing was deleted
+     */
+    public record DeleteResult(List<GenreWithCount> deleted, Path journal) {
+    }
+
+    /**
+     * @param irreversible names of the deleted genres found in the journal
+     * @param journal      where to find the state the albums had before being restored, {@code null} when there
+     *                     was none to restore
+     */
+    public record UndoResult(List<String> restoredAlbums, List<String> failedAlbums, List<String> irreversible,
+                             Path journal) {
+    }
+
+    public record MovePlan(String originGenreId, String originGenreName, String destinationGenreId,
+                           String destinationGenreName, List<AlbumChange> albums) {
+    }
+
+    /**
+     * @param genres    genre names of the album when planned
+     * @param newGenres genre names it should get
+     */
+    public record AlbumChange(String id, String name, List<String> genres, List<String> newGenres) {
     }
 
     private List<Genre> fetchAllGenres() {
         List<Genre> genres = new ArrayList<>();
-        String path = "/MusicGenres?SortBy=SortName&SortOrder=Ascending&Recursive=true";
+        String path = GENRES.path();
 
         HttpRequest.Builder builder = requestFactory.create(path).GET();
 
@@ -168,7 +521,10 @@ public class JellyfinGenreService {
                     genres.add(new Genre(id, name));
                 }
             }
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
             throw new RuntimeException(e);
         }
         return genres;
@@ -176,46 +532,38 @@ public class JellyfinGenreService {
 
     private List<Album> fetchAlbumsForGenre(String genreId) {
         List<Album> albums = new ArrayList<>();
-        String path = "/Items?IncludeItemTypes=MusicAlbum&GenreIds=" + genreId + "&Recursive=true&Fields=Genres";
-
-        HttpRequest.Builder builder = requestFactory.create(path).GET();
-
-        try {
-            HttpResponse<String> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() != 200) {
-                throw new IOException("Album lookup failed (HTTP " + response.statusCode() + ")");
-            }
-
-            JsonNode items = objectMapper.readTree(response.body()).path("Items");
-            if (!items.isArray()) {
-                return albums;
-            }
-            for (JsonNode item : items) {
-                String id = textOrNull(item.path("Id"));
-                String name = textOrNull(item.path("Name"));
-                List<String> genres = new ArrayList<>();
-                JsonNode genreItems = item.path("GenreItems");
-                if (genreItems.isArray()) {
-                    for (JsonNode genreItem : genreItems) {
-                        String genreName = textOrNull(genreItem.path("Name"));
-                        if (genreName != null) {
-                            genres.add(genreName);
-                        }
+        pager.forEachItem(ALBUMS.genreIds(genreId).reading(ItemField.GENRES), JellyfinItemPager.DEFAULT_PAGE_SIZE,
+                item -> {
+                    String id = textOrNull(item.path("Id"));
+                    if (id != null) {
+                        albums.add(new Album(id, textOrNull(item.path("Name")), genreNames(item)));
                     }
-                }
-                if (id != null) {
-                    albums.add(new Album(id, name, genres));
+                });
+        return albums;
+    }
+
+    private static List<String> genreNames(JsonNode item) {
+        List<String> genres = new ArrayList<>();
+        JsonNode genreItems = item.path("GenreItems");
+        if (genreItems.isArray()) {
+            for (JsonNode genreItem : genreItems) {
+                String genreName = textOrNull(genreItem.path("Name"));
+                if (genreName != null) {
+                    genres.add(genreName);
                 }
             }
-        } catch (IOException | InterruptedException e) {
-            throw new RuntimeException(e);
         }
-        return albums;
+        return genres;
     }
 
-    private String updateAlbumGenre(Album album, String originGenreName, String destinationGenreName) {
+    /**
+     * Fetches the full album, journals its name and genres, applies {@code edit} to it and posts it back.
+     *
+     * @return {@code null} once updated, otherwise why the album was not
+     */
+    private String rewriteAlbum(String userId, String albumId, WriteJournal journal, Consumer<ObjectNode> edit) {
         // First, fetch the full album data
-        String getPath = "/Users/" + getUserId() + "/Items/" + album.id();
+        String getPath = "/Users/" + userId + "/Items/" + albumId;
         HttpRequest.Builder getBuilder = requestFactory.create(getPath).GET();
 
         JsonNode fullItem;
@@ -225,34 +573,25 @@ public class JellyfinGenreService {
                 return "Failed to fetch album: HTTP " + getResponse.statusCode();
             }
             fullItem = objectMapper.readTree(getResponse.body());
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
             return "Fetch error: " + e.getMessage();
         }
-
-        // Build new genres list
-        List<String> newGenres = new ArrayList<>();
-        for (String genre : album.genres()) {
-            if (!genre.equalsIgnoreCase(originGenreName)) {
-                newGenres.add(genre);
-            }
-        }
-        if (!newGenres.contains(destinationGenreName)) {
-            newGenres.add(destinationGenreName);
-        }
-
-        // Modify the item's Genres field
-        try {
-            ((tools.jackson.databind.node.ObjectNode) fullItem).set("Genres",
-                    objectMapper.valueToTree(newGenres));
-        } catch (Exception e) {
-            return "JSON modification error: " + e.getMessage();
+        if (!(fullItem instanceof ObjectNode item)) {
+            return "Unexpected album: " + fullItem;
         }
+        // before anything is sent, so that the journal covers an interrupted update
+        journal.append(new WriteJournal.Entry(WriteJournal.ALBUM_GENRES, albumId, textOrNull(item.path("Name")),
+                genres(item)));
+        edit.accept(item);
 
         // POST the full modified item back
-        String postPath = "/Items/" + album.id();
+        String postPath = "/Items/" + albumId;
         String body;
         try {
-            body = objectMapper.writeValueAsString(fullItem);
+            body = objectMapper.writeValueAsString(item);
         } catch (tools.jackson.core.JacksonException e) {
             return "JSON write error: " + e.getMessage();
         }
@@ -267,11 +606,25 @@ public class JellyfinGenreService {
                 return null; // success
             }
             return "HTTP " + response.statusCode() + ": " + response.body();
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
             return "Request error: " + e.getMessage();
         }
     }
 
+    private static List<String> genres(JsonNode item) {
+        List<String> genres = new ArrayList<>();
+        item.path("Genres").forEach(genre -> {
+            String name = textOrNull(genre);
+            if (name != null) {
+                genres.add(name);
+            }
+        });
+        return genres;
+    }
+
     private String getUserId() {
         String path = "/Users";
         HttpRequest.Builder builder = requestFactory.create(path).GET();
@@ -286,7 +639,10 @@ public class JellyfinGenreService {
                 return textOrNull(users.get(0).path("Id"));
             }
             throw new RuntimeException("No users found");
-        } catch (IOException | InterruptedException e) {
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error fetching users: " + e.getMessage(), e);
+        } catch (IOException e) {
             throw new RuntimeException("Error fetching users: " + e.getMessage(), e);
         }
     }
@@ -299,4 +655,48 @@ public class JellyfinGenreService {
 
     private record Album(String id, String name, List<String> genres) {
     }
+
+    /**
+     * Genre names by id, and genre ids by album id, from which album counts are computed.
+     */
+    private static final class GenreCache {
+        private final Map<String, String> genres = new ConcurrentHashMap<>();
+        private final Map<String, Set<String>> albumGenres = new ConcurrentHashMap<>();
+
+        void putAlbum(JsonNode album) {
+            String albumId = textOrNull(album.path("Id"));
+            if (albumId == null) {
+                return;
+            }
+            Set<String> genreIds = ConcurrentHashMap.newKeySet();
+            for (JsonNode genreItem : album.path("GenreItems")) {
+                String id = textOrNull(genreItem.path("Id"));
+                String name = textOrNull(genreItem.path("Name"));
+                if (id != null && !id.isBlank()) {
+                    genreIds.add(id);
+                    // an album update creates the genres it names
+                    if (name != null && !name.isBlank()) {
+                        genres.putIfAbsent(id, name);
+                    }
+                }
+            }
+            albumGenres.put(albumId, genreIds);
+        }
+
+        void remove(String id) {
+            genres.remove(id);
+            albumGenres.remove(id);
+        }
+
+        List<GenreWithCount> genresWithAlbumCount() {
+            Map<String, Integer> albumCounts = new HashMap<>();
+            for (Set<String> genreIds : albumGenres.values()) {
+                genreIds.forEach(id -> albumCounts.merge(id, 1, Integer::sum));
+            }
+            List<GenreWithCount> counted = new ArrayList<>(genres.size());
+            genres.forEach((id, name) -> counted.add(new GenreWithCount(id, name, albumCounts.getOrDefault(id, 0))));
+            NameCollation.sort(counted, GenreWithCount::name);
+            return counted;
+        }
+    }
 }
\ No newline at end of file
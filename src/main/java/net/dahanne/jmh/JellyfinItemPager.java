@@ -0,0 +1,152 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.config.JellyfinRequestFactory;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Walks a {@link JellyfinQuery} page by page, handing each item
+ * to a consumer as soon as its page has been parsed, so callers never hold more than one page of JSON.
+ * Only the first page asks for {@code TotalRecordCount}, which costs the server a count of every matching item.
+ * Each walk is a progress step of the current {@link CommandContext}.
+ */
+@Component
+public class JellyfinItemPager {
+
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final JellyfinRequestFactory requestFactory;
+
+    public JellyfinItemPager(ObjectMapper objectMapper,
+                             HttpClient jellyfinHttpClient,
+                             JellyfinRequestFactory requestFactory) {
+        this.objectMapper = objectMapper;
+        this.httpClient = jellyfinHttpClient;
+        this.requestFactory = requestFactory;
+    }
+
+    /**
+     * @param pageSize number of items requested per page
+     * @param consumer receives every item of every page, in server order
+     * @return the {@code TotalRecordCount} reported by the server
+     */
+    public int forEachItem(JellyfinQuery query, int pageSize, Consumer<JsonNode> consumer) {
+        int startIndex = 0;
+        int total = 0;
+        try (CommandContext.Progress progress = CommandContext.current().progress(query.label(), 0)) {
+            do {
+                // only the first page is counted, the total does not change while walking
+                JsonNode root = fetchPage(query.page(startIndex, pageSize, startIndex == 0));
+                JsonNode items = root.path("Items");
+                if (startIndex == 0) {
+                    total = root.path("TotalRecordCount").asInt(0);
+                    progress.total(total);
+                }
+                if (!items.isArray() || items.isEmpty()) {
+                    break;
+                }
+                items.forEach(consumer);
+                progress.advance(items.size());
+                startIndex += items.size();
+            } while (startIndex < total);
+        }
+        return total;
+    }
+
+    /**
+     * Like {@link #forEachItem}, but once the first page has told the total, fetches the next pages on virtual
+     * threads, at most {@code parallelism} at a time. Each page is handed to the consumer by the thread that
+     * fetched it, so at most {@code parallelism} pages are held at once whatever the size of the library. The
+     * first page to fail cancels the others.
+     *
+     * @param consumer receives every item, pages in no particular order; it is called from several threads
+     * @return the {@code TotalRecordCount} reported by the server
+     */
+    public int forEachItemConcurrently(JellyfinQuery query, int pageSize, int parallelism,
+                                       Consumer<JsonNode> consumer) {
+        return forEachPageConcurrently(query, pageSize, parallelism, items -> items.forEach(consumer));
+    }
+
+    /**
+     * Like {@link #forEachItemConcurrently}, but hands the {@code Items} array of each page at once, e.g. to pass
+     * it on to another thread in one piece.
+     *
+     * @param consumer receives the items of every page, pages in no particular order; it is called from several
+     *                 threads
+     * @return the {@code TotalRecordCount} reported by the server
+     */
+    public int forEachPageConcurrently(JellyfinQuery query, int pageSize, int parallelism,
+                                       Consumer<JsonNode> consumer) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive, got " + parallelism);
+        }
+        try (CommandContext.Progress progress = CommandContext.current().progress(query.label(), 0)) {
+            JsonNode first = fetchPage(query.page(0, pageSize, true));
+            int total = first.path("TotalRecordCount").asInt(0);
+            progress.total(total);
+            consumer.accept(first.path("Items"));
+            progress.advance(first.path("Items").size());
+
+            Semaphore inFlight = new Semaphore(parallelism);
+            try (TaskScope scope = TaskScope.open()) {
+                for (int startIndex = pageSize; startIndex < total; startIndex += pageSize) {
+                    inFlight.acquire();
+                    // a page failed, its exception is rethrown by join
+                    if (scope.isCancelled()) {
+                        inFlight.release();
+                        break;
+                    }
+                    String page = query.page(startIndex, pageSize, false);
+                    scope.fork(() -> {
+                        try {
+                            JsonNode items = fetchPage(page).path("Items");
+                            consumer.accept(items);
+                            progress.advance(items.size());
+                            return null;
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+                scope.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * @return the {@code TotalRecordCount} of the query, without fetching any item
+     */
+    public int count(JellyfinQuery query) {
+        return fetchPage(query.count()).path("TotalRecordCount").asInt(0);
+    }
+
+    private JsonNode fetchPage(String path) {
+        HttpRequest.Builder builder = requestFactory.create(path).GET();
+        try {
+            HttpResponse<String> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException("Item lookup failed (HTTP " + response.statusCode() + ") for " + path);
+            }
+            return objectMapper.readTree(response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package net.dahanne.jmh;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A query of a Jellyfin list endpoint ({@code /Items}, {@code /Artists}, {@code /MusicGenres}), built from typed
+ * parameters instead of concatenated strings. Values are URL-encoded, and every query turns images and user data
+ * off and only asks for the {@link ItemField}s its caller declared reading, so that the server neither computes
+ * nor sends what is thrown away. Paging is left to {@link #page}, which {@link JellyfinItemPager} calls.
+ * <p>
+ * Queries are immutable: each method returns a new query, so constants can be refined per call.
+ */
+public final class JellyfinQuery {
+
+    private final String endpoint;
+    private final Set<ItemType> types;
+    private final Set<ItemField> fields;
+    // encoded values, in insertion order so that paths are stable
+    private final Map<String, String> parameters;
+
+    private JellyfinQuery(String endpoint, Set<ItemType> types, Set<ItemField> fields,
+                          Map<String, String> parameters) {
+        this.endpoint = endpoint;
+        this.types = types;
+        this.fields = fields;
+        this.parameters = parameters;
+    }
+
+    public static JellyfinQuery items() {
+        return of("/Items");
+    }
+
+    public static JellyfinQuery artists() {
+        return of("/Artists");
+    }
+
+    public static JellyfinQuery genres() {
+        return of("/MusicGenres");
+    }
+
+    private static JellyfinQuery of(String endpoint) {
+        return new JellyfinQuery(endpoint, EnumSet.noneOf(ItemType.class), EnumSet.noneOf(ItemField.class),
+                new LinkedHashMap<>());
+    }
+
+    public JellyfinQuery types(ItemType... types) {
+        Set<ItemType> copy = EnumSet.noneOf(ItemType.class);
+        copy.addAll(this.types);
+        copy.addAll(Arrays.asList(types));
+        return new JellyfinQuery(endpoint, copy, fields, parameters);
+    }
+
+    /**
+     * Declares the optional fields the caller reads; the others are not asked for.
+     */
+    public JellyfinQuery reading(ItemField... fields) {
+        Set<ItemField> copy = EnumSet.noneOf(ItemField.class);
+        copy.addAll(this.fields);
+        copy.addAll(Arrays.asList(fields));
+        return new JellyfinQuery(endpoint, types, copy, parameters);
+    }
+
+    public JellyfinQuery recursive() {
+        return with("Recursive", "true");
+    }
+
+    public JellyfinQuery sortedByName() {
+        return with("SortBy", "SortName").with("SortOrder", "Ascending");
+    }
+
+    public JellyfinQuery ids(Collection<String> ids) {
+        return withList("Ids", ids);
+    }
+
+    public JellyfinQuery genreIds(String... genreIds) {
+        return withList("GenreIds", Arrays.asList(genreIds));
+    }
+
+    public JellyfinQuery artistIds(String... artistIds) {
+        return withList("ArtistIds", Arrays.asList(artistIds));
+    }
+
+    public JellyfinQuery searchTerm(String term) {
+        return with("searchTerm", term);
+    }
+
+    /**
+     * Only items saved at or after {@code since}, an ISO-8601 date as found in {@code DateLastSaved}; every item
+     * when {@code null}.
+     */
+    public JellyfinQuery savedSince(String since) {
+        return since == null ? this : with("MinDateLastSaved", since);
+    }
+
+    /**
+     * @return the endpoint and its query string, without paging
+     */
+    public String path() {
+        return path(Map.of());
+    }
+
+    /**
+     * @param totalRecordCount whether the server should count every matching item, which only the first page
+     *                         of a walk needs
+     */
+    public String page(int startIndex, int limit, boolean totalRecordCount) {
+        Map<String, String> paging = new LinkedHashMap<>();
+        paging.put("StartIndex", Integer.toString(startIndex));
+        paging.put("Limit", Integer.toString(limit));
+        if (!totalRecordCount) {
+            paging.put("EnableTotalRecordCount", "false");
+        }
+        return path(paging);
+    }
+
+    /**
+     * @return the path of a request only answering the {@code TotalRecordCount} of the query
+     */
+    public String count() {
+        return path(Map.of("Limit", "0"));
+    }
+
+    /**
+     * @return what the query lists, for progress lines: its item types, or its endpoint
+     */
+    public String label() {
+        if (types.isEmpty()) {
+            return endpoint.substring(1);
+        }
+        return types.stream().map(ItemType::jellyfinName).collect(Collectors.joining(", "));
+    }
+
+    @Override
+    public String toString() {
+        return path();
+    }
+
+    private String path(Map<String, String> paging) {
+        Map<String, String> all = new LinkedHashMap<>();
+        if (!types.isEmpty()) {
+            all.put("IncludeItemTypes", types.stream().map(ItemType::jellyfinName).collect(Collectors.joining(",")));
+        }
+        all.putAll(parameters);
+        if (!fields.isEmpty()) {
+            all.put("Fields", fields.stream().map(ItemField::jellyfinName).collect(Collectors.joining(",")));
+        }
+        all.put("EnableImages", "false");
+        all.put("EnableUserData", "false");
+        all.putAll(paging);
+        return all.entrySet().stream()
+                .map(parameter -> parameter.getKey() + "=" + parameter.getValue())
+                .collect(Collectors.joining("&", endpoint + "?", ""));
+    }
+
+    private JellyfinQuery with(String name, String value) {
+        Map<String, String> copy = new LinkedHashMap<>(parameters);
+        copy.put(name, encode(value));
+        return new JellyfinQuery(endpoint, types, fields, copy);
+    }
+
+    private JellyfinQuery withList(String name, Collection<String> values) {
+        Map<String, String> copy = new LinkedHashMap<>(parameters);
+        // commas separate the values, only the values themselves are encoded
+        copy.put(name, values.stream().map(JellyfinQuery::encode).collect(Collectors.joining(",")));
+        return new JellyfinQuery(endpoint, types, fields, copy);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    public enum ItemType {
+        MUSIC_ALBUM("MusicAlbum"),
+        AUDIO("Audio"),
+        PLAYLIST("Playlist");
+
+        private final String jellyfinName;
+
+        ItemType(String jellyfinName) {
+            this.jellyfinName = jellyfinName;
+        }
+
+        public String jellyfinName() {
+            return jellyfinName;
+        }
+    }
+
+    /**
+     * The fields Jellyfin leaves out of list results unless asked for. The base ones ({@code Id}, {@code Name},
+     * {@code AlbumArtist(s)}, {@code Artists}, {@code ArtistItems}, {@code Album}, {@code RunTimeTicks}) always
+     * come back and need no declaration.
+     */
+    public enum ItemField {
+        /**
+         * {@code Genres} and {@code GenreItems}.
+         */
+        GENRES("Genres"),
+        PATH("Path"),
+        CHILD_COUNT("ChildCount"),
+        DATE_LAST_SAVED("DateLastSaved");
+
+        private final String jellyfinName;
+
+        ItemField(String jellyfinName) {
+            this.jellyfinName = jellyfinName;
+        }
+
+        public String jellyfinName() {
+            return jellyfinName;
+        }
+    }
+}
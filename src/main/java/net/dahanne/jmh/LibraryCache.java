@@ -0,0 +1,25 @@
+package net.dahanne.jmh;
+
+/**
+ * Library data kept in memory between commands while {@link LibraryChangeListener} is connected, that is
+ * between {@link #watchStarted()} and {@link #watchStopped()}; outside of that window, nothing tells a cache
+ * that the library changed, so it must not be used.
+ */
+public interface LibraryCache {
+
+    /**
+     * Changes are notified from now on, the cache may be filled.
+     */
+    void watchStarted();
+
+    /**
+     * Updates or drops the cached entries of the changed items. Called from a single thread, in notification
+     * order, while commands may read the cache.
+     */
+    void libraryChanged(LibraryChange change);
+
+    /**
+     * Changes may be missed from now on: drops the cache and stops filling it.
+     */
+    void watchStopped();
+}
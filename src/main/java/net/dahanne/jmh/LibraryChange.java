@@ -0,0 +1,32 @@
+package net.dahanne.jmh;
+
+import tools.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Items added, updated or removed, from one {@code LibraryChanged} notification.
+ *
+ * @param removed ids of the removed items; their type is unknown, as they can no longer be fetched
+ * @param items   the added and updated items, as {@code /Items} returns them, with {@code Type} and
+ *                {@code GenreItems}
+ */
+public record LibraryChange(Set<String> removed, List<JsonNode> items) {
+
+    /**
+     * @param type Jellyfin item type: {@code MusicArtist}, {@code MusicGenre}, {@code MusicAlbum}, {@code Audio}...
+     */
+    public List<JsonNode> itemsOfType(String type) {
+        List<JsonNode> ofType = new ArrayList<>();
+        for (JsonNode item : items) {
+            if (type.equals(textOrNull(item.path("Type")))) {
+                ofType.add(item);
+            }
+        }
+        return ofType;
+    }
+}
@@ -0,0 +1,287 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.config.JellyfinRequestFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Subscribes to the {@code LibraryChanged} notifications of Jellyfin's WebSocket when
+ * {@code jellyfin.live.enabled} is set, so that an interactive session keeps its {@link LibraryCache caches}
+ * from one command to the next instead of fetching the library again.
+ * <p>
+ * A notification only carries item ids: removed ids are handed to the caches as they are, added and updated
+ * items are fetched first, {@value #IDS_PER_REQUEST} ids per request, so that each cache can tell their type.
+ * Notifications are applied one at a time, in order. When the socket closes the caches are dropped, as
+ * changes may be missed until the listener has reconnected.
+ */
+@Component
+@Lazy(false)
+public class LibraryChangeListener implements SmartLifecycle {
+
+    private static final int IDS_PER_REQUEST = 100;
+    private static final JellyfinQuery CHANGED_ITEMS = JellyfinQuery.items().reading(JellyfinQuery.ItemField.GENRES);
+
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final JellyfinItemPager pager;
+    private final JellyfinProperties properties;
+    private final Supplier<List<LibraryCache>> cacheSupplier;
+    private volatile List<LibraryCache> caches = List.of();
+    private volatile ExecutorService notifications;
+    private volatile WebSocket socket;
+    private volatile boolean running;
+
+    public LibraryChangeListener(ObjectMapper objectMapper,
+                                 HttpClient jellyfinHttpClient,
+                                 JellyfinRequestFactory requestFactory,
+                                 JellyfinProperties properties,
+                                 ObjectProvider<LibraryCache> caches) {
+        // resolved on start only, so that a disabled listener does not build the services
+        this(objectMapper, jellyfinHttpClient, requestFactory, properties, () -> caches.orderedStream().toList());
+    }
+
+    LibraryChangeListener(ObjectMapper objectMapper,
+                          HttpClient jellyfinHttpClient,
+                          JellyfinRequestFactory requestFactory,
+                          JellyfinProperties properties,
+                          Supplier<List<LibraryCache>> caches) {
+        this.objectMapper = objectMapper;
+        this.httpClient = jellyfinHttpClient;
+        this.pager = new JellyfinItemPager(objectMapper, jellyfinHttpClient, requestFactory);
+        this.properties = properties;
+        this.cacheSupplier = caches;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return properties.getLive().isEnabled();
+    }
+
+    @Override
+    public void start() {
+        caches = cacheSupplier.get();
+        notifications = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("library-changes").factory());
+        running = true;
+        connect();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        WebSocket current = socket;
+        socket = null;
+        if (current != null) {
+            current.sendClose(WebSocket.NORMAL_CLOSURE, "");
+        }
+        caches.forEach(LibraryCache::watchStopped);
+        if (notifications != null) {
+            notifications.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return whether changes are being notified, that is whether the caches may be used
+     */
+    boolean isConnected() {
+        return socket != null;
+    }
+
+    private void connect() {
+        URI uri = socketUri();
+        httpClient.newWebSocketBuilder().buildAsync(uri, new Listener()).whenComplete((_, error) -> {
+            if (error != null) {
+                System.err.println("Library change listener could not connect to " + uri + ": " + error.getMessage());
+                reconnectLater();
+            }
+        });
+    }
+
+    private void reconnectLater() {
+        if (!running) {
+            return;
+        }
+        Duration delay = properties.getLive().getReconnectDelay();
+        Thread.ofVirtual().start(() -> {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (running) {
+                connect();
+            }
+        });
+    }
+
+    /**
+     * {@code jellyfin.live.socket-url}, or {@code /socket} on the server, authenticated like the other requests.
+     */
+    private URI socketUri() {
+        String url = properties.getLive().getSocketUrl();
+        if (url == null || url.isBlank()) {
+            String baseUrl = Objects.requireNonNull(properties.getBaseUrl(),
+                    "Property jellyfin.base-url must be configured.");
+            url = baseUrl.replaceFirst("^http", "ws").replaceAll("/+$", "") + "/socket";
+        }
+        String token = properties.getApiToken();
+        if (token != null && !token.isBlank()) {
+            url += (url.contains("?") ? "&" : "?") + "api_key=" + URLEncoder.encode(token, StandardCharsets.UTF_8);
+        }
+        return URI.create(url);
+    }
+
+    private void handle(WebSocket webSocket, String text) {
+        JsonNode message;
+        try {
+            message = objectMapper.readTree(text);
+        } catch (JacksonException e) {
+            System.err.println("Ignoring unreadable Jellyfin notification: " + e.getMessage());
+            return;
+        }
+        switch (String.valueOf(textOrNull(message.path("MessageType")))) {
+            case "LibraryChanged" -> dispatch(() -> apply(message.path("Data")));
+            // the server closes sockets that do not send a keep-alive within Data seconds
+            case "ForceKeepAlive" -> keepAlive(webSocket,
+                    Duration.ofSeconds(Math.max(2, message.path("Data").asInt(60))));
+            default -> {
+            }
+        }
+    }
+
+    private void keepAlive(WebSocket webSocket, Duration timeout) {
+        Thread.ofVirtual().start(() -> {
+            while (socket == webSocket) {
+                try {
+                    Thread.sleep(timeout.dividedBy(2));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (socket == webSocket) {
+                    webSocket.sendText("{\"MessageType\":\"KeepAlive\"}", true);
+                }
+            }
+        });
+    }
+
+    private void apply(JsonNode data) {
+        Set<String> removed = ids(data.path("ItemsRemoved"));
+        Set<String> changed = ids(data.path("ItemsAdded"));
+        changed.addAll(ids(data.path("ItemsUpdated")));
+        changed.removeAll(removed);
+        try {
+            List<JsonNode> items = new ArrayList<>(changed.size());
+            List<String> ids = List.copyOf(changed);
+            for (int from = 0; from < ids.size(); from += IDS_PER_REQUEST) {
+                List<String> chunk = ids.subList(from, Math.min(ids.size(), from + IDS_PER_REQUEST));
+                pager.forEachItem(CHANGED_ITEMS.ids(chunk), IDS_PER_REQUEST, items::add);
+            }
+            LibraryChange change = new LibraryChange(Set.copyOf(removed), List.copyOf(items));
+            caches.forEach(cache -> cache.libraryChanged(change));
+        } catch (RuntimeException e) {
+            // the caches cannot tell what changed, start them over
+            System.err.println("Could not fetch changed items, dropping caches: " + e.getMessage());
+            caches.forEach(LibraryCache::watchStopped);
+            if (socket != null) {
+                caches.forEach(LibraryCache::watchStarted);
+            }
+        }
+    }
+
+    private static Set<String> ids(JsonNode array) {
+        Set<String> ids = new LinkedHashSet<>();
+        array.forEach(id -> {
+            String value = textOrNull(id);
+            if (value != null && !value.isBlank()) {
+                ids.add(value);
+            }
+        });
+        return ids;
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            notifications.execute(task);
+        } catch (RejectedExecutionException e) {
+            // stopped
+        }
+    }
+
+    private void disconnected(WebSocket webSocket, String reason) {
+        if (socket != webSocket) {
+            return;
+        }
+        socket = null;
+        caches.forEach(LibraryCache::watchStopped);
+        if (running) {
+            System.err.println("Library change listener disconnected (" + reason + "), reconnecting");
+            reconnectLater();
+        }
+    }
+
+    private final class Listener implements WebSocket.Listener {
+
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            caches.forEach(LibraryCache::watchStarted);
+            socket = webSocket;
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            text.append(data);
+            if (last) {
+                String message = text.toString();
+                text.setLength(0);
+                handle(webSocket, message);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            disconnected(webSocket, "closed with status " + statusCode);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            disconnected(webSocket, error.getMessage());
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.config.JellyfinRequestFactory;
+import net.dahanne.jmh.report.ReportLayout;
+import net.dahanne.jmh.report.ReportWriter;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.net.http.HttpClient;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Lists the artists and albums that one Jellyfin server has and the other lacks, comparing names on their
+ * {@link NameNormalizer} keys (albums on their album artist and title).
+ * <p>
+ * Each comparison is a hash join: the server with fewer items is paged into a hash table of keys, then the
+ * other one is probed against it, each key being reported the first time it is not found; the build entries no
+ * item matched are reported last. The probe server is read while the table is built, its pages waiting in a
+ * queue of {@code 2 * parallelism} pages, so that both servers are read concurrently, each by up to
+ * {@code parallelism} page requests per join; memory grows with the smaller library and the difference only.
+ * Both servers are first asked for their sizes at once, then artists and albums are joined at the same time.
+ */
+@Component
+public class LibraryDiffer {
+
+    public static final ReportLayout REPORT = ReportLayout.of(
+            row -> row[3] + " lacks " + row[0] + ": " + row[1] + (row[2] == null ? "" : " - " + row[2])
+                    + " (" + row[5] + " on " + row[4] + ")",
+            "kind", "artist", "album", "missingOn", "presentOn", "id");
+
+    private static final JellyfinQuery ARTISTS = JellyfinQuery.artists().recursive();
+    private static final JellyfinQuery ALBUMS = JellyfinQuery.items().types(JellyfinQuery.ItemType.MUSIC_ALBUM)
+            .recursive();
+    private static final List<Entry> END = List.of();
+
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final JellyfinRequestFactory requestFactory;
+    private final NameNormalizer nameNormalizer;
+
+    public LibraryDiffer(ObjectMapper objectMapper,
+                         HttpClient jellyfinHttpClient,
+                         JellyfinRequestFactory requestFactory,
+                         NameNormalizer nameNormalizer) {
+        this.objectMapper = objectMapper;
+        this.httpClient = jellyfinHttpClient;
+        this.requestFactory = requestFactory;
+        this.nameNormalizer = nameNormalizer;
+    }
+
+    /**
+     * Reports every missing artist and album, in no particular order.
+     *
+     * @param left  {@value JellyfinRequestFactory#DEFAULT_SERVER} or a key of {@code jellyfin.servers}
+     * @param right another server name
+     */
+    public DiffResult diff(String left, String right, int parallelism, ReportWriter report) {
+        if (left.equals(right)) {
+            throw new IllegalArgumentException("Cannot compare server '" + left + "' with itself");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("--parallelism must be positive, got " + parallelism);
+        }
+        Server leftServer = server(left);
+        Server rightServer = server(right);
+        Side leftArtistSide;
+        Side rightArtistSide;
+        Side leftAlbumSide;
+        Side rightAlbumSide;
+        try (TaskScope scope = TaskScope.open()) {
+            Supplier<Integer> leftArtists = scope.fork(() -> leftServer.pager().count(ARTISTS));
+            Supplier<Integer> rightArtists = scope.fork(() -> rightServer.pager().count(ARTISTS));
+            Supplier<Integer> leftAlbums = scope.fork(() -> leftServer.pager().count(ALBUMS));
+            Supplier<Integer> rightAlbums = scope.fork(() -> rightServer.pager().count(ALBUMS));
+            scope.join();
+            leftArtistSide = new Side(leftServer, leftArtists.get());
+            rightArtistSide = new Side(rightServer, rightArtists.get());
+            leftAlbumSide = new Side(leftServer, leftAlbums.get());
+            rightAlbumSide = new Side(rightServer, rightAlbums.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        try (TaskScope scope = TaskScope.open()) {
+            Supplier<Join> artists = scope.fork(() -> join("artist", ARTISTS, this::artistEntry,
+                    leftArtistSide, rightArtistSide, parallelism, report));
+            Supplier<Join> albums = scope.fork(() -> join("album", ALBUMS, this::albumEntry,
+                    leftAlbumSide, rightAlbumSide, parallelism, report));
+            scope.join();
+            return new DiffResult(left, right, artists.get(), albums.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Join join(String kind, JellyfinQuery query, Function<JsonNode, Entry> entryOf, Side left, Side right,
+                      int parallelism, ReportWriter report) {
+        boolean buildLeft = left.count() <= right.count();
+        Server build = buildLeft ? left.server() : right.server();
+        Server probe = buildLeft ? right.server() : left.server();
+
+        Map<String, BuildEntry> table = new ConcurrentHashMap<>();
+        // keys only the probe side has, so that duplicates there are reported once; grows with the difference only
+        Set<String> missingOnBuild = new HashSet<>();
+        BlockingQueue<List<Entry>> probePages = new ArrayBlockingQueue<>(2 * parallelism);
+        try (TaskScope scope = TaskScope.open()) {
+            // the probe server is read while the table is built, the bounded queue holding it back past a few pages
+            scope.fork(() -> {
+                probe.pager().forEachPageConcurrently(query, JellyfinItemPager.DEFAULT_PAGE_SIZE, parallelism,
+                        items -> put(probePages, entries(items, entryOf)));
+                // on failure the scope cancels the prober instead
+                put(probePages, END);
+                return null;
+            });
+            scope.fork(() -> {
+                build.pager().forEachItemConcurrently(query, JellyfinItemPager.DEFAULT_PAGE_SIZE, parallelism,
+                        item -> {
+                            Entry entry = entryOf.apply(item);
+                            if (entry != null) {
+                                table.putIfAbsent(entry.key(), new BuildEntry(entry));
+                            }
+                        });
+                for (List<Entry> page = probePages.take(); page != END; page = probePages.take()) {
+                    for (Entry entry : page) {
+                        BuildEntry match = table.get(entry.key());
+                        if (match != null) {
+                            match.matched = true;
+                        } else if (missingOnBuild.add(entry.key())) {
+                            write(report, kind, entry, build.name(), probe.name());
+                        }
+                    }
+                }
+                return null;
+            });
+            scope.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        int missingOnProbe = 0;
+        for (BuildEntry entry : table.values()) {
+            if (!entry.matched) {
+                missingOnProbe++;
+                write(report, kind, entry.entry, probe.name(), build.name());
+            }
+        }
+        return buildLeft
+                ? new Join(left.count(), right.count(), missingOnBuild.size(), missingOnProbe)
+                : new Join(left.count(), right.count(), missingOnProbe, missingOnBuild.size());
+    }
+
+    private static List<Entry> entries(JsonNode items, Function<JsonNode, Entry> entryOf) {
+        List<Entry> entries = new ArrayList<>(items.size());
+        for (JsonNode item : items) {
+            Entry entry = entryOf.apply(item);
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private static void put(BlockingQueue<List<Entry>> pages, List<Entry> page) {
+        try {
+            pages.put(page);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void write(ReportWriter report, String kind, Entry entry, String missingOn, String presentOn) {
+        synchronized (report) {
+            report.row(kind, entry.artist(), entry.album(), missingOn, presentOn, entry.id());
+        }
+    }
+
+    private Entry artistEntry(JsonNode item) {
+        String name = textOrNull(item.path("Name"));
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        return new Entry(key(name), name, null, textOrNull(item.path("Id")));
+    }
+
+    private Entry albumEntry(JsonNode item) {
+        String name = textOrNull(item.path("Name"));
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        String artist = textOrNull(item.path("AlbumArtists").path(0).path("Name"));
+        if (artist == null) {
+            artist = textOrNull(item.path("AlbumArtist"));
+        }
+        return new Entry(key(artist) + '\u0000' + key(name), artist, name, textOrNull(item.path("Id")));
+    }
+
+    /**
+     * @return the normalized name, or the lower-cased name when nothing is left of it (non-Latin scripts)
+     */
+    private String key(String name) {
+        String key = nameNormalizer.normalize(name);
+        return key.isEmpty() && name != null ? name.strip().toLowerCase(Locale.ROOT) : key;
+    }
+
+    private Server server(String name) {
+        return new Server(name, new JellyfinItemPager(objectMapper, httpClient, requestFactory.forServer(name)));
+    }
+
+    /**
+     * @param missingOnLeft  items of the right server the left one lacks
+     * @param missingOnRight items of the left server the right one lacks
+     */
+    public record Join(int leftCount, int rightCount, int missingOnLeft, int missingOnRight) {
+    }
+
+    public record DiffResult(String left, String right, Join artists, Join albums) {
+    }
+
+    private record Server(String name, JellyfinItemPager pager) {
+    }
+
+    private record Side(Server server, int count) {
+    }
+
+    /**
+     * @param album {@code null} for artists
+     */
+    private record Entry(String key, String artist, String album, String id) {
+    }
+
+    private static final class BuildEntry {
+        private final Entry entry;
+        private volatile boolean matched;
+
+        BuildEntry(Entry entry) {
+            this.entry = entry;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package net.dahanne.jmh;
+
+import java.util.Arrays;
+
+/**
+ * Play count and total play time per (artist, track), case-insensitive, for histories of millions of entries.
+ * <p>
+ * Artist and track names are interned into int ids and packed into one {@code long} key; counts and play
+ * times sit in parallel primitive arrays of an open-addressing table. Adding an entry whose names were seen
+ * before allocates nothing. Entries are only sorted once, by {@link #forEachSorted}.
+ */
+public final class ListeningAggregator {
+
+    private static final long EMPTY = -1L;
+
+    private final NameInterner artists = new NameInterner();
+    private final NameInterner tracks = new NameInterner();
+    private long[] keys = newKeys(1024);
+    private int[] counts = new int[1024];
+    private long[] msPlayed = new long[1024];
+    private int size;
+
+    public void add(String artist, String track, long played) {
+        add(artist, track, 1, played);
+    }
+
+    /**
+     * Adds {@code count} plays totalling {@code played} milliseconds, e.g. when merging saved aggregates.
+     */
+    public void add(String artist, String track, int count, long played) {
+        long key = (long) artists.intern(artist) << 32 | tracks.intern(track);
+        int slot = slot(keys, key);
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            if (++size * 2 > keys.length) {
+                grow();
+                slot = slot(keys, key);
+            }
+        }
+        counts[slot] += count;
+        msPlayed[slot] += played;
+    }
+
+    /**
+     * @return number of distinct (artist, track) pairs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visits every (artist, track) pair in no particular order.
+     */
+    public void forEach(TrackVisitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            long key = keys[slot];
+            if (key != EMPTY) {
+                visitor.visit(artists.name((int) (key >>> 32)), tracks.name((int) key), counts[slot], msPlayed[slot]);
+            }
+        }
+    }
+
+    /**
+     * Visits every (artist, track) pair ordered by artist then track, ignoring case. Missing names are
+     * {@code null} and sort last.
+     */
+    public void forEachSorted(TrackVisitor visitor) {
+        int[] artistRanks = artists.ranks();
+        int[] trackRanks = tracks.ranks();
+        int[] artistByRank = inverse(artistRanks);
+        int[] trackByRank = inverse(trackRanks);
+
+        long[] order = new long[size];
+        int next = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                order[next++] = (long) artistRanks[(int) (key >>> 32)] << 32 | trackRanks[(int) key];
+            }
+        }
+        Arrays.sort(order);
+        for (long ranked : order) {
+            int artist = artistByRank[(int) (ranked >>> 32)];
+            int track = trackByRank[(int) ranked];
+            int slot = slot(keys, (long) artist << 32 | track);
+            visitor.visit(artists.name(artist), tracks.name(track), counts[slot], msPlayed[slot]);
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        long[] oldMsPlayed = msPlayed;
+        keys = newKeys(oldKeys.length * 2);
+        counts = new int[keys.length];
+        msPlayed = new long[keys.length];
+        for (int old = 0; old < oldKeys.length; old++) {
+            if (oldKeys[old] != EMPTY) {
+                int slot = slot(keys, oldKeys[old]);
+                keys[slot] = oldKeys[old];
+                counts[slot] = oldCounts[old];
+                msPlayed[slot] = oldMsPlayed[old];
+            }
+        }
+    }
+
+    /**
+     * @return the slot holding {@code key}, or the empty slot where it belongs
+     */
+    private static int slot(long[] keys, long key) {
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ hash >>> 32) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    private static int[] inverse(int[] ranks) {
+        int[] inverse = new int[ranks.length];
+        for (int id = 0; id < ranks.length; id++) {
+            inverse[ranks[id]] = id;
+        }
+        return inverse;
+    }
+
+    @FunctionalInterface
+    public interface TrackVisitor {
+        void visit(String artist, String track, int count, long msPlayed);
+    }
+}
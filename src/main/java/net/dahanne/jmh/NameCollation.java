@@ -0,0 +1,90 @@
+package net.dahanne.jmh;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * The order of names in every report: case-insensitive but aware of diacritics, so that "Édith" sorts next to
+ * "Edith" instead of after "Zz" as with {@link String#CASE_INSENSITIVE_ORDER}.
+ * <p>
+ * A {@link Collator} of secondary strength (accents count, case does not) turns each name into a sort key once,
+ * and comparing two names is then an unsigned byte array comparison. Keys are memoized in a small direct-mapped
+ * cache, as reports compare the same names over and over; {@link #sort} computes one key per element up front,
+ * which large sorts should prefer over {@link #ORDER}.
+ * <p>
+ * Static rather than a bean, since most of its callers are static comparators.
+ */
+public final class NameCollation {
+
+    /**
+     * Orders non-null names by their collation keys.
+     */
+    public static final Comparator<String> ORDER = NameCollation::compare;
+
+    private static final Comparator<byte[]> BY_KEY = Comparator.nullsLast(Arrays::compareUnsigned);
+    private static final int CACHE_SIZE = 8192;
+
+    // RuleBasedCollator.getCollationKey is synchronized, the cache spares most calls
+    private static final Collator COLLATOR = collator();
+    private static final Memo[] CACHE = new Memo[CACHE_SIZE];
+
+    private NameCollation() {
+    }
+
+    public static int compare(String left, String right) {
+        return Arrays.compareUnsigned(key(left), key(right));
+    }
+
+    /**
+     * @return the sort key of {@code name}, to be compared with {@link Arrays#compareUnsigned(byte[], byte[])}
+     */
+    public static byte[] key(String name) {
+        int slot = name.hashCode() & (CACHE_SIZE - 1);
+        Memo memo = CACHE[slot];
+        if (memo != null && memo.name().equals(name)) {
+            return memo.key();
+        }
+        byte[] key = COLLATOR.getCollationKey(name).toByteArray();
+        // racy but safe: a memo is immutable, a lost write only costs a key computation
+        CACHE[slot] = new Memo(name, key);
+        return key;
+    }
+
+    /**
+     * Sorts {@code items} by the collation key of their name, computed once per item; items without a name come
+     * last. The sort is stable.
+     */
+    public static <T> void sort(List<T> items, Function<? super T, String> name) {
+        List<Keyed<T>> keyed = new ArrayList<>(items.size());
+        for (T item : items) {
+            String itemName = name.apply(item);
+            keyed.add(new Keyed<>(itemName == null ? null : key(itemName), item));
+        }
+        keyed.sort(Comparator.comparing(Keyed::key, BY_KEY));
+        ListIterator<T> sorted = items.listIterator();
+        for (Keyed<T> item : keyed) {
+            sorted.next();
+            sorted.set(item.item());
+        }
+    }
+
+    private static Collator collator() {
+        Collator collator = Collator.getInstance(Locale.ROOT);
+        collator.setStrength(Collator.SECONDARY);
+        // "é" and "e" + combining acute accent get the same key
+        collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        return collator;
+    }
+
+    private record Memo(String name, byte[] key) {
+    }
+
+    private record Keyed<T>(byte[] key, T item) {
+    }
+}
@@ -0,0 +1,97 @@
+package net.dahanne.jmh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps names to dense int ids, ignoring case, keeping the first spelling seen. Lookups hash and compare the
+ * chars in place ({@link NameNormalizer#hashIgnoreCase}, {@link NameNormalizer#equalsIgnoreCase}), so
+ * interning a name that is already known allocates nothing.
+ * <p>
+ * Id {@code 0} stands for {@code null}; real names get ids from {@code 1}.
+ */
+public final class NameInterner {
+
+    private String[] names = new String[64];
+    private int[] hashes = new int[64];
+    private int[] slots = new int[128];
+    private int size = 1;
+
+    public int intern(String name) {
+        if (name == null) {
+            return 0;
+        }
+        int hash = hash(name);
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        for (int id = slots[slot]; id != 0; id = slots[slot]) {
+            if (hashes[id] == hash && NameNormalizer.equalsIgnoreCase(names[id], name)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        names[id] = name;
+        hashes[id] = hash;
+        slots[slot] = id;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * @return the name of {@code id}, {@code null} for id {@code 0}
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return number of ids handed out, including {@code 0}
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return {@code rank[id]}, the position of each name in {@link NameCollation} order, {@code null} last
+     */
+    public int[] ranks() {
+        List<Integer> ids = new ArrayList<>(size);
+        for (int id = 0; id < size; id++) {
+            ids.add(id);
+        }
+        // one collation key per name rather than two per comparison
+        NameCollation.sort(ids, this::name);
+        int[] ranks = new int[size];
+        for (int rank = 0; rank < size; rank++) {
+            ranks[ids.get(rank)] = rank;
+        }
+        return ranks;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 1; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id;
+        }
+    }
+
+    private static int hash(String name) {
+        long hash = NameNormalizer.hashIgnoreCase(0xcbf29ce484222325L, name);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return (int) (hash ^ hash >>> 33);
+    }
+}
@@ -0,0 +1,177 @@
+package net.dahanne.jmh;
+
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces artist names to a comparison key: lower case, diacritics removed, only {@code [a-z0-9]} kept, so
+ * that "Beyoncé" and "beyonce" or "Gang Starr" and "Gangstarr" share a key.
+ * <p>
+ * Names made of {@code [a-z0-9]} only are returned as-is. Other Latin names go through a per-char fold table
+ * built once from the NFD reference below, so they need neither {@link Normalizer} nor regular expressions.
+ * Anything outside the table (other scripts, surrogates) takes the NFD path. Results are memoized in a small
+ * direct-mapped cache, as history exports repeat the same names over and over.
+ */
+@Component
+public class NameNormalizer {
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}");
+    private static final Pattern NOT_ALPHANUMERIC = Pattern.compile("[^a-z0-9]");
+
+    // covers Latin-1, Latin Extended-A/B, IPA, Greek, Cyrillic ... up to Latin Extended Additional (Vietnamese)
+    private static final int TABLE_SIZE = 0x1F00;
+    private static final char DROP = 0;
+    private static final char SLOW = 0xFFFF;
+    private static final char[] FOLD = buildFoldTable();
+
+    private static final int CACHE_SIZE = 4096;
+
+    private final Memo[] cache = new Memo[CACHE_SIZE];
+
+    /**
+     * @return the comparison key of {@code value}, {@code ""} for {@code null}
+     */
+    public String normalize(String value) {
+        if (value == null || value.isEmpty()) {
+            return "";
+        }
+        if (isKey(value)) {
+            return value;
+        }
+        int slot = value.hashCode() & (CACHE_SIZE - 1);
+        Memo memo = cache[slot];
+        if (memo != null && memo.name().equals(value)) {
+            return memo.key();
+        }
+        String key = fold(value);
+        cache[slot] = new Memo(value, key);
+        return key;
+    }
+
+    /**
+     * Compares the keys of two names without building them, e.g. {@code sameName("Beyoncé", "BEYONCE")}.
+     */
+    public boolean sameName(String left, String right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        int i = 0;
+        int j = 0;
+        while (true) {
+            char a = 0;
+            while (i < left.length() && (a = foldChar(left.charAt(i))) == DROP) {
+                i++;
+            }
+            char b = 0;
+            while (j < right.length() && (b = foldChar(right.charAt(j))) == DROP) {
+                j++;
+            }
+            if (a == SLOW || b == SLOW) {
+                return normalize(left).equals(normalize(right));
+            }
+            boolean leftDone = i >= left.length();
+            boolean rightDone = j >= right.length();
+            if (leftDone || rightDone) {
+                return leftDone && rightDone;
+            }
+            if (a != b) {
+                return false;
+            }
+            i++;
+            j++;
+        }
+    }
+
+    /**
+     * Case-insensitive equality, char by char, without the two lower-cased copies that
+     * {@code left.toLowerCase().equals(right.toLowerCase())} allocates. {@code null} only equals {@code null}.
+     */
+    public static boolean equalsIgnoreCase(String left, String right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        if (left.length() != right.length()) {
+            return false;
+        }
+        for (int i = 0; i < left.length(); i++) {
+            char a = left.charAt(i);
+            char b = right.charAt(i);
+            if (a != b && Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Continues an FNV-1a hash over the lower-cased chars of {@code value}, consistent with
+     * {@link #equalsIgnoreCase}.
+     */
+    public static long hashIgnoreCase(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ Character.toLowerCase(value.charAt(i))) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    private static boolean isKey(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < 'a' || c > 'z') && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String fold(String value) {
+        char[] key = new char[value.length()];
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = foldChar(value.charAt(i));
+            if (c == SLOW) {
+                return reference(value);
+            }
+            if (c != DROP) {
+                key[length++] = c;
+            }
+        }
+        return new String(key, 0, length);
+    }
+
+    private static char foldChar(char c) {
+        return c < TABLE_SIZE ? FOLD[c] : SLOW;
+    }
+
+    /**
+     * The original normalization, still used for characters outside the fold table.
+     */
+    static String reference(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        String withoutDiacritics = MARKS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+        return NOT_ALPHANUMERIC.matcher(withoutDiacritics).replaceAll("");
+    }
+
+    private static char[] buildFoldTable() {
+        char[] table = new char[TABLE_SIZE];
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            if (Character.isSurrogate(c)) {
+                table[c] = SLOW;
+                continue;
+            }
+            String folded = reference(String.valueOf(c));
+            table[c] = switch (folded.length()) {
+                case 0 -> DROP;
+                case 1 -> folded.charAt(0);
+                default -> SLOW;
+            };
+        }
+        return table;
+    }
+
+    private record Memo(String name, String key) {
+    }
+}
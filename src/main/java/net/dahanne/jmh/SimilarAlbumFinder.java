@@ -0,0 +1,302 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.report.ReportLayout;
+import net.dahanne.jmh.snapshot.LibrarySnapshot;
+import net.dahanne.jmh.snapshot.LibrarySnapshotStore;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Finds albums of the same album artist that are likely the same release: "X", "X (Deluxe Edition)",
+ * "X [Remastered 2015]", or titles differing by a typo.
+ * <p>
+ * Albums are partitioned by album artist, so titles are only ever compared within one artist's discography.
+ * In each partition, titles lose their edition suffixes and are normalized, then an inverted index of their
+ * 3-char shingles yields the pairs sharing enough shingles (Jaccard index of at least
+ * {@value #MIN_TITLE_SIMILARITY}); the pairs are finally scored on their track counts and durations.
+ */
+@Component
+public class SimilarAlbumFinder {
+
+    public static final ReportLayout REPORT = ReportLayout.of(
+            row -> row[0] + ": " + row[1] + " (" + row[5] + " tracks, " + minutes((long) row[7]) + ") <> "
+                    + row[2] + " (" + row[6] + " tracks, " + minutes((long) row[8]) + ") " + row[3] + " " + row[4],
+            "artist", "first", "second", "score", "kind", "firstTracks", "secondTracks", "firstSeconds",
+            "secondSeconds", "firstId", "secondId");
+
+    static final double MIN_TITLE_SIMILARITY = 0.6;
+    private static final int SHINGLE = 3;
+    private static final long TICKS_PER_SECOND = 10_000_000L;
+    private static final Pattern EDITION = Pattern.compile("\\b(?:\\d{4} )?(?:deluxe|re-?master(?:ed)?|edition"
+            + "|expanded|anniversary|bonus|special|collector'?s|re-?issue|legacy|super|version|mono|stereo)\\b");
+
+    private final JellyfinItemPager pager;
+    private final LibrarySnapshotStore snapshotStore;
+    private final NameNormalizer nameNormalizer;
+
+    public SimilarAlbumFinder(JellyfinItemPager pager,
+                              LibrarySnapshotStore snapshotStore,
+                              NameNormalizer nameNormalizer) {
+        this.pager = pager;
+        this.snapshotStore = snapshotStore;
+        this.nameNormalizer = nameNormalizer;
+    }
+
+    public List<SimilarAlbumPair> listSimilarAlbums() {
+        List<Album> albums = snapshotStore.enabled() ? albumsFromSnapshot(snapshotStore.load()) : albumsFromServer();
+        return findSimilarAlbums(albums);
+    }
+
+    /**
+     * @return pairs sorted by descending score, then by artist and titles
+     */
+    List<SimilarAlbumPair> findSimilarAlbums(List<Album> albums) {
+        Map<String, List<Album>> byArtist = new HashMap<>();
+        for (Album album : albums) {
+            Set<String> artistKeys = new LinkedHashSet<>();
+            for (String artist : album.artists()) {
+                String key = nameNormalizer.normalize(artist);
+                if (!key.isEmpty() && artistKeys.add(key)) {
+                    byArtist.computeIfAbsent(key, _ -> new ArrayList<>()).add(album);
+                }
+            }
+        }
+
+        List<SimilarAlbumPair> pairs = new ArrayList<>();
+        // an album credited to two artists is in both partitions
+        Set<String> reported = new HashSet<>();
+        for (List<Album> partition : byArtist.values()) {
+            if (partition.size() > 1) {
+                comparePartition(partition, pairs, reported);
+            }
+        }
+        pairs.sort(Comparator.comparingDouble(SimilarAlbumPair::score).reversed()
+                .thenComparing(SimilarAlbumPair::artist, NameCollation.ORDER)
+                .thenComparing(pair -> pair.first().name(), NameCollation.ORDER)
+                .thenComparing(pair -> pair.second().name(), NameCollation.ORDER));
+        return pairs;
+    }
+
+    private void comparePartition(List<Album> partition, List<SimilarAlbumPair> pairs, Set<String> reported) {
+        int size = partition.size();
+        String[] titles = new String[size];
+        long[][] shingles = new long[size][];
+        for (int i = 0; i < size; i++) {
+            titles[i] = baseTitle(partition.get(i).name());
+            shingles[i] = shingles(titles[i]);
+        }
+
+        // postings only hold the albums before the current one, so each pair is found once
+        Map<Long, IntList> postings = new HashMap<>();
+        int[] shared = new int[size];
+        IntList touched = new IntList();
+        for (int i = 0; i < size; i++) {
+            if (titles[i].isEmpty()) {
+                continue;
+            }
+            for (long shingle : shingles[i]) {
+                IntList posting = postings.get(shingle);
+                if (posting == null) {
+                    continue;
+                }
+                for (int p = 0; p < posting.size(); p++) {
+                    int j = posting.get(p);
+                    if (shared[j]++ == 0) {
+                        touched.add(j);
+                    }
+                }
+            }
+            for (int t = 0; t < touched.size(); t++) {
+                int j = touched.get(t);
+                double similarity = titles[i].equals(titles[j])
+                        ? 1
+                        : (double) shared[j] / (shingles[i].length + shingles[j].length - shared[j]);
+                shared[j] = 0;
+                if (similarity >= MIN_TITLE_SIMILARITY) {
+                    Album first = partition.get(j);
+                    Album second = partition.get(i);
+                    if (reported.add(first.id() + '\u0000' + second.id())) {
+                        pairs.add(pair(first, second, titles[i].equals(titles[j]), similarity));
+                    }
+                }
+            }
+            touched.clear();
+            for (long shingle : shingles[i]) {
+                postings.computeIfAbsent(shingle, _ -> new IntList()).add(i);
+            }
+        }
+    }
+
+    /**
+     * Scores a candidate on its title similarity (70%) and on how close its track counts and durations are
+     * (30%), and tells apart:
+     * <ul>
+     *     <li>{@link Kind#DUPLICATE}: same track count and durations within 2%, whatever the titles;</li>
+     *     <li>{@link Kind#EDITION}: same title once edition suffixes are removed;</li>
+     *     <li>{@link Kind#SIMILAR_TITLE}: close titles only.</li>
+     * </ul>
+     */
+    private SimilarAlbumPair pair(Album first, Album second, boolean sameBaseTitle, double titleSimilarity) {
+        double tracks = ratio(first.trackCount(), second.trackCount());
+        double duration = ratio(first.seconds(), second.seconds());
+        double content = first.seconds() > 0 && second.seconds() > 0 ? (tracks + duration) / 2 : tracks;
+        double score = Math.round((0.7 * titleSimilarity + 0.3 * content) * 100) / 100.0;
+        Kind kind = first.trackCount() > 0 && first.trackCount() == second.trackCount() && duration >= 0.98
+                ? Kind.DUPLICATE
+                : sameBaseTitle ? Kind.EDITION : Kind.SIMILAR_TITLE;
+        boolean ordered = NameCollation.compare(first.name(), second.name()) <= 0;
+        return new SimilarAlbumPair(first.artists().getFirst(), ordered ? first : second, ordered ? second : first,
+                score, kind);
+    }
+
+    private static double ratio(long left, long right) {
+        long max = Math.max(left, right);
+        return max == 0 ? 0 : (double) Math.min(left, right) / max;
+    }
+
+    /**
+     * @return the normalized title without edition suffixes ("X (Deluxe Edition)", "X - 2015 Remaster")
+     */
+    String baseTitle(String name) {
+        if (name == null) {
+            return "";
+        }
+        String base = nameNormalizer.normalize(TitleCanonicalizer.strip(name.toLowerCase(Locale.ROOT), EDITION));
+        return base.isEmpty() ? nameNormalizer.normalize(name) : base;
+    }
+
+    /**
+     * @return the distinct 3-char substrings of {@code title} packed into longs, or the title itself when
+     * shorter
+     */
+    private static long[] shingles(String title) {
+        if (title.length() <= SHINGLE) {
+            return new long[]{pack(title, 0, title.length())};
+        }
+        long[] shingles = new long[title.length() - SHINGLE + 1];
+        for (int start = 0; start < shingles.length; start++) {
+            shingles[start] = pack(title, start, start + SHINGLE);
+        }
+        Arrays.sort(shingles);
+        int distinct = 0;
+        for (int i = 0; i < shingles.length; i++) {
+            if (i == 0 || shingles[i] != shingles[i - 1]) {
+                shingles[distinct++] = shingles[i];
+            }
+        }
+        return Arrays.copyOf(shingles, distinct);
+    }
+
+    private static long pack(String title, int start, int end) {
+        long packed = end - start;
+        for (int i = start; i < end; i++) {
+            packed = packed << 16 | title.charAt(i);
+        }
+        return packed;
+    }
+
+    private List<Album> albumsFromServer() {
+        List<Album> albums = new ArrayList<>();
+        pager.forEachItem(JellyfinQuery.items().types(JellyfinQuery.ItemType.MUSIC_ALBUM).recursive()
+                        .reading(JellyfinQuery.ItemField.CHILD_COUNT), JellyfinItemPager.DEFAULT_PAGE_SIZE,
+                item -> albums.add(new Album(textOrNull(item.path("Id")), textOrNull(item.path("Name")),
+                        albumArtists(item), item.path("ChildCount").asInt(0),
+                        item.path("RunTimeTicks").asLong(0) / TICKS_PER_SECOND)));
+        return albums;
+    }
+
+    private static List<String> albumArtists(JsonNode item) {
+        List<String> artists = new ArrayList<>();
+        item.path("AlbumArtists").forEach(artist -> {
+            String name = textOrNull(artist.path("Name"));
+            if (name != null) {
+                artists.add(name);
+            }
+        });
+        String albumArtist = textOrNull(item.path("AlbumArtist"));
+        if (artists.isEmpty() && albumArtist != null) {
+            artists.add(albumArtist);
+        }
+        return artists;
+    }
+
+    private static List<Album> albumsFromSnapshot(LibrarySnapshot snapshot) {
+        int[] trackCounts = new int[snapshot.albumCount()];
+        long[] ticks = new long[snapshot.albumCount()];
+        for (int track = 0; track < snapshot.trackCount(); track++) {
+            int album = snapshot.trackAlbum(track);
+            if (album >= 0) {
+                trackCounts[album]++;
+                ticks[album] += snapshot.trackRunTimeTicks(track);
+            }
+        }
+        List<Album> albums = new ArrayList<>(snapshot.albumCount());
+        for (int album = 0; album < snapshot.albumCount(); album++) {
+            List<String> artists = new ArrayList<>(snapshot.albumArtistCount(album));
+            for (int i = 0; i < snapshot.albumArtistCount(album); i++) {
+                artists.add(snapshot.artistName(snapshot.albumArtist(album, i)));
+            }
+            albums.add(new Album(snapshot.albumId(album), snapshot.albumName(album), artists, trackCounts[album],
+                    ticks[album] / TICKS_PER_SECOND));
+        }
+        return albums;
+    }
+
+    private static String minutes(long seconds) {
+        return seconds / 60 + ":" + String.format("%02d", seconds % 60);
+    }
+
+    public enum Kind {
+        DUPLICATE, EDITION, SIMILAR_TITLE
+    }
+
+    public record Album(String id, String name, List<String> artists, int trackCount, long seconds) {
+    }
+
+    /**
+     * @param score between 0 and 1, rounded to two decimals
+     */
+    public record SimilarAlbumPair(String artist, Album first, Album second, double score, Kind kind) {
+    }
+
+    /**
+     * Growable list of album indexes.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
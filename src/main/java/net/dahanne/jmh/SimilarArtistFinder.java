@@ -1,111 +1,247 @@
 package net.dahanne.jmh;
 
 import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.report.ReportLayout;
 import org.springframework.stereotype.Component;
 
-import java.text.Normalizer;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Component
 public class SimilarArtistFinder {
 
+    private static final double DEFAULT_MIN_SCORE = 0.4;
+    private static final int DEFAULT_MAX_PAIRS_IN_MEMORY = 250_000;
+
+    // case-sensitive tie breaks keep equal pairs adjacent, so that ExternalSorter can drop the duplicates
+    private static final Comparator<SimilarArtistPair> ORDER = Comparator
+            .comparingDouble(SimilarArtistPair::score).reversed()
+            .thenComparing(SimilarArtistPair::first, NameCollation.ORDER)
+            .thenComparing(SimilarArtistPair::second, NameCollation.ORDER)
+            .thenComparing(SimilarArtistPair::first)
+            .thenComparing(SimilarArtistPair::second);
+
+    private static final ExternalSorter.Codec<SimilarArtistPair> CODEC = new ExternalSorter.Codec<>() {
+        @Override
+        public void write(DataOutputStream out, SimilarArtistPair pair) throws IOException {
+            out.writeUTF(pair.first());
+            out.writeUTF(pair.second());
+            out.writeDouble(pair.score());
+        }
+
+        @Override
+        public SimilarArtistPair read(DataInputStream in) throws IOException {
+            return new SimilarArtistPair(in.readUTF(), in.readUTF(), in.readDouble());
+        }
+    };
+
+    public static final ReportLayout REPORT = ReportLayout.of(row -> row[0] + " <> " + row[1] + " (" + row[2] + ")",
+            "first", "second", "score");
+
     private final JellyfinArtistService artistService;
+    private final NameNormalizer nameNormalizer;
     private final int minCommonLength;
+    private final double minScore;
+    private final int maxPairsInMemory;
 
     public SimilarArtistFinder(JellyfinArtistService artistService,
+                               NameNormalizer nameNormalizer,
                                JellyfinProperties properties) {
         this.artistService = artistService;
+        this.nameNormalizer = nameNormalizer;
         int configured = properties.getSimilarArtist().getMinCommonLength();
         if (configured <= 0) {
             configured = 5;
         }
         this.minCommonLength = configured;
+        double configuredScore = properties.getSimilarArtist().getMinScore();
+        this.minScore = configuredScore > 0 && configuredScore <= 1 ? configuredScore : DEFAULT_MIN_SCORE;
+        int configuredPairs = properties.getSimilarArtist().getMaxPairsInMemory();
+        this.maxPairsInMemory = configuredPairs > 0 ? configuredPairs : DEFAULT_MAX_PAIRS_IN_MEMORY;
     }
 
-    public List<SimilarArtistPair> listSimilarArtists() {
+    public void listSimilarArtists(Consumer<SimilarArtistPair> consumer) {
         List<JellyfinArtistService.Artist> artists = artistService.fetchArtists();
-        return findSimilarArtists(artists);
+        findSimilarArtists(artists, consumer);
     }
 
+    /**
+     * @return pairs sorted by descending score, then by name
+     * @see #findSimilarArtists(List, Consumer)
+     */
     List<SimilarArtistPair> findSimilarArtists(List<JellyfinArtistService.Artist> artists) {
+        List<SimilarArtistPair> pairs = new ArrayList<>();
+        findSimilarArtists(artists, pairs::add);
+        return pairs;
+    }
+
+    /**
+     * Candidates are the pairs sharing at least one {@code minCommonLength} substring of their normalized names,
+     * found through an inverted index of those substrings instead of comparing every pair. Each candidate is then
+     * scored and kept when its score reaches {@code jellyfin.similar-artist.min-score}.
+     * <p>
+     * Kept pairs go through an {@link ExternalSorter}: past {@code jellyfin.similar-artist.max-pairs-in-memory}
+     * pairs they are written to sorted temporary files, merged back when handed to {@code consumer}, so loose
+     * settings on a large library cost disk space instead of heap.
+     *
+     * @param consumer receives distinct pairs by descending score, then by name
+     */
+    void findSimilarArtists(List<JellyfinArtistService.Artist> artists, Consumer<SimilarArtistPair> consumer) {
         List<NormalizedArtist> normalized = new ArrayList<>();
         for (JellyfinArtistService.Artist artist : artists) {
-            String normalizedName = normalize(artist.name());
-            Set<String> tokens = tokens(normalizedName);
-            normalized.add(new NormalizedArtist(artist.name(), normalizedName, tokens));
+            String normalizedName = nameNormalizer.normalize(artist.name());
+            if (normalizedName.length() >= minCommonLength) {
+                normalized.add(new NormalizedArtist(artist.name(), normalizedName, words(artist.name())));
+            }
         }
 
-        List<SimilarArtistPair> pairs = new ArrayList<>();
+        Map<String, IntList> postings = new HashMap<>();
         for (int i = 0; i < normalized.size(); i++) {
-            NormalizedArtist left = normalized.get(i);
-            if (left.tokens().isEmpty()) {
-                continue;
-            }
-            for (int j = i + 1; j < normalized.size(); j++) {
-                NormalizedArtist right = normalized.get(j);
-                if (right.tokens().isEmpty()) {
-                    continue;
+            String name = normalized.get(i).normalizedName();
+            for (int start = 0; start <= name.length() - minCommonLength; start++) {
+                IntList posting = postings.computeIfAbsent(name.substring(start, start + minCommonLength),
+                        _ -> new IntList());
+                if (posting.isEmpty() || posting.last() != i) {
+                    posting.add(i);
                 }
-                if (hasCommonTokens(left.tokens(), right.tokens())) {
-                    String first = left.originalName();
-                    String second = right.originalName();
-                    if (first.equalsIgnoreCase(second)) {
+            }
+        }
+
+        try (ExternalSorter<SimilarArtistPair> pairs = new ExternalSorter<>(ORDER, maxPairsInMemory, CODEC)) {
+            collectPairs(normalized, postings, pairs);
+            pairs.drain(consumer);
+        }
+    }
+
+    private void collectPairs(List<NormalizedArtist> normalized, Map<String, IntList> postings,
+                              ExternalSorter<SimilarArtistPair> pairs) {
+        int[] seenBy = new int[normalized.size()];
+        Arrays.fill(seenBy, -1);
+        for (int i = 0; i < normalized.size(); i++) {
+            NormalizedArtist left = normalized.get(i);
+            EditDistance.Pattern pattern = null;
+            String name = left.normalizedName();
+            for (int start = 0; start <= name.length() - minCommonLength; start++) {
+                IntList posting = postings.get(name.substring(start, start + minCommonLength));
+                // postings are sorted, only look at artists after this one
+                for (int p = posting.indexAfter(i); p < posting.size(); p++) {
+                    int j = posting.get(p);
+                    if (seenBy[j] == i) {
                         continue;
                     }
-                    if (first.compareToIgnoreCase(second) > 0) {
-                        String tmp = first;
-                        first = second;
-                        second = tmp;
+                    seenBy[j] = i;
+                    NormalizedArtist right = normalized.get(j);
+                    if (NameNormalizer.equalsIgnoreCase(left.originalName(), right.originalName())) {
+                        continue;
+                    }
+                    if (pattern == null) {
+                        pattern = EditDistance.compile(name);
                     }
-                    SimilarArtistPair pair = new SimilarArtistPair(first, second);
-                    if (!pairs.contains(pair)) {
-                        pairs.add(pair);
+                    double score = score(pattern, left, right);
+                    if (score >= minScore) {
+                        pairs.add(pair(left.originalName(), right.originalName(), score));
                     }
                 }
             }
         }
+    }
 
-        pairs.sort(Comparator
-                .comparing(SimilarArtistPair::first, String.CASE_INSENSITIVE_ORDER)
-                .thenComparing(SimilarArtistPair::second, String.CASE_INSENSITIVE_ORDER));
-        return pairs;
+    /**
+     * The best of two similarities, so that both typos and shared words rank high:
+     * <ul>
+     *     <li>{@code 1 - distance / longest} on the normalized names, with the Damerau distance counting a
+     *     swap of adjacent letters as one edit ("Gang Starr" / "Gangstarr" is 1.0, "Radiohead" / "Radioheed"
+     *     0.89);</li>
+     *     <li>the Jaccard index of the word sets ("Beyonce" / "Beyoncé Knowles" is 0.5, "The Beatles" /
+     *     "Beatles Tribute Band" 0.25).</li>
+     * </ul>
+     */
+    private double score(EditDistance.Pattern pattern, NormalizedArtist left, NormalizedArtist right) {
+        double words = jaccard(left.words(), right.words());
+        int longest = Math.max(left.normalizedName().length(), right.normalizedName().length());
+        // distances above this bound cannot beat the cutoff or the word similarity, no need to finish them
+        int bound = (int) Math.floor((1 - Math.max(minScore, words)) * longest);
+        int distance = pattern.damerau(right.normalizedName(), bound);
+        double edit = distance > bound ? 0 : 1 - (double) distance / longest;
+        return Math.max(edit, words);
     }
 
-    private boolean hasCommonTokens(Set<String> left, Set<String> right) {
-        Set<String> smaller = left.size() <= right.size() ? left : right;
-        Set<String> larger = smaller == left ? right : left;
-        for (String token : smaller) {
-            if (larger.contains(token)) {
-                return true;
+    private static double jaccard(Set<String> left, Set<String> right) {
+        if (left.isEmpty() || right.isEmpty()) {
+            return 0;
+        }
+        int common = 0;
+        for (String word : left) {
+            if (right.contains(word)) {
+                common++;
             }
         }
-        return false;
+        return (double) common / (left.size() + right.size() - common);
     }
 
-    private String normalize(String value) {
-        if (value == null) {
-            return "";
+    private Set<String> words(String name) {
+        Set<String> words = new HashSet<>();
+        for (String word : name.split("[\\s\\-_/&,.]+")) {
+            String normalizedWord = nameNormalizer.normalize(word);
+            if (!normalizedWord.isEmpty()) {
+                words.add(normalizedWord);
+            }
         }
-        String lower = value.toLowerCase(Locale.ROOT);
-        String normalized = Normalizer.normalize(lower, Normalizer.Form.NFD)
-                .replaceAll("\\p{M}", "");
-        return normalized.replaceAll("[^a-z0-9]", "");
+        return words;
     }
 
-    private Set<String> tokens(String normalized) {
-        Set<String> tokens = new HashSet<>();
-        if (normalized.length() < minCommonLength) {
-            return tokens;
-        }
-        for (int i = 0; i <= normalized.length() - minCommonLength; i++) {
-            tokens.add(normalized.substring(i, i + minCommonLength));
-        }
-        return tokens;
+    private static SimilarArtistPair pair(String first, String second, double score) {
+        double rounded = Math.round(score * 100) / 100.0;
+        return NameCollation.compare(first, second) <= 0
+                ? new SimilarArtistPair(first, second, rounded)
+                : new SimilarArtistPair(second, first, rounded);
+    }
+
+    private record NormalizedArtist(String originalName, String normalizedName, Set<String> words) {
     }
 
-    private record NormalizedArtist(String originalName, String normalizedName, Set<String> tokens) {
+    /**
+     * @param score between 0 and 1, rounded to two decimals
+     */
+    public record SimilarArtistPair(String first, String second, double score) {
     }
 
-    public record SimilarArtistPair(String first, String second) {
+    /**
+     * Growable list of ascending artist indexes.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int last() {
+            return values[size - 1];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int indexAfter(int value) {
+            int found = Arrays.binarySearch(values, 0, size, value);
+            return found >= 0 ? found + 1 : -found - 1;
+        }
     }
 }
@@ -0,0 +1,124 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.JellyfinGenreService.GenreWithCount;
+import net.dahanne.jmh.report.ReportLayout;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Groups the genres whose names only differ by case, accents, spaces or punctuation ("Hip-Hop", "Hip Hop",
+ * "hiphop") on the same {@link NameNormalizer} key as artists. A compound genre ("Rap/Hip Hop") joins the cluster
+ * of its part with the most albums. The variant with the most albums is the canonical genre of its cluster, the
+ * others are reported with the {@code move-genre} call merging them into it.
+ * <p>
+ * Album counts come from {@link JellyfinGenreService#scanGenresWithAlbumCount()}, the genres and one paged album
+ * scan whatever the number of genres; clustering itself is a few passes over hash maps.
+ */
+@Component
+public class SimilarGenreFinder {
+
+    public static final ReportLayout REPORT = ReportLayout.of(
+            row -> row[4] == null
+                    ? row[2] + " (" + row[1] + "): " + row[3] + " albums"
+                    : "  " + row[2] + " (" + row[1] + "): " + row[3] + " albums -> move-genre --origin " + row[1]
+                    + " --destination " + row[4],
+            "cluster", "id", "name", "albumCount", "destinationId", "destinationName");
+
+    private static final Pattern SEPARATORS = Pattern.compile("[/;,|]");
+
+    // plain names before compound ones, so that a cluster is never named after "Rap/Hip Hop"
+    private static final Comparator<GenreWithCount> CANONICAL_FIRST = Comparator
+            .comparing((GenreWithCount genre) -> isCompound(genre.name()))
+            .thenComparing(Comparator.comparingInt(GenreWithCount::albumCount).reversed())
+            .thenComparing(GenreWithCount::name, NameCollation.ORDER)
+            .thenComparing(GenreWithCount::id);
+
+    private final JellyfinGenreService genreService;
+    private final NameNormalizer nameNormalizer;
+
+    public SimilarGenreFinder(JellyfinGenreService genreService, NameNormalizer nameNormalizer) {
+        this.genreService = genreService;
+        this.nameNormalizer = nameNormalizer;
+    }
+
+    public List<GenreCluster> listSimilarGenres() {
+        return findSimilarGenres(genreService.scanGenresWithAlbumCount());
+    }
+
+    /**
+     * @return clusters of at least two genres, the one with the most albums first
+     */
+    List<GenreCluster> findSimilarGenres(List<GenreWithCount> genres) {
+        Map<String, List<GenreWithCount>> byKey = new HashMap<>();
+        for (GenreWithCount genre : genres) {
+            String key = nameNormalizer.normalize(genre.name());
+            if (!key.isEmpty()) {
+                byKey.computeIfAbsent(key, _ -> new ArrayList<>()).add(genre);
+            }
+        }
+
+        // compound keys only move to plain clusters, which never move themselves, so the order does not matter
+        Map<String, String> moves = new HashMap<>();
+        byKey.forEach((key, variants) -> {
+            if (variants.stream().allMatch(genre -> isCompound(genre.name()))) {
+                String target = largestPart(key, variants.getFirst().name(), byKey);
+                if (target != null) {
+                    moves.put(key, target);
+                }
+            }
+        });
+        moves.forEach((key, target) -> byKey.get(target).addAll(byKey.remove(key)));
+
+        List<GenreCluster> clusters = new ArrayList<>();
+        byKey.forEach((key, variants) -> {
+            if (variants.size() > 1) {
+                variants.sort(CANONICAL_FIRST);
+                clusters.add(new GenreCluster(key, variants.getFirst(),
+                        List.copyOf(variants.subList(1, variants.size()))));
+            }
+        });
+        clusters.sort(Comparator.comparingInt((GenreCluster cluster) -> cluster.canonical().albumCount()).reversed()
+                .thenComparing(GenreCluster::key));
+        return clusters;
+    }
+
+    /**
+     * @return the key of the plain cluster with the most albums among the parts of {@code name}, or {@code null}
+     */
+    private String largestPart(String key, String name, Map<String, List<GenreWithCount>> byKey) {
+        String largest = null;
+        int largestCount = -1;
+        for (String part : SEPARATORS.split(name)) {
+            String partKey = nameNormalizer.normalize(part);
+            List<GenreWithCount> variants = byKey.get(partKey);
+            if (partKey.equals(key) || variants == null
+                    || variants.stream().allMatch(genre -> isCompound(genre.name()))) {
+                continue;
+            }
+            int count = variants.stream().mapToInt(GenreWithCount::albumCount).sum();
+            if (count > largestCount) {
+                largest = partKey;
+                largestCount = count;
+            }
+        }
+        return largest;
+    }
+
+    private static boolean isCompound(String name) {
+        return SEPARATORS.matcher(name).find();
+    }
+
+    /**
+     * @param key       normalized name shared by the plain genres of the cluster
+     * @param canonical genre the others should be moved to
+     * @param variants  the other genres, plain ones first, then by descending album count
+     */
+    public record GenreCluster(String key, GenreWithCount canonical, List<GenreWithCount> variants) {
+    }
+}
@@ -0,0 +1,135 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.TrackMatchIndex.Kind;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * What an incremental {@code compare-with-spotify-list} run remembers for the next one: the latest play it
+ * ingested, and the play counts and lookup result of every track seen so far.
+ * <p>
+ * Spotify exports contain the whole history every time, so a later run only has to ingest the plays after
+ * {@code lastPlayed}. Several plays can share a timestamp ({@code endTime} only has minutes), hence
+ * {@code playsAtLastPlayed}: the number of plays at {@code lastPlayed} already ingested.
+ *
+ * @param lastPlayed latest play timestamp, see {@link #sortable}; {@code null} when nothing was ingested
+ */
+record SpotifyHistoryCheckpoint(String lastPlayed, int playsAtLastPlayed, List<TrackState> tracks) {
+
+    static final SpotifyHistoryCheckpoint EMPTY = new SpotifyHistoryCheckpoint(null, 0, List.of());
+
+    /**
+     * @return the checkpoint saved in {@code file}, or {@link #EMPTY} when there is none yet
+     */
+    static SpotifyHistoryCheckpoint read(ObjectMapper objectMapper, Path file) {
+        if (!Files.exists(file)) {
+            return EMPTY;
+        }
+        try {
+            SpotifyHistoryCheckpoint checkpoint = objectMapper.readValue(Files.readAllBytes(file),
+                    SpotifyHistoryCheckpoint.class);
+            return checkpoint.tracks() == null
+                    ? new SpotifyHistoryCheckpoint(checkpoint.lastPlayed(), checkpoint.playsAtLastPlayed(), List.of())
+                    : checkpoint;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read Spotify history checkpoint " + file, e);
+        } catch (JacksonException e) {
+            throw new RuntimeException("Invalid Spotify history checkpoint " + file + ", delete it to start over", e);
+        }
+    }
+
+    /**
+     * Replaces {@code file} atomically, so that an interrupted run leaves the previous checkpoint intact.
+     */
+    void write(ObjectMapper objectMapper, Path file) {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, objectMapper.writeValueAsBytes(this));
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write Spotify history checkpoint " + file, e);
+        }
+    }
+
+    /**
+     * Brings both exports' timestamps to one comparable form: {@code ts} ("2023-05-01T13:37:00Z") becomes
+     * "2023-05-01 13:37:00", next to {@code endTime} ("2023-05-01 13:37").
+     */
+    static String sortable(String timestamp) {
+        if (timestamp == null || timestamp.isBlank()) {
+            return null;
+        }
+        String sortable = timestamp.trim();
+        if (sortable.length() > 10 && sortable.charAt(10) == 'T') {
+            sortable = sortable.substring(0, 10) + ' ' + sortable.substring(11);
+        }
+        return sortable.endsWith("Z") ? sortable.substring(0, sortable.length() - 1) : sortable;
+    }
+
+    /**
+     * Decides which plays of a new export come after the checkpoint, and tracks the checkpoint to save next.
+     * Plays without a timestamp are only new when there is no checkpoint yet.
+     */
+    static final class Cursor {
+
+        private final String after;
+        private final int alreadyIngestedAtAfter;
+        private int seenAtAfter;
+        private String last;
+        private int atLast;
+
+        Cursor(SpotifyHistoryCheckpoint checkpoint) {
+            this.after = checkpoint.lastPlayed();
+            this.alreadyIngestedAtAfter = checkpoint.playsAtLastPlayed();
+            this.last = checkpoint.lastPlayed();
+            this.atLast = checkpoint.playsAtLastPlayed();
+        }
+
+        boolean isNew(String timestamp) {
+            String played = sortable(timestamp);
+            if (played == null) {
+                return after == null;
+            }
+            int comparison = after == null ? 1 : played.compareTo(after);
+            boolean isNew = comparison > 0 || comparison == 0 && ++seenAtAfter > alreadyIngestedAtAfter;
+            if (isNew) {
+                if (last == null || played.compareTo(last) > 0) {
+                    last = played;
+                    atLast = 1;
+                } else if (played.equals(last)) {
+                    atLast++;
+                }
+            }
+            return isNew;
+        }
+
+        String last() {
+            return last;
+        }
+
+        int atLast() {
+            return atLast;
+        }
+    }
+
+    /**
+     * Play counts and lookup result of one (artist, track) of the history.
+     */
+    record TrackState(String artist, String track, int count, long msPlayed, boolean found, String album,
+                      Kind match, String matchedTitle, String message) {
+    }
+}
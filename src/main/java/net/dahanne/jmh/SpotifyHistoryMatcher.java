@@ -1,86 +1,169 @@
 package net.dahanne.jmh;
 
+import com.fasterxml.jackson.annotation.JsonAlias;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import net.dahanne.jmh.config.JellyfinRequestFactory;
+import net.dahanne.jmh.report.ReportLayout;
+import net.dahanne.jmh.report.ReportWriter;
+import net.dahanne.jmh.snapshot.LibrarySnapshot;
+import net.dahanne.jmh.snapshot.LibrarySnapshotStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import tools.jackson.core.JacksonException;
 import tools.jackson.core.type.TypeReference;
 import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.MappingIterator;
 import tools.jackson.databind.ObjectMapper;
 
-import java.io.IOException;
-import java.net.URLEncoder;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.text.Normalizer;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import static net.dahanne.jmh.Utils.textOrNull;
 
 @Component
-public class SpotifyHistoryMatcher {
+public class SpotifyHistoryMatcher implements LibraryCache {
 
     private static final TypeReference<List<StreamingHistoryEntry>> HISTORY_TYPE = new TypeReference<>() {};
+    private static final char SEPARATOR = '\u0000';
+    private static final String[] EMOJI_DIGITS = {"0️⃣", "1️⃣", "2️⃣", "3️⃣", "4️⃣", "5️⃣", "6️⃣", "7️⃣", "8️⃣", "9️⃣"};
+
+    public static final ReportLayout MATCH_REPORT = ReportLayout.of(SpotifyHistoryMatcher::lookupLine,
+            "artist", "track", "count", "found", "album", "match", "matchedTitle", "message", "msPlayed");
+    public static final ReportLayout MISSING_ARTIST_REPORT = ReportLayout.of(row -> (String) row[0], "artist");
 
     private final ObjectMapper objectMapper;
-    private final HttpClient httpClient;
-    private final JellyfinRequestFactory requestFactory;
+    private final JellyfinItemPager pager;
     private final JellyfinArtistService jellyfinArtistService;
     private final Path historyPath;
-    private final Map<String, LookupResult> jellyfinCache = new ConcurrentHashMap<>();
+    private final Path checkpointPath;
+    private final LibrarySnapshotStore snapshotStore;
+    private final NameNormalizer nameNormalizer;
+    private final TitleCanonicalizer titleCanonicalizer;
+    // only kept while LibraryChangeListener is connected, see LibraryCache
+    private volatile boolean watched;
+    private volatile TrackMatchIndex trackMatchIndex;
+    private long changes;
+    private volatile SnapshotIndex snapshotIndex;
 
     public SpotifyHistoryMatcher(
             ObjectMapper objectMapper,
-            HttpClient jellyfinHttpClient,
-            JellyfinRequestFactory requestFactory,
+            JellyfinItemPager pager,
             JellyfinArtistService jellyfinArtistService,
-            @Value("${streaming.history.file}") String historyFile) {
+            LibrarySnapshotStore snapshotStore,
+            NameNormalizer nameNormalizer,
+            TitleCanonicalizer titleCanonicalizer,
+            @Value("${streaming.history.file}") String historyFile,
+            @Value("${streaming.history.checkpoint-file}") String checkpointFile) {
         this.objectMapper = objectMapper;
-        this.httpClient = jellyfinHttpClient;
-        this.requestFactory = requestFactory;
+        this.pager = pager;
         this.jellyfinArtistService = jellyfinArtistService;
+        this.snapshotStore = snapshotStore;
+        this.nameNormalizer = nameNormalizer;
+        this.titleCanonicalizer = titleCanonicalizer;
         this.historyPath = Path.of(historyFile);
+        this.checkpointPath = Path.of(checkpointFile);
     }
 
-    public void compareWithSpotifyList() {
-        List<StreamingHistoryEntry> entries = readStreamingHistory();
+    public void compareWithSpotifyList(ReportWriter report) {
+        compareWithSpotifyList(readStreamingHistory(), report);
+    }
+
+    void compareWithSpotifyList(List<StreamingHistoryEntry> entries, ReportWriter report) {
         if (entries.isEmpty()) {
             return;
         }
 
-        Map<String, TrackAggregate> aggregates = aggregate(entries);
-        for (TrackAggregate aggregate : aggregates.values()) {
-            TrackMetadata track = aggregate.metadata();
-            LookupResult result;
-            if (!track.hasMetadata()) {
+        ListeningAggregator aggregates = aggregate(entries);
+        TrackMatchIndex index = trackMatchIndex();
+        aggregates.forEachSorted((artist, track, count, msPlayed) -> {
+            LookupResult result = artist == null || track == null
+                    ? LookupResult.notFound("missing metadata")
+                    : LookupResult.of(index.find(artist, track));
+            report.row(artist != null ? artist : "<missing artist>", track != null ? track : "<missing track>",
+                    count, result.found(), result.albumName(), result.kind(), result.matchedTitle(),
+                    result.message(), msPlayed);
+        });
+    }
+
+    /**
+     * Like {@link #compareWithSpotifyList(ReportWriter)}, but only ingests the plays after the checkpoint left by
+     * the previous incremental run, merges them into its counts and only looks up the tracks it had never seen;
+     * earlier lookup results are reused as they are. The checkpoint is then replaced.
+     *
+     * @param fullReport whether to report every track, or only the ones seen for the first time
+     */
+    public void compareWithSpotifyListIncrementally(boolean fullReport, ReportWriter report) {
+        SpotifyHistoryCheckpoint checkpoint = SpotifyHistoryCheckpoint.read(objectMapper, checkpointPath);
+        ListeningAggregator aggregates = new ListeningAggregator();
+        Map<String, LookupResult> results = new HashMap<>();
+        for (SpotifyHistoryCheckpoint.TrackState track : checkpoint.tracks()) {
+            aggregates.add(track.artist(), track.track(), track.count(), track.msPlayed());
+            results.put(trackKey(track.artist(), track.track()), new LookupResult(track.found(), track.album(),
+                    track.message(), track.match(), track.matchedTitle()));
+        }
+
+        SpotifyHistoryCheckpoint.Cursor cursor = new SpotifyHistoryCheckpoint.Cursor(checkpoint);
+        int[] newPlays = {0};
+        // only built when a track was not seen before
+        TrackMatchIndex[] index = {null};
+        forEachStreamingHistoryEntry(entry -> {
+            if (cursor.isNew(entry.endTime())) {
+                aggregates.add(entry.artistName(), entry.trackName(), entry.playedMillis());
+                newPlays[0]++;
+            }
+        });
+
+        List<SpotifyHistoryCheckpoint.TrackState> tracks = new ArrayList<>(aggregates.size());
+        aggregates.forEachSorted((artist, track, count, msPlayed) -> {
+            // the aggregator keeps the first spelling seen, the one restored from the checkpoint
+            String key = trackKey(artist, track);
+            LookupResult result = results.get(key);
+            boolean firstSeen = result == null;
+            if (firstSeen && (artist == null || track == null)) {
                 result = LookupResult.notFound("missing metadata");
-            } else {
-                result = jellyfinCache.computeIfAbsent(track.cacheKey(),
-                        _ -> queryJellyfinForTrack(track.artist(), track.track()));
+            } else if (firstSeen) {
+                if (index[0] == null) {
+                    index[0] = trackMatchIndex();
+                }
+                result = LookupResult.of(index[0].find(artist, track));
             }
-            printLookupLine(track.displayArtist(), track.displayTrack(), aggregate.count(), result);
-        }
+            if (fullReport || firstSeen) {
+                report.row(artist != null ? artist : "<missing artist>", track != null ? track : "<missing track>",
+                        count, result.found(), result.albumName(), result.kind(), result.matchedTitle(),
+                        result.message(), msPlayed);
+            }
+            tracks.add(new SpotifyHistoryCheckpoint.TrackState(artist, track, count, msPlayed, result.found(),
+                    result.albumName(), result.kind(), result.matchedTitle(), result.message()));
+        });
+
+        new SpotifyHistoryCheckpoint(cursor.last(), cursor.atLast(), tracks).write(objectMapper, checkpointPath);
+        report.note(newPlays[0] + " new play(s) since " + (checkpoint.lastPlayed() != null
+                ? checkpoint.lastPlayed() : "the beginning") + ", checkpoint saved to " + checkpointPath);
     }
 
-    public void listMissingArtistsFromSpotify() {
+    public void listMissingArtistsFromSpotify(ReportWriter report) {
         List<StreamingHistoryEntry> entries = readStreamingHistory();
         if (entries.isEmpty()) {
             return;
         }
+        listMissingArtistsFromSpotify(entries, jellyfinArtistService.fetchArtists(), report);
+    }
 
-        Map<String, String> spotifyArtists = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    void listMissingArtistsFromSpotify(List<StreamingHistoryEntry> entries,
+                                       List<JellyfinArtistService.Artist> artists,
+                                       ReportWriter report) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> spotifyArtists = new HashMap<>();
         for (StreamingHistoryEntry entry : entries) {
             if (entry == null || entry.artistName() == null) {
                 continue;
             }
-            String normalized = normalizeArtistName(entry.artistName());
+            String normalized = nameNormalizer.normalize(entry.artistName());
             if (normalized.isEmpty()) {
                 continue;
             }
@@ -88,27 +171,27 @@ public class SpotifyHistoryMatcher {
         }
 
         Set<String> jellyfinArtists = new HashSet<>();
-        for (JellyfinArtistService.Artist artist : jellyfinArtistService.fetchArtists()) {
-            String normalized = normalizeArtistName(artist.name());
+        for (JellyfinArtistService.Artist artist : artists) {
+            String normalized = nameNormalizer.normalize(artist.name());
             if (!normalized.isEmpty()) {
                 jellyfinArtists.add(normalized);
             }
         }
 
-        List<String> missing = spotifyArtists.entrySet().stream()
+        List<String> missing = new ArrayList<>(spotifyArtists.entrySet().stream()
                 .filter(entry -> !jellyfinArtists.contains(entry.getKey()))
                 .map(Map.Entry::getValue)
-                .sorted(String.CASE_INSENSITIVE_ORDER)
-                .toList();
+                .toList());
+        NameCollation.sort(missing, name -> name);
 
         if (missing.isEmpty()) {
-            System.out.println("All Spotify artists exist in Jellyfin.");
+            report.note("All Spotify artists exist in Jellyfin.");
         } else {
-            missing.forEach(System.out::println);
+            missing.forEach(report::row);
         }
     }
 
-    private List<StreamingHistoryEntry> readStreamingHistory() {
+    List<StreamingHistoryEntry> readStreamingHistory() {
         try {
             if (!Files.exists(historyPath)) {
                 System.err.println("Failed to read file: " + historyPath + " does not exist");
@@ -121,85 +204,152 @@ public class SpotifyHistoryMatcher {
         }
     }
 
-    private Map<String, TrackAggregate> aggregate(List<StreamingHistoryEntry> entries) {
-        Map<String, TrackAggregate> aggregates = new TreeMap<>();
+    /**
+     * Reads the history one entry at a time, for passes that must not hold the whole export in memory.
+     */
+    void forEachStreamingHistoryEntry(Consumer<StreamingHistoryEntry> consumer) {
+        if (!Files.exists(historyPath)) {
+            System.err.println("Failed to read file: " + historyPath + " does not exist");
+            return;
+        }
+        try (MappingIterator<StreamingHistoryEntry> entries =
+                     objectMapper.readerFor(StreamingHistoryEntry.class).readValues(historyPath.toFile())) {
+            while (entries.hasNext()) {
+                StreamingHistoryEntry entry = entries.next();
+                if (entry != null) {
+                    consumer.accept(entry);
+                }
+            }
+        } catch (JacksonException e) {
+            System.err.println("Failed to parse JSON: " + e.getMessage());
+        }
+    }
+
+    private ListeningAggregator aggregate(List<StreamingHistoryEntry> entries) {
+        ListeningAggregator aggregates = new ListeningAggregator();
         for (StreamingHistoryEntry entry : entries) {
-            if (entry == null) {
-                continue;
+            if (entry != null) {
+                aggregates.add(entry.artistName(), entry.trackName(), entry.playedMillis());
             }
-            TrackMetadata metadata = TrackMetadata.from(entry);
-            TrackAggregate aggregate = aggregates.computeIfAbsent(sortKey(metadata),
-                    _ -> new TrackAggregate(metadata));
-            aggregate.increment();
         }
         return aggregates;
     }
 
-    private String normalizeArtistName(String value) {
-        if (value == null) {
-            return "";
-        }
-        String lower = value.toLowerCase(Locale.ROOT);
-        String withoutDiacritics = Normalizer.normalize(lower, Normalizer.Form.NFD)
-                .replaceAll("\\p{M}", "");
-        return withoutDiacritics.replaceAll("[^a-z0-9]", "");
+    private static String trackKey(String artist, String track) {
+        return artist + SEPARATOR + track;
     }
 
-    private void printLookupLine(String artist, String track, int count, LookupResult result) {
+    private static String lookupLine(Object[] row) {
         StringBuilder line = new StringBuilder()
-                .append(artist)
+                .append(row[0])
                 .append(" - ")
-                .append(track)
+                .append(row[1])
                 .append(' ')
-                .append(toEmojiNumber(count))
+                .append(toEmojiNumber((int) row[2]))
                 .append(' ')
-                .append(result.found() ? "✅" : "❌");
+                .append((boolean) row[3] ? "✅" : "❌");
 
-        if (result.found() && result.hasAlbum()) {
-            line.append(' ').append(result.albumName());
-        } else if (!result.found() && result.hasMessage()) {
-            line.append(" (").append(result.message()).append(')');
+        String album = (String) row[4];
+        String message = (String) row[7];
+        if ((boolean) row[3] && album != null && !album.isBlank()) {
+            line.append(' ').append(album);
+        }
+        if (row[5] == TrackMatchIndex.Kind.FUZZY) {
+            line.append(" (fuzzy: ").append(row[6]).append(')');
+        } else if (!(boolean) row[3] && message != null && !message.isBlank()) {
+            line.append(" (").append(message).append(')');
         }
+        return line.toString();
+    }
 
-        System.out.println(line);
+    /**
+     * Built from the snapshot when enabled, and kept as long as the snapshot is the same. Otherwise built from one
+     * paged scan of every track, a single scan costing far fewer requests than one search per distinct history
+     * entry, and only kept while {@link LibraryChangeListener} is connected, see {@link LibraryCache}.
+     */
+    TrackMatchIndex trackMatchIndex() {
+        if (snapshotStore.enabled()) {
+            LibrarySnapshot snapshot = snapshotStore.load();
+            SnapshotIndex indexed = snapshotIndex;
+            if (indexed == null || indexed.snapshot() != snapshot) {
+                indexed = new SnapshotIndex(snapshot, indexFromSnapshot(snapshot));
+                snapshotIndex = indexed;
+            }
+            return indexed.index();
+        }
+        TrackMatchIndex cached = trackMatchIndex;
+        if (cached != null) {
+            return cached;
+        }
+        long changesBefore = changes();
+        TrackMatchIndex index = indexFromServer();
+        cache(index, changesBefore);
+        return index;
     }
 
-    private LookupResult queryJellyfinForTrack(String artist, String track) {
-        try {
-            String searchTerm = URLEncoder.encode(track, StandardCharsets.UTF_8);
-            String path = "/Items?IncludeItemTypes=Audio&Recursive=true&Fields=AlbumArtists,Artists&Limit=50&searchTerm="
-                    + searchTerm;
+    /**
+     * Keeps the index, unless a change was notified while it was being built.
+     */
+    private synchronized void cache(TrackMatchIndex index, long changesBefore) {
+        if (watched && changes == changesBefore) {
+            trackMatchIndex = index;
+        }
+    }
 
-            HttpRequest.Builder requestBuilder = requestFactory.create(path).GET();
+    private synchronized long changes() {
+        return changes;
+    }
 
-            HttpResponse<String> response = httpClient.send(requestBuilder.build(),
-                    HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() != 200) {
-                return LookupResult.notFound("lookup failed (HTTP " + response.statusCode() + ")");
-            }
+    @Override
+    public void watchStarted() {
+        watched = true;
+    }
 
-            JsonNode root = objectMapper.readTree(response.body());
-            JsonNode items = root.path("Items");
-            if (!items.isArray()) {
-                return LookupResult.notFound(null);
-            }
+    /**
+     * Drops the index when a track was added, updated or removed.
+     */
+    @Override
+    public synchronized void libraryChanged(LibraryChange change) {
+        changes++;
+        TrackMatchIndex index = trackMatchIndex;
+        if (index != null && (!change.itemsOfType("Audio").isEmpty()
+                || change.removed().stream().anyMatch(index::containsId))) {
+            trackMatchIndex = null;
+        }
+    }
 
-            for (JsonNode item : items) {
-                List<String> candidateArtists = extractStringList(item.path("Artists"), item.path("AlbumArtists"));
-                String candidateName = textOrNull(item.path("Name"));
-                if (candidateArtists.stream().anyMatch(a -> equalsIgnoreCase(a, artist))
-                        && equalsIgnoreCase(candidateName, track)) {
-                    String album = extractAlbumName(item);
-                    return LookupResult.found(album);
-                }
+    @Override
+    public synchronized void watchStopped() {
+        watched = false;
+        changes++;
+        trackMatchIndex = null;
+    }
+
+    private TrackMatchIndex indexFromServer() {
+        TrackMatchIndex index = new TrackMatchIndex(nameNormalizer, titleCanonicalizer);
+        pager.forEachItem(JellyfinQuery.items().types(JellyfinQuery.ItemType.AUDIO).recursive(),
+                JellyfinItemPager.DEFAULT_PAGE_SIZE, item -> index.add(textOrNull(item.path("Id")),
+                        textOrNull(item.path("Name")), extractAlbumName(item),
+                        extractStringList(item.path("Artists"), item.path("AlbumArtist"))));
+        return index;
+    }
+
+    private TrackMatchIndex indexFromSnapshot(LibrarySnapshot snapshot) {
+        TrackMatchIndex index = new TrackMatchIndex(nameNormalizer, titleCanonicalizer);
+        List<String> artists = new ArrayList<>();
+        for (int track = 0; track < snapshot.trackCount(); track++) {
+            artists.clear();
+            for (int i = 0; i < snapshot.trackArtistCount(track); i++) {
+                artists.add(snapshot.artistName(snapshot.trackArtist(track, i)));
             }
-            return LookupResult.notFound(null);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return LookupResult.notFound("lookup interrupted");
-        } catch (IOException e) {
-            return LookupResult.notFound("lookup error: " + e.getClass().getSimpleName());
+            int album = snapshot.trackAlbum(track);
+            for (int i = 0; album >= 0 && i < snapshot.albumArtistCount(album); i++) {
+                artists.add(snapshot.artistName(snapshot.albumArtist(album, i)));
+            }
+            index.add(snapshot.trackId(track), snapshot.trackName(track),
+                    album < 0 ? null : snapshot.albumName(album), artists);
         }
+        return index;
     }
 
     private String extractAlbumName(JsonNode item) {
@@ -236,120 +386,46 @@ public class SpotifyHistoryMatcher {
         return result;
     }
 
-    private boolean equalsIgnoreCase(String left, String right) {
-        return Objects.equals(left == null ? null : left.toLowerCase(Locale.ROOT),
-                right == null ? null : right.toLowerCase(Locale.ROOT));
-    }
-
-    private String sortKey(TrackMetadata track) {
-        return (track.displayArtist() + "||" + track.displayTrack()).toLowerCase(Locale.ROOT);
-    }
-
-    private String toEmojiNumber(int value) {
+    private static String toEmojiNumber(int value) {
         String digits = Integer.toString(Math.max(1, value));
-        StringBuilder result = new StringBuilder();
-        for (char digit : digits.toCharArray()) {
-            result.append(EmojiDigits.forDigit(digit));
+        StringBuilder result = new StringBuilder(digits.length() * 3);
+        for (int i = 0; i < digits.length(); i++) {
+            result.append(EMOJI_DIGITS[digits.charAt(i) - '0']);
         }
         return result.toString();
     }
 
-    private record TrackMetadata(String artist, String track) {
-        static TrackMetadata from(StreamingHistoryEntry entry) {
-            return new TrackMetadata(entry.artistName(), entry.trackName());
-        }
-
-        boolean hasMetadata() {
-            return artist != null && track != null;
-        }
-
-        String displayArtist() {
-            return artist != null ? artist : "<missing artist>";
-        }
-
-        String displayTrack() {
-            return track != null ? track : "<missing track>";
-        }
-
-        String cacheKey() {
-            String safeArtist = artist == null ? "" : artist;
-            String safeTrack = track == null ? "" : track;
-            return (safeArtist + "||" + safeTrack).toLowerCase(Locale.ROOT);
-        }
+    private record SnapshotIndex(LibrarySnapshot snapshot, TrackMatchIndex index) {
     }
 
-    private record LookupResult(boolean found, String albumName, String message) {
-        static LookupResult found(String albumName) {
-            return new LookupResult(true, albumName, null);
+    private record LookupResult(boolean found, String albumName, String message,
+                                TrackMatchIndex.Kind kind, String matchedTitle) {
+        static LookupResult of(TrackMatchIndex.Match match) {
+            if (match == null) {
+                return notFound(null);
+            }
+            return new LookupResult(true, match.track().album(), null, match.kind(), match.track().title());
         }
 
         static LookupResult notFound(String message) {
-            return new LookupResult(false, null, message);
-        }
-
-        boolean hasAlbum() {
-            return albumName != null && !albumName.isBlank();
-        }
-
-        boolean hasMessage() {
-            return message != null && !message.isBlank();
-        }
-    }
-
-    private static final class TrackAggregate {
-        private final TrackMetadata metadata;
-        private int count;
-
-        private TrackAggregate(TrackMetadata metadata) {
-            this.metadata = metadata;
-        }
-
-        private void increment() {
-            count++;
-        }
-
-        private int count() {
-            return count;
-        }
-
-        private TrackMetadata metadata() {
-            return metadata;
-        }
-    }
-
-    private enum EmojiDigits {
-        ZERO('0', "0️⃣"),
-        ONE('1', "1️⃣"),
-        TWO('2', "2️⃣"),
-        THREE('3', "3️⃣"),
-        FOUR('4', "4️⃣"),
-        FIVE('5', "5️⃣"),
-        SIX('6', "6️⃣"),
-        SEVEN('7', "7️⃣"),
-        EIGHT('8', "8️⃣"),
-        NINE('9', "9️⃣");
-
-        private final char digit;
-        private final String emoji;
-
-        EmojiDigits(char digit, String emoji) {
-            this.digit = digit;
-            this.emoji = emoji;
-        }
-
-        static String forDigit(char digit) {
-            for (EmojiDigits value : values()) {
-                if (value.digit == digit) {
-                    return value.emoji;
-                }
-            }
-            return "";
+            return new LookupResult(false, null, message, null, null);
         }
     }
 
+    /**
+     * One play, from either export: the account data {@code StreamingHistory*.json} or the extended
+     * {@code Streaming_History_Audio_*.json} (snake_case fields, {@code ts} instead of {@code endTime}).
+     */
     @JsonIgnoreProperties(ignoreUnknown = true)
-    private record StreamingHistoryEntry(
-            @JsonProperty("artistName") String artistName,
-            @JsonProperty("trackName") String trackName) {
+    record StreamingHistoryEntry(
+            @JsonProperty("artistName") @JsonAlias("master_metadata_album_artist_name") String artistName,
+            @JsonProperty("trackName") @JsonAlias("master_metadata_track_name") String trackName,
+            @JsonProperty("albumName") @JsonAlias("master_metadata_album_album_name") String albumName,
+            @JsonProperty("msPlayed") @JsonAlias("ms_played") Long msPlayed,
+            @JsonProperty("endTime") @JsonAlias("ts") String endTime) {
+
+        long playedMillis() {
+            return msPlayed != null ? msPlayed : 0;
+        }
     }
 }
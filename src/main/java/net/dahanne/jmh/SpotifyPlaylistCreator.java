@@ -0,0 +1,197 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.SpotifyStatsReporter.Ranking;
+import net.dahanne.jmh.config.JellyfinRequestFactory;
+import net.dahanne.jmh.report.ReportLayout;
+import net.dahanne.jmh.report.ReportWriter;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Creates, or replaces, a Jellyfin playlist holding the most played tracks of the Spotify history that the
+ * library has.
+ * <p>
+ * The history is aggregated in one streaming pass, then tracks are looked up in the {@link TrackMatchIndex}, best
+ * ranked first, until enough distinct Jellyfin items are found. The playlist is created with its first
+ * {@value #IDS_PER_REQUEST} items and the others are appended in chunks of as many ids, so that a 2,000-track
+ * playlist takes about ten requests instead of one per track.
+ */
+@Component
+public class SpotifyPlaylistCreator {
+
+    public static final ReportLayout REPORT = ReportLayout.of(
+            row -> "#" + row[0] + " " + row[1] + " - " + row[2] + " (" + row[3] + " plays) " + row[5],
+            "rank", "artist", "track", "plays", "msPlayed", "itemId");
+
+    static final int IDS_PER_REQUEST = 200;
+
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient;
+    private final JellyfinRequestFactory requestFactory;
+    private final JellyfinItemPager pager;
+    private final SpotifyHistoryMatcher spotifyHistoryMatcher;
+
+    public SpotifyPlaylistCreator(ObjectMapper objectMapper,
+                                  HttpClient jellyfinHttpClient,
+                                  JellyfinRequestFactory requestFactory,
+                                  JellyfinItemPager pager,
+                                  SpotifyHistoryMatcher spotifyHistoryMatcher) {
+        this.objectMapper = objectMapper;
+        this.httpClient = jellyfinHttpClient;
+        this.requestFactory = requestFactory;
+        this.pager = pager;
+        this.spotifyHistoryMatcher = spotifyHistoryMatcher;
+    }
+
+    /**
+     * Reports the tracks put in the playlist, in playlist order. Playlists already named {@code name} are only
+     * deleted once the new one is complete, so a failed run leaves them untouched.
+     *
+     * @param top largest number of tracks in the playlist
+     * @return {@code null} when no history track is in the library, and then no playlist is created
+     */
+    public PlaylistResult createPlaylist(String name, int top, Ranking ranking, ReportWriter report) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("--name must not be blank");
+        }
+        if (top <= 0) {
+            throw new IllegalArgumentException("--top must be positive, got " + top);
+        }
+        List<String> itemIds = topItemIds(top, ranking, report);
+        if (itemIds.isEmpty()) {
+            return null;
+        }
+
+        List<String> previous = playlistIds(name.trim());
+        String userId = userId();
+        ObjectNode playlist = objectMapper.createObjectNode()
+                .put("Name", name.trim())
+                .put("UserId", userId)
+                .put("MediaType", "Audio");
+        playlist.set("Ids", objectMapper.valueToTree(itemIds.subList(0, Math.min(itemIds.size(), IDS_PER_REQUEST))));
+        JsonNode created = send(requestFactory.create("/Playlists")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(playlist))),
+                "Playlist creation");
+        int requests = 1;
+        String playlistId = textOrNull(created.path("Id"));
+        if (playlistId == null) {
+            throw new RuntimeException("Playlist creation answered no playlist id");
+        }
+        for (int from = IDS_PER_REQUEST; from < itemIds.size(); from += IDS_PER_REQUEST) {
+            String ids = String.join(",", itemIds.subList(from, Math.min(itemIds.size(), from + IDS_PER_REQUEST)));
+            send(requestFactory.create("/Playlists/" + playlistId + "/Items?Ids=" + ids + "&UserId=" + userId)
+                    .POST(HttpRequest.BodyPublishers.noBody()), "Playlist update");
+            requests++;
+        }
+        for (String id : previous) {
+            send(requestFactory.create("/Items/" + id).DELETE(), "Previous playlist deletion");
+            requests++;
+        }
+        return new PlaylistResult(playlistId, name.trim(), itemIds.size(), previous.size(), requests);
+    }
+
+    /**
+     * @return the Jellyfin ids of the {@code top} best ranked history tracks found in the library, without
+     * duplicates, as two spellings of a track can match the same item
+     */
+    private List<String> topItemIds(int top, Ranking ranking, ReportWriter report) {
+        ListeningAggregator aggregates = new ListeningAggregator();
+        spotifyHistoryMatcher.forEachStreamingHistoryEntry(entry -> {
+            if (entry.artistName() != null && entry.trackName() != null) {
+                aggregates.add(entry.artistName(), entry.trackName(), entry.playedMillis());
+            }
+        });
+        List<Played> played = new ArrayList<>(aggregates.size());
+        aggregates.forEach((artist, track, plays, msPlayed) -> played.add(new Played(artist, track, plays, msPlayed)));
+        Comparator<Played> byPlays = Comparator.comparingInt(Played::plays);
+        Comparator<Played> byTime = Comparator.comparingLong(Played::msPlayed);
+        played.sort((ranking == Ranking.PLAYS ? byPlays.thenComparing(byTime) : byTime.thenComparing(byPlays))
+                .reversed()
+                .thenComparing(Played::artist, NameCollation.ORDER)
+                .thenComparing(Played::track, NameCollation.ORDER));
+
+        TrackMatchIndex index = spotifyHistoryMatcher.trackMatchIndex();
+        Set<String> itemIds = new LinkedHashSet<>();
+        for (Played track : played) {
+            if (itemIds.size() == top) {
+                break;
+            }
+            TrackMatchIndex.Match match = index.find(track.artist(), track.track());
+            String id = match != null ? match.track().id() : null;
+            if (id != null && itemIds.add(id)) {
+                report.row(itemIds.size(), track.artist(), track.track(), track.plays(), track.msPlayed(), id);
+            }
+        }
+        return List.copyOf(itemIds);
+    }
+
+    /**
+     * @return the ids of the playlists named exactly {@code name}
+     */
+    private List<String> playlistIds(String name) {
+        List<String> ids = new ArrayList<>();
+        JellyfinQuery playlists = JellyfinQuery.items().types(JellyfinQuery.ItemType.PLAYLIST).recursive()
+                .searchTerm(name);
+        pager.forEachItem(playlists, JellyfinItemPager.DEFAULT_PAGE_SIZE, item -> {
+            String id = textOrNull(item.path("Id"));
+            if (id != null && name.equals(textOrNull(item.path("Name")))) {
+                ids.add(id);
+            }
+        });
+        return ids;
+    }
+
+    private String userId() {
+        JsonNode users = send(requestFactory.create("/Users").GET(), "User lookup");
+        String userId = users.isArray() && !users.isEmpty() ? textOrNull(users.get(0).path("Id")) : null;
+        if (userId == null) {
+            throw new RuntimeException("No users found");
+        }
+        return userId;
+    }
+
+    /**
+     * @return the parsed response body, an empty object when there is none
+     */
+    private JsonNode send(HttpRequest.Builder builder, String action) {
+        try {
+            HttpResponse<String> response = httpClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200 && response.statusCode() != 204) {
+                throw new IOException(action + " failed (HTTP " + response.statusCode() + "): " + response.body());
+            }
+            return response.body().isBlank()
+                    ? objectMapper.createObjectNode()
+                    : objectMapper.readTree(response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param replaced number of playlists with the same name that were deleted
+     * @param requests number of playlist creation, update and deletion requests
+     */
+    public record PlaylistResult(String id, String name, int trackCount, int replaced, int requests) {
+    }
+
+    private record Played(String artist, String track, int plays, long msPlayed) {
+    }
+}
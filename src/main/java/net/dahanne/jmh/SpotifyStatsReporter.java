@@ -0,0 +1,281 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.report.ReportLayout;
+import net.dahanne.jmh.report.ReportWriter;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.function.Predicate;
+
+/**
+ * Top artists, albums and tracks of the Spotify history per time window, each flagged as owned or not in
+ * Jellyfin, followed by the most listened albums that are missing from the library.
+ * <p>
+ * The history is read in one streaming pass feeding the counters of every window; only the top entries of each
+ * ranking are kept, in heaps bounded to {@code top} elements, and only those are looked up in the
+ * {@link TrackMatchIndex} (every album is, to find the missing ones).
+ */
+@Component
+public class SpotifyStatsReporter {
+
+    public static final ReportLayout REPORT = ReportLayout.of(SpotifyStatsReporter::statsLine,
+            "window", "category", "rank", "artist", "name", "plays", "msPlayed", "owned");
+
+    private final SpotifyHistoryMatcher spotifyHistoryMatcher;
+
+    public SpotifyStatsReporter(SpotifyHistoryMatcher spotifyHistoryMatcher) {
+        this.spotifyHistoryMatcher = spotifyHistoryMatcher;
+    }
+
+    /**
+     * @param windows see {@link Window#parse}
+     * @param top length of each ranking
+     */
+    public void report(List<String> windows, int top, Ranking ranking, ReportWriter report) {
+        if (top <= 0) {
+            throw new IllegalArgumentException("--top must be positive, got " + top);
+        }
+        if (windows.isEmpty()) {
+            throw new IllegalArgumentException("No window given, expected e.g. all or 2023");
+        }
+        List<WindowStats> stats = windows.stream().map(Window::parse).map(WindowStats::new).toList();
+        spotifyHistoryMatcher.forEachStreamingHistoryEntry(entry -> {
+            for (WindowStats window : stats) {
+                window.add(entry);
+            }
+        });
+        write(stats, spotifyHistoryMatcher.trackMatchIndex(), top, ranking, report);
+    }
+
+    static void write(List<WindowStats> stats, TrackMatchIndex index, int top, Ranking ranking,
+                      ReportWriter report) {
+        for (WindowStats window : stats) {
+            String label = window.window().label();
+            if (window.plays() == 0) {
+                report.note("[" + label + "] no plays");
+                continue;
+            }
+            writeTop(report, label, "artist", top(window.artists(), top, ranking, _ -> true),
+                    ranked -> index.containsArtist(ranked.artist()));
+            writeTop(report, label, "album", top(window.albums(), top, ranking, _ -> true),
+                    ranked -> index.containsAlbum(ranked.artist(), ranked.name()));
+            writeTop(report, label, "track", top(window.tracks(), top, ranking, _ -> true),
+                    ranked -> index.find(ranked.artist(), ranked.name()) != null);
+            writeTop(report, label, "missing-album",
+                    top(window.albums(), top, ranking, ranked -> !index.containsAlbum(ranked.artist(), ranked.name())),
+                    _ -> false);
+        }
+    }
+
+    private static void writeTop(ReportWriter report, String window, String category, List<Ranked> ranking,
+                                 Predicate<Ranked> owned) {
+        for (int i = 0; i < ranking.size(); i++) {
+            Ranked ranked = ranking.get(i);
+            report.row(window, category, i + 1, ranked.artist(), ranked.name(), ranked.plays(), ranked.msPlayed(),
+                    owned.test(ranked));
+        }
+    }
+
+    /**
+     * Keeps the {@code top} best entries accepted by {@code filter} in a min-heap, so that selecting them costs
+     * {@code O(n log top)} time and {@code O(top)} memory instead of sorting every entry.
+     *
+     * @return the best entries, best first
+     */
+    private static List<Ranked> top(ListeningAggregator aggregator, int top, Ranking ranking,
+                                    Predicate<Ranked> filter) {
+        Comparator<Ranked> order = ranking.order();
+        PriorityQueue<Ranked> heap = new PriorityQueue<>(top + 1, order);
+        aggregator.forEach((artist, name, plays, msPlayed) -> {
+            if (heap.size() == top && ranking.compare(heap.peek(), plays, msPlayed) > 0) {
+                return;
+            }
+            Ranked ranked = new Ranked(artist, name, plays, msPlayed);
+            if (!filter.test(ranked)) {
+                return;
+            }
+            heap.add(ranked);
+            if (heap.size() > top) {
+                heap.poll();
+            }
+        });
+        List<Ranked> best = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            best.add(heap.poll());
+        }
+        return best.reversed();
+    }
+
+    private static String statsLine(Object[] row) {
+        StringBuilder line = new StringBuilder()
+                .append('[').append(row[0]).append("] ")
+                .append(row[1]).append(" #").append(row[2]).append(' ')
+                .append(row[3]);
+        if (row[4] != null) {
+            line.append(" - ").append(row[4]);
+        }
+        return line.append(' ')
+                .append(row[5]).append(" plays, ")
+                .append(duration((long) row[6])).append(' ')
+                .append((boolean) row[7] ? "✅" : "❌")
+                .toString();
+    }
+
+    private static String duration(long millis) {
+        long minutes = millis / 60_000;
+        return minutes < 60 ? minutes + "m" : minutes / 60 + "h " + String.format("%02d", minutes % 60) + "m";
+    }
+
+    public enum Ranking {
+        PLAYS, TIME;
+
+        static Ranking of(String value) {
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown ranking '" + value + "', expected plays or time", e);
+            }
+        }
+
+        /**
+         * Ascending, so that the heap head is the worst entry; ties are broken on the other measure, then on
+         * the names for a stable output.
+         */
+        Comparator<Ranked> order() {
+            Comparator<Ranked> plays = Comparator.comparingInt(Ranked::plays);
+            Comparator<Ranked> time = Comparator.comparingLong(Ranked::msPlayed);
+            return (this == PLAYS ? plays.thenComparing(time) : time.thenComparing(plays))
+                    .thenComparing(Ranked::artist, Comparator.nullsFirst(NameCollation.ORDER).reversed())
+                    .thenComparing(Ranked::name, Comparator.nullsFirst(NameCollation.ORDER).reversed());
+        }
+
+        /**
+         * Compares on the measures only, to skip entries that cannot enter a full heap without allocating.
+         */
+        int compare(Ranked ranked, int plays, long msPlayed) {
+            int byPlays = Integer.compare(ranked.plays(), plays);
+            int byTime = Long.compare(ranked.msPlayed(), msPlayed);
+            return this == PLAYS ? (byPlays != 0 ? byPlays : byTime) : (byTime != 0 ? byTime : byPlays);
+        }
+    }
+
+    /**
+     * Plays whose date falls between {@code from} and {@code to}, both inclusive {@code yyyy-MM-dd} dates or
+     * {@code null} when unbounded.
+     */
+    record Window(String label, String from, String to) {
+
+        /**
+         * @param value {@code all}, a year ({@code 2023}), a month ({@code 2023-05}), or a range of dates where
+         *              either end may be left out ({@code 2023-01-01..2023-03-31}, {@code 2024-06-01..})
+         */
+        static Window parse(String value) {
+            String label = value.trim();
+            try {
+                if (label.equalsIgnoreCase("all")) {
+                    return new Window("all", null, null);
+                }
+                if (label.contains("..")) {
+                    String from = label.substring(0, label.indexOf(".."));
+                    String to = label.substring(label.indexOf("..") + 2);
+                    return new Window(label, from.isEmpty() ? null : LocalDate.parse(from).toString(),
+                            to.isEmpty() ? null : LocalDate.parse(to).toString());
+                }
+                if (label.length() == 4) {
+                    int year = Integer.parseInt(label);
+                    return new Window(label, LocalDate.of(year, 1, 1).toString(),
+                            LocalDate.of(year, 12, 31).toString());
+                }
+                YearMonth month = YearMonth.parse(label);
+                return new Window(label, month.atDay(1).toString(), month.atEndOfMonth().toString());
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid window '" + value + "', expected all, a year (2023), "
+                        + "a month (2023-05) or a date range (2023-01-01..2023-03-31)", e);
+            }
+        }
+
+        /**
+         * @param timestamp {@code endTime} ("2023-05-01 13:37") or {@code ts} ("2023-05-01T13:37:00Z"), both
+         *                  starting with the UTC date so that comparing the first ten chars is enough
+         */
+        boolean contains(String timestamp) {
+            if (timestamp == null || timestamp.length() < 10) {
+                return from == null && to == null;
+            }
+            return (from == null || compareDate(timestamp, from) >= 0)
+                    && (to == null || compareDate(timestamp, to) <= 0);
+        }
+
+        private static int compareDate(String timestamp, String date) {
+            for (int i = 0; i < 10; i++) {
+                int difference = timestamp.charAt(i) - date.charAt(i);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Counters of one window. Artists are counted with a {@code null} track, albums only when the export names
+     * them (the extended export does, the account data export does not).
+     */
+    static final class WindowStats {
+
+        private final Window window;
+        private final ListeningAggregator artists = new ListeningAggregator();
+        private final ListeningAggregator albums = new ListeningAggregator();
+        private final ListeningAggregator tracks = new ListeningAggregator();
+        private long plays;
+
+        WindowStats(Window window) {
+            this.window = window;
+        }
+
+        void add(SpotifyHistoryMatcher.StreamingHistoryEntry entry) {
+            // podcast episodes of the extended export have no artist
+            if (entry.artistName() == null || !window.contains(entry.endTime())) {
+                return;
+            }
+            plays++;
+            artists.add(entry.artistName(), null, entry.playedMillis());
+            if (entry.albumName() != null) {
+                albums.add(entry.artistName(), entry.albumName(), entry.playedMillis());
+            }
+            if (entry.trackName() != null) {
+                tracks.add(entry.artistName(), entry.trackName(), entry.playedMillis());
+            }
+        }
+
+        Window window() {
+            return window;
+        }
+
+        long plays() {
+            return plays;
+        }
+
+        ListeningAggregator artists() {
+            return artists;
+        }
+
+        ListeningAggregator albums() {
+            return albums;
+        }
+
+        ListeningAggregator tracks() {
+            return tracks;
+        }
+    }
+
+    private record Ranked(String artist, String name, int plays, long msPlayed) {
+    }
+}
@@ -0,0 +1,148 @@
+package net.dahanne.jmh;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Runs subtasks on virtual threads and joins them as a unit, in the shape of the JDK's
+ * {@code StructuredTaskScope} with its "all successful or throw" policy, which is still a preview API in Java 25:
+ * <ul>
+ *     <li>the first subtask to fail cancels the others, and {@link #join()} rethrows its exception;</li>
+ *     <li>an interrupted or timed out owner cancels every subtask;</li>
+ *     <li>{@link #close()} only returns once no subtask is running.</li>
+ * </ul>
+ * Cancelling interrupts the subtask threads, which aborts their pending Jellyfin requests: {@code HttpClient.send}
+ * gives up its exchange and throws {@link InterruptedException}. Subtasks start with the
+ * {@link CommandContext} of the thread that forked them.
+ * <p>
+ * A scope is opened, forked from and joined by one owner thread, in a try-with-resources block.
+ */
+public final class TaskScope implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Future<?>> subtasks = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    private TaskScope() {
+    }
+
+    public static TaskScope open() {
+        return new TaskScope();
+    }
+
+    /**
+     * Starts {@code task} unless the scope is already cancelled, in which case it never runs.
+     *
+     * @return the result of the task, available once {@link #join()} has returned
+     */
+    public <T> Supplier<T> fork(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                try {
+                    return task.call();
+                } catch (Throwable e) {
+                    // only the first failure is reported, the others are usually its consequences
+                    if (failure.compareAndSet(null, e)) {
+                        cancel();
+                    }
+                    throw e;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return () -> {
+                throw new IllegalStateException("Subtask forked after its scope was cancelled");
+            };
+        }
+        subtasks.add(future);
+        return future::resultNow;
+    }
+
+    /**
+     * @return whether a subtask failed or the scope was cancelled, so that forking more is pointless
+     */
+    public boolean isCancelled() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * Interrupts every running subtask; those not started yet never run.
+     */
+    public void cancel() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Waits for every subtask.
+     *
+     * @throws InterruptedException when the owner is interrupted, after cancelling the subtasks
+     * @throws RuntimeException     the exception of the first failed subtask, checked ones being wrapped
+     */
+    public void join() throws InterruptedException {
+        try {
+            joinUntil(Instant.MAX);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Like {@link #join()}, but cancels the subtasks and throws {@link TimeoutException} once {@code deadline}
+     * has passed.
+     */
+    public void joinUntil(Instant deadline) throws InterruptedException, TimeoutException {
+        try {
+            for (Future<?> subtask : subtasks) {
+                await(subtask, deadline);
+            }
+        } catch (InterruptedException | TimeoutException e) {
+            cancel();
+            throw e;
+        }
+        Throwable first = failure.get();
+        if (first instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        if (first instanceof Error error) {
+            throw error;
+        }
+        if (first != null) {
+            throw new RuntimeException(first);
+        }
+    }
+
+    private static void await(Future<?> subtask, Instant deadline) throws InterruptedException, TimeoutException {
+        try {
+            if (deadline.equals(Instant.MAX)) {
+                subtask.get();
+            } else {
+                long nanos = Math.max(0, Duration.between(Instant.now(), deadline).toNanos());
+                subtask.get(nanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (ExecutionException | CancellationException e) {
+            // recorded in failure, or cancelled because of it
+        }
+    }
+
+    /**
+     * Cancels the subtasks still running, then waits for them to stop.
+     */
+    @Override
+    public void close() {
+        cancel();
+        executor.close();
+    }
+}
@@ -0,0 +1,69 @@
+package net.dahanne.jmh;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reduces track titles to the part that identifies the song, so that "Song - 2011 Remaster",
+ * "Song (feat. X)", "Song [Live]" and "Song" all share the canonical form {@code "song"}.
+ * <p>
+ * Only trailing {@code " - ..."} suffixes and bracketed groups mentioning a version keyword (remaster, live,
+ * edit, mono, feat., ...) are removed; "Song - Part 2" or "Song (Reprise)" keep their suffix. The rest goes
+ * through {@link NameNormalizer}.
+ */
+@Component
+public class TitleCanonicalizer {
+
+    private static final String VERSION_KEYWORDS = "\\b(?:\\d{4} )?(?:re-?master(?:ed)?|live|mono|stereo|version"
+            + "|edit|radio|single|bonus|demo|deluxe|acoustic|unplugged|anniversary|feat\\.?|ft\\.?|featuring|with)\\b";
+    private static final Pattern VERSION = Pattern.compile(VERSION_KEYWORDS);
+    private static final Pattern BRACKETS = Pattern.compile("\\s*[(\\[]([^()\\[\\]]*)[)\\]]");
+    private static final Pattern DASH_SUFFIX = Pattern.compile("\\s+[-–—]\\s+([^-–—]*)$");
+    private static final Pattern FEATURING = Pattern.compile("\\s+(?:feat\\.?|ft\\.|featuring)\\s.*$");
+
+    private final NameNormalizer nameNormalizer;
+
+    public TitleCanonicalizer(NameNormalizer nameNormalizer) {
+        this.nameNormalizer = nameNormalizer;
+    }
+
+    /**
+     * @return the canonical form of {@code title}, or its plain {@link NameNormalizer} key when stripping the
+     * version information would leave nothing
+     */
+    public String canonicalize(String title) {
+        if (title == null || title.isEmpty()) {
+            return "";
+        }
+        String stripped = strip(title.toLowerCase(Locale.ROOT), VERSION);
+        String canonical = nameNormalizer.normalize(stripped);
+        return canonical.isEmpty() ? nameNormalizer.normalize(title) : canonical;
+    }
+
+    /**
+     * Removes the bracketed groups and trailing {@code " - ..."} suffixes of a lower-case {@code title} in which
+     * {@code keywords} finds a match, then any inline featuring clause.
+     */
+    static String strip(String title, Pattern keywords) {
+        StringBuilder kept = new StringBuilder(title.length());
+        Matcher brackets = BRACKETS.matcher(title);
+        int from = 0;
+        while (brackets.find()) {
+            if (keywords.matcher(brackets.group(1)).find()) {
+                kept.append(title, from, brackets.start());
+                from = brackets.end();
+            }
+        }
+        String result = kept.append(title, from, title.length()).toString();
+
+        Matcher suffix = DASH_SUFFIX.matcher(result);
+        while (suffix.find() && keywords.matcher(suffix.group(1)).find()) {
+            result = result.substring(0, suffix.start());
+            suffix = DASH_SUFFIX.matcher(result);
+        }
+        return FEATURING.matcher(result).replaceFirst("");
+    }
+}
@@ -0,0 +1,158 @@
+package net.dahanne.jmh;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Local index of library tracks used to match streaming history entries, keyed on the
+ * {@link NameNormalizer} key of each credited artist and the {@link TitleCanonicalizer} form of the title.
+ * <p>
+ * A lookup is {@link Kind#EXACT} when title and artist are equal ignoring case, {@link Kind#FUZZY} when only
+ * their canonical forms are equal ("Song - 2011 Remaster" vs "Song"), or when a title of the same artist is
+ * within a small edit distance of the canonical title ("Dont Stop Me Now" vs "Don't Stop Me Now!" already
+ * share a key, "Bohemian Rapsody" vs "Bohemian Rhapsody" does not).
+ */
+public final class TrackMatchIndex {
+
+    private static final char SEPARATOR = '\u0000';
+
+    private final NameNormalizer nameNormalizer;
+    private final TitleCanonicalizer titleCanonicalizer;
+    private final Map<String, List<Track>> byArtistAndTitle = new HashMap<>();
+    private final Map<String, List<Track>> byArtist = new HashMap<>();
+    private final Set<String> albums = new HashSet<>();
+    private final Set<String> ids = new HashSet<>();
+
+    public TrackMatchIndex(NameNormalizer nameNormalizer, TitleCanonicalizer titleCanonicalizer) {
+        this.nameNormalizer = nameNormalizer;
+        this.titleCanonicalizer = titleCanonicalizer;
+    }
+
+    /**
+     * Indexes a track under each of its (track or album) artists.
+     */
+    public void add(String id, String title, String album, Collection<String> artists) {
+        if (title == null || title.isBlank() || artists.isEmpty()) {
+            return;
+        }
+        if (id != null) {
+            ids.add(id);
+        }
+        String canonicalTitle = titleCanonicalizer.canonicalize(title);
+        Track track = new Track(id, title, album, List.copyOf(artists), canonicalTitle);
+        Set<String> artistKeys = new LinkedHashSet<>();
+        for (String artist : artists) {
+            String key = nameNormalizer.normalize(artist);
+            if (!key.isEmpty()) {
+                artistKeys.add(key);
+            }
+        }
+        for (String artistKey : artistKeys) {
+            byArtistAndTitle.computeIfAbsent(artistKey + SEPARATOR + canonicalTitle, _ -> new ArrayList<>(1))
+                    .add(track);
+            byArtist.computeIfAbsent(artistKey, _ -> new ArrayList<>()).add(track);
+            if (album != null) {
+                albums.add(artistKey + SEPARATOR + nameNormalizer.normalize(album));
+            }
+        }
+    }
+
+    /**
+     * @return the best match for this artist and title, or {@code null}
+     */
+    public Match find(String artist, String title) {
+        String artistKey = nameNormalizer.normalize(artist);
+        if (artistKey.isEmpty() || title == null) {
+            return null;
+        }
+        String canonicalTitle = titleCanonicalizer.canonicalize(title);
+        List<Track> sameCanonical = byArtistAndTitle.get(artistKey + SEPARATOR + canonicalTitle);
+        if (sameCanonical != null) {
+            for (Track track : sameCanonical) {
+                if (NameNormalizer.equalsIgnoreCase(track.title(), title) && track.creditsExactly(artist)) {
+                    return new Match(Kind.EXACT, track);
+                }
+            }
+            return new Match(Kind.FUZZY, sameCanonical.getFirst());
+        }
+        return nearMiss(artistKey, canonicalTitle);
+    }
+
+    /**
+     * @return whether a track credits this artist, comparing {@link NameNormalizer} keys
+     */
+    public boolean containsArtist(String artist) {
+        return byArtist.containsKey(nameNormalizer.normalize(artist));
+    }
+
+    /**
+     * @return whether a track of this album credits this artist, comparing {@link NameNormalizer} keys
+     */
+    public boolean containsAlbum(String artist, String album) {
+        return albums.contains(nameNormalizer.normalize(artist) + SEPARATOR + nameNormalizer.normalize(album));
+    }
+
+    /**
+     * @return whether a track with this Jellyfin item id is indexed
+     */
+    public boolean containsId(String id) {
+        return ids.contains(id);
+    }
+
+    public int size() {
+        return byArtistAndTitle.size();
+    }
+
+    private Match nearMiss(String artistKey, String canonicalTitle) {
+        int max = maxDistance(canonicalTitle.length());
+        List<Track> tracks = byArtist.get(artistKey);
+        if (max == 0 || tracks == null) {
+            return null;
+        }
+        EditDistance.Pattern pattern = EditDistance.compile(canonicalTitle);
+        Track best = null;
+        for (Track track : tracks) {
+            int distance = pattern.levenshtein(track.canonicalTitle(), max);
+            if (distance <= max) {
+                best = track;
+                max = distance - 1;
+                if (max < 0) {
+                    break;
+                }
+            }
+        }
+        return best == null ? null : new Match(Kind.FUZZY, best);
+    }
+
+    /**
+     * One edit per six characters, at most three: short titles ("Intro", "Home") must match exactly.
+     */
+    private static int maxDistance(int length) {
+        return Math.min(3, length / 6);
+    }
+
+    public enum Kind {
+        EXACT, FUZZY
+    }
+
+    public record Match(Kind kind, Track track) {
+    }
+
+    public record Track(String id, String title, String album, List<String> artists, String canonicalTitle) {
+
+        boolean creditsExactly(String artist) {
+            for (String credited : artists) {
+                if (NameNormalizer.equalsIgnoreCase(credited, artist)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.dahanne.jmh;
+
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Append-only record of what bulk writes are about to change, one JSON object per line: the name and genres of
+ * each album before its update, the id and name of each deleted genre. {@code undo} replays the inverse
+ * operations from it. Each album entry is flushed before its update is sent, so an interrupted run still leaves a
+ * journal covering every album it may have changed; a genre is only journaled once its deletion succeeded.
+ */
+final class WriteJournal implements AutoCloseable {
+
+    static final String ALBUM_GENRES = "album-genres";
+    static final String DELETED_GENRE = "deleted-genre";
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private final Path file;
+    private final ObjectMapper objectMapper;
+    private final BufferedWriter writer;
+
+    private WriteJournal(Path file, ObjectMapper objectMapper) throws IOException {
+        this.file = file;
+        this.objectMapper = objectMapper;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * @return a new journal {@code <command>-<timestamp>.ndjson} in {@code directory}, created if needed
+     */
+    static WriteJournal create(Path directory, String command, ObjectMapper objectMapper) {
+        try {
+            Files.createDirectories(directory);
+            Path file = directory.resolve(command + "-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".ndjson");
+            return new WriteJournal(file, objectMapper);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create a journal in " + directory, e);
+        }
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Appends {@code entry} and flushes it; called from the threads applying a plan.
+     */
+    synchronized void append(Entry entry) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("operation", entry.operation()).put("id", entry.id()).put("name", entry.name());
+        ArrayNode genres = node.putArray("genres");
+        entry.genres().forEach(genres::add);
+        try {
+            writer.write(objectMapper.writeValueAsString(node));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write to journal " + file, e);
+        }
+    }
+
+    /**
+     * @return the entries of {@code file}, in the order they were appended
+     */
+    static List<Entry> read(Path file, ObjectMapper objectMapper) {
+        List<Entry> entries = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode node = objectMapper.readTree(line);
+                List<String> genres = new ArrayList<>();
+                node.path("genres").forEach(genre -> genres.add(textOrNull(genre)));
+                entries.add(new Entry(textOrNull(node.path("operation")), textOrNull(node.path("id")),
+                        textOrNull(node.path("name")), genres));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read journal " + file, e);
+        }
+        return entries;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Cannot close journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * State of one item before a write.
+     *
+     * @param operation {@link #ALBUM_GENRES} or {@link #DELETED_GENRE}
+     * @param genres    genre names of the album, empty for a genre
+     */
+    record Entry(String operation, String id, String name, List<String> genres) {
+    }
+}
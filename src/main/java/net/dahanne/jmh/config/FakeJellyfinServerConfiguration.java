@@ -0,0 +1,35 @@
+package net.dahanne.jmh.config;
+
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinServer;
+import net.dahanne.jmh.fake.FakeJellyfinSocket;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Profile;
+import tools.jackson.databind.ObjectMapper;
+
+@Configuration
+@Profile("fake-server")
+public class FakeJellyfinServerConfiguration {
+
+    @Bean(destroyMethod = "close")
+    @Lazy(false)
+    public FakeJellyfinServer fakeJellyfinServer(ObjectMapper objectMapper, JellyfinProperties properties) {
+        JellyfinProperties.FakeServer settings = properties.getFakeServer();
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(settings.getArtists(),
+                settings.getAlbumsPerArtist(), settings.getTracksPerAlbum(), settings.getGenres(), settings.getSeed());
+        FakeJellyfinServer server = new FakeJellyfinServer(catalog, objectMapper,
+                settings.getLatency(), settings.getErrorRate(), settings.getSeed()).start(settings.getPort());
+        properties.setBaseUrl(server.baseUrl());
+        if (properties.getLive().isEnabled()) {
+            FakeJellyfinSocket socket = new FakeJellyfinSocket(objectMapper).start(0);
+            server.notifying(socket);
+            properties.getLive().setSocketUrl(socket.url());
+        }
+        System.err.println("Fake Jellyfin server listening on " + server.baseUrl() + " ("
+                + catalog.artists().size() + " artists, " + catalog.albums().size() + " albums, "
+                + catalog.tracks().size() + " tracks)");
+        return server;
+    }
+}
@@ -2,8 +2,11 @@ package net.dahanne.jmh.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(prefix = "jellyfin")
 public class JellyfinProperties {
@@ -12,6 +15,13 @@ public class JellyfinProperties {
     private String apiToken;
     private SimilarArtist similarArtist = new SimilarArtist();
     private FeaturingArtists featuringArtists = new FeaturingArtists();
+    private AlbumArtistCheck albumArtistCheck = new AlbumArtistCheck();
+    private FakeServer fakeServer = new FakeServer();
+    private Snapshot snapshot = new Snapshot();
+    private Live live = new Live();
+    private Map<String, Server> servers = new LinkedHashMap<>();
+    private Execution execution = new Execution();
+    private Journal journal = new Journal();
 
     public String getBaseUrl() {
         return baseUrl;
@@ -45,8 +55,137 @@ public class JellyfinProperties {
         this.featuringArtists = featuringArtists;
     }
 
+    public AlbumArtistCheck getAlbumArtistCheck() {
+        return albumArtistCheck;
+    }
+
+    public void setAlbumArtistCheck(AlbumArtistCheck albumArtistCheck) {
+        this.albumArtistCheck = albumArtistCheck;
+    }
+
+    public FakeServer getFakeServer() {
+        return fakeServer;
+    }
+
+    public void setFakeServer(FakeServer fakeServer) {
+        this.fakeServer = fakeServer;
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public void setSnapshot(Snapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    public Live getLive() {
+        return live;
+    }
+
+    public void setLive(Live live) {
+        this.live = live;
+    }
+
+    public Map<String, Server> getServers() {
+        return servers;
+    }
+
+    public void setServers(Map<String, Server> servers) {
+        this.servers = servers;
+    }
+
+    public Execution getExecution() {
+        return execution;
+    }
+
+    public void setExecution(Execution execution) {
+        this.execution = execution;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public static class Execution {
+        private Duration deadline;
+        private Map<String, Duration> deadlines = new LinkedHashMap<>();
+        private boolean progress = true;
+        private Duration progressInterval = Duration.ofMillis(500);
+
+        /**
+         * @return the deadline of {@code command}, {@code jellyfin.execution.deadline} when it has none, or
+         * {@code null} when it may run as long as it takes
+         */
+        public Duration deadlineOf(String command) {
+            return deadlines.getOrDefault(command, deadline);
+        }
+
+        public Duration getDeadline() {
+            return deadline;
+        }
+
+        public void setDeadline(Duration deadline) {
+            this.deadline = deadline;
+        }
+
+        public Map<String, Duration> getDeadlines() {
+            return deadlines;
+        }
+
+        public void setDeadlines(Map<String, Duration> deadlines) {
+            this.deadlines = deadlines;
+        }
+
+        public boolean isProgress() {
+            return progress;
+        }
+
+        public void setProgress(boolean progress) {
+            this.progress = progress;
+        }
+
+        public Duration getProgressInterval() {
+            return progressInterval;
+        }
+
+        public void setProgressInterval(Duration progressInterval) {
+            this.progressInterval = progressInterval;
+        }
+    }
+
+    /**
+     * Another Jellyfin server, named by its key under {@code jellyfin.servers}.
+     */
+    public static class Server {
+        private String baseUrl;
+        private String apiToken;
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public void setBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getApiToken() {
+            return apiToken;
+        }
+
+        public void setApiToken(String apiToken) {
+            this.apiToken = apiToken;
+        }
+    }
+
     public static class SimilarArtist {
         private int minCommonLength = 5;
+        private double minScore = 0.4;
+        private int maxPairsInMemory = 250_000;
 
         public int getMinCommonLength() {
             return minCommonLength;
@@ -55,6 +194,22 @@ public class JellyfinProperties {
         public void setMinCommonLength(int minCommonLength) {
             this.minCommonLength = minCommonLength;
         }
+
+        public double getMinScore() {
+            return minScore;
+        }
+
+        public void setMinScore(double minScore) {
+            this.minScore = minScore;
+        }
+
+        public int getMaxPairsInMemory() {
+            return maxPairsInMemory;
+        }
+
+        public void setMaxPairsInMemory(int maxPairsInMemory) {
+            this.maxPairsInMemory = maxPairsInMemory;
+        }
     }
 
     public static class FeaturingArtists {
@@ -68,4 +223,155 @@ public class JellyfinProperties {
             this.markers = markers;
         }
     }
+
+    public static class AlbumArtistCheck {
+        // compilations credit "Various Artists" on no track
+        private List<String> ignoredAlbumArtists = new ArrayList<>(List.of("Various Artists"));
+
+        public List<String> getIgnoredAlbumArtists() {
+            return ignoredAlbumArtists;
+        }
+
+        public void setIgnoredAlbumArtists(List<String> ignoredAlbumArtists) {
+            this.ignoredAlbumArtists = ignoredAlbumArtists;
+        }
+    }
+
+    public static class Journal {
+        private String directory = "journals";
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+    }
+
+    public static class Snapshot {
+        private boolean enabled;
+        private String file = "jellyfin-library.snapshot";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+    }
+
+    public static class Live {
+        private boolean enabled;
+        private String socketUrl;
+        private Duration reconnectDelay = Duration.ofSeconds(5);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public String getSocketUrl() {
+            return socketUrl;
+        }
+
+        public void setSocketUrl(String socketUrl) {
+            this.socketUrl = socketUrl;
+        }
+
+        public Duration getReconnectDelay() {
+            return reconnectDelay;
+        }
+
+        public void setReconnectDelay(Duration reconnectDelay) {
+            this.reconnectDelay = reconnectDelay;
+        }
+    }
+
+    public static class FakeServer {
+        private int port = 18096;
+        private int artists = 1000;
+        private int albumsPerArtist = 5;
+        private int tracksPerAlbum = 10;
+        private int genres = 40;
+        private long seed = 42;
+        private Duration latency = Duration.ZERO;
+        private double errorRate;
+
+        public int getPort() {
+            return port;
+        }
+
+        public void setPort(int port) {
+            this.port = port;
+        }
+
+        public int getArtists() {
+            return artists;
+        }
+
+        public void setArtists(int artists) {
+            this.artists = artists;
+        }
+
+        public int getAlbumsPerArtist() {
+            return albumsPerArtist;
+        }
+
+        public void setAlbumsPerArtist(int albumsPerArtist) {
+            this.albumsPerArtist = albumsPerArtist;
+        }
+
+        public int getTracksPerAlbum() {
+            return tracksPerAlbum;
+        }
+
+        public void setTracksPerAlbum(int tracksPerAlbum) {
+            this.tracksPerAlbum = tracksPerAlbum;
+        }
+
+        public int getGenres() {
+            return genres;
+        }
+
+        public void setGenres(int genres) {
+            this.genres = genres;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public void setSeed(long seed) {
+            this.seed = seed;
+        }
+
+        public Duration getLatency() {
+            return latency;
+        }
+
+        public void setLatency(Duration latency) {
+            this.latency = latency;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+
+        public void setErrorRate(double errorRate) {
+            this.errorRate = errorRate;
+        }
+    }
 }
@@ -10,12 +10,37 @@ import java.util.Objects;
 @Component
 public class JellyfinRequestFactory {
 
+    /**
+     * Name of the server configured by {@code jellyfin.base-url} and {@code jellyfin.api-token}.
+     */
+    public static final String DEFAULT_SERVER = "default";
+
     private final JellyfinProperties properties;
 
     public JellyfinRequestFactory(JellyfinProperties properties) {
         this.properties = properties;
     }
 
+    /**
+     * @param name {@value #DEFAULT_SERVER}, or a key of {@code jellyfin.servers}
+     * @return a factory for the requests to that server
+     */
+    public JellyfinRequestFactory forServer(String name) {
+        if (name == null || name.isBlank() || name.equals(DEFAULT_SERVER)) {
+            return this;
+        }
+        JellyfinProperties.Server server = properties.getServers().get(name);
+        if (server == null) {
+            throw new IllegalArgumentException("Unknown server '" + name + "', expected " + DEFAULT_SERVER
+                    + " or one of jellyfin.servers " + properties.getServers().keySet());
+        }
+        JellyfinProperties bound = new JellyfinProperties();
+        bound.setBaseUrl(Objects.requireNonNull(server.getBaseUrl(),
+                "Property jellyfin.servers." + name + ".base-url must be configured."));
+        bound.setApiToken(server.getApiToken());
+        return new JellyfinRequestFactory(bound);
+    }
+
     public HttpRequest.Builder create(String pathOrAbsoluteUrl) {
         HttpRequest.Builder builder = HttpRequest.newBuilder()
                 .uri(buildUri(pathOrAbsoluteUrl))
@@ -0,0 +1,505 @@
+package net.dahanne.jmh.fake;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Deterministic, in-memory music catalog served by {@link FakeJellyfinServer}.
+ * <p>
+ * Names are generated from a seed so that two catalogs built with the same settings are identical.
+ * A share of the artists, titles and genres are deliberately generated as variants (accents,
+ * "feat." clauses, remaster suffixes, "Hip-Hop" / "Hip Hop") so the analytical commands have
+ * something to find.
+ * <p>
+ * The lists handed out are built once and kept until the next write, so that paging through a large catalog
+ * does not copy or sort it again for every page.
+ */
+public final class FakeJellyfinCatalog {
+
+    private static final String[] SYLLABLES = {
+            "ka", "lo", "mi", "ra", "ne", "to", "shi", "van", "del", "mar", "co", "lu",
+            "be", "yon", "ce", "gan", "star", "no", "va", "ri", "zel", "ta", "dor", "em"
+    };
+    private static final String[] TITLE_WORDS = {
+            "Love", "Night", "City", "Dream", "Fire", "River", "Heart", "Light", "Road", "Summer",
+            "Blue", "Golden", "Ghost", "Rain", "Echo", "Wild", "Silent", "Electric", "Home", "Stars"
+    };
+    private static final String[] GENRE_NAMES = {
+            "Rock", "Pop", "Jazz", "Blues", "Hip-Hop", "Electronic", "Classical", "Soul", "Funk",
+            "Reggae", "Metal", "Folk", "Country", "R&B", "Punk", "Ambient", "Disco", "House", "Techno", "Indie"
+    };
+    private static final String[] TITLE_SUFFIXES = {
+            " - 2011 Remaster", " (Live)", " - Live", " [Remastered]", " - Radio Edit"
+    };
+    private static final Instant GENERATED_AT = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final Map<String, FakeGenre> genres = new LinkedHashMap<>();
+    private final Map<String, FakeArtist> artists = new LinkedHashMap<>();
+    private final Map<String, FakeAlbum> albums = new LinkedHashMap<>();
+    private final Map<String, FakeTrack> tracks = new LinkedHashMap<>();
+    private final Map<String, FakePlaylist> playlists = new LinkedHashMap<>();
+    private final String userId;
+    // built on first use, dropped by every write
+    private List<FakeGenre> genreList;
+    private List<FakeGenre> sortedGenreList;
+    private List<FakeArtist> artistList;
+    private List<FakeArtist> sortedArtistList;
+    private List<FakeAlbum> albumList;
+    private List<FakeTrack> trackList;
+    private long idSequence;
+    private long generated;
+
+    private FakeJellyfinCatalog() {
+        this.userId = nextId('e');
+    }
+
+    public static FakeJellyfinCatalog generate(int artistCount, int albumsPerArtist, int tracksPerAlbum,
+                                               int genreCount, long seed) {
+        FakeJellyfinCatalog catalog = new FakeJellyfinCatalog();
+        Random random = new Random(seed);
+
+        List<FakeGenre> genreList = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, genreCount); i++) {
+            String base = GENRE_NAMES[i % GENRE_NAMES.length];
+            int round = i / GENRE_NAMES.length;
+            String name = switch (round) {
+                case 0 -> base;
+                case 1 -> base.replace("-", " ");
+                case 2 -> base.toLowerCase(Locale.ROOT).replace("-", "");
+                default -> base + " " + round;
+            };
+            genreList.add(catalog.addGenre(name));
+        }
+
+        List<FakeArtist> artistList = new ArrayList<>();
+        for (int i = 0; i < artistCount; i++) {
+            String name = catalog.artistName(random, i, artistList);
+            artistList.add(catalog.addArtist(name));
+        }
+
+        int trackNumber = 0;
+        for (FakeArtist artist : artistList) {
+            for (int a = 0; a < albumsPerArtist; a++) {
+                String albumName = titleCase(random, 1 + random.nextInt(3));
+                if (a > 0 && random.nextInt(10) == 0) {
+                    albumName = albumName + " (Deluxe Edition)";
+                }
+                List<FakeGenre> albumGenres = new ArrayList<>();
+                albumGenres.add(genreList.get(random.nextInt(genreList.size())));
+                if (random.nextInt(4) == 0) {
+                    FakeGenre second = genreList.get(random.nextInt(genreList.size()));
+                    if (!albumGenres.contains(second)) {
+                        albumGenres.add(second);
+                    }
+                }
+                FakeAlbum album = catalog.addAlbum(albumName, artist, albumGenres);
+                for (int t = 0; t < tracksPerAlbum; t++) {
+                    String title = titleCase(random, 1 + random.nextInt(4));
+                    if (random.nextInt(12) == 0) {
+                        title = title + TITLE_SUFFIXES[random.nextInt(TITLE_SUFFIXES.length)];
+                    }
+                    List<FakeArtist> trackArtists = new ArrayList<>();
+                    trackArtists.add(artist);
+                    if (random.nextInt(15) == 0 && artistList.size() > 1) {
+                        FakeArtist guest = artistList.get(random.nextInt(artistList.size()));
+                        if (guest != artist) {
+                            title = title + " (feat. " + guest.name() + ")";
+                            trackArtists.add(guest);
+                        }
+                    }
+                    long runTimeTicks = (120L + random.nextInt(240)) * 10_000_000L;
+                    catalog.addTrack(title, album, trackArtists, t + 1, runTimeTicks, trackNumber++);
+                }
+            }
+        }
+        return catalog;
+    }
+
+    private String artistName(Random random, int index, List<FakeArtist> previous) {
+        if (!previous.isEmpty() && random.nextInt(25) == 0) {
+            FakeArtist other = previous.get(random.nextInt(previous.size()));
+            return switch (random.nextInt(3)) {
+                case 0 -> other.name() + " feat. " + word(random);
+                case 1 -> other.name().replace('e', 'é');
+                default -> other.name().replace(" ", "");
+            };
+        }
+        String first = word(random);
+        return random.nextBoolean() ? first : first + " " + word(random) + (index % 7 == 0 ? " " + index : "");
+    }
+
+    private static String word(Random random) {
+        StringBuilder word = new StringBuilder();
+        int syllables = 2 + random.nextInt(2);
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        word.setCharAt(0, Character.toUpperCase(word.charAt(0)));
+        return word.toString();
+    }
+
+    private static String titleCase(Random random, int words) {
+        StringJoiner title = new StringJoiner(" ");
+        for (int i = 0; i < words; i++) {
+            title.add(TITLE_WORDS[random.nextInt(TITLE_WORDS.length)]);
+        }
+        return title.toString();
+    }
+
+    private String nextId(char type) {
+        return String.format("%c%031x", type, ++idSequence);
+    }
+
+    private Instant generatedAt() {
+        return GENERATED_AT.plusMillis(++generated);
+    }
+
+    public synchronized FakeGenre addGenre(String name) {
+        FakeGenre genre = new FakeGenre(nextId('a'), name);
+        genres.put(genre.id(), genre);
+        changed();
+        return genre;
+    }
+
+    public synchronized FakeArtist addArtist(String name) {
+        FakeArtist artist = new FakeArtist(nextId('b'), name);
+        artists.put(artist.id(), artist);
+        changed();
+        return artist;
+    }
+
+    public synchronized FakeAlbum addAlbum(String name, FakeArtist artist, List<FakeGenre> albumGenres) {
+        FakeAlbum album = new FakeAlbum(nextId('c'), name, artist, List.copyOf(albumGenres), generatedAt());
+        albums.put(album.id(), album);
+        changed();
+        return album;
+    }
+
+    public synchronized FakeTrack addTrack(String name, FakeAlbum album, List<FakeArtist> trackArtists,
+                                           int indexNumber, long runTimeTicks, int fileNumber) {
+        String path = "/music/" + album.artist().name() + "/" + album.name() + "/"
+                + String.format("%02d - %s (%d).flac", indexNumber, name, fileNumber);
+        FakeTrack track = new FakeTrack(nextId('d'), name, album, List.copyOf(trackArtists),
+                indexNumber, runTimeTicks, path, generatedAt());
+        tracks.put(track.id(), track);
+        changed();
+        album.trackCount++;
+        album.runTimeTicks += runTimeTicks;
+        return track;
+    }
+
+    public synchronized FakePlaylist addPlaylist(String name, List<String> itemIds) {
+        FakePlaylist playlist = new FakePlaylist(nextId('f'), name, new ArrayList<>(itemIds));
+        playlists.put(playlist.id(), playlist);
+        return playlist;
+    }
+
+    /**
+     * Appends items to a playlist, in order; Jellyfin accepts duplicates, so does this.
+     */
+    public synchronized void addToPlaylist(String playlistId, List<String> itemIds) {
+        FakePlaylist playlist = playlists.get(playlistId);
+        if (playlist == null) {
+            throw new NoSuchElementException(playlistId);
+        }
+        playlist.itemIds.addAll(itemIds);
+    }
+
+    public String userId() {
+        return userId;
+    }
+
+    public synchronized List<FakeGenre> genres() {
+        if (genreList == null) {
+            genreList = List.copyOf(genres.values());
+        }
+        return genreList;
+    }
+
+    /**
+     * @return the genres ordered by name, ignoring case, as {@code /MusicGenres} lists them
+     */
+    public synchronized List<FakeGenre> genresByName() {
+        if (sortedGenreList == null) {
+            sortedGenreList = genres().stream()
+                    .sorted(Comparator.comparing(FakeGenre::name, String.CASE_INSENSITIVE_ORDER))
+                    .toList();
+        }
+        return sortedGenreList;
+    }
+
+    private void changed() {
+        genreList = null;
+        sortedGenreList = null;
+        artistList = null;
+        sortedArtistList = null;
+        albumList = null;
+        trackList = null;
+    }
+
+    public synchronized List<FakeArtist> artists() {
+        if (artistList == null) {
+            artistList = List.copyOf(artists.values());
+        }
+        return artistList;
+    }
+
+    /**
+     * @return the artists ordered by name, ignoring case, as {@code /Artists} lists them
+     */
+    public synchronized List<FakeArtist> artistsByName() {
+        if (sortedArtistList == null) {
+            sortedArtistList = artists().stream()
+                    .sorted(Comparator.comparing(FakeArtist::name, String.CASE_INSENSITIVE_ORDER))
+                    .toList();
+        }
+        return sortedArtistList;
+    }
+
+    public synchronized List<FakeAlbum> albums() {
+        if (albumList == null) {
+            albumList = List.copyOf(albums.values());
+        }
+        return albumList;
+    }
+
+    public synchronized List<FakeTrack> tracks() {
+        if (trackList == null) {
+            trackList = List.copyOf(tracks.values());
+        }
+        return trackList;
+    }
+
+    public synchronized List<FakePlaylist> playlists() {
+        return List.copyOf(playlists.values());
+    }
+
+    public synchronized FakePlaylist playlist(String id) {
+        return playlists.get(id);
+    }
+
+    public synchronized FakeGenre genre(String id) {
+        return genres.get(id);
+    }
+
+    public synchronized FakeGenre genreByName(String name) {
+        for (FakeGenre genre : genres.values()) {
+            if (genre.name().equalsIgnoreCase(name)) {
+                return genre;
+            }
+        }
+        return null;
+    }
+
+    public synchronized FakeArtist artist(String id) {
+        return artists.get(id);
+    }
+
+    public synchronized FakeAlbum album(String id) {
+        return albums.get(id);
+    }
+
+    public synchronized FakeTrack track(String id) {
+        return tracks.get(id);
+    }
+
+    /**
+     * Replaces the genres of an album (and therefore of its tracks), creating unknown genres the way
+     * Jellyfin does when an item is saved with a new genre name.
+     */
+    public synchronized void updateAlbum(String albumId, String name, List<String> genreNames) {
+        FakeAlbum album = albums.get(albumId);
+        if (album == null) {
+            throw new NoSuchElementException(albumId);
+        }
+        if (name != null && !name.isBlank()) {
+            album.name = name;
+        }
+        if (genreNames != null) {
+            List<FakeGenre> updated = new ArrayList<>();
+            for (String genreName : genreNames) {
+                FakeGenre genre = genreByName(genreName);
+                updated.add(genre != null ? genre : addGenre(genreName));
+            }
+            album.genres = List.copyOf(updated);
+        }
+        album.dateLastSaved = Instant.now();
+    }
+
+    public synchronized void updateTrack(String trackId, String name) {
+        FakeTrack track = tracks.get(trackId);
+        if (track == null) {
+            throw new NoSuchElementException(trackId);
+        }
+        if (name != null && !name.isBlank()) {
+            track.name = name;
+        }
+        track.dateLastSaved = Instant.now();
+    }
+
+    /**
+     * Deletes a genre, album, track or playlist. Deleting an album also deletes its tracks; deleting a genre
+     * removes it from every album.
+     *
+     * @return {@code true} if an item with this id existed
+     */
+    public synchronized boolean delete(String id) {
+        changed();
+        if (genres.remove(id) != null) {
+            for (FakeAlbum album : albums.values()) {
+                if (album.genres.stream().anyMatch(genre -> genre.id().equals(id))) {
+                    album.genres = album.genres.stream().filter(genre -> !genre.id().equals(id)).toList();
+                    album.dateLastSaved = Instant.now();
+                }
+            }
+            return true;
+        }
+        FakeAlbum album = albums.remove(id);
+        if (album != null) {
+            tracks.values().removeIf(track -> track.album() == album);
+            return true;
+        }
+        FakeTrack track = tracks.remove(id);
+        if (track != null) {
+            track.album().trackCount--;
+            track.album().runTimeTicks -= track.runTimeTicks();
+            return true;
+        }
+        return artists.remove(id) != null || playlists.remove(id) != null;
+    }
+
+    public record FakeGenre(String id, String name) {
+    }
+
+    public record FakeArtist(String id, String name) {
+    }
+
+    public static final class FakeAlbum {
+        private final String id;
+        private final FakeArtist artist;
+        private String name;
+        private List<FakeGenre> genres;
+        private Instant dateLastSaved;
+        // kept up to date by addTrack and delete, so that serving an album never walks the tracks
+        private int trackCount;
+        private long runTimeTicks;
+
+        private FakeAlbum(String id, String name, FakeArtist artist, List<FakeGenre> genres, Instant dateLastSaved) {
+            this.id = id;
+            this.name = name;
+            this.artist = artist;
+            this.genres = genres;
+            this.dateLastSaved = dateLastSaved;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public FakeArtist artist() {
+            return artist;
+        }
+
+        public List<FakeGenre> genres() {
+            return genres;
+        }
+
+        public Instant dateLastSaved() {
+            return dateLastSaved;
+        }
+
+        public int trackCount() {
+            return trackCount;
+        }
+
+        /**
+         * @return the sum of the durations of its tracks
+         */
+        public long runTimeTicks() {
+            return runTimeTicks;
+        }
+    }
+
+    public static final class FakePlaylist {
+        private final String id;
+        private final String name;
+        private final List<String> itemIds;
+
+        private FakePlaylist(String id, String name, List<String> itemIds) {
+            this.id = id;
+            this.name = name;
+            this.itemIds = itemIds;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public List<String> itemIds() {
+            return List.copyOf(itemIds);
+        }
+    }
+
+    public static final class FakeTrack {
+        private final String id;
+        private final FakeAlbum album;
+        private final List<FakeArtist> artists;
+        private final int indexNumber;
+        private final long runTimeTicks;
+        private final String path;
+        private String name;
+        private Instant dateLastSaved;
+
+        private FakeTrack(String id, String name, FakeAlbum album, List<FakeArtist> artists, int indexNumber,
+                          long runTimeTicks, String path, Instant dateLastSaved) {
+            this.id = id;
+            this.name = name;
+            this.album = album;
+            this.artists = artists;
+            this.indexNumber = indexNumber;
+            this.runTimeTicks = runTimeTicks;
+            this.path = path;
+            this.dateLastSaved = dateLastSaved;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public FakeAlbum album() {
+            return album;
+        }
+
+        public List<FakeArtist> artists() {
+            return artists;
+        }
+
+        public int indexNumber() {
+            return indexNumber;
+        }
+
+        public long runTimeTicks() {
+            return runTimeTicks;
+        }
+
+        public String path() {
+            return path;
+        }
+
+        public Instant dateLastSaved() {
+            return dateLastSaved;
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package net.dahanne.jmh.fake;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeAlbum;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeArtist;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeGenre;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakePlaylist;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeTrack;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ArrayNode;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Minimal Jellyfin stand-in serving a {@link FakeJellyfinCatalog} over HTTP.
+ * <p>
+ * Only the endpoints and query parameters used by this helper are implemented: {@code /Artists},
+ * {@code /MusicGenres}, {@code /Items} (searchTerm, paging, GenreIds, ArtistIds, Ids, MinDateLastSaved), {@code /Users},
+ * {@code /Playlists} creation and additions, and item GET/POST/DELETE, updates and deletions being notified on a
+ * {@link FakeJellyfinSocket} when one is attached. Every request can be delayed by a fixed latency and failed with
+ * HTTP 503 at a configurable rate, to exercise the helper's error handling under load.
+ */
+public final class FakeJellyfinServer implements AutoCloseable {
+
+    private final FakeJellyfinCatalog catalog;
+    private final ObjectMapper objectMapper;
+    private final Duration latency;
+    private final double errorRate;
+    private final Random random;
+    private final AtomicLong requestCount = new AtomicLong();
+    private HttpServer server;
+    private volatile FakeJellyfinSocket socket;
+    private volatile Predicate<String> failing = _ -> false;
+
+    public FakeJellyfinServer(FakeJellyfinCatalog catalog, ObjectMapper objectMapper,
+                              Duration latency, double errorRate, long seed) {
+        this.catalog = catalog;
+        this.objectMapper = objectMapper;
+        this.latency = latency == null ? Duration.ZERO : latency;
+        this.errorRate = errorRate;
+        this.random = new Random(seed);
+    }
+
+    public FakeJellyfinServer start(int port) {
+        try {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start fake Jellyfin server on port " + port, e);
+        }
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    /**
+     * Notifies item updates and deletions on {@code socket}, as Jellyfin does on its WebSocket; the socket is
+     * closed with this server.
+     */
+    public FakeJellyfinServer notifying(FakeJellyfinSocket socket) {
+        this.socket = socket;
+        return this;
+    }
+
+    /**
+     * Fails with HTTP 503 every request whose path and query match {@code requests}, on top of the random failures.
+     */
+    public FakeJellyfinServer failing(Predicate<String> requests) {
+        this.failing = requests;
+        return this;
+    }
+
+    public String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public FakeJellyfinCatalog catalog() {
+        return catalog;
+    }
+
+    public long requestCount() {
+        return requestCount.get();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requestCount.incrementAndGet();
+            if (!latency.isZero()) {
+                Thread.sleep(latency);
+            }
+            if (errorRate > 0 && nextDouble() < errorRate
+                    || failing.test(exchange.getRequestURI().toString())) {
+                sendText(exchange, 503, "Injected failure");
+                return;
+            }
+            route(exchange);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            sendText(exchange, 500, e.getClass().getSimpleName() + ": " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private synchronized double nextDouble() {
+        return random.nextDouble();
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] segments = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (method.equals("GET") && segments.length == 1 && segments[0].equals("Artists")) {
+            sendJson(exchange, 200, artists(query));
+        } else if (method.equals("GET") && segments.length == 1 && segments[0].equals("MusicGenres")) {
+            sendJson(exchange, 200, genres(query));
+        } else if (method.equals("GET") && segments.length == 1 && segments[0].equals("Items")) {
+            sendJson(exchange, 200, items(query));
+        } else if (method.equals("GET") && segments.length == 1 && segments[0].equals("Users")) {
+            ArrayNode users = objectMapper.createArrayNode();
+            users.addObject().put("Id", catalog.userId()).put("Name", "fake");
+            sendJson(exchange, 200, users);
+        } else if (segments.length == 4 && segments[0].equals("Users") && segments[2].equals("Items")
+                && method.equals("GET")) {
+            sendItem(exchange, segments[3]);
+        } else if (method.equals("POST") && segments.length == 1 && segments[0].equals("Playlists")) {
+            createPlaylist(exchange);
+        } else if (method.equals("POST") && segments.length == 3 && segments[0].equals("Playlists")
+                && segments[2].equals("Items")) {
+            if (catalog.playlist(segments[1]) == null) {
+                sendStatus(exchange, 404);
+                return;
+            }
+            catalog.addToPlaylist(segments[1], csvInOrder(query.get("Ids")));
+            sendStatus(exchange, 204);
+        } else if (segments.length == 2 && segments[0].equals("Items")) {
+            switch (method) {
+                case "GET" -> sendItem(exchange, segments[1]);
+                case "POST" -> updateItem(exchange, segments[1]);
+                case "DELETE" -> deleteItem(exchange, segments[1]);
+                default -> sendStatus(exchange, 405);
+            }
+        } else {
+            sendText(exchange, 404, "Not implemented by fake server: " + method + " " + exchange.getRequestURI());
+        }
+    }
+
+    private JsonNode artists(Map<String, String> query) {
+        List<FakeArtist> artists = catalog.artistsByName();
+        if (isSearch(query)) {
+            Predicate<String> search = searchPredicate(query);
+            artists = artists.stream().filter(artist -> search.test(artist.name())).toList();
+        }
+        return page(artists, query, this::artistNode);
+    }
+
+    private JsonNode genres(Map<String, String> query) {
+        List<FakeGenre> genres = catalog.genresByName();
+        if (isSearch(query)) {
+            Predicate<String> search = searchPredicate(query);
+            genres = genres.stream().filter(genre -> search.test(genre.name())).toList();
+        }
+        return page(genres, query, this::genreNode);
+    }
+
+    private JsonNode items(Map<String, String> query) {
+        Set<String> types = csv(query.get("IncludeItemTypes"));
+        Set<String> fields = csv(query.get("Fields"));
+        Set<String> genreIds = csv(query.get("GenreIds"));
+        Set<String> artistIds = csv(query.get("ArtistIds"));
+        Set<String> ids = csv(query.get("Ids"));
+        Predicate<String> search = searchPredicate(query);
+        Instant minDateLastSaved = query.containsKey("MinDateLastSaved")
+                ? Instant.parse(query.get("MinDateLastSaved"))
+                : Instant.MIN;
+        // library scans page through one type unfiltered: slice the catalog's list rather than scan it every page
+        if (types.size() == 1 && ids.isEmpty() && genreIds.isEmpty() && artistIds.isEmpty() && !isSearch(query)
+                && minDateLastSaved == Instant.MIN) {
+            if (types.contains("MusicAlbum")) {
+                return page(catalog.albums(), query, album -> albumNode(album, fields));
+            }
+            if (types.contains("Audio")) {
+                return page(catalog.tracks(), query, track -> trackNode(track, fields));
+            }
+        }
+
+        List<Object> matching = new ArrayList<>();
+        if (types.isEmpty() || types.contains("MusicAlbum")) {
+            for (FakeAlbum album : catalog.albums()) {
+                if ((ids.isEmpty() || ids.contains(album.id()))
+                        && !album.dateLastSaved().isBefore(minDateLastSaved)
+                        && search.test(album.name())
+                        && (genreIds.isEmpty() || album.genres().stream().anyMatch(g -> genreIds.contains(g.id())))
+                        && (artistIds.isEmpty() || artistIds.contains(album.artist().id()))) {
+                    matching.add(album);
+                }
+            }
+        }
+        if (types.isEmpty() || types.contains("Audio")) {
+            for (FakeTrack track : catalog.tracks()) {
+                if ((ids.isEmpty() || ids.contains(track.id()))
+                        && !track.dateLastSaved().isBefore(minDateLastSaved)
+                        && search.test(track.name())
+                        && (genreIds.isEmpty() || track.album().genres().stream().anyMatch(g -> genreIds.contains(g.id())))
+                        && (artistIds.isEmpty() || track.artists().stream().anyMatch(a -> artistIds.contains(a.id())))) {
+                    matching.add(track);
+                }
+            }
+        }
+        // any item can be asked for by id, which is how changed items are fetched after a notification
+        if (types.isEmpty() && !ids.isEmpty()) {
+            for (FakeArtist artist : catalog.artists()) {
+                if (ids.contains(artist.id())) {
+                    matching.add(artist);
+                }
+            }
+            for (FakeGenre genre : catalog.genres()) {
+                if (ids.contains(genre.id())) {
+                    matching.add(genre);
+                }
+            }
+        }
+        // Jellyfin lists playlists with the other items, only asked for explicitly here to keep library scans stable
+        if (types.contains("Playlist")) {
+            for (FakePlaylist playlist : catalog.playlists()) {
+                if ((ids.isEmpty() || ids.contains(playlist.id())) && search.test(playlist.name())) {
+                    matching.add(playlist);
+                }
+            }
+        }
+        return page(matching, query, item -> switch (item) {
+            case FakeAlbum album -> albumNode(album, fields);
+            case FakePlaylist playlist -> objectMapper.createObjectNode()
+                    .put("Id", playlist.id()).put("Name", playlist.name()).put("Type", "Playlist")
+                    .put("ChildCount", playlist.itemIds().size());
+            case FakeArtist artist -> artistNode(artist);
+            case FakeGenre genre -> genreNode(genre);
+            default -> trackNode((FakeTrack) item, fields);
+        });
+    }
+
+    /**
+     * {@code POST /Playlists} with a JSON body naming the playlist and its first items, answering the new id.
+     */
+    private void createPlaylist(HttpExchange exchange) throws IOException {
+        JsonNode body = objectMapper.readTree(exchange.getRequestBody().readAllBytes());
+        String name = textOrNull(body.path("Name"));
+        if (name == null || name.isBlank()) {
+            sendText(exchange, 400, "Playlist name is required");
+            return;
+        }
+        List<String> itemIds = new ArrayList<>();
+        body.path("Ids").forEach(id -> itemIds.add(textOrNull(id)));
+        FakePlaylist playlist = catalog.addPlaylist(name, itemIds);
+        sendJson(exchange, 200, objectMapper.createObjectNode().put("Id", playlist.id()));
+    }
+
+    private <T> JsonNode page(List<T> matching, Map<String, String> query,
+                              Function<T, JsonNode> mapper) {
+        int start = Math.min(matching.size(), Math.max(0, parseInt(query.get("StartIndex"), 0)));
+        int limit = parseInt(query.get("Limit"), Integer.MAX_VALUE);
+        int end = (int) Math.min(matching.size(), (long) start + Math.max(0, limit));
+
+        ObjectNode root = objectMapper.createObjectNode();
+        ArrayNode items = root.putArray("Items");
+        for (T item : matching.subList(start, end)) {
+            items.add(mapper.apply(item));
+        }
+        // like Jellyfin, only counts when asked to
+        root.put("TotalRecordCount", "false".equalsIgnoreCase(query.get("EnableTotalRecordCount"))
+                ? 0
+                : matching.size());
+        root.put("StartIndex", start);
+        return root;
+    }
+
+    private void sendItem(HttpExchange exchange, String id) throws IOException {
+        Set<String> allFields = Set.of("Genres", "Path", "ChildCount", "DateLastSaved");
+        FakeAlbum album = catalog.album(id);
+        if (album != null) {
+            sendJson(exchange, 200, albumNode(album, allFields));
+            return;
+        }
+        FakeTrack track = catalog.track(id);
+        if (track != null) {
+            sendJson(exchange, 200, trackNode(track, allFields));
+            return;
+        }
+        FakeGenre genre = catalog.genre(id);
+        if (genre != null) {
+            sendJson(exchange, 200, genreNode(genre));
+            return;
+        }
+        FakeArtist artist = catalog.artist(id);
+        if (artist != null) {
+            sendJson(exchange, 200, artistNode(artist));
+            return;
+        }
+        sendStatus(exchange, 404);
+    }
+
+    private void updateItem(HttpExchange exchange, String id) throws IOException {
+        JsonNode body = objectMapper.readTree(exchange.getRequestBody().readAllBytes());
+        String name = textOrNull(body.path("Name"));
+        List<String> genres = null;
+        if (body.path("Genres").isArray()) {
+            genres = new ArrayList<>();
+            for (JsonNode genre : body.path("Genres")) {
+                String value = textOrNull(genre);
+                if (value != null) {
+                    genres.add(value);
+                }
+            }
+        }
+        if (catalog.album(id) != null) {
+            catalog.updateAlbum(id, name, genres);
+        } else if (catalog.track(id) != null) {
+            catalog.updateTrack(id, name);
+        } else {
+            sendStatus(exchange, 404);
+            return;
+        }
+        sendStatus(exchange, 204);
+        notify(List.of(), List.of(id), List.of());
+    }
+
+    private void deleteItem(HttpExchange exchange, String id) throws IOException {
+        if (!catalog.delete(id)) {
+            sendStatus(exchange, 404);
+            return;
+        }
+        sendStatus(exchange, 204);
+        notify(List.of(), List.of(), List.of(id));
+    }
+
+    private void notify(List<String> added, List<String> updated, List<String> removed) {
+        FakeJellyfinSocket current = socket;
+        if (current != null) {
+            current.libraryChanged(added, updated, removed);
+        }
+    }
+
+    private ObjectNode artistNode(FakeArtist artist) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("Id", artist.id()).put("Name", artist.name()).put("Type", "MusicArtist");
+        return node;
+    }
+
+    private ObjectNode genreNode(FakeGenre genre) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("Id", genre.id()).put("Name", genre.name()).put("Type", "MusicGenre");
+        return node;
+    }
+
+    private ObjectNode albumNode(FakeAlbum album, Set<String> fields) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("Id", album.id()).put("Name", album.name()).put("Type", "MusicAlbum");
+        node.put("AlbumArtist", album.artist().name());
+        addArtists(node.putArray("AlbumArtists"), List.of(album.artist()));
+        addArtists(node.putArray("ArtistItems"), List.of(album.artist()));
+        node.putArray("Artists").add(album.artist().name());
+        node.put("RunTimeTicks", album.runTimeTicks());
+        addGenres(node, album.genres(), fields);
+        if (fields.contains("ChildCount")) {
+            node.put("ChildCount", album.trackCount());
+        }
+        if (fields.contains("DateLastSaved")) {
+            node.put("DateLastSaved", album.dateLastSaved().toString());
+        }
+        return node;
+    }
+
+    private ObjectNode trackNode(FakeTrack track, Set<String> fields) {
+        ObjectNode node = objectMapper.createObjectNode();
+        node.put("Id", track.id()).put("Name", track.name()).put("Type", "Audio");
+        node.put("Album", track.album().name()).put("AlbumId", track.album().id());
+        node.put("AlbumArtist", track.album().artist().name());
+        addArtists(node.putArray("AlbumArtists"), List.of(track.album().artist()));
+        addArtists(node.putArray("ArtistItems"), track.artists());
+        ArrayNode artistNames = node.putArray("Artists");
+        track.artists().forEach(artist -> artistNames.add(artist.name()));
+        node.put("RunTimeTicks", track.runTimeTicks()).put("IndexNumber", track.indexNumber());
+        addGenres(node, track.album().genres(), fields);
+        if (fields.contains("Path")) {
+            node.put("Path", track.path());
+        }
+        if (fields.contains("DateLastSaved")) {
+            node.put("DateLastSaved", track.dateLastSaved().toString());
+        }
+        return node;
+    }
+
+    private void addArtists(ArrayNode target, List<FakeArtist> artists) {
+        for (FakeArtist artist : artists) {
+            target.addObject().put("Name", artist.name()).put("Id", artist.id());
+        }
+    }
+
+    private void addGenres(ObjectNode node, List<FakeGenre> genres, Set<String> fields) {
+        if (!fields.contains("Genres")) {
+            return;
+        }
+        ArrayNode names = node.putArray("Genres");
+        ArrayNode items = node.putArray("GenreItems");
+        for (FakeGenre genre : genres) {
+            names.add(genre.name());
+            items.addObject().put("Name", genre.name()).put("Id", genre.id());
+        }
+    }
+
+    private static boolean isSearch(Map<String, String> query) {
+        String term = query.get("searchTerm");
+        return term != null && !term.isBlank();
+    }
+
+    private Predicate<String> searchPredicate(Map<String, String> query) {
+        String term = query.get("searchTerm");
+        if (term == null || term.isBlank()) {
+            return _ -> true;
+        }
+        String lowerTerm = term.toLowerCase(Locale.ROOT);
+        return value -> value != null && value.toLowerCase(Locale.ROOT).contains(lowerTerm);
+    }
+
+    private static Set<String> csv(String value) {
+        if (value == null || value.isBlank()) {
+            return Set.of();
+        }
+        Set<String> values = new HashSet<>();
+        for (String part : value.split(",")) {
+            if (!part.isBlank()) {
+                values.add(part.trim());
+            }
+        }
+        return values;
+    }
+
+    private static List<String> csvInOrder(String value) {
+        List<String> values = new ArrayList<>();
+        if (value != null) {
+            for (String part : value.split(",")) {
+                if (!part.isBlank()) {
+                    values.add(part.trim());
+                }
+            }
+        }
+        return values;
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            query.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private void sendJson(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void sendText(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void sendStatus(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+}
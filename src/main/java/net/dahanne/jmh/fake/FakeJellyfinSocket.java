@@ -0,0 +1,260 @@
+package net.dahanne.jmh.fake;
+
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal stand-in for Jellyfin's {@code /socket} WebSocket, pushing {@code LibraryChanged} notifications to
+ * every connected client.
+ * <p>
+ * Only what the helper needs of RFC 6455 is implemented: the opening handshake, unfragmented server text
+ * frames, and the client's masked close, ping and text frames, the latter being ignored.
+ */
+public final class FakeJellyfinSocket implements AutoCloseable {
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int TEXT = 0x1;
+    private static final int CLOSE = 0x8;
+    private static final int PING = 0x9;
+    private static final int PONG = 0xA;
+
+    private final ObjectMapper objectMapper;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connectionCount = new AtomicInteger();
+    private ServerSocket serverSocket;
+
+    public FakeJellyfinSocket(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public FakeJellyfinSocket start(int port) {
+        try {
+            serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start fake Jellyfin socket on port " + port, e);
+        }
+        Thread.ofVirtual().name("fake-jellyfin-socket").start(this::accept);
+        return this;
+    }
+
+    public String url() {
+        return "ws://" + serverSocket.getInetAddress().getHostAddress() + ":" + serverSocket.getLocalPort()
+                + "/socket";
+    }
+
+    /**
+     * @return number of handshakes completed since the start, reconnections included
+     */
+    public int connectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Sends a {@code LibraryChanged} notification to every connected client.
+     */
+    public void libraryChanged(Collection<String> added, Collection<String> updated, Collection<String> removed) {
+        ObjectNode message = objectMapper.createObjectNode().put("MessageType", "LibraryChanged");
+        ObjectNode data = message.putObject("Data");
+        data.set("ItemsAdded", objectMapper.valueToTree(added));
+        data.set("ItemsUpdated", objectMapper.valueToTree(updated));
+        data.set("ItemsRemoved", objectMapper.valueToTree(removed));
+        data.putArray("FoldersAddedTo");
+        data.putArray("FoldersRemovedFrom");
+        byte[] payload = objectMapper.writeValueAsBytes(message);
+        for (Connection connection : connections) {
+            connection.send(TEXT, payload);
+        }
+    }
+
+    /**
+     * Drops every connection without a close frame, as a restarting server would.
+     */
+    public void dropConnections() {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        dropConnections();
+        if (serverSocket != null) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            Thread.ofVirtual().start(() -> serve(socket));
+        }
+    }
+
+    private void serve(Socket socket) {
+        Connection connection = new Connection(socket);
+        try (socket) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            String key = handshakeKey(in);
+            if (key == null) {
+                connection.write(("HTTP/1.1 400 Bad Request\r\nContent-Length: 0\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            // registered before answering, so that a client told it is connected does not miss a notification;
+            // the lock holds notifications back until the answer is written
+            synchronized (connection) {
+                connections.add(connection);
+                connectionCount.incrementAndGet();
+                connection.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n"
+                        + "Connection: Upgrade\r\nSec-WebSocket-Accept: " + accept(key) + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+            }
+            while (true) {
+                int first = in.readUnsignedByte();
+                int second = in.readUnsignedByte();
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                } else if (length == 127) {
+                    length = in.readLong();
+                }
+                byte[] mask = new byte[4];
+                if ((second & 0x80) != 0) {
+                    in.readFully(mask);
+                }
+                byte[] payload = new byte[Math.toIntExact(length)];
+                in.readFully(payload);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i % 4];
+                }
+                switch (first & 0x0F) {
+                    case CLOSE -> {
+                        connection.send(CLOSE, payload);
+                        return;
+                    }
+                    case PING -> connection.send(PONG, payload);
+                    default -> {
+                        // keep-alives and other client messages are not answered
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // client gone
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    /**
+     * Reads the HTTP upgrade request byte by byte, so that no frame is buffered away.
+     *
+     * @return the {@code Sec-WebSocket-Key} header, {@code null} when missing
+     */
+    private static String handshakeKey(InputStream in) throws IOException {
+        String key = null;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int read;
+        while ((read = in.read()) != -1) {
+            if (read != '\n') {
+                if (read != '\r') {
+                    line.write(read);
+                }
+                continue;
+            }
+            String header = line.toString(StandardCharsets.US_ASCII);
+            line.reset();
+            if (header.isEmpty()) {
+                return key;
+            }
+            int separator = header.indexOf(':');
+            if (separator > 0 && header.substring(0, separator).trim().toLowerCase(Locale.ROOT)
+                    .equals("sec-websocket-key")) {
+                key = header.substring(separator + 1).trim();
+            }
+        }
+        throw new IOException("Connection closed during handshake");
+    }
+
+    private static String accept(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest((key + ACCEPT_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Connection {
+
+        private final Socket socket;
+
+        Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        synchronized void send(int opcode, byte[] payload) {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(payload.length + 10);
+            frame.write(0x80 | opcode);
+            if (payload.length < 126) {
+                frame.write(payload.length);
+            } else if (payload.length <= 0xFFFF) {
+                frame.write(126);
+                frame.write(payload.length >>> 8);
+                frame.write(payload.length);
+            } else {
+                frame.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    frame.write((int) ((long) payload.length >>> shift));
+                }
+            }
+            frame.writeBytes(payload);
+            try {
+                write(frame.toByteArray());
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        synchronized void write(byte[] bytes) throws IOException {
+            OutputStream out = socket.getOutputStream();
+            out.write(bytes);
+            out.flush();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}
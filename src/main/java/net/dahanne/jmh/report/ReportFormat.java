@@ -0,0 +1,46 @@
+package net.dahanne.jmh.report;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Output formats selectable with {@code --format} on every command.
+ */
+public enum ReportFormat {
+    /**
+     * One human-readable line per row, as the commands always printed.
+     */
+    TEXT("txt"),
+    /**
+     * RFC 4180 CSV with a header row.
+     */
+    CSV("csv"),
+    /**
+     * One JSON object per line, keyed by column name.
+     */
+    NDJSON("ndjson");
+
+    private final String extension;
+
+    ReportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    public static ReportFormat of(String name) {
+        if (name == null || name.isBlank()) {
+            return TEXT;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown format '" + name + "', expected one of "
+                    + Arrays.stream(values()).map(format -> format.name().toLowerCase(Locale.ROOT))
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+}
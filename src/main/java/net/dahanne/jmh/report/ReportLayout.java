@@ -0,0 +1,17 @@
+package net.dahanne.jmh.report;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Columns of a report, used as CSV header and NDJSON keys, and how one row reads in the text format.
+ *
+ * @param columns column names, in the order rows pass their values
+ * @param text    renders the values of one row as a text line
+ */
+public record ReportLayout(List<String> columns, Function<Object[], String> text) {
+
+    public static ReportLayout of(Function<Object[], String> text, String... columns) {
+        return new ReportLayout(List.of(columns), text);
+    }
+}
@@ -0,0 +1,222 @@
+package net.dahanne.jmh.report;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Streams the rows of a report to a file or to standard output through one large buffer, instead of a
+ * {@code System.out.println} (and its flush) per line. Rows are written as soon as they are produced.
+ */
+public final class ReportWriter implements AutoCloseable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Writer out;
+    private final boolean closeOut;
+    private final ReportFormat format;
+    private final ReportLayout layout;
+
+    private ReportWriter(Writer out, boolean closeOut, ReportFormat format, ReportLayout layout) {
+        this.out = out;
+        this.closeOut = closeOut;
+        this.format = format;
+        this.layout = layout;
+        if (format == ReportFormat.CSV) {
+            write(String.join(",", layout.columns()));
+            write("\n");
+        }
+    }
+
+    /**
+     * @param output file to (over)write, or {@code null}/blank for standard output
+     */
+    public static ReportWriter open(ReportFormat format, String output, ReportLayout layout) {
+        if (output == null || output.isBlank()) {
+            return open(format, System.out, false, layout);
+        }
+        return open(format, Path.of(output), layout);
+    }
+
+    public static ReportWriter open(ReportFormat format, Path file, ReportLayout layout) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            return open(format, Files.newOutputStream(file), true, layout);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write report to " + file, e);
+        }
+    }
+
+    /**
+     * @param closeStream whether {@link #close()} closes {@code stream}, or only flushes it
+     */
+    public static ReportWriter open(ReportFormat format, OutputStream stream, boolean closeStream,
+                                    ReportLayout layout) {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+        return new ReportWriter(writer, closeStream, format, layout);
+    }
+
+    /**
+     * Writes one row, with one value per column of the layout. Values may be strings, numbers, booleans,
+     * collections (joined with "; " in CSV, arrays in NDJSON) or {@code null}.
+     */
+    public void row(Object... values) {
+        StringBuilder line = new StringBuilder(64);
+        switch (format) {
+            case TEXT -> line.append(layout.text().apply(values));
+            case CSV -> {
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        line.append(',');
+                    }
+                    appendCsv(line, values[i]);
+                }
+            }
+            case NDJSON -> {
+                line.append('{');
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        line.append(',');
+                    }
+                    appendJsonString(line, layout.columns().get(i));
+                    line.append(':');
+                    appendJson(line, values[i]);
+                }
+                line.append('}');
+            }
+        }
+        write(line.append('\n'));
+    }
+
+    /**
+     * A message for whoever reads the output ("No empty genres found."): part of the text report, sent to
+     * standard error in CSV and NDJSON so that the data stays parseable.
+     */
+    public void note(String message) {
+        if (format == ReportFormat.TEXT) {
+            write(message);
+            write("\n");
+        } else {
+            System.err.println(message);
+        }
+    }
+
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (closeOut) {
+                out.close();
+            } else {
+                out.flush();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void write(CharSequence value) {
+        try {
+            out.append(value);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void appendCsv(StringBuilder line, Object value) {
+        if (value == null) {
+            return;
+        }
+        String text = value instanceof Collection<?> collection ? join(collection) : value.toString();
+        boolean quote = false;
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    private static String join(Collection<?> values) {
+        StringBuilder joined = new StringBuilder();
+        for (Iterator<?> iterator = values.iterator(); iterator.hasNext(); ) {
+            joined.append(iterator.next());
+            if (iterator.hasNext()) {
+                joined.append("; ");
+            }
+        }
+        return joined.toString();
+    }
+
+    private static void appendJson(StringBuilder line, Object value) {
+        switch (value) {
+            case null -> line.append("null");
+            case Boolean bool -> line.append(bool);
+            case Double number when number.isNaN() || number.isInfinite() -> line.append("null");
+            case Number number -> line.append(number);
+            case Collection<?> collection -> {
+                line.append('[');
+                boolean first = true;
+                for (Object element : collection) {
+                    if (!first) {
+                        line.append(',');
+                    }
+                    appendJson(line, element);
+                    first = false;
+                }
+                line.append(']');
+            }
+            default -> appendJsonString(line, value.toString());
+        }
+    }
+
+    private static void appendJsonString(StringBuilder line, String value) {
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        line.append('"');
+    }
+}
@@ -0,0 +1,510 @@
+package net.dahanne.jmh.snapshot;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Columnar, read-only copy of the Jellyfin music library.
+ * <p>
+ * Every string (ids and names) lives once in a shared pool and entities refer to each other through
+ * int ordinals: an album points to its artists and genres, a track to its album and artists. Multi-valued
+ * relations are stored CSR-style as an offsets column plus a values column.
+ * <p>
+ * A snapshot read by {@link LibrarySnapshotFile#read} is a set of views over the memory-mapped file: accessors
+ * read single ints from the mapped columns and only decode the strings they return, so scanning artists or
+ * tracks does not require loading the catalog onto the heap.
+ */
+public final class LibrarySnapshot {
+
+    final String watermark;
+    final StringPool strings;
+    final IntBuffer[] columns;
+    final LongBuffer trackRunTimeTicks;
+    private final IntBuffer genreIds;
+    private final IntBuffer genreNames;
+    private final IntBuffer artistIds;
+    private final IntBuffer artistNames;
+    private final IntBuffer albumIds;
+    private final IntBuffer albumNames;
+    private final IntBuffer albumArtistOffsets;
+    private final IntBuffer albumArtists;
+    private final IntBuffer albumGenreOffsets;
+    private final IntBuffer albumGenres;
+    private final IntBuffer trackIds;
+    private final IntBuffer trackNames;
+    private final IntBuffer trackAlbums;
+    private final IntBuffer trackArtistOffsets;
+    private final IntBuffer trackArtists;
+    private volatile Map<String, Integer> artistOrdinals;
+    private volatile ArtistAlbums artistAlbums;
+
+    /**
+     * @param columns one buffer per {@link Column}, indexed by ordinal; absolute {@code get(int)} is the only
+     *                access used, so the buffers may be shared views over a mapped file
+     */
+    LibrarySnapshot(String watermark, StringPool strings, IntBuffer[] columns, LongBuffer trackRunTimeTicks) {
+        this.watermark = watermark;
+        this.strings = strings;
+        this.columns = columns;
+        this.trackRunTimeTicks = trackRunTimeTicks;
+        this.genreIds = columns[Column.GENRE_IDS.ordinal()];
+        this.genreNames = columns[Column.GENRE_NAMES.ordinal()];
+        this.artistIds = columns[Column.ARTIST_IDS.ordinal()];
+        this.artistNames = columns[Column.ARTIST_NAMES.ordinal()];
+        this.albumIds = columns[Column.ALBUM_IDS.ordinal()];
+        this.albumNames = columns[Column.ALBUM_NAMES.ordinal()];
+        this.albumArtistOffsets = columns[Column.ALBUM_ARTIST_OFFSETS.ordinal()];
+        this.albumArtists = columns[Column.ALBUM_ARTISTS.ordinal()];
+        this.albumGenreOffsets = columns[Column.ALBUM_GENRE_OFFSETS.ordinal()];
+        this.albumGenres = columns[Column.ALBUM_GENRES.ordinal()];
+        this.trackIds = columns[Column.TRACK_IDS.ordinal()];
+        this.trackNames = columns[Column.TRACK_NAMES.ordinal()];
+        this.trackAlbums = columns[Column.TRACK_ALBUMS.ordinal()];
+        this.trackArtistOffsets = columns[Column.TRACK_ARTIST_OFFSETS.ordinal()];
+        this.trackArtists = columns[Column.TRACK_ARTISTS.ordinal()];
+    }
+
+    /**
+     * Fixed-width int columns of the snapshot, in file order.
+     */
+    enum Column {
+        GENRE_IDS, GENRE_NAMES,
+        ARTIST_IDS, ARTIST_NAMES,
+        ALBUM_IDS, ALBUM_NAMES, ALBUM_ARTIST_OFFSETS, ALBUM_ARTISTS, ALBUM_GENRE_OFFSETS, ALBUM_GENRES,
+        TRACK_IDS, TRACK_NAMES, TRACK_ALBUMS, TRACK_ARTIST_OFFSETS, TRACK_ARTISTS
+    }
+
+    /**
+     * @return the highest {@code DateLastSaved} seen during the last sync, or {@code null} for an empty snapshot
+     */
+    public String watermark() {
+        return watermark;
+    }
+
+    public int genreCount() {
+        return genreIds.limit();
+    }
+
+    public String genreId(int genre) {
+        return strings.get(genreIds.get(genre));
+    }
+
+    public String genreName(int genre) {
+        return strings.get(genreNames.get(genre));
+    }
+
+    public int artistCount() {
+        return artistIds.limit();
+    }
+
+    public String artistId(int artist) {
+        return strings.get(artistIds.get(artist));
+    }
+
+    public String artistName(int artist) {
+        return strings.get(artistNames.get(artist));
+    }
+
+    public int albumCount() {
+        return albumIds.limit();
+    }
+
+    public String albumId(int album) {
+        return strings.get(albumIds.get(album));
+    }
+
+    public String albumName(int album) {
+        return strings.get(albumNames.get(album));
+    }
+
+    public int albumArtistCount(int album) {
+        return albumArtistOffsets.get(album + 1) - albumArtistOffsets.get(album);
+    }
+
+    public int albumArtist(int album, int index) {
+        return albumArtists.get(albumArtistOffsets.get(album) + index);
+    }
+
+    public int albumGenreCount(int album) {
+        return albumGenreOffsets.get(album + 1) - albumGenreOffsets.get(album);
+    }
+
+    public int albumGenre(int album, int index) {
+        return albumGenres.get(albumGenreOffsets.get(album) + index);
+    }
+
+    public int trackCount() {
+        return trackIds.limit();
+    }
+
+    public String trackId(int track) {
+        return strings.get(trackIds.get(track));
+    }
+
+    public String trackName(int track) {
+        return strings.get(trackNames.get(track));
+    }
+
+    /**
+     * @return the album ordinal of the track, or {@code -1} if the track has no album
+     */
+    public int trackAlbum(int track) {
+        return trackAlbums.get(track);
+    }
+
+    public long trackRunTimeTicks(int track) {
+        return trackRunTimeTicks.get(track);
+    }
+
+    public int trackArtistCount(int track) {
+        return trackArtistOffsets.get(track + 1) - trackArtistOffsets.get(track);
+    }
+
+    public int trackArtist(int track, int index) {
+        return trackArtists.get(trackArtistOffsets.get(track) + index);
+    }
+
+    /**
+     * @return the ordinal of the artist with this Jellyfin id, or {@code -1}
+     */
+    public int artistOrdinal(String artistId) {
+        Map<String, Integer> ordinals = artistOrdinals;
+        if (ordinals == null) {
+            ordinals = new HashMap<>(artistCount() * 2);
+            for (int artist = 0; artist < artistCount(); artist++) {
+                ordinals.put(artistId(artist), artist);
+            }
+            artistOrdinals = ordinals;
+        }
+        return ordinals.getOrDefault(artistId, -1);
+    }
+
+    /**
+     * Albums credited to the artist, either as album artist or on one of their tracks, which is what the
+     * {@code ArtistIds} filter of {@code /Items} returns.
+     *
+     * @return album ordinals, in snapshot order
+     */
+    public int[] albumsOfArtist(int artist) {
+        ArtistAlbums index = artistAlbums;
+        if (index == null) {
+            index = ArtistAlbums.of(this);
+            artistAlbums = index;
+        }
+        return Arrays.copyOfRange(index.albums(), index.offsets()[artist], index.offsets()[artist + 1]);
+    }
+
+    /**
+     * @return the number of albums tagged with each genre, indexed by genre ordinal
+     */
+    public int[] albumCountsByGenre() {
+        int[] counts = new int[genreCount()];
+        for (int album = 0; album < albumCount(); album++) {
+            for (int index = 0; index < albumGenreCount(album); index++) {
+                counts[albumGenre(album, index)]++;
+            }
+        }
+        return counts;
+    }
+
+    public static Builder builder() {
+        return new Builder(null);
+    }
+
+    /**
+     * @return a builder pre-filled with this snapshot, to apply an incremental sync on top of it
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder(watermark);
+        for (int genre = 0; genre < genreCount(); genre++) {
+            builder.genre(genreId(genre), genreName(genre));
+        }
+        for (int artist = 0; artist < artistCount(); artist++) {
+            builder.artist(artistId(artist), artistName(artist));
+        }
+        for (int album = 0; album < albumCount(); album++) {
+            List<Ref> artists = new ArrayList<>();
+            for (int index = 0; index < albumArtistCount(album); index++) {
+                int artist = albumArtist(album, index);
+                artists.add(new Ref(artistId(artist), artistName(artist)));
+            }
+            List<Ref> genres = new ArrayList<>();
+            for (int index = 0; index < albumGenreCount(album); index++) {
+                int genre = albumGenre(album, index);
+                genres.add(new Ref(genreId(genre), genreName(genre)));
+            }
+            builder.album(albumId(album), albumName(album), artists, genres);
+        }
+        for (int track = 0; track < trackCount(); track++) {
+            List<Ref> artists = new ArrayList<>();
+            for (int index = 0; index < trackArtistCount(track); index++) {
+                int artist = trackArtist(track, index);
+                artists.add(new Ref(artistId(artist), artistName(artist)));
+            }
+            int album = trackAlbum(track);
+            builder.track(trackId(track), trackName(track), album < 0 ? null : albumId(album), artists,
+                    trackRunTimeTicks(track));
+        }
+        return builder;
+    }
+
+    /**
+     * CSR index from artist ordinal to the distinct album ordinals credited to that artist, built from sorted
+     * (artist, album) pairs packed into longs so that no per-artist collection is allocated.
+     */
+    private record ArtistAlbums(int[] offsets, int[] albums) {
+        static ArtistAlbums of(LibrarySnapshot snapshot) {
+            long[] pairs = new long[16];
+            int size = 0;
+            for (int album = 0; album < snapshot.albumCount(); album++) {
+                for (int i = 0; i < snapshot.albumArtistCount(album); i++) {
+                    if (size == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, size * 2);
+                    }
+                    pairs[size++] = (long) snapshot.albumArtist(album, i) << 32 | album;
+                }
+            }
+            for (int track = 0; track < snapshot.trackCount(); track++) {
+                int album = snapshot.trackAlbum(track);
+                for (int i = 0; album >= 0 && i < snapshot.trackArtistCount(track); i++) {
+                    if (size == pairs.length) {
+                        pairs = Arrays.copyOf(pairs, size * 2);
+                    }
+                    pairs[size++] = (long) snapshot.trackArtist(track, i) << 32 | album;
+                }
+            }
+            Arrays.sort(pairs, 0, size);
+            int[] offsets = new int[snapshot.artistCount() + 1];
+            int[] albums = new int[size];
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (i > 0 && pairs[i] == pairs[i - 1]) {
+                    continue;
+                }
+                offsets[(int) (pairs[i] >>> 32) + 1]++;
+                albums[distinct++] = (int) pairs[i];
+            }
+            for (int artist = 0; artist < snapshot.artistCount(); artist++) {
+                offsets[artist + 1] += offsets[artist];
+            }
+            return new ArtistAlbums(offsets, Arrays.copyOf(albums, distinct));
+        }
+    }
+
+    /**
+     * Id and name of a related item, as found in {@code ArtistItems}, {@code AlbumArtists} or {@code GenreItems}.
+     */
+    public record Ref(String id, String name) {
+    }
+
+    private record AlbumRow(String name, List<Ref> artists, List<Ref> genres) {
+    }
+
+    private record TrackRow(String name, String albumId, List<Ref> artists, long runTimeTicks) {
+    }
+
+    /**
+     * Mutable, id-keyed view of a snapshot. Rows can be upserted and removed by Jellyfin id; {@link #build()}
+     * interns every string and resolves references to ordinals.
+     */
+    public static final class Builder {
+
+        private final Map<String, String> genres = new LinkedHashMap<>();
+        private final Map<String, String> artists = new LinkedHashMap<>();
+        private final Map<String, AlbumRow> albums = new LinkedHashMap<>();
+        private final Map<String, TrackRow> tracks = new LinkedHashMap<>();
+        private String watermark;
+
+        private Builder(String watermark) {
+            this.watermark = watermark;
+        }
+
+        public Builder genre(String id, String name) {
+            genres.put(id, name);
+            return this;
+        }
+
+        public Builder artist(String id, String name) {
+            artists.put(id, name);
+            return this;
+        }
+
+        public Builder album(String id, String name, List<Ref> albumArtists, List<Ref> albumGenres) {
+            albums.put(id, new AlbumRow(name, List.copyOf(albumArtists), List.copyOf(albumGenres)));
+            return this;
+        }
+
+        public Builder track(String id, String name, String albumId, List<Ref> trackArtists, long runTimeTicks) {
+            tracks.put(id, new TrackRow(name, albumId, List.copyOf(trackArtists), runTimeTicks));
+            return this;
+        }
+
+        public Builder clearGenres() {
+            genres.clear();
+            return this;
+        }
+
+        public Builder clearArtists() {
+            artists.clear();
+            return this;
+        }
+
+        public Set<String> albumIds() {
+            return albums.keySet();
+        }
+
+        public Set<String> trackIds() {
+            return tracks.keySet();
+        }
+
+        public int albumCount() {
+            return albums.size();
+        }
+
+        public int trackCount() {
+            return tracks.size();
+        }
+
+        /**
+         * Keeps the most recent of the current and the given {@code DateLastSaved} value.
+         */
+        public Builder observeDateLastSaved(String dateLastSaved) {
+            if (dateLastSaved != null && (watermark == null || compareDates(dateLastSaved, watermark) > 0)) {
+                watermark = dateLastSaved;
+            }
+            return this;
+        }
+
+        private static int compareDates(String left, String right) {
+            try {
+                return Instant.parse(left).compareTo(Instant.parse(right));
+            } catch (DateTimeParseException e) {
+                return left.compareTo(right);
+            }
+        }
+
+        public LibrarySnapshot build() {
+            Map<String, Integer> pool = new HashMap<>();
+            List<String> strings = new ArrayList<>();
+
+            // artists and genres referenced by albums or tracks but missing from the top-level lists
+            Map<String, String> allArtists = new LinkedHashMap<>(artists);
+            Map<String, String> allGenres = new LinkedHashMap<>(genres);
+            albums.values().forEach(album -> {
+                album.artists().forEach(ref -> allArtists.putIfAbsent(ref.id(), ref.name()));
+                album.genres().forEach(ref -> allGenres.putIfAbsent(ref.id(), ref.name()));
+            });
+            tracks.values().forEach(track -> track.artists().forEach(ref -> allArtists.putIfAbsent(ref.id(), ref.name())));
+
+            Map<String, Integer> genreOrdinals = new HashMap<>();
+            int[] genreIds = new int[allGenres.size()];
+            int[] genreNames = new int[allGenres.size()];
+            int ordinal = 0;
+            for (Map.Entry<String, String> genre : allGenres.entrySet()) {
+                genreOrdinals.put(genre.getKey(), ordinal);
+                genreIds[ordinal] = intern(pool, strings, genre.getKey());
+                genreNames[ordinal++] = intern(pool, strings, genre.getValue());
+            }
+
+            Map<String, Integer> artistOrdinals = new HashMap<>();
+            int[] artistIds = new int[allArtists.size()];
+            int[] artistNames = new int[allArtists.size()];
+            ordinal = 0;
+            for (Map.Entry<String, String> artist : allArtists.entrySet()) {
+                artistOrdinals.put(artist.getKey(), ordinal);
+                artistIds[ordinal] = intern(pool, strings, artist.getKey());
+                artistNames[ordinal++] = intern(pool, strings, artist.getValue());
+            }
+
+            Map<String, Integer> albumOrdinals = new HashMap<>();
+            int[] albumIds = new int[albums.size()];
+            int[] albumNames = new int[albums.size()];
+            int[] albumArtistOffsets = new int[albums.size() + 1];
+            int[] albumGenreOffsets = new int[albums.size() + 1];
+            IntColumn albumArtists = new IntColumn();
+            IntColumn albumGenres = new IntColumn();
+            ordinal = 0;
+            for (Map.Entry<String, AlbumRow> album : albums.entrySet()) {
+                albumOrdinals.put(album.getKey(), ordinal);
+                albumIds[ordinal] = intern(pool, strings, album.getKey());
+                albumNames[ordinal] = intern(pool, strings, album.getValue().name());
+                album.getValue().artists().forEach(ref -> albumArtists.add(artistOrdinals.get(ref.id())));
+                album.getValue().genres().forEach(ref -> albumGenres.add(genreOrdinals.get(ref.id())));
+                ordinal++;
+                albumArtistOffsets[ordinal] = albumArtists.size();
+                albumGenreOffsets[ordinal] = albumGenres.size();
+            }
+
+            int[] trackIds = new int[tracks.size()];
+            int[] trackNames = new int[tracks.size()];
+            int[] trackAlbums = new int[tracks.size()];
+            long[] trackRunTimeTicks = new long[tracks.size()];
+            int[] trackArtistOffsets = new int[tracks.size() + 1];
+            IntColumn trackArtists = new IntColumn();
+            ordinal = 0;
+            for (Map.Entry<String, TrackRow> track : tracks.entrySet()) {
+                TrackRow row = track.getValue();
+                trackIds[ordinal] = intern(pool, strings, track.getKey());
+                trackNames[ordinal] = intern(pool, strings, row.name());
+                trackAlbums[ordinal] = row.albumId() == null ? -1 : albumOrdinals.getOrDefault(row.albumId(), -1);
+                trackRunTimeTicks[ordinal] = row.runTimeTicks();
+                row.artists().forEach(ref -> trackArtists.add(artistOrdinals.get(ref.id())));
+                ordinal++;
+                trackArtistOffsets[ordinal] = trackArtists.size();
+            }
+
+            IntBuffer[] columns = new IntBuffer[Column.values().length];
+            columns[Column.GENRE_IDS.ordinal()] = IntBuffer.wrap(genreIds);
+            columns[Column.GENRE_NAMES.ordinal()] = IntBuffer.wrap(genreNames);
+            columns[Column.ARTIST_IDS.ordinal()] = IntBuffer.wrap(artistIds);
+            columns[Column.ARTIST_NAMES.ordinal()] = IntBuffer.wrap(artistNames);
+            columns[Column.ALBUM_IDS.ordinal()] = IntBuffer.wrap(albumIds);
+            columns[Column.ALBUM_NAMES.ordinal()] = IntBuffer.wrap(albumNames);
+            columns[Column.ALBUM_ARTIST_OFFSETS.ordinal()] = IntBuffer.wrap(albumArtistOffsets);
+            columns[Column.ALBUM_ARTISTS.ordinal()] = IntBuffer.wrap(albumArtists.toArray());
+            columns[Column.ALBUM_GENRE_OFFSETS.ordinal()] = IntBuffer.wrap(albumGenreOffsets);
+            columns[Column.ALBUM_GENRES.ordinal()] = IntBuffer.wrap(albumGenres.toArray());
+            columns[Column.TRACK_IDS.ordinal()] = IntBuffer.wrap(trackIds);
+            columns[Column.TRACK_NAMES.ordinal()] = IntBuffer.wrap(trackNames);
+            columns[Column.TRACK_ALBUMS.ordinal()] = IntBuffer.wrap(trackAlbums);
+            columns[Column.TRACK_ARTIST_OFFSETS.ordinal()] = IntBuffer.wrap(trackArtistOffsets);
+            columns[Column.TRACK_ARTISTS.ordinal()] = IntBuffer.wrap(trackArtists.toArray());
+            return new LibrarySnapshot(watermark, StringPool.of(strings.toArray(String[]::new)), columns,
+                    LongBuffer.wrap(trackRunTimeTicks));
+        }
+
+        private static int intern(Map<String, Integer> pool, List<String> strings, String value) {
+            String safe = value == null ? "" : value;
+            Integer existing = pool.get(safe);
+            if (existing != null) {
+                return existing;
+            }
+            pool.put(safe, strings.size());
+            strings.add(safe);
+            return strings.size() - 1;
+        }
+    }
+
+    private static final class IntColumn {
+        private int[] values = new int[64];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package net.dahanne.jmh.snapshot;
+
+import net.dahanne.jmh.snapshot.LibrarySnapshot.Column;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * On-disk layout of a {@link LibrarySnapshot}, designed to be used in place through {@link FileChannel#map}.
+ * <pre>
+ * int magic, int version, int sectionCount, int watermarkLength, watermark (UTF-8, padded to 8 bytes)
+ * sectionCount x (long offset, long byteLength)
+ * STRING_OFFSETS  int[stringCount + 1]   byte offset of each string in STRING_DATA
+ * STRING_DATA     byte[]                 UTF-8 bytes of every interned string
+ * one int[] section per {@link Column}, then TRACK_RUN_TIME_TICKS long[trackCount]
+ * </pre>
+ * All values are big-endian and every section starts on an 8-byte boundary.
+ */
+public final class LibrarySnapshotFile {
+
+    private static final int MAGIC = 0x4A4D4853; // "JMHS"
+    private static final int VERSION = 2;
+    private static final int SECTION_COUNT = Column.values().length + 3;
+
+    private LibrarySnapshotFile() {
+    }
+
+    public static void write(LibrarySnapshot snapshot, Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        int stringCount = snapshot.strings.size();
+        byte[][] strings = new byte[stringCount][];
+        int[] stringOffsets = new int[stringCount + 1];
+        for (int i = 0; i < stringCount; i++) {
+            strings[i] = snapshot.strings.bytes(i);
+            stringOffsets[i + 1] = Math.addExact(stringOffsets[i], strings[i].length);
+        }
+        byte[] watermark = snapshot.watermark == null ? null : snapshot.watermark.getBytes(StandardCharsets.UTF_8);
+
+        long[] lengths = new long[SECTION_COUNT];
+        lengths[0] = 4L * stringOffsets.length;
+        lengths[1] = stringOffsets[stringCount];
+        for (Column column : Column.values()) {
+            lengths[2 + column.ordinal()] = 4L * snapshot.columns[column.ordinal()].limit();
+        }
+        lengths[SECTION_COUNT - 1] = 8L * snapshot.trackRunTimeTicks.limit();
+        long[] offsets = new long[SECTION_COUNT];
+        long position = align(16 + (watermark == null ? 0 : watermark.length)) + 16L * SECTION_COUNT;
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            offsets[section] = position;
+            position = align(position + lengths[section]);
+        }
+        if (position > Integer.MAX_VALUE) {
+            throw new IOException("Library snapshot would exceed 2 GB (" + position + " bytes)");
+        }
+
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(SECTION_COUNT);
+            out.writeInt(watermark == null ? -1 : watermark.length);
+            if (watermark != null) {
+                out.write(watermark);
+            }
+            pad(out);
+            for (int section = 0; section < SECTION_COUNT; section++) {
+                out.writeLong(offsets[section]);
+                out.writeLong(lengths[section]);
+            }
+            for (int offset : stringOffsets) {
+                out.writeInt(offset);
+            }
+            pad(out);
+            for (byte[] value : strings) {
+                out.write(value);
+            }
+            pad(out);
+            for (Column column : Column.values()) {
+                IntBuffer values = snapshot.columns[column.ordinal()];
+                for (int i = 0; i < values.limit(); i++) {
+                    out.writeInt(values.get(i));
+                }
+                pad(out);
+            }
+            for (int i = 0; i < snapshot.trackRunTimeTicks.limit(); i++) {
+                out.writeLong(snapshot.trackRunTimeTicks.get(i));
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps the file read-only; the returned snapshot stays valid after this method returns and only touches
+     * the pages that accessors actually read.
+     */
+    public static LibrarySnapshot read(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is larger than 2 GB");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < 16 || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a library snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION || buffer.getInt(8) != SECTION_COUNT) {
+            throw new IOException(file + " has unsupported snapshot version " + version + ", run sync --full");
+        }
+        int watermarkLength = buffer.getInt(12);
+        String watermark = null;
+        if (watermarkLength >= 0) {
+            byte[] bytes = new byte[watermarkLength];
+            buffer.get(16, bytes);
+            watermark = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int table = (int) align(16 + Math.max(0, watermarkLength));
+        ByteBuffer[] sections = new ByteBuffer[SECTION_COUNT];
+        for (int section = 0; section < SECTION_COUNT; section++) {
+            long offset = buffer.getLong(table + 16 * section);
+            long length = buffer.getLong(table + 16 * section + 8);
+            if (offset < 0 || length < 0 || offset + length > buffer.limit()) {
+                throw new IOException(file + " is truncated or corrupted (section " + section + ")");
+            }
+            sections[section] = buffer.slice((int) offset, (int) length);
+        }
+
+        IntBuffer[] columns = new IntBuffer[Column.values().length];
+        for (Column column : Column.values()) {
+            columns[column.ordinal()] = sections[2 + column.ordinal()].asIntBuffer();
+        }
+        return new LibrarySnapshot(watermark, StringPool.mapped(sections[0].asIntBuffer(), sections[1]),
+                columns, sections[SECTION_COUNT - 1].asLongBuffer());
+    }
+
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    private static void pad(DataOutputStream out) throws IOException {
+        while (out.size() % 8 != 0) {
+            out.writeByte(0);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package net.dahanne.jmh.snapshot;
+
+import net.dahanne.jmh.config.JellyfinProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Location of the local library snapshot, and whether commands should read it instead of querying Jellyfin.
+ * The snapshot is read at most once per process.
+ */
+@Component
+public class LibrarySnapshotStore {
+
+    private final Path file;
+    private final boolean enabled;
+    private volatile LibrarySnapshot cached;
+
+    public LibrarySnapshotStore(JellyfinProperties properties) {
+        this.file = Path.of(properties.getSnapshot().getFile());
+        this.enabled = properties.getSnapshot().isEnabled();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return the snapshot; fails if none was synced yet
+     */
+    public LibrarySnapshot load() {
+        return loadIfPresent().orElseThrow(() -> new IllegalStateException(
+                "No library snapshot found at " + file.toAbsolutePath() + ", run the sync command first."));
+    }
+
+    public Optional<LibrarySnapshot> loadIfPresent() {
+        LibrarySnapshot snapshot = cached;
+        if (snapshot != null) {
+            return Optional.of(snapshot);
+        }
+        synchronized (this) {
+            if (cached == null && Files.exists(file)) {
+                try {
+                    cached = LibrarySnapshotFile.read(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read library snapshot " + file, e);
+                }
+            }
+            return Optional.ofNullable(cached);
+        }
+    }
+
+    public synchronized void save(LibrarySnapshot snapshot) {
+        try {
+            LibrarySnapshotFile.write(snapshot, file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write library snapshot " + file, e);
+        }
+        cached = snapshot;
+    }
+}
@@ -0,0 +1,144 @@
+package net.dahanne.jmh.snapshot;
+
+import net.dahanne.jmh.JellyfinItemPager;
+import net.dahanne.jmh.JellyfinQuery;
+import net.dahanne.jmh.JellyfinQuery.ItemField;
+import net.dahanne.jmh.JellyfinQuery.ItemType;
+import net.dahanne.jmh.snapshot.LibrarySnapshot.Ref;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.JsonNode;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static net.dahanne.jmh.Utils.textOrNull;
+
+/**
+ * Builds the local library snapshot. The first sync downloads every genre, artist, album and track; later
+ * syncs only download albums and tracks saved since the previous one ({@code MinDateLastSaved}) and fall back
+ * to an id listing of the albums or tracks when some of them were saved since or their counts reveal a deletion.
+ */
+@Component
+public class LibrarySyncService {
+
+    private static final JellyfinQuery ALBUMS = JellyfinQuery.items().types(ItemType.MUSIC_ALBUM).recursive();
+    private static final JellyfinQuery TRACKS = JellyfinQuery.items().types(ItemType.AUDIO).recursive();
+
+    private final JellyfinItemPager pager;
+    private final LibrarySnapshotStore store;
+
+    public LibrarySyncService(JellyfinItemPager pager, LibrarySnapshotStore store) {
+        this.pager = pager;
+        this.store = store;
+    }
+
+    public SyncResult sync(boolean full) {
+        long start = System.nanoTime();
+        LibrarySnapshot previous = full ? null : store.loadIfPresent().orElse(null);
+        LibrarySnapshot.Builder builder = previous == null ? LibrarySnapshot.builder() : previous.toBuilder();
+        String since = previous == null ? null : previous.watermark();
+        boolean incremental = since != null;
+        // albums, tracks
+        int[] fetched = new int[2];
+
+        builder.clearGenres().clearArtists();
+        pager.forEachItem(JellyfinQuery.genres().sortedByName().recursive(),
+                JellyfinItemPager.DEFAULT_PAGE_SIZE, item -> {
+                    Ref genre = ref(item);
+                    if (genre != null) {
+                        builder.genre(genre.id(), genre.name());
+                    }
+                });
+        pager.forEachItem(JellyfinQuery.artists().sortedByName().recursive(),
+                JellyfinItemPager.DEFAULT_PAGE_SIZE, item -> {
+                    Ref artist = ref(item);
+                    if (artist != null) {
+                        builder.artist(artist.id(), artist.name());
+                    }
+                });
+
+        pager.forEachItem(ALBUMS.reading(ItemField.GENRES, ItemField.DATE_LAST_SAVED).savedSince(since),
+                JellyfinItemPager.DEFAULT_PAGE_SIZE, item -> {
+                    String id = textOrNull(item.path("Id"));
+                    if (id == null) {
+                        return;
+                    }
+                    fetched[0]++;
+                    builder.album(id, textOrNull(item.path("Name")), refs(item.path("AlbumArtists")),
+                            refs(item.path("GenreItems")));
+                    builder.observeDateLastSaved(textOrNull(item.path("DateLastSaved")));
+                });
+        pager.forEachItem(TRACKS.reading(ItemField.DATE_LAST_SAVED).savedSince(since),
+                JellyfinItemPager.DEFAULT_PAGE_SIZE, item -> {
+                    String id = textOrNull(item.path("Id"));
+                    if (id == null) {
+                        return;
+                    }
+                    fetched[1]++;
+                    builder.track(id, textOrNull(item.path("Name")), textOrNull(item.path("AlbumId")),
+                            refs(item.path("ArtistItems")), item.path("RunTimeTicks").asLong(0));
+                    builder.observeDateLastSaved(textOrNull(item.path("DateLastSaved")));
+                });
+
+        int removed = 0;
+        if (incremental) {
+            removed += pruneDeleted(ALBUMS, builder.albumIds(), fetched[0]);
+            removed += pruneDeleted(TRACKS, builder.trackIds(), fetched[1]);
+        }
+
+        LibrarySnapshot snapshot = builder.build();
+        store.save(snapshot);
+        return new SyncResult(store.file(), incremental, fetched[0] + fetched[1], removed,
+                snapshot.genreCount(), snapshot.artistCount(), snapshot.albumCount(), snapshot.trackCount(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * {@code MinDateLastSaved} cannot report deletions, so list every id when items were saved since the previous
+     * sync, as one added item hides one deleted from the counts, or when the counts differ.
+     */
+    private int pruneDeleted(JellyfinQuery query, Set<String> localIds, int fetched) {
+        if (fetched == 0 && pager.count(query) == localIds.size()) {
+            return 0;
+        }
+        Set<String> serverIds = new HashSet<>();
+        pager.forEachItem(query, JellyfinItemPager.DEFAULT_PAGE_SIZE, item -> {
+            String id = textOrNull(item.path("Id"));
+            if (id != null) {
+                serverIds.add(id);
+            }
+        });
+        int before = localIds.size();
+        localIds.retainAll(serverIds);
+        return before - localIds.size();
+    }
+
+    private static Ref ref(JsonNode item) {
+        String id = textOrNull(item.path("Id"));
+        String name = textOrNull(item.path("Name"));
+        if (id == null || id.isBlank() || name == null || name.isBlank()) {
+            return null;
+        }
+        return new Ref(id, name);
+    }
+
+    private static List<Ref> refs(JsonNode items) {
+        List<Ref> refs = new ArrayList<>();
+        if (items.isArray()) {
+            for (JsonNode item : items) {
+                Ref ref = ref(item);
+                if (ref != null) {
+                    refs.add(ref);
+                }
+            }
+        }
+        return refs;
+    }
+
+    public record SyncResult(Path file, boolean incremental, int fetchedItems, int removedItems,
+                             int genres, int artists, int albums, int tracks, long elapsedMillis) {
+    }
+}
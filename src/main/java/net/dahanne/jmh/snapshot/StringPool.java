@@ -0,0 +1,55 @@
+package net.dahanne.jmh.snapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Interned strings of a {@link LibrarySnapshot}, either held on the heap (freshly built snapshot) or as an
+ * offset index plus UTF-8 bytes over a mapped file, decoded on access.
+ */
+final class StringPool {
+
+    private final String[] values;
+    private final IntBuffer offsets;
+    private final ByteBuffer data;
+
+    private StringPool(String[] values, IntBuffer offsets, ByteBuffer data) {
+        this.values = values;
+        this.offsets = offsets;
+        this.data = data;
+    }
+
+    static StringPool of(String[] values) {
+        return new StringPool(values, null, null);
+    }
+
+    /**
+     * @param offsets {@code size + 1} byte offsets into {@code data}; string {@code i} spans
+     *                {@code [offsets[i], offsets[i + 1])}
+     */
+    static StringPool mapped(IntBuffer offsets, ByteBuffer data) {
+        return new StringPool(null, offsets, data);
+    }
+
+    int size() {
+        return values != null ? values.length : offsets.limit() - 1;
+    }
+
+    String get(int index) {
+        if (values != null) {
+            return values[index];
+        }
+        return new String(bytes(index), StandardCharsets.UTF_8);
+    }
+
+    byte[] bytes(int index) {
+        if (values != null) {
+            return values[index].getBytes(StandardCharsets.UTF_8);
+        }
+        int start = offsets.get(index);
+        byte[] bytes = new byte[offsets.get(index + 1) - start];
+        data.get(start, bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,57 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.AlbumArtistChecker.InconsistentAlbum;
+import net.dahanne.jmh.AlbumArtistChecker.Problem;
+import net.dahanne.jmh.AlbumArtistChecker.Track;
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlbumArtistCheckerTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @Test
+    void reportsMixedAndUncreditedAlbumArtists() {
+        AlbumArtistChecker checker = new AlbumArtistChecker(null, new JellyfinProperties());
+
+        List<InconsistentAlbum> albums = checker.inconsistentAlbums(List.of(
+                new Track("a", "Consistent", List.of("Daft Punk"), List.of("Daft Punk")),
+                new Track("a", "Consistent", List.of("Daft Punk"), List.of("daft punk", "Pharrell Williams")),
+                new Track("b", "Mixed", List.of("Nas"), List.of("Nas")),
+                new Track("b", "Mixed", List.of("Nas", "Lauryn Hill"), List.of("Nas", "Lauryn Hill")),
+                new Track("c", "Tribute", List.of("Tribute Band"), List.of("Someone Else")),
+                new Track("d", "Compilation", List.of("Various Artists"), List.of("Anyone"))));
+
+        assertThat(albums).extracting(InconsistentAlbum::albumId).containsExactly("b", "c");
+        assertThat(albums.getFirst().problems()).containsExactly(Problem.MIXED_ALBUM_ARTISTS);
+        assertThat(albums.getFirst().albumArtists()).containsExactly("Nas", "Lauryn Hill");
+        assertThat(albums.get(1).problems()).containsExactly(Problem.ALBUM_ARTIST_NOT_ON_TRACKS);
+    }
+
+    @Test
+    void groupsEveryPageOfTracksByAlbum() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(30, 4, 10, 3, 11);
+        FakeJellyfinCatalog.FakeArtist guest = catalog.addArtist("Guest");
+        FakeJellyfinCatalog.FakeAlbum album = catalog.addAlbum("Covers", catalog.artists().getFirst(), List.of());
+        catalog.addTrack("Cover", album, List.of(guest), 1, 1_800_000_000L, 1);
+        jellyfin.start(catalog, 11);
+        List<InconsistentAlbum> inconsistent = new ArrayList<>();
+
+        var result = new AlbumArtistChecker(jellyfin.pager(), jellyfin.properties())
+                .checkAlbumArtists(3, inconsistent::add);
+
+        assertThat(result.tracks()).isEqualTo(catalog.tracks().size());
+        assertThat(result.albums()).isEqualTo(catalog.albums().size());
+        assertThat(inconsistent).extracting(InconsistentAlbum::albumId).contains(album.id());
+        assertThat(result.inconsistentAlbums()).isEqualTo(inconsistent.size());
+    }
+}
@@ -0,0 +1,73 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.report.ReportFormat;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchRunnerTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesOneReportPerCommandAndFetchesSharedDataOnce() throws IOException {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(30, 1, 2, 5, 11);
+        jellyfin.start(catalog, 11);
+        String artist = catalog.artists().get(0).name();
+        Path history = directory.resolve("StreamingHistory.json");
+        Files.writeString(history, """
+                [{"artistName": "%s", "trackName": "Nope"},
+                 {"artistName": "Nobody Knows Me", "trackName": "Nope"}]
+                """.formatted(artist));
+        BatchRunner runner = runner(history.toString());
+
+        var results = runner.run(List.of("list-artists-with-similar-names", "missing-artists-from-spotify",
+                "list-genres"), directory.resolve("reports"), ReportFormat.TEXT);
+
+        assertThat(results).extracting(BatchRunner.BatchResult::command)
+                .containsExactly("list-artists-with-similar-names", "missing-artists-from-spotify", "list-genres");
+        assertThat(results).noneMatch(BatchRunner.BatchResult::failed);
+        assertThat(Files.readAllLines(directory.resolve("reports/missing-artists-from-spotify.txt"), StandardCharsets.UTF_8))
+                .containsExactly("Nobody Knows Me");
+        assertThat(Files.readAllLines(directory.resolve("reports/list-genres.txt"), StandardCharsets.UTF_8))
+                .hasSize(5);
+    }
+
+    @Test
+    void rejectsUnknownCommands() {
+        jellyfin.start(FakeJellyfinCatalog.generate(1, 1, 1, 1, 1), 1);
+        BatchRunner runner = runner("missing.json");
+
+        assertThatThrownBy(() -> runner.run(List.of("clear-empty-genres"), directory, ReportFormat.TEXT))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("clear-empty-genres");
+    }
+
+    private BatchRunner runner(String historyFile) {
+        NameNormalizer nameNormalizer = new NameNormalizer();
+        JellyfinArtistService artistService = jellyfin.artistService();
+        return new BatchRunner(artistService, jellyfin.genreService(),
+                new SpotifyHistoryMatcher(jellyfin.objectMapper(), jellyfin.pager(), artistService,
+                        jellyfin.snapshotStore(), nameNormalizer, new TitleCanonicalizer(nameNormalizer), historyFile,
+                        directory.resolve("checkpoint.json").toString()),
+                new FeaturingArtistsFinder(jellyfin.objectMapper(), artistService, jellyfin.httpClient(),
+                        jellyfin.requestFactory(), jellyfin.properties(), jellyfin.snapshotStore(), jellyfin.pager(),
+                        nameNormalizer),
+                new SimilarArtistFinder(artistService, nameNormalizer, jellyfin.properties()));
+    }
+}
@@ -0,0 +1,122 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.fake.FakeJellyfinServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CommandRunnerTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @Test
+    void firstFailureCancelsTheOtherSubtasks() throws Exception {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+        try (TaskScope scope = TaskScope.open()) {
+            scope.fork(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(Duration.ofMinutes(1));
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                return null;
+            });
+            started.await();
+            scope.fork(() -> {
+                throw new IllegalStateException("page failed");
+            });
+
+            assertThatThrownBy(scope::join).isInstanceOf(IllegalStateException.class).hasMessage("page failed");
+            assertThat(scope.isCancelled()).isTrue();
+        }
+        assertThat(interrupted).isTrue();
+    }
+
+    @Test
+    void deadlineCancelsTheSubtasks() {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        try (TaskScope scope = TaskScope.open()) {
+            scope.fork(() -> {
+                try {
+                    Thread.sleep(Duration.ofMinutes(1));
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                }
+                return null;
+            });
+
+            assertThatThrownBy(() -> scope.joinUntil(Instant.now().plusMillis(100)))
+                    .isInstanceOf(TimeoutException.class);
+        }
+        assertThat(interrupted).isTrue();
+    }
+
+    @Test
+    void subtasksReportToTheCommandOfTheirOwner() throws Exception {
+        CommandContext context = new CommandContext("list-genres", null);
+        CommandContext.bind(context);
+        try (TaskScope scope = TaskScope.open()) {
+            Supplier<CommandContext> seen = scope.fork(CommandContext::current);
+            scope.join();
+            assertThat(seen.get()).isSameAs(context);
+        } finally {
+            CommandContext.unbind();
+        }
+        assertThat(CommandContext.current().command()).isEmpty();
+    }
+
+    @Test
+    void rendersDoneTotalRateAndEta() {
+        CommandContext.Progress progress = new CommandContext("list-genres", null).progress("genres", 10);
+        progress.advance(4);
+
+        assertThat(progress.render(System.nanoTime())).matches("genres: 4/10 \\(\\d+/s, ETA \\d+:\\d\\d\\)");
+        progress.total(0);
+        assertThat(progress.render(System.nanoTime())).matches("genres: 4 \\(\\d+/s\\)");
+    }
+
+    @Test
+    void deadlineAbortsTheRequestsOfTheCommand() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(20, 5, 10, 3, 5);
+        FakeJellyfinServer server = jellyfin.start(new FakeJellyfinServer(catalog, jellyfin.objectMapper(),
+                Duration.ofMillis(300), 0, 5));
+        JellyfinProperties properties = jellyfin.properties();
+        properties.getExecution().setProgress(false);
+        properties.getExecution().getDeadlines().put("scan", Duration.ofMillis(500));
+        JellyfinItemPager pager = jellyfin.pager();
+        JellyfinQuery tracks = JellyfinQuery.items().types(JellyfinQuery.ItemType.AUDIO).recursive();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> new CommandRunner(properties).run("scan", () -> {
+            try {
+                // 1000 tracks, 100 pages of 10, each taking 300 ms
+                pager.forEachItemConcurrently(tracks, 10, 2, _ -> {
+                });
+            } catch (RuntimeException e) {
+                failure.set(e);
+                throw e;
+            }
+        })).hasMessage("scan did not complete within PT0.5S and was cancelled");
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        assertThat(failure.get()).hasRootCauseInstanceOf(InterruptedException.class);
+        assertThat(server.requestCount()).isLessThan(10);
+    }
+}
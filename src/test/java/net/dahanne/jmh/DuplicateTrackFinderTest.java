@@ -0,0 +1,94 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.DuplicateTrackFinder.DuplicateGroup;
+import net.dahanne.jmh.DuplicateTrackFinder.DuplicateTrack;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeAlbum;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeArtist;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeTrack;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class DuplicateTrackFinderTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @Test
+    void groupsTracksWithTheSameArtistCanonicalTitleAndDuration() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(3, 1, 3, 2, 13);
+        FakeTrack original = catalog.tracks().getFirst();
+        FakeArtist artist = original.artists().getFirst();
+        FakeAlbum compilation = catalog.addAlbum("Best Of", artist, catalog.genres());
+        FakeTrack remaster = catalog.addTrack(original.name() + " - 2011 Remaster", compilation, List.of(artist), 1,
+                original.runTimeTicks() + 10_000_000L, 100);
+        FakeTrack extended = catalog.addTrack(original.name(), compilation, List.of(artist), 2,
+                original.runTimeTicks() + 600_000_000L, 101);
+        jellyfin.start(catalog, 13);
+
+        List<DuplicateGroup> groups = finder().findDuplicateTracks(2);
+
+        assertThat(groups).anySatisfy(group -> assertThat(group.tracks())
+                .extracting(DuplicateTrack::id, DuplicateTrack::path)
+                .contains(tuple(original.id(), original.path()),
+                        tuple(remaster.id(), remaster.path())));
+        assertThat(groups).flatExtracting(DuplicateGroup::tracks)
+                .extracting(DuplicateTrack::id)
+                .doesNotContain(extended.id());
+    }
+
+    @Test
+    void onlyStripsRemasterAndEditionSuffixes() {
+        DuplicateTrackFinder finder = new DuplicateTrackFinder(null, new NameNormalizer());
+
+        assertThat(finder.baseTitle("Song - 2011 Remaster")).isEqualTo(finder.baseTitle("Song"));
+        assertThat(finder.baseTitle("Song (Deluxe Edition)")).isEqualTo(finder.baseTitle("Song"));
+        assertThat(finder.baseTitle("Song (feat. X)")).isEqualTo(finder.baseTitle("Song"));
+        assertThat(finder.baseTitle("Song (Live)")).isNotEqualTo(finder.baseTitle("Song"));
+        assertThat(finder.baseTitle("Song (Acoustic)")).isNotEqualTo(finder.baseTitle("Song (Live)"));
+        assertThat(finder.baseTitle("Song - Radio Edit")).isNotEqualTo(finder.baseTitle("Song"));
+    }
+
+    @Test
+    void boundsEachGroupFromItsShortestTrack() {
+        List<DuplicateTrack> tracks = List.of(track("c", 4), track("a", 0), track("b", 2));
+
+        assertThat(DuplicateTrackFinder.groupByDuration(tracks, 2)).singleElement()
+                .satisfies(group -> assertThat(group.tracks()).extracting(DuplicateTrack::id)
+                        .containsExactly("a", "b"));
+        assertThat(DuplicateTrackFinder.groupByDuration(tracks, 4)).singleElement()
+                .satisfies(group -> assertThat(group.tracks()).hasSize(3));
+        assertThat(DuplicateTrackFinder.groupByDuration(tracks, 1)).isEmpty();
+    }
+
+    @Test
+    void onlyKeepsTracksOfASharedHashWithinTheTolerance() {
+        DuplicateTrackFinder.TrackTable table = new DuplicateTrackFinder.TrackTable();
+        for (int i = 0; i < 3000; i++) {
+            table.add(i, 200, "%032x".formatted(i));
+        }
+        table.add(7, 201, "00000000000000000000000000000abc");
+        table.add(7, 260, "00000000000000000000000000000def");
+        table.add(8, 300, "Not-A-Guid");
+
+        assertThat(table.size()).isEqualTo(3003);
+        assertThat(table.candidates(2)).containsExactlyInAnyOrder("%032x".formatted(7),
+                "00000000000000000000000000000abc");
+        assertThat(table.candidates(0)).isEmpty();
+        assertThat(table.candidates(100)).contains("Not-A-Guid", "%032x".formatted(8));
+    }
+
+    private DuplicateTrackFinder finder() {
+        return new DuplicateTrackFinder(jellyfin.pager(), new NameNormalizer());
+    }
+
+    private static DuplicateTrack track(String id, int seconds) {
+        return new DuplicateTrack(id, "Artist", "Song", "Album", seconds, "/music/" + id + ".flac");
+    }
+}
@@ -0,0 +1,118 @@
+package net.dahanne.jmh;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EditDistanceTest {
+
+    @Test
+    void computesLevenshteinDistance() {
+        assertThat(EditDistance.levenshtein("kitten", "sitting", 10)).isEqualTo(3);
+        assertThat(EditDistance.levenshtein("", "abc", 10)).isEqualTo(3);
+        assertThat(EditDistance.levenshtein("beyonce", "beyonce", 0)).isZero();
+        assertThat(EditDistance.levenshtein("kitten", "sitting", 2)).isEqualTo(3);
+        assertThat(EditDistance.levenshtein("a", "abcdef", 2)).isEqualTo(3);
+    }
+
+    @Test
+    void agreesWithTheDynamicProgrammingDefinitionAcrossWordBoundaries() {
+        Random random = new Random(42);
+        for (int run = 0; run < 2000; run++) {
+            String left = randomString(random, random.nextInt(150));
+            String right = randomString(random, random.nextInt(150));
+            int max = random.nextInt(200);
+            int expected = Math.min(dynamicProgramming(left, right), max + 1);
+
+            assertThat(EditDistance.levenshtein(left, right, max)).as(left + " / " + right).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void countsAdjacentTranspositionsAsOneEdit() {
+        assertThat(EditDistance.damerau("ab", "ba", 10)).isEqualTo(1);
+        assertThat(EditDistance.levenshtein("ab", "ba", 10)).isEqualTo(2);
+        assertThat(EditDistance.damerau("Beatels", "Beatles", 10)).isEqualTo(1);
+        assertThat(EditDistance.damerau("kitten", "sitting", 10)).isEqualTo(3);
+        assertThat(EditDistance.damerau("", "abc", 10)).isEqualTo(3);
+        assertThat(EditDistance.damerau("abcdef", "badcfe", 2)).isEqualTo(3);
+    }
+
+    @Test
+    void fallsBackToLevenshteinForPatternsLongerThanOneWord() {
+        String oneWord = "x".repeat(62);
+        String twoWords = "x".repeat(70);
+
+        assertThat(EditDistance.damerau(oneWord + "ab", oneWord + "ba", 10)).isEqualTo(1);
+        assertThat(EditDistance.damerau(twoWords + "ab", twoWords + "ba", 10)).isEqualTo(2);
+        assertThat(EditDistance.damerau("ba" + twoWords, twoWords + "ab", 10))
+                .isEqualTo(EditDistance.levenshtein("ba" + twoWords, twoWords + "ab", 10));
+    }
+
+    @Test
+    void damerauAgreesWithTheOptimalStringAlignmentDefinition() {
+        Random random = new Random(7);
+        for (int run = 0; run < 2000; run++) {
+            String left = randomString(random, random.nextInt(90));
+            String right = randomString(random, random.nextInt(90));
+            int max = random.nextInt(100);
+            int distance = Math.min(left.length(), right.length()) <= 64
+                    ? optimalStringAlignment(left, right)
+                    : dynamicProgramming(left, right);
+
+            assertThat(EditDistance.damerau(left, right, max)).as(left + " / " + right)
+                    .isEqualTo(Math.min(distance, max + 1));
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        String alphabet = "abcé一";
+        StringBuilder value = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            value.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return value.toString();
+    }
+
+    private static int dynamicProgramming(String left, String right) {
+        int[] previous = new int[right.length() + 1];
+        int[] current = new int[right.length() + 1];
+        for (int j = 0; j <= right.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= left.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= right.length(); j++) {
+                int substitution = previous[j - 1] + (left.charAt(i - 1) == right.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[right.length()];
+    }
+
+    private static int optimalStringAlignment(String left, String right) {
+        int[][] distance = new int[left.length() + 1][right.length() + 1];
+        for (int i = 0; i <= left.length(); i++) {
+            distance[i][0] = i;
+        }
+        for (int j = 0; j <= right.length(); j++) {
+            distance[0][j] = j;
+        }
+        for (int i = 1; i <= left.length(); i++) {
+            for (int j = 1; j <= right.length(); j++) {
+                int substitution = distance[i - 1][j - 1] + (left.charAt(i - 1) == right.charAt(j - 1) ? 0 : 1);
+                distance[i][j] = Math.min(substitution, Math.min(distance[i - 1][j], distance[i][j - 1]) + 1);
+                if (i > 1 && j > 1 && left.charAt(i - 1) == right.charAt(j - 2)
+                        && left.charAt(i - 2) == right.charAt(j - 1)) {
+                    distance[i][j] = Math.min(distance[i][j], distance[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return distance[left.length()][right.length()];
+    }
+}
@@ -0,0 +1,80 @@
+package net.dahanne.jmh;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExternalSorterTest {
+
+    private static final ExternalSorter.Codec<Integer> INTS = new ExternalSorter.Codec<>() {
+        @Override
+        public void write(DataOutputStream out, Integer item) throws IOException {
+            out.writeInt(item);
+        }
+
+        @Override
+        public Integer read(DataInputStream in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    @Test
+    void mergesSpilledRunsInOrderWithoutDuplicates() {
+        Random random = new Random(7);
+        TreeSet<Integer> expected = new TreeSet<>(Comparator.reverseOrder());
+        List<Integer> merged = new ArrayList<>();
+        try (ExternalSorter<Integer> sorter = new ExternalSorter<>(Comparator.reverseOrder(), 100, INTS)) {
+            for (int i = 0; i < 10_000; i++) {
+                int value = random.nextInt(3_000);
+                expected.add(value);
+                sorter.add(value);
+            }
+            assertThat(sorter.runs()).isEqualTo(100);
+
+            sorter.drain(merged::add);
+
+            assertThat(sorter.runs()).isZero();
+        }
+        assertThat(merged).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void mergesMoreRunsThanTheFanInInSeveralPasses() {
+        Random random = new Random(11);
+        TreeSet<Integer> expected = new TreeSet<>();
+        List<Integer> merged = new ArrayList<>();
+        try (ExternalSorter<Integer> sorter = new ExternalSorter<>(Comparator.naturalOrder(), 10, 3, INTS)) {
+            for (int i = 0; i < 500; i++) {
+                int value = random.nextInt(200);
+                expected.add(value);
+                sorter.add(value);
+            }
+            assertThat(sorter.runs()).isEqualTo(50);
+
+            sorter.drain(merged::add);
+
+            assertThat(sorter.runs()).isZero();
+        }
+        assertThat(merged).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    void sortsInMemoryBelowTheBudget() {
+        List<Integer> merged = new ArrayList<>();
+        try (ExternalSorter<Integer> sorter = new ExternalSorter<>(Comparator.naturalOrder(), 100, INTS)) {
+            List.of(3, 1, 2, 3, 1).forEach(sorter::add);
+            sorter.drain(merged::add);
+            assertThat(sorter.runs()).isZero();
+        }
+        assertThat(merged).containsExactly(1, 2, 3);
+    }
+}
@@ -0,0 +1,78 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeArtist;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeTrack;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.report.ReportFormat;
+import net.dahanne.jmh.report.ReportWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FeaturingArtistsFinderTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @Test
+    void extractsFeaturedNamesOnWholeMarkerWords() {
+        JellyfinProperties properties = new JellyfinProperties();
+        properties.setBaseUrl("http://localhost");
+        FeaturingArtistsFinder finder = new FeaturingArtistsFinder(null, null, null, null, withMarkers(properties),
+                null, null, new NameNormalizer());
+
+        assertThat(finder.featuredNames("Song (feat. X & Y)", true)).containsExactly("X", "Y");
+        assertThat(finder.featuredNames("Song [with A, B and C]", true)).containsExactly("A", "B", "C");
+        assertThat(finder.featuredNames("Dance With Me", true)).isEmpty();
+        assertThat(finder.featuredNames("A ft. B (Live)", false)).containsExactly("B");
+        assertThat(finder.featuredNames("Daft Punk", false)).isEmpty();
+    }
+
+    @Test
+    void scansEveryPageForFeaturedArtistsWithoutAnEntry() {
+        // more than one page of tracks, so that pages are fetched concurrently
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(60, 2, 10, 3, 21);
+        FakeTrack credited = catalog.tracks().getFirst();
+        FakeArtist artist = credited.artists().getFirst();
+        FakeTrack uncredited = catalog.addTrack("Late Night (feat. Unknown Guest & " + artist.name() + ")",
+                credited.album(), List.of(artist), 99, credited.runTimeTicks(), 999);
+        jellyfin.start(catalog, 21);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ReportWriter report = ReportWriter.open(ReportFormat.TEXT, output, false,
+                FeaturingArtistsFinder.TRACK_REPORT)) {
+            finder().findUncreditedFeaturedArtists(3, report);
+        }
+
+        List<String> lines = output.toString(StandardCharsets.UTF_8).lines().toList();
+        assertThat(lines).contains(artist.name() + " - " + uncredited.name() + " [" + credited.album().name()
+                + "] -> missing: Unknown Guest " + uncredited.id());
+        // generated guests are credited on their tracks, only the guests of "A feat. B" artists are missing
+        Set<String> featuringArtistTracks = catalog.tracks().stream()
+                .filter(track -> track.artists().stream().anyMatch(credit -> credit.name().contains(" feat. ")))
+                .map(FakeTrack::id)
+                .collect(Collectors.toSet());
+        assertThat(lines).allMatch(line -> line.endsWith(uncredited.id())
+                || featuringArtistTracks.contains(line.substring(line.lastIndexOf(' ') + 1)));
+    }
+
+    private FeaturingArtistsFinder finder() {
+        return new FeaturingArtistsFinder(jellyfin.objectMapper(), jellyfin.artistService(), jellyfin.httpClient(),
+                jellyfin.requestFactory(), withMarkers(jellyfin.properties()), jellyfin.snapshotStore(),
+                jellyfin.pager(), new NameNormalizer());
+    }
+
+    private static JellyfinProperties withMarkers(JellyfinProperties properties) {
+        properties.getFeaturingArtists().setMarkers(List.of("feat.", "featuring", "'vec", "with", "ft"));
+        return properties;
+    }
+}
@@ -0,0 +1,167 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeAlbum;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeGenre;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.fake.FakeJellyfinServer;
+import net.dahanne.jmh.snapshot.LibrarySnapshotStore;
+import net.dahanne.jmh.snapshot.LibrarySyncService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JellyfinGenreServiceTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+    @TempDir
+    private Path journals;
+    private FakeJellyfinCatalog catalog;
+    private FakeJellyfinServer server;
+    private JellyfinGenreService genreService;
+
+    @BeforeEach
+    void startServer() {
+        catalog = FakeJellyfinCatalog.generate(20, 3, 1, 4, 9);
+        server = jellyfin.start(catalog, 9);
+        jellyfin.properties().getJournal().setDirectory(journals.toString());
+        genreService = jellyfin.genreService();
+    }
+
+    @Test
+    void plansWithoutWritingThenUndoesTheMoveFromItsJournal() throws IOException {
+        FakeGenre origin = catalog.genres().get(0);
+        FakeGenre destination = catalog.genres().get(1);
+        Map<String, List<String>> before = genreNamesByAlbum();
+
+        var plan = genreService.planMoveGenre(origin.id(), destination.id());
+
+        assertThat(plan.albums()).extracting(JellyfinGenreService.AlbumChange::id)
+                .containsExactlyInAnyOrderElementsOf(catalog.albums().stream()
+                        .filter(album -> album.genres().contains(origin))
+                        .map(FakeAlbum::id)
+                        .toList());
+        assertThat(plan.albums()).allSatisfy(album -> assertThat(album.newGenres())
+                .doesNotContain(origin.name()).contains(destination.name()));
+        assertThat(genreNamesByAlbum()).isEqualTo(before);
+
+        var moved = genreService.applyMove(plan, 3);
+
+        assertThat(moved.movedCount()).isEqualTo(plan.albums().size()).isPositive();
+        assertThat(Files.readAllLines(moved.journal())).hasSize(plan.albums().size());
+        assertThat(catalog.albums()).noneMatch(album -> album.genres().contains(origin));
+
+        var undone = genreService.undo(moved.journal(), 3);
+
+        assertThat(undone.restoredAlbums()).hasSize(plan.albums().size());
+        assertThat(undone.failedAlbums()).isEmpty();
+        assertThat(genreNamesByAlbum()).isEqualTo(before);
+    }
+
+    @Test
+    void pagesTheAlbumsOfTheOriginGenre() {
+        FakeGenre origin = catalog.genres().get(0);
+        FakeGenre destination = catalog.genres().get(1);
+        for (int i = 0; i < JellyfinItemPager.DEFAULT_PAGE_SIZE; i++) {
+            catalog.addAlbum("Bulk " + i, catalog.artists().getFirst(), List.of(origin));
+        }
+        // a listing of every album at once would hit the response size and timeout of a real server
+        server.failing(request -> request.startsWith("/Items?") && !request.contains("Limit="));
+
+        var plan = genreService.planMoveGenre(origin.id(), destination.id());
+
+        assertThat(plan.albums()).extracting(JellyfinGenreService.AlbumChange::id)
+                .containsExactlyInAnyOrderElementsOf(catalog.albums().stream()
+                        .filter(album -> album.genres().contains(origin))
+                        .map(FakeAlbum::id)
+                        .toList());
+    }
+
+    @Test
+    void journalsDeletedGenresWhichUndoCannotRestore() {
+        FakeGenre unused = catalog.addGenre("Unused");
+
+        var plan = genreService.planEmptyGenreDeletion();
+        var deleted = genreService.deleteGenres(plan, 2);
+
+        assertThat(deleted.deleted()).extracting(JellyfinGenreService.GenreWithCount::id).contains(unused.id());
+        var undone = genreService.undo(deleted.journal(), 2);
+        assertThat(undone.irreversible()).contains("Unused");
+        assertThat(undone.restoredAlbums()).isEmpty();
+        assertThat(undone.journal()).isNull();
+    }
+
+    @Test
+    void journalsOnlyTheGenresReallyDeleted() {
+        FakeGenre unused = catalog.addGenre("Unused");
+        FakeGenre kept = catalog.addGenre("Kept");
+        var plan = genreService.planEmptyGenreDeletion();
+        server.failing(request -> request.equals("/Items/" + kept.id()));
+
+        var deleted = genreService.deleteGenres(plan, 2);
+
+        assertThat(deleted.deleted()).extracting(JellyfinGenreService.GenreWithCount::id)
+                .contains(unused.id()).doesNotContain(kept.id());
+        assertThat(genreService.undo(deleted.journal(), 2).irreversible()).contains("Unused").doesNotContain("Kept");
+    }
+
+    @Test
+    void plansDeletionsFromTheServerRatherThanTheSnapshot() {
+        FakeGenre unused = catalog.addGenre("Unused");
+        FakeGenre taggedSinceSync = catalog.addGenre("Tagged Since Sync");
+        JellyfinProperties properties = jellyfin.properties();
+        properties.getSnapshot().setEnabled(true);
+        properties.getSnapshot().setFile(journals.resolve("library.snapshot").toString());
+        LibrarySnapshotStore store = new LibrarySnapshotStore(properties);
+        new LibrarySyncService(jellyfin.pager(), store).sync(false);
+        catalog.addAlbum("Late Addition", catalog.artists().getFirst(), List.of(taggedSinceSync));
+        JellyfinGenreService snapshotService = new JellyfinGenreService(jellyfin.objectMapper(),
+                jellyfin.httpClient(), jellyfin.requestFactory(), properties, store, jellyfin.pager());
+
+        assertThat(snapshotService.fetchGenresWithAlbumCount())
+                .contains(new JellyfinGenreService.GenreWithCount(taggedSinceSync.id(), "Tagged Since Sync", 0));
+        assertThat(snapshotService.planEmptyGenreDeletion()).extracting(JellyfinGenreService.GenreWithCount::id)
+                .contains(unused.id()).doesNotContain(taggedSinceSync.id());
+    }
+
+    @Test
+    void keepsAPlannedGenreTaggedBeforeItsDeletion() {
+        FakeGenre unused = catalog.addGenre("Unused");
+        FakeGenre taggedSincePlan = catalog.addGenre("Tagged Since Plan");
+        var plan = genreService.planEmptyGenreDeletion();
+        catalog.addAlbum("Late Addition", catalog.artists().getFirst(), List.of(taggedSincePlan));
+
+        var deleted = genreService.deleteGenres(plan, 2);
+
+        assertThat(deleted.deleted()).extracting(JellyfinGenreService.GenreWithCount::id)
+                .contains(unused.id()).doesNotContain(taggedSincePlan.id());
+        assertThat(catalog.genres()).contains(taggedSincePlan);
+    }
+
+    @Test
+    void failsThePlanWhenAnAlbumCountFails() {
+        FakeGenre unused = catalog.addGenre("Unused");
+        server.failing(request -> request.contains("Limit=0") && !request.contains(unused.id()));
+
+        // the genres with albums would otherwise be planned for deletion
+        assertThatThrownBy(genreService::planEmptyGenreDeletion).hasMessageContaining("HTTP 503");
+    }
+
+    private Map<String, List<String>> genreNamesByAlbum() {
+        return catalog.albums().stream().collect(Collectors.toMap(FakeAlbum::id,
+                album -> album.genres().stream().map(FakeGenre::name).sorted().toList()));
+    }
+}
@@ -0,0 +1,60 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.JellyfinQuery.ItemField;
+import net.dahanne.jmh.JellyfinQuery.ItemType;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.fake.FakeJellyfinServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import tools.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JellyfinQueryTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @Test
+    void onlyAsksForTheDeclaredFieldsAndTurnsImagesAndUserDataOff() {
+        JellyfinQuery albums = JellyfinQuery.items().types(ItemType.MUSIC_ALBUM).recursive();
+
+        assertThat(albums.reading(ItemField.DATE_LAST_SAVED, ItemField.GENRES).path()).isEqualTo(
+                "/Items?IncludeItemTypes=MusicAlbum&Recursive=true&Fields=Genres,DateLastSaved"
+                        + "&EnableImages=false&EnableUserData=false");
+        assertThat(albums.path()).doesNotContain("Fields");
+    }
+
+    @Test
+    void encodesValuesAndPages() {
+        JellyfinQuery playlists = JellyfinQuery.items().types(ItemType.PLAYLIST).searchTerm("Rock & Roll, 100%");
+
+        assertThat(playlists.page(200, 100, false)).isEqualTo(
+                "/Items?IncludeItemTypes=Playlist&searchTerm=Rock+%26+Roll%2C+100%25"
+                        + "&EnableImages=false&EnableUserData=false&StartIndex=200&Limit=100"
+                        + "&EnableTotalRecordCount=false");
+        assertThat(JellyfinQuery.items().ids(List.of("a b", "c")).count()).isEqualTo(
+                "/Items?Ids=a+b,c&EnableImages=false&EnableUserData=false&Limit=0");
+        assertThat(JellyfinQuery.genres().sortedByName().label()).isEqualTo("MusicGenres");
+        assertThat(playlists.label()).isEqualTo("Playlist");
+    }
+
+    @Test
+    void pagerOnlyCountsTheFirstPage() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(10, 2, 3, 2, 9);
+        FakeJellyfinServer server = jellyfin.start(catalog, 9);
+        List<JsonNode> tracks = new ArrayList<>();
+
+        int total = jellyfin.pager().forEachItem(JellyfinQuery.items().types(ItemType.AUDIO).recursive(), 7,
+                tracks::add);
+
+        assertThat(total).isEqualTo(60);
+        assertThat(tracks).hasSize(60);
+        assertThat(tracks).allSatisfy(track -> assertThat(track.has("Path")).isFalse());
+        assertThat(server.requestCount()).isEqualTo(9);
+    }
+}
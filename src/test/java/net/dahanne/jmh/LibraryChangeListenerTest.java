@@ -0,0 +1,148 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.JellyfinArtistService.Artist;
+import net.dahanne.jmh.JellyfinGenreService.GenreWithCount;
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeAlbum;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeArtist;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeGenre;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.fake.FakeJellyfinServer;
+import net.dahanne.jmh.fake.FakeJellyfinSocket;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+class LibraryChangeListenerTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+    private FakeJellyfinCatalog catalog;
+    private FakeJellyfinSocket socket;
+    private FakeJellyfinServer server;
+    private JellyfinArtistService artistService;
+    private JellyfinGenreService genreService;
+    private LibraryChangeListener listener;
+    @TempDir
+    private Path journals;
+
+    @BeforeEach
+    void connect() {
+        catalog = FakeJellyfinCatalog.generate(20, 2, 3, 4, 7);
+        socket = new FakeJellyfinSocket(jellyfin.objectMapper()).start(0);
+        server = jellyfin.start(new FakeJellyfinServer(catalog, jellyfin.objectMapper(), Duration.ZERO, 0, 7)
+                .notifying(socket));
+        JellyfinProperties properties = jellyfin.properties();
+        properties.getLive().setEnabled(true);
+        properties.getLive().setSocketUrl(socket.url());
+        properties.getLive().setReconnectDelay(Duration.ofMillis(50));
+        properties.getJournal().setDirectory(journals.toString());
+        artistService = jellyfin.artistService();
+        genreService = jellyfin.genreService();
+        listener = new LibraryChangeListener(jellyfin.objectMapper(), jellyfin.httpClient(), jellyfin.requestFactory(),
+                properties, () -> List.of(artistService, genreService));
+        listener.start();
+        await(listener::isConnected);
+    }
+
+    @AfterEach
+    void disconnect() {
+        listener.stop();
+    }
+
+    @Test
+    void patchesCachedArtistsInsteadOfFetchingThemAgain() {
+        List<Artist> artists = artistService.fetchArtists();
+        long requests = server.requestCount();
+        assertThat(artistService.fetchArtists()).isEqualTo(artists);
+        assertThat(server.requestCount()).isEqualTo(requests);
+
+        FakeArtist added = catalog.addArtist("Zz Newcomer");
+        String removed = artists.getFirst().id();
+        catalog.delete(removed);
+        socket.libraryChanged(List.of(added.id()), List.of(), List.of(removed));
+
+        await(() -> artistService.fetchArtists().contains(new Artist(added.id(), added.name())));
+        assertThat(artistService.fetchArtists()).extracting(Artist::id).doesNotContain(removed);
+        assertThat(artistService.fetchArtists()).hasSize(artists.size());
+        // only the added artist was fetched
+        assertThat(server.requestCount()).isEqualTo(requests + 1);
+    }
+
+    @Test
+    void keepsGenreAlbumCountsInSyncWithAlbumUpdatesAndDeletions() {
+        assertThat(genreService.fetchGenresWithAlbumCount()).containsExactlyInAnyOrderElementsOf(expectedGenres());
+        long requests = server.requestCount();
+        genreService.fetchGenresWithAlbumCount();
+        assertThat(server.requestCount()).isEqualTo(requests);
+
+        FakeAlbum album = catalog.albums().getFirst();
+        FakeGenre origin = album.genres().getFirst();
+        FakeGenre destination = catalog.genres().stream()
+                .filter(genre -> !album.genres().contains(genre))
+                .findFirst()
+                .orElseThrow();
+        // each album update is notified by the fake server
+        genreService.applyMove(genreService.planMoveGenre(origin.id(), destination.id()), 2);
+        await(() -> genreService.fetchGenresWithAlbumCount().containsAll(expectedGenres()));
+        assertThat(genreService.fetchGenresWithAlbumCount()).containsExactlyInAnyOrderElementsOf(expectedGenres());
+
+        FakeGenre unused = catalog.addGenre("Unused");
+        socket.libraryChanged(List.of(unused.id()), List.of(), List.of());
+        await(() -> genreService.fetchGenresWithAlbumCount().contains(new GenreWithCount(unused.id(), "Unused", 0)));
+        assertThat(genreService.deleteGenres(genreService.planEmptyGenreDeletion(), 2).deleted())
+                .extracting(GenreWithCount::id).contains(unused.id());
+        // removed from the cache right away, without waiting for the notification
+        assertThat(genreService.fetchGenresWithAlbumCount()).extracting(GenreWithCount::id)
+                .doesNotContain(unused.id());
+    }
+
+    @Test
+    void fetchesAgainAfterReconnecting() {
+        artistService.fetchArtists();
+        socket.dropConnections();
+        await(() -> socket.connectionCount() == 2 && listener.isConnected());
+
+        long requests = server.requestCount();
+        artistService.fetchArtists();
+        assertThat(server.requestCount()).isEqualTo(requests + 1);
+    }
+
+    private List<GenreWithCount> expectedGenres() {
+        Map<String, Integer> albumCounts = new HashMap<>();
+        catalog.albums().forEach(album -> album.genres().forEach(genre -> albumCounts.merge(genre.id(), 1,
+                Integer::sum)));
+        return catalog.genres().stream()
+                .map(genre -> new GenreWithCount(genre.id(), genre.name(), albumCounts.getOrDefault(genre.id(), 0)))
+                .collect(Collectors.toList());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 5 seconds");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail("Interrupted");
+            }
+        }
+    }
+}
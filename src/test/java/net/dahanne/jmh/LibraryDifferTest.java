@@ -0,0 +1,113 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.LibraryDiffer.DiffResult;
+import net.dahanne.jmh.LibraryDiffer.Join;
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeAlbum;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeArtist;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.fake.FakeJellyfinServer;
+import net.dahanne.jmh.report.ReportFormat;
+import net.dahanne.jmh.report.ReportWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LibraryDifferTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+    private FakeJellyfinServer office;
+
+    @Test
+    void reportsWhatEachServerLacks() {
+        // same seed, same catalog: only the additions below differ
+        FakeJellyfinCatalog homeCatalog = FakeJellyfinCatalog.generate(30, 2, 2, 4, 11);
+        FakeJellyfinCatalog officeCatalog = FakeJellyfinCatalog.generate(30, 2, 2, 4, 11);
+        FakeArtist homeArtist = homeCatalog.artists().getFirst();
+        FakeAlbum onlyAtHome = homeCatalog.addAlbum("Only At Home", homeArtist, List.of());
+        FakeArtist utada = homeCatalog.addArtist("宇多田ヒカル");
+        homeCatalog.addArtist("Beyoncé");
+        homeCatalog.addArtist("坂本龍一");
+        FakeArtist officeOnly = officeCatalog.addArtist("Office Only");
+        FakeAlbum officeSessions = officeCatalog.addAlbum("Office Sessions", officeCatalog.artists().getFirst(),
+                List.of());
+        officeCatalog.addArtist("BEYONCE");
+        officeCatalog.addArtist(" 坂本龍一");
+        jellyfin.start(homeCatalog, 11);
+        office = jellyfin.start(officeCatalog, 11);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DiffResult result;
+        try (ReportWriter report = ReportWriter.open(ReportFormat.TEXT, output, false, LibraryDiffer.REPORT)) {
+            result = differ().diff("default", "office", 2, report);
+        }
+
+        assertThat(result.artists()).isEqualTo(new Join(homeCatalog.artists().size(),
+                officeCatalog.artists().size(), 1, 1));
+        assertThat(result.albums()).isEqualTo(new Join(homeCatalog.albums().size(),
+                officeCatalog.albums().size(), 1, 1));
+        assertThat(output.toString(StandardCharsets.UTF_8).lines()).containsExactlyInAnyOrder(
+                "default lacks artist: Office Only (" + officeOnly.id() + " on office)",
+                "office lacks artist: 宇多田ヒカル (" + utada.id() + " on default)",
+                "default lacks album: " + officeCatalog.artists().getFirst().name() + " - Office Sessions ("
+                        + officeSessions.id() + " on office)",
+                "office lacks album: " + homeArtist.name() + " - Only At Home (" + onlyAtHome.id() + " on default)");
+    }
+
+    @Test
+    void reportsAnAlbumDuplicatedOnTheLargerServerOnce() {
+        FakeJellyfinCatalog homeCatalog = FakeJellyfinCatalog.generate(10, 2, 1, 2, 5);
+        FakeJellyfinCatalog officeCatalog = FakeJellyfinCatalog.generate(10, 2, 1, 2, 5);
+        FakeArtist artist = officeCatalog.artists().getFirst();
+        FakeAlbum first = officeCatalog.addAlbum("Imported Twice", artist, List.of());
+        FakeAlbum second = officeCatalog.addAlbum("Imported Twice", artist, List.of());
+        jellyfin.start(homeCatalog, 5);
+        office = jellyfin.start(officeCatalog, 5);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DiffResult result;
+        try (ReportWriter report = ReportWriter.open(ReportFormat.TEXT, output, false, LibraryDiffer.REPORT)) {
+            result = differ().diff("default", "office", 2, report);
+        }
+
+        assertThat(result.albums()).isEqualTo(new Join(homeCatalog.albums().size(),
+                officeCatalog.albums().size(), 1, 0));
+        assertThat(output.toString(StandardCharsets.UTF_8).lines()).singleElement()
+                .satisfies(line -> assertThat(line)
+                        .startsWith("default lacks album: " + artist.name() + " - Imported Twice (")
+                        .containsAnyOf(first.id(), second.id()));
+    }
+
+    @Test
+    void rejectsUnknownServers() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(1, 1, 1, 1, 3);
+        jellyfin.start(catalog, 3);
+        office = jellyfin.start(catalog, 3);
+
+        try (ReportWriter report = ReportWriter.open(ReportFormat.TEXT, new ByteArrayOutputStream(), false,
+                LibraryDiffer.REPORT)) {
+            assertThatThrownBy(() -> differ().diff("default", "garage", 2, report))
+                    .isInstanceOf(IllegalArgumentException.class)
+                    .hasMessageContaining("garage")
+                    .hasMessageContaining("[office]");
+        }
+    }
+
+    private LibraryDiffer differ() {
+        JellyfinProperties properties = jellyfin.properties();
+        JellyfinProperties.Server server = new JellyfinProperties.Server();
+        server.setBaseUrl(office.baseUrl());
+        server.setApiToken("other");
+        properties.getServers().put("office", server);
+        return new LibraryDiffer(jellyfin.objectMapper(), jellyfin.httpClient(), jellyfin.requestFactory(),
+                new NameNormalizer());
+    }
+}
@@ -0,0 +1,66 @@
+package net.dahanne.jmh;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ListeningAggregatorTest {
+
+    @Test
+    void mergesPlaysIgnoringCaseAndKeepsFirstSpelling() {
+        ListeningAggregator aggregator = new ListeningAggregator();
+        aggregator.add("Radiohead", "Creep", 200_000);
+        aggregator.add("RADIOHEAD", "creep", 10_000);
+        aggregator.add("Radiohead", "Karma Police", 250_000);
+
+        List<String> visited = visit(aggregator);
+
+        assertThat(aggregator.size()).isEqualTo(2);
+        assertThat(visited).containsExactly(
+                "Radiohead|Creep|2|210000",
+                "Radiohead|Karma Police|1|250000");
+    }
+
+    @Test
+    void sortsByArtistThenTrackWithMissingNamesLast() {
+        ListeningAggregator aggregator = new ListeningAggregator();
+        aggregator.add("zz top", "La Grange", 1);
+        aggregator.add(null, "Unknown", 1);
+        aggregator.add("Air", null, 1);
+        aggregator.add("ABBA", "Waterloo", 1);
+        aggregator.add("Air", "All I Need", 1);
+
+        assertThat(visit(aggregator)).containsExactly(
+                "ABBA|Waterloo|1|1",
+                "Air|All I Need|1|1",
+                "Air|null|1|1",
+                "zz top|La Grange|1|1",
+                "null|Unknown|1|1");
+    }
+
+    @Test
+    void growsBeyondItsInitialCapacity() {
+        ListeningAggregator aggregator = new ListeningAggregator();
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 5_000; i++) {
+                aggregator.add("Artist " + (i % 50), "Track " + i, 1_000);
+            }
+        }
+
+        List<String> visited = visit(aggregator);
+
+        assertThat(aggregator.size()).isEqualTo(5_000);
+        assertThat(visited).hasSize(5_000).allMatch(line -> line.endsWith("|2|2000"));
+        assertThat(visited.getFirst()).isEqualTo("Artist 0|Track 0|2|2000");
+    }
+
+    private static List<String> visit(ListeningAggregator aggregator) {
+        List<String> visited = new ArrayList<>();
+        aggregator.forEachSorted((artist, track, count, msPlayed) ->
+                visited.add(artist + "|" + track + "|" + count + "|" + msPlayed));
+        return visited;
+    }
+}
@@ -0,0 +1,39 @@
+package net.dahanne.jmh;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NameCollationTest {
+
+    @Test
+    void sortsAccentedNamesNextToTheirPlainSpelling() {
+        List<String> names = new ArrayList<>(List.of("Zz", "Édith", "edith", "beyonce", "Beyoncé"));
+
+        names.sort(NameCollation.ORDER);
+
+        assertThat(names).containsExactly("beyonce", "Beyoncé", "edith", "Édith", "Zz");
+    }
+
+    @Test
+    void ignoresCaseButNotAccents() {
+        assertThat(NameCollation.compare("ABBA", "abba")).isZero();
+        assertThat(NameCollation.compare("Edith", "Édith")).isNegative();
+        // precomposed and decomposed accents
+        assertThat(Arrays.equals(NameCollation.key("Édith"), NameCollation.key("E\u0301dith"))).isTrue();
+    }
+
+    @Test
+    void sortKeepsEqualNamesInOrderAndNullsLast() {
+        List<String[]> artists = new ArrayList<>(List.of(new String[]{"1", "ABBA"}, new String[]{"2", null},
+                new String[]{"3", "abba"}, new String[]{"4", "AC/DC"}));
+
+        NameCollation.sort(artists, artist -> artist[1]);
+
+        assertThat(artists).extracting(artist -> artist[0]).containsExactly("1", "3", "4", "2");
+    }
+}
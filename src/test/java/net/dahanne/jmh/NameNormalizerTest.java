@@ -0,0 +1,47 @@
+package net.dahanne.jmh;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NameNormalizerTest {
+
+    private final NameNormalizer normalizer = new NameNormalizer();
+
+    @Test
+    void foldsCaseDiacriticsAndPunctuation() {
+        assertThat(normalizer.normalize("Beyoncé Knowles")).isEqualTo("beyonceknowles");
+        assertThat(normalizer.normalize("Gang Starr")).isEqualTo("gangstarr");
+        assertThat(normalizer.normalize("Sigur Rós")).isEqualTo("sigurros");
+        assertThat(normalizer.normalize("Đặng Thái Sơn")).isEqualTo("angthaison");
+        assertThat(normalizer.normalize("ABBA")).isEqualTo("abba");
+        assertThat(normalizer.normalize("abba")).isSameAs("abba");
+        assertThat(normalizer.normalize(null)).isEmpty();
+    }
+
+    @Test
+    void agreesWithTheNfdReference() {
+        List<String> names = List.of("Mötley Crüe", "Ἀθήνα", "Björk", "Ãngström", "Æther", "Straße", "İstanbul",
+                "Σigma", "坂本龍一", "Ｆｕｌｌｗｉｄｔｈ", "école", "🎵 Emoji", "The The!");
+        for (String name : names) {
+            assertThat(normalizer.normalize(name)).as(name).isEqualTo(NameNormalizer.reference(name));
+            assertThat(normalizer.normalize(name)).as("memoized " + name).isEqualTo(NameNormalizer.reference(name));
+        }
+    }
+
+    @Test
+    void comparesWithoutBuildingKeys() {
+        assertThat(normalizer.sameName("Beyoncé", "BEYONCE")).isTrue();
+        assertThat(normalizer.sameName("Gang Starr", "gang-starr!")).isTrue();
+        assertThat(normalizer.sameName("Ἀθήνα Björk", "BJORK")).isTrue();
+        assertThat(normalizer.sameName("Gang Starr", "Gang Star")).isFalse();
+        assertThat(normalizer.sameName("", "!!")).isTrue();
+        assertThat(normalizer.sameName(null, "a")).isFalse();
+
+        assertThat(NameNormalizer.equalsIgnoreCase("Björk", "BJÖRK")).isTrue();
+        assertThat(NameNormalizer.equalsIgnoreCase("Bjork", "Björk")).isFalse();
+        assertThat(NameNormalizer.hashIgnoreCase(7, "Björk")).isEqualTo(NameNormalizer.hashIgnoreCase(7, "bJÖRK"));
+    }
+}
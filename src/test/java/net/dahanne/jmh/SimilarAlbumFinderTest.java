@@ -0,0 +1,49 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.SimilarAlbumFinder.Album;
+import net.dahanne.jmh.SimilarAlbumFinder.Kind;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class SimilarAlbumFinderTest {
+
+    private final SimilarAlbumFinder finder = new SimilarAlbumFinder(null, null, new NameNormalizer());
+
+    @Test
+    void findsEditionsDuplicatesAndTyposOfTheSameArtist() {
+        var pairs = finder.findSimilarAlbums(List.of(
+                album("1", "OK Computer", "Radiohead", 12, 3200),
+                album("2", "OK Computer (Collector's Edition)", "Radiohead", 30, 9000),
+                album("3", "Kid A", "Radiohead", 10, 2900),
+                album("4", "Pablo Honey", "Radiohead", 12, 2500),
+                album("5", "Pablo Honey [Remastered 2009]", "radiohead", 12, 2510),
+                album("6", "Abbey Road", "The Beatles", 17, 2800),
+                album("7", "Abbey Road", "Someone Else", 17, 2800),
+                album("8", "Magical Mystery Tour", "The Beatles", 11, 3000),
+                album("9", "Magical Mistery Tour", "The Beatles", 10, 2800),
+                album("10", "Help!", "The Beatles", 14, 2000)));
+
+        assertThat(pairs)
+                .extracting(pair -> pair.first().id(), pair -> pair.second().id(), pair -> pair.score(),
+                        pair -> pair.kind())
+                .containsExactly(
+                        tuple("4", "5", 1.0, Kind.DUPLICATE),
+                        tuple("1", "2", 0.81, Kind.EDITION),
+                        tuple("9", "8", 0.76, Kind.SIMILAR_TITLE));
+    }
+
+    @Test
+    void stripsEditionSuffixesButNotLiveOnes() {
+        assertThat(finder.baseTitle("OK Computer (Collector's Edition)")).isEqualTo("okcomputer");
+        assertThat(finder.baseTitle("Blue - 2015 Remaster")).isEqualTo("blue");
+        assertThat(finder.baseTitle("Live at Leeds (Live)")).isEqualTo("liveatleedslive");
+    }
+
+    private static Album album(String id, String name, String artist, int tracks, long seconds) {
+        return new Album(id, name, List.of(artist), tracks, seconds);
+    }
+}
@@ -7,6 +7,7 @@ import org.junit.jupiter.api.Test;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 class SimilarArtistFinderTest {
 
@@ -17,7 +18,7 @@ class SimilarArtistFinderTest {
         similarArtist.setMinCommonLength(5);
         properties.setSimilarArtist(similarArtist);
 
-        SimilarArtistFinder finder = new SimilarArtistFinder(null, properties);
+        SimilarArtistFinder finder = new SimilarArtistFinder(null, new NameNormalizer(), properties);
         List<Artist> artists = List.of(
                 new Artist("1", "Beyonce"),
                 new Artist("2", "Beyoncé Knowles"),
@@ -28,10 +29,57 @@ class SimilarArtistFinderTest {
 
         List<SimilarArtistPair> pairs = finder.findSimilarArtists(artists);
 
-        assertThat(pairs).contains(
-                new SimilarArtistPair("Beyonce", "Beyoncé Knowles"),
-                new SimilarArtistPair("Gang Starr", "Gangstarr")
+        assertThat(pairs).extracting(SimilarArtistPair::first, SimilarArtistPair::second).containsExactly(
+                tuple("Gang Starr", "Gangstarr"),
+                tuple("Beyonce", "Beyoncé Knowles")
         );
-        assertThat(pairs).hasSize(2);
+        assertThat(pairs).extracting(SimilarArtistPair::score).containsExactly(1.0, 0.5);
+    }
+
+    @Test
+    void ranksTyposAboveSharedWordsAndAppliesTheScoreCutoff() {
+        net.dahanne.jmh.config.JellyfinProperties properties = new net.dahanne.jmh.config.JellyfinProperties();
+        properties.getSimilarArtist().setMinScore(0.3);
+
+        SimilarArtistFinder finder = new SimilarArtistFinder(null, new NameNormalizer(), properties);
+        List<Artist> artists = List.of(
+                new Artist("1", "The Beatles"),
+                new Artist("2", "Beatles Tribute Band"),
+                new Artist("3", "Radiohead"),
+                new Artist("4", "Radioheed")
+        );
+
+        List<SimilarArtistPair> pairs = finder.findSimilarArtists(artists);
+
+        assertThat(pairs).containsExactly(new SimilarArtistPair("Radiohead", "Radioheed", 0.89));
+    }
+
+    @Test
+    void spillsPairsToSortedRunsAndMergesThemWithoutDuplicates() {
+        List<Artist> artists = List.of(
+                new Artist("1", "The Beatles"),
+                new Artist("2", "Beatles Tribute Band"),
+                new Artist("3", "Radiohead"),
+                new Artist("4", "Radioheed"),
+                new Artist("5", "Radiohead"),
+                new Artist("6", "Gang Starr"),
+                new Artist("7", "Gangstarr"),
+                new Artist("8", "Beyonce"),
+                new Artist("9", "Beyoncé Knowles")
+        );
+        net.dahanne.jmh.config.JellyfinProperties inMemory = new net.dahanne.jmh.config.JellyfinProperties();
+        inMemory.getSimilarArtist().setMinScore(0.2);
+        net.dahanne.jmh.config.JellyfinProperties spilling = new net.dahanne.jmh.config.JellyfinProperties();
+        spilling.getSimilarArtist().setMinScore(0.2);
+        spilling.getSimilarArtist().setMaxPairsInMemory(1);
+
+        List<SimilarArtistPair> expected = new SimilarArtistFinder(null, new NameNormalizer(), inMemory)
+                .findSimilarArtists(artists);
+        List<SimilarArtistPair> merged = new SimilarArtistFinder(null, new NameNormalizer(), spilling)
+                .findSimilarArtists(artists);
+
+        assertThat(merged).isEqualTo(expected).doesNotHaveDuplicates();
+        assertThat(merged).filteredOn(pair -> pair.second().equals("Radioheed"))
+                .containsExactly(new SimilarArtistPair("Radiohead", "Radioheed", 0.89));
     }
 }
@@ -0,0 +1,77 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.JellyfinGenreService.GenreWithCount;
+import net.dahanne.jmh.SimilarGenreFinder.GenreCluster;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.fake.FakeJellyfinServer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimilarGenreFinderTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @Test
+    void clustersVariantsUnderTheGenreWithTheMostAlbums() {
+        SimilarGenreFinder finder = new SimilarGenreFinder(null, new NameNormalizer());
+
+        List<GenreCluster> clusters = finder.findSimilarGenres(List.of(
+                new GenreWithCount("1", "Hip Hop", 3),
+                new GenreWithCount("2", "Hip-Hop", 12),
+                new GenreWithCount("3", "hiphop", 1),
+                new GenreWithCount("4", "Rap/Hip Hop", 20),
+                new GenreWithCount("5", "Rap", 2),
+                new GenreWithCount("6", "Électro", 4),
+                new GenreWithCount("7", "electro", 5),
+                new GenreWithCount("8", "Jazz", 9)));
+
+        assertThat(clusters).extracting(GenreCluster::key).containsExactly("hiphop", "electro");
+        GenreCluster hipHop = clusters.getFirst();
+        assertThat(hipHop.canonical().name()).isEqualTo("Hip-Hop");
+        assertThat(hipHop.variants()).extracting(GenreWithCount::name).containsExactly("Hip Hop", "hiphop",
+                "Rap/Hip Hop");
+        assertThat(clusters.get(1).canonical().name()).isEqualTo("electro");
+    }
+
+    @Test
+    void clustersThousandsOfGenres() {
+        List<GenreWithCount> genres = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            genres.add(new GenreWithCount("a" + i, "Genre " + i, i % 7));
+            genres.add(new GenreWithCount("b" + i, "genre-" + i, i % 5));
+            genres.add(new GenreWithCount("c" + i, "Genre " + i + "/Other " + i, 1));
+        }
+        SimilarGenreFinder finder = new SimilarGenreFinder(null, new NameNormalizer());
+
+        List<GenreCluster> clusters = finder.findSimilarGenres(genres);
+
+        assertThat(clusters).hasSize(5_000).allMatch(cluster -> cluster.variants().size() == 2);
+    }
+
+    @Test
+    void countsAlbumsWithoutOneRequestPerGenre() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(10, 2, 1, 1, 3);
+        FakeJellyfinCatalog.FakeArtist artist = catalog.artists().getFirst();
+        FakeJellyfinCatalog.FakeGenre dashed = catalog.addGenre("Hip-Hop");
+        FakeJellyfinCatalog.FakeGenre spaced = catalog.addGenre("Hip Hop");
+        catalog.addAlbum("First", artist, List.of(dashed));
+        catalog.addAlbum("Second", artist, List.of(dashed, spaced));
+        FakeJellyfinServer server = jellyfin.start(catalog, 3);
+
+        List<GenreCluster> clusters = new SimilarGenreFinder(jellyfin.genreService(), new NameNormalizer())
+                .listSimilarGenres();
+
+        assertThat(clusters).singleElement().satisfies(cluster -> {
+            assertThat(cluster.canonical()).isEqualTo(new GenreWithCount(dashed.id(), "Hip-Hop", 2));
+            assertThat(cluster.variants()).containsExactly(new GenreWithCount(spaced.id(), "Hip Hop", 1));
+        });
+        assertThat(server.requestCount()).isEqualTo(2);
+    }
+}
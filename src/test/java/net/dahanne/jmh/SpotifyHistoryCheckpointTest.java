@@ -0,0 +1,115 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.report.ReportFormat;
+import net.dahanne.jmh.report.ReportWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpotifyHistoryCheckpointTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void cursorSkipsPlaysAlreadyIngestedIncludingThoseSharingTheLastTimestamp() {
+        var cursor = new SpotifyHistoryCheckpoint.Cursor(
+                new SpotifyHistoryCheckpoint("2023-01-01 10:00", 2, List.of()));
+
+        assertThat(cursor.isNew("2022-12-31 23:59")).isFalse();
+        assertThat(cursor.isNew("2023-01-01 10:00")).isFalse();
+        assertThat(cursor.isNew("2023-01-01T10:00Z")).isFalse();
+        assertThat(cursor.isNew("2023-01-01 10:00")).isTrue();
+        assertThat(cursor.isNew(null)).isFalse();
+        assertThat(cursor.last()).isEqualTo("2023-01-01 10:00");
+        assertThat(cursor.atLast()).isEqualTo(3);
+
+        assertThat(cursor.isNew("2023-01-02T08:00:00Z")).isTrue();
+        assertThat(cursor.last()).isEqualTo("2023-01-02 08:00:00");
+        assertThat(cursor.atLast()).isEqualTo(1);
+    }
+
+    @Test
+    void incrementalRunsOnlyReportTracksSeenForTheFirstTime() throws IOException {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(2, 1, 2, 1, 5);
+        jellyfin.start(catalog, 5);
+        FakeJellyfinCatalog.FakeTrack track = catalog.tracks().getFirst();
+        String artist = track.artists().getFirst().name();
+        Path history = directory.resolve("StreamingHistory.json");
+        SpotifyHistoryMatcher matcher = matcher(history);
+
+        Files.writeString(history, """
+                [{"artistName": "%s", "trackName": "%s", "msPlayed": 1000, "endTime": "2023-01-01 10:00"},
+                 {"artistName": "Nobody Knows Me", "trackName": "Nope", "msPlayed": 500, "endTime": "2023-01-01 10:00"}]
+                """.formatted(artist, track.name()));
+        assertThat(run(matcher, false)).containsExactlyInAnyOrder(
+                artist + "," + track.name() + ",1,true",
+                "Nobody Knows Me,Nope,1,false");
+
+        Files.writeString(history, """
+                [{"artistName": "%s", "trackName": "%s", "msPlayed": 1000, "endTime": "2023-01-01 10:00"},
+                 {"artistName": "Nobody Knows Me", "trackName": "Nope", "msPlayed": 500, "endTime": "2023-01-01 10:00"},
+                 {"artistName": "%s", "trackName": "%s", "msPlayed": 2000, "endTime": "2023-01-01 10:00"},
+                 {"artistName": "New Artist", "trackName": "New Song", "msPlayed": 700, "endTime": "2023-01-02 09:00"}]
+                """.formatted(artist, track.name(), artist.toUpperCase(), track.name()));
+        assertThat(run(matcher, false)).containsExactly("New Artist,New Song,1,false");
+
+        assertThat(run(matcher, false)).isEmpty();
+        assertThat(run(matcher, true)).containsExactlyInAnyOrder(
+                artist + "," + track.name() + ",2,true",
+                "New Artist,New Song,1,false",
+                "Nobody Knows Me,Nope,1,false");
+    }
+
+    @Test
+    void keepsTheTrackIndexOnlyWhileChangesAreWatched() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(2, 1, 2, 1, 5);
+        jellyfin.start(catalog, 5);
+        SpotifyHistoryMatcher matcher = matcher(directory.resolve("StreamingHistory.json"));
+
+        assertThat(matcher.trackMatchIndex()).isNotSameAs(matcher.trackMatchIndex());
+
+        matcher.watchStarted();
+        TrackMatchIndex index = matcher.trackMatchIndex();
+        assertThat(matcher.trackMatchIndex()).isSameAs(index);
+        matcher.libraryChanged(new LibraryChange(Set.of(catalog.tracks().getFirst().id()), List.of()));
+        assertThat(matcher.trackMatchIndex()).isNotSameAs(index);
+
+        matcher.watchStopped();
+        assertThat(matcher.trackMatchIndex()).isNotSameAs(matcher.trackMatchIndex());
+    }
+
+    /**
+     * @return artist, track, count and found of each reported row
+     */
+    private static List<String> run(SpotifyHistoryMatcher matcher, boolean fullReport) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ReportWriter report = ReportWriter.open(ReportFormat.CSV, output, false,
+                SpotifyHistoryMatcher.MATCH_REPORT)) {
+            matcher.compareWithSpotifyListIncrementally(fullReport, report);
+        }
+        return output.toString(StandardCharsets.UTF_8).lines()
+                .skip(1)
+                .map(line -> String.join(",", List.of(line.split(",")).subList(0, 4)))
+                .toList();
+    }
+
+    private SpotifyHistoryMatcher matcher(Path history) {
+        return jellyfin.spotifyHistoryMatcher(history, directory.resolve("checkpoint.json"));
+    }
+}
@@ -0,0 +1,73 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.SpotifyPlaylistCreator.PlaylistResult;
+import net.dahanne.jmh.SpotifyStatsReporter.Ranking;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakePlaylist;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog.FakeTrack;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import net.dahanne.jmh.report.ReportFormat;
+import net.dahanne.jmh.report.ReportWriter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import tools.jackson.databind.node.ArrayNode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpotifyPlaylistCreatorTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replacesThePlaylistWithTheTopMatchedTracksInChunks() throws IOException {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(30, 2, 8, 2, 9);
+        FakePlaylist previous = catalog.addPlaylist("Spotify Top Tracks", List.of());
+        jellyfin.start(catalog, 9);
+        FakeTrack other = catalog.tracks().get(42);
+        FakeTrack favourite = catalog.addTrack("Unmistakable Anthem", other.album(), other.artists(), 99,
+                other.runTimeTicks(), 99);
+        ArrayNode history = jellyfin.objectMapper().createArrayNode();
+        for (FakeTrack track : catalog.tracks()) {
+            int plays = track == favourite ? 5 : 1;
+            for (int i = 0; i < plays; i++) {
+                history.addObject().put("artistName", track.artists().getFirst().name())
+                        .put("trackName", track.name()).put("msPlayed", 1000).put("endTime", "2023-01-01 10:00");
+            }
+        }
+        history.addObject().put("artistName", "Nobody Knows Me").put("trackName", "Nope").put("msPlayed", 99_000)
+                .put("endTime", "2023-01-01 10:00");
+        Path historyFile = directory.resolve("StreamingHistory.json");
+        Files.write(historyFile, jellyfin.objectMapper().writeValueAsBytes(history));
+
+        PlaylistResult result;
+        try (ReportWriter report = ReportWriter.open(ReportFormat.CSV, new ByteArrayOutputStream(), false,
+                SpotifyPlaylistCreator.REPORT)) {
+            result = creator(historyFile).createPlaylist("Spotify Top Tracks", 250, Ranking.PLAYS, report);
+        }
+
+        assertThat(result.trackCount()).isEqualTo(250);
+        assertThat(result.replaced()).isEqualTo(1);
+        // one creation with 200 ids, one addition of the last 50, one deletion
+        assertThat(result.requests()).isEqualTo(3);
+        assertThat(catalog.playlist(previous.id())).isNull();
+        List<String> itemIds = catalog.playlist(result.id()).itemIds();
+        assertThat(itemIds).hasSize(250).doesNotHaveDuplicates();
+        assertThat(itemIds.getFirst()).isEqualTo(favourite.id());
+    }
+
+    private SpotifyPlaylistCreator creator(Path history) {
+        return new SpotifyPlaylistCreator(jellyfin.objectMapper(), jellyfin.httpClient(), jellyfin.requestFactory(),
+                jellyfin.pager(), jellyfin.spotifyHistoryMatcher(history, directory.resolve("checkpoint.json")));
+    }
+}
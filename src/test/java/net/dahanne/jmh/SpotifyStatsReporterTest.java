@@ -0,0 +1,92 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.SpotifyHistoryMatcher.StreamingHistoryEntry;
+import net.dahanne.jmh.SpotifyStatsReporter.Ranking;
+import net.dahanne.jmh.SpotifyStatsReporter.Window;
+import net.dahanne.jmh.SpotifyStatsReporter.WindowStats;
+import net.dahanne.jmh.report.ReportFormat;
+import net.dahanne.jmh.report.ReportWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SpotifyStatsReporterTest {
+
+    private final NameNormalizer nameNormalizer = new NameNormalizer();
+
+    @Test
+    void ranksEachWindowAndFlagsWhatTheLibraryLacks() {
+        TrackMatchIndex index = new TrackMatchIndex(nameNormalizer, new TitleCanonicalizer(nameNormalizer));
+        index.add("1", "Don't Stop Me Now", "Jazz", List.of("Queen"));
+        List<WindowStats> stats = List.of(new WindowStats(Window.parse("2023")), new WindowStats(Window.parse("1999")));
+        List<StreamingHistoryEntry> entries = List.of(
+                entry("Queen", "Don't Stop Me Now", "Jazz", 200_000, "2023-01-01 10:00"),
+                entry("QUEEN", "Don't Stop Me Now", "Jazz", 200_000, "2023-01-02 10:00"),
+                entry("Radiohead", "Creep", "Pablo Honey", 240_000, "2022-05-01T10:00:00Z"),
+                entry("Radiohead", "Karma Police", "OK Computer", 260_000, "2023-03-01T10:00:00Z"),
+                entry(null, null, null, 3_600_000, "2023-03-01T11:00:00Z"));
+        entries.forEach(entry -> stats.forEach(window -> window.add(entry)));
+
+        assertThat(write(stats, index, 2, Ranking.TIME)).isEqualTo("""
+                [2023] artist #1 Queen 2 plays, 6m ✅
+                [2023] artist #2 Radiohead 1 plays, 4m ❌
+                [2023] album #1 Queen - Jazz 2 plays, 6m ✅
+                [2023] album #2 Radiohead - OK Computer 1 plays, 4m ❌
+                [2023] track #1 Queen - Don't Stop Me Now 2 plays, 6m ✅
+                [2023] track #2 Radiohead - Karma Police 1 plays, 4m ❌
+                [2023] missing-album #1 Radiohead - OK Computer 1 plays, 4m ❌
+                [1999] no plays
+                """);
+    }
+
+    @Test
+    void keepsOnlyTheTopEntriesOfTheChosenRanking() {
+        TrackMatchIndex index = new TrackMatchIndex(nameNormalizer, new TitleCanonicalizer(nameNormalizer));
+        WindowStats stats = new WindowStats(Window.parse("all"));
+        for (int i = 0; i < 100; i++) {
+            stats.add(entry("Artist " + i, "Track", "Album", 1_000L * i, null));
+        }
+        for (int i = 0; i < 3; i++) {
+            stats.add(entry("Artist 0", "Track", "Album", 0, null));
+        }
+
+        String byPlays = write(List.of(stats), index, 1, Ranking.PLAYS);
+        String byTime = write(List.of(stats), index, 1, Ranking.TIME);
+
+        assertThat(byPlays).startsWith("[all] artist #1 Artist 0 4 plays, 0m ❌\n")
+                .contains("[all] missing-album #1 Artist 0 - Album 4 plays");
+        assertThat(byTime).startsWith("[all] artist #1 Artist 99 1 plays, 1m ❌\n")
+                .contains("[all] track #1 Artist 99 - Track 1 plays, 1m ❌");
+    }
+
+    @Test
+    void parsesWindows() {
+        assertThat(Window.parse("all")).isEqualTo(new Window("all", null, null));
+        assertThat(Window.parse("2023-02")).isEqualTo(new Window("2023-02", "2023-02-01", "2023-02-28"));
+        assertThat(Window.parse("2024-06-01..")).isEqualTo(new Window("2024-06-01..", "2024-06-01", null));
+        assertThat(Window.parse("2023").contains("2023-12-31T23:59:59Z")).isTrue();
+        assertThat(Window.parse("2023").contains("2024-01-01 00:00")).isFalse();
+        assertThat(Window.parse("2023").contains(null)).isFalse();
+        assertThatThrownBy(() -> Window.parse("last year"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("last year");
+    }
+
+    private static StreamingHistoryEntry entry(String artist, String track, String album, long msPlayed,
+                                               String endTime) {
+        return new StreamingHistoryEntry(artist, track, album, msPlayed, endTime);
+    }
+
+    private static String write(List<WindowStats> stats, TrackMatchIndex index, int top, Ranking ranking) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ReportWriter report = ReportWriter.open(ReportFormat.TEXT, output, false, SpotifyStatsReporter.REPORT)) {
+            SpotifyStatsReporter.write(stats, index, top, ranking, report);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,46 @@
+package net.dahanne.jmh;
+
+import net.dahanne.jmh.TrackMatchIndex.Kind;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrackMatchIndexTest {
+
+    private final NameNormalizer nameNormalizer = new NameNormalizer();
+    private final TitleCanonicalizer canonicalizer = new TitleCanonicalizer(nameNormalizer);
+
+    @Test
+    void canonicalizesVersionSuffixesAndFeaturingClauses() {
+        assertThat(canonicalizer.canonicalize("Song - 2011 Remaster")).isEqualTo("song");
+        assertThat(canonicalizer.canonicalize("Song - Remastered 2009")).isEqualTo("song");
+        assertThat(canonicalizer.canonicalize("Song (feat. Someone Else)")).isEqualTo("song");
+        assertThat(canonicalizer.canonicalize("Song [Live at Wembley]")).isEqualTo("song");
+        assertThat(canonicalizer.canonicalize("Song ft. Someone")).isEqualTo("song");
+        assertThat(canonicalizer.canonicalize("Song - Live - 2011 Remaster")).isEqualTo("song");
+        assertThat(canonicalizer.canonicalize("Song - Part 2")).isEqualTo("songpart2");
+        assertThat(canonicalizer.canonicalize("Song (Reprise)")).isEqualTo("songreprise");
+        assertThat(canonicalizer.canonicalize("Live Forever")).isEqualTo("liveforever");
+        assertThat(canonicalizer.canonicalize("(Live)")).isEqualTo("live");
+    }
+
+    @Test
+    void reportsExactAndFuzzyMatches() {
+        TrackMatchIndex index = new TrackMatchIndex(nameNormalizer, canonicalizer);
+        index.add("1", "Bohemian Rhapsody", "A Night at the Opera", List.of("Queen"));
+        index.add("2", "Don't Stop Me Now", "Jazz", List.of("Queen"));
+        index.add("3", "Under Pressure", "Hot Space", List.of("Queen", "David Bowie"));
+
+        assertThat(index.find("queen", "bohemian rhapsody").kind()).isEqualTo(Kind.EXACT);
+        assertThat(index.find("queen", "bohemian rhapsody").track().id()).isEqualTo("1");
+        assertThat(index.find("Queen", "Bohemian Rhapsody - 2011 Remaster").kind()).isEqualTo(Kind.FUZZY);
+        assertThat(index.find("Queen", "Dont Stop Me Now").track().id()).isEqualTo("2");
+        assertThat(index.find("David Bowie", "Under Pressure (feat. Queen)").track().id()).isEqualTo("3");
+        assertThat(index.find("Queen", "Bohemian Rapsody").track().id()).isEqualTo("1");
+        assertThat(index.find("Queen", "Bohemian Rapsody").kind()).isEqualTo(Kind.FUZZY);
+        assertThat(index.find("Queen", "Another One Bites the Dust")).isNull();
+        assertThat(index.find("Muse", "Bohemian Rhapsody")).isNull();
+    }
+}
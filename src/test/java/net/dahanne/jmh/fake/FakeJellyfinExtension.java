@@ -0,0 +1,120 @@
+package net.dahanne.jmh.fake;
+
+import net.dahanne.jmh.JellyfinArtistService;
+import net.dahanne.jmh.JellyfinGenreService;
+import net.dahanne.jmh.JellyfinItemPager;
+import net.dahanne.jmh.NameNormalizer;
+import net.dahanne.jmh.SpotifyHistoryMatcher;
+import net.dahanne.jmh.TitleCanonicalizer;
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.config.JellyfinRequestFactory;
+import net.dahanne.jmh.snapshot.LibrarySnapshotStore;
+import org.junit.jupiter.api.extension.AfterEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts {@link FakeJellyfinServer}s for a test and stops them after it. The properties, request factory, pager
+ * and services it hands out are bound to the first server started:
+ * <pre>
+ * &#64;RegisterExtension
+ * final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+ * </pre>
+ */
+public final class FakeJellyfinExtension implements AfterEachCallback {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().build();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final List<FakeJellyfinServer> servers = new ArrayList<>();
+    private JellyfinProperties properties;
+    private LibrarySnapshotStore snapshotStore;
+
+    /**
+     * Starts a server without latency nor errors.
+     */
+    public FakeJellyfinServer start(FakeJellyfinCatalog catalog, long seed) {
+        return start(new FakeJellyfinServer(catalog, objectMapper, Duration.ZERO, 0, seed));
+    }
+
+    /**
+     * Starts {@code server}, e.g. one with latency, errors or a socket, on a free port.
+     */
+    public FakeJellyfinServer start(FakeJellyfinServer server) {
+        servers.add(server.start(0));
+        return server;
+    }
+
+    public FakeJellyfinServer server() {
+        if (servers.isEmpty()) {
+            throw new IllegalStateException("No fake Jellyfin server started");
+        }
+        return servers.getFirst();
+    }
+
+    public ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+
+    public HttpClient httpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return the properties of the first server, with an API token; the same instance on every call, so that
+     * a test can complete them
+     */
+    public JellyfinProperties properties() {
+        if (properties == null) {
+            properties = new JellyfinProperties();
+            properties.setBaseUrl(server().baseUrl());
+            properties.setApiToken("test");
+        }
+        return properties;
+    }
+
+    public JellyfinRequestFactory requestFactory() {
+        return new JellyfinRequestFactory(properties());
+    }
+
+    public JellyfinItemPager pager() {
+        return new JellyfinItemPager(objectMapper, httpClient, requestFactory());
+    }
+
+    /**
+     * @return the same store on every call, as in the application
+     */
+    public LibrarySnapshotStore snapshotStore() {
+        if (snapshotStore == null) {
+            snapshotStore = new LibrarySnapshotStore(properties());
+        }
+        return snapshotStore;
+    }
+
+    public JellyfinArtistService artistService() {
+        return new JellyfinArtistService(objectMapper, httpClient, requestFactory(), properties(), snapshotStore());
+    }
+
+    public JellyfinGenreService genreService() {
+        return new JellyfinGenreService(objectMapper, httpClient, requestFactory(), properties(), snapshotStore(),
+                pager());
+    }
+
+    public SpotifyHistoryMatcher spotifyHistoryMatcher(Path historyFile, Path checkpointFile) {
+        NameNormalizer nameNormalizer = new NameNormalizer();
+        return new SpotifyHistoryMatcher(objectMapper, pager(), artistService(), snapshotStore(), nameNormalizer,
+                new TitleCanonicalizer(nameNormalizer), historyFile.toString(), checkpointFile.toString());
+    }
+
+    @Override
+    public void afterEach(ExtensionContext context) {
+        servers.forEach(FakeJellyfinServer::close);
+        servers.clear();
+    }
+}
@@ -0,0 +1,95 @@
+package net.dahanne.jmh.fake;
+
+import net.dahanne.jmh.JellyfinGenreService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FakeJellyfinServerTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+    @TempDir
+    private Path journals;
+
+    @Test
+    void servesGeneratedArtistsAndGenres() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(50, 2, 3, 10, 1);
+        jellyfin.start(catalog, 1);
+
+        var artists = jellyfin.artistService().fetchArtists();
+        var genres = jellyfin.genreService().fetchGenresWithAlbumCount();
+
+        assertThat(artists).hasSize(50);
+        assertThat(genres).hasSize(10);
+        assertThat(genres.stream().mapToInt(JellyfinGenreService.GenreWithCount::albumCount).sum())
+                .isGreaterThanOrEqualTo(100);
+    }
+
+    @Test
+    void moveGenreUpdatesTheCatalog() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(20, 2, 1, 4, 7);
+        jellyfin.start(catalog, 7);
+        jellyfin.properties().getJournal().setDirectory(journals.toString());
+        JellyfinGenreService genreService = jellyfin.genreService();
+        FakeJellyfinCatalog.FakeGenre origin = catalog.genres().get(0);
+        FakeJellyfinCatalog.FakeGenre destination = catalog.genres().get(1);
+
+        var result = genreService.applyMove(genreService.planMoveGenre(origin.id(), destination.id()), 2);
+
+        assertThat(result.failedAlbums()).isEmpty();
+        assertThat(result.movedCount()).isEqualTo(result.totalAlbums());
+        assertThat(catalog.albums()).noneMatch(album -> album.genres().contains(origin));
+    }
+
+    @Test
+    void keepsTheTrackCountAndRunTimeOfEachAlbum() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(1, 1, 1, 1, 3);
+        FakeJellyfinCatalog.FakeArtist artist = catalog.artists().getFirst();
+        FakeJellyfinCatalog.FakeAlbum album = catalog.addAlbum("Counted", artist, List.of());
+        catalog.addTrack("One", album, List.of(artist), 1, 100, 1);
+        FakeJellyfinCatalog.FakeTrack two = catalog.addTrack("Two", album, List.of(artist), 2, 250, 1);
+
+        assertThat(album.trackCount()).isEqualTo(2);
+        assertThat(album.runTimeTicks()).isEqualTo(350);
+
+        catalog.delete(two.id());
+
+        assertThat(album.trackCount()).isEqualTo(1);
+        assertThat(album.runTimeTicks()).isEqualTo(100);
+    }
+
+    @Test
+    void keepsTheListsOfTheCatalogUntilTheNextWrite() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(3, 1, 2, 2, 5);
+        List<FakeJellyfinCatalog.FakeTrack> tracks = catalog.tracks();
+        List<FakeJellyfinCatalog.FakeArtist> artists = catalog.artistsByName();
+
+        assertThat(catalog.tracks()).isSameAs(tracks);
+        assertThat(catalog.artistsByName()).isSameAs(artists);
+
+        FakeJellyfinCatalog.FakeArtist added = catalog.addArtist("Aaa First");
+        FakeJellyfinCatalog.FakeTrack track = catalog.addTrack("New", catalog.albums().getFirst(), List.of(added), 9,
+                100, 9);
+
+        assertThat(catalog.tracks()).isNotSameAs(tracks).endsWith(track);
+        assertThat(catalog.artistsByName()).startsWith(added);
+        catalog.delete(track.id());
+        assertThat(catalog.tracks()).containsExactlyElementsOf(tracks);
+    }
+
+    @Test
+    void injectsErrors() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(5, 1, 1, 1, 3);
+        jellyfin.start(new FakeJellyfinServer(catalog, jellyfin.objectMapper(), Duration.ZERO, 1.0, 3));
+
+        assertThatThrownBy(jellyfin.artistService()::fetchArtists).hasMessageContaining("503");
+    }
+}
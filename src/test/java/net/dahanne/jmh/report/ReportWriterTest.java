@@ -0,0 +1,59 @@
+package net.dahanne.jmh.report;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReportWriterTest {
+
+    private static final ReportLayout LAYOUT = ReportLayout.of(row -> row[0] + " -> " + row[1] + " (" + row[2] + ")",
+            "artist", "albums", "score");
+
+    @Test
+    void writesTextLines() {
+        assertThat(write(ReportFormat.TEXT)).isEqualTo("""
+                Beyoncé -> [Lemonade, "4"] (0.5)
+                A, B -> [] (null)
+                done
+                """);
+    }
+
+    @Test
+    void writesCsvWithHeaderAndQuoting() {
+        assertThat(write(ReportFormat.CSV)).isEqualTo("""
+                artist,albums,score
+                Beyoncé,"Lemonade; ""4""\",0.5
+                "A, B",,
+                """);
+    }
+
+    @Test
+    void writesOneJsonObjectPerLine() {
+        assertThat(write(ReportFormat.NDJSON)).isEqualTo("""
+                {"artist":"Beyoncé","albums":["Lemonade","\\"4\\""],"score":0.5}
+                {"artist":"A, B","albums":[],"score":null}
+                """);
+    }
+
+    @Test
+    void parsesFormatNames() {
+        assertThat(ReportFormat.of("NDJSON")).isEqualTo(ReportFormat.NDJSON);
+        assertThat(ReportFormat.of(null)).isEqualTo(ReportFormat.TEXT);
+        assertThatThrownBy(() -> ReportFormat.of("xml")).hasMessageContaining("text, csv, ndjson");
+    }
+
+    private static String write(ReportFormat format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ReportWriter report = ReportWriter.open(format, out, true, LAYOUT)) {
+            report.row("Beyoncé", List.of("Lemonade", "\"4\""), 0.5);
+            report.row("A, B", List.of(), null);
+            report.note("done");
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
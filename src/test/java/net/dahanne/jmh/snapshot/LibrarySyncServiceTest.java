@@ -0,0 +1,88 @@
+package net.dahanne.jmh.snapshot;
+
+import net.dahanne.jmh.JellyfinItemPager;
+import net.dahanne.jmh.config.JellyfinProperties;
+import net.dahanne.jmh.fake.FakeJellyfinCatalog;
+import net.dahanne.jmh.fake.FakeJellyfinExtension;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LibrarySyncServiceTest {
+
+    @RegisterExtension
+    final FakeJellyfinExtension jellyfin = new FakeJellyfinExtension();
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void fullSyncThenIncrementalSync() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(30, 2, 4, 6, 11);
+        jellyfin.start(catalog, 11);
+        JellyfinProperties properties = jellyfin.properties();
+        properties.getSnapshot().setFile(directory.resolve("library.snapshot").toString());
+        JellyfinItemPager pager = jellyfin.pager();
+
+        var full = new LibrarySyncService(pager, new LibrarySnapshotStore(properties)).sync(false);
+
+        assertThat(full.incremental()).isFalse();
+        assertThat(full.albums()).isEqualTo(60);
+        assertThat(full.tracks()).isEqualTo(240);
+        assertThat(full.genres()).isEqualTo(6);
+
+        FakeJellyfinCatalog.FakeAlbum renamed = catalog.albums().get(0);
+        catalog.updateAlbum(renamed.id(), "Renamed Album", List.of("Brand New Genre"));
+        catalog.delete(catalog.tracks().get(0).id());
+
+        var incremental = new LibrarySyncService(pager, new LibrarySnapshotStore(properties)).sync(false);
+
+        assertThat(incremental.incremental()).isTrue();
+        // the renamed album, plus the item saved at the previous watermark since MinDateLastSaved is inclusive
+        assertThat(incremental.fetchedItems()).isBetween(1, 2);
+        assertThat(incremental.removedItems()).isEqualTo(1);
+        assertThat(incremental.tracks()).isEqualTo(239);
+        assertThat(incremental.genres()).isEqualTo(7);
+
+        LibrarySnapshot snapshot = new LibrarySnapshotStore(properties).load();
+        int album = 0;
+        while (!snapshot.albumId(album).equals(renamed.id())) {
+            album++;
+        }
+        assertThat(snapshot.albumName(album)).isEqualTo("Renamed Album");
+        assertThat(snapshot.genreName(snapshot.albumGenre(album, 0))).isEqualTo("Brand New Genre");
+        assertThat(snapshot.albumsOfArtist(snapshot.artistOrdinal(renamed.artist().id()))).contains(album);
+    }
+
+    @Test
+    void prunesATrackDeletedWhileAnotherWasAdded() {
+        FakeJellyfinCatalog catalog = FakeJellyfinCatalog.generate(5, 1, 3, 2, 13);
+        jellyfin.start(catalog, 13);
+        JellyfinProperties properties = jellyfin.properties();
+        properties.getSnapshot().setFile(directory.resolve("library.snapshot").toString());
+        new LibrarySyncService(jellyfin.pager(), new LibrarySnapshotStore(properties)).sync(false);
+
+        FakeJellyfinCatalog.FakeTrack deleted = catalog.tracks().getFirst();
+        catalog.delete(deleted.id());
+        FakeJellyfinCatalog.FakeTrack added = catalog.addTrack("Added Since", deleted.album(), deleted.artists(), 99,
+                deleted.runTimeTicks(), 99);
+
+        // the track count is the same as at the previous sync
+        var incremental = new LibrarySyncService(jellyfin.pager(), new LibrarySnapshotStore(properties)).sync(false);
+
+        assertThat(incremental.removedItems()).isEqualTo(1);
+        assertThat(incremental.tracks()).isEqualTo(catalog.tracks().size());
+        LibrarySnapshot snapshot = new LibrarySnapshotStore(properties).load();
+        List<String> trackIds = new ArrayList<>();
+        for (int track = 0; track < snapshot.trackCount(); track++) {
+            trackIds.add(snapshot.trackId(track));
+        }
+        assertThat(trackIds).contains(added.id()).doesNotContain(deleted.id());
+    }
+}